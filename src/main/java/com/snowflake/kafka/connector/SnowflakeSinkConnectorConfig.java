@@ -65,6 +65,16 @@ public class SnowflakeSinkConnectorConfig {
   public static final long BUFFER_COUNT_RECORDS_DEFAULT = 10000;
   public static final long BUFFER_COUNT_RECORDS_MIN = 1;
 
+  // Bytes the buffers and in flight uploads of all partitions of a task may hold, 0 for no limit
+  public static final String TASK_MEMORY_BUDGET_BYTES = "snowflake.task.memory.budget.bytes";
+  public static final long TASK_MEMORY_BUDGET_BYTES_DEFAULT = 0;
+
+  // Size of the files compressed Snowpipe buffers are flushed into, replaces the buffer size
+  // threshold, 0 to flush by buffer size
+  public static final String SNOWPIPE_ADAPTIVE_FILE_SIZE_BYTES =
+      "snowflake.snowpipe.adaptive.file.size.bytes";
+  public static final long SNOWPIPE_ADAPTIVE_FILE_SIZE_BYTES_DEFAULT = 0;
+
   // Snowflake connection and database config
   private static final String SNOWFLAKE_LOGIN_INFO = "Snowflake Login Info";
   static final String SNOWFLAKE_URL = Utils.SF_URL;
@@ -131,11 +141,47 @@ public class SnowflakeSinkConnectorConfig {
   public static final boolean SNOWPIPE_FILE_CLEANER_FIX_ENABLED_DEFAULT = true;
   public static final int SNOWPIPE_FILE_CLEANER_THREADS_DEFAULT = 1;
 
+  // Whether Snowpipe buffers are gzip compressed while records are added to them
+  public static final String SNOWPIPE_COMPRESSED_BUFFER_ENABLED =
+      "snowflake.snowpipe.compressedBuffer.enabled";
+  public static final boolean SNOWPIPE_COMPRESSED_BUFFER_ENABLED_DEFAULT = false;
+
+  // Number of threads uploading flushed Snowpipe buffers, 1 uploads them on the task thread
+  public static final String SNOWPIPE_FLUSH_THREADS = "snowflake.snowpipe.flush.threads";
+  public static final int SNOWPIPE_FLUSH_THREADS_DEFAULT = 1;
+
+  // Whether staged Snowpipe files are submitted off the task thread instead of during preCommit
+  public static final String SNOWPIPE_ASYNC_FILE_SUBMISSION_ENABLED =
+      "snowflake.snowpipe.asyncFileSubmission.enabled";
+  public static final boolean SNOWPIPE_ASYNC_FILE_SUBMISSION_ENABLED_DEFAULT = false;
+
+  // Whether the Snowpipe buffers of the partitions of a table flushed by time share one file
+  public static final String SNOWPIPE_FILE_COALESCING_ENABLED =
+      "snowflake.snowpipe.fileCoalescing.enabled";
+  public static final boolean SNOWPIPE_FILE_COALESCING_ENABLED_DEFAULT = false;
+
   // Whether to close streaming channels in parallel.
   public static final String SNOWPIPE_STREAMING_CLOSE_CHANNELS_IN_PARALLEL =
       "snowflake.streaming.closeChannelsInParallel.enabled";
   public static final boolean SNOWPIPE_STREAMING_CLOSE_CHANNELS_IN_PARALLEL_DEFAULT = false;
 
+  // Whether to open streaming channels in parallel when partitions are assigned.
+  public static final String SNOWPIPE_STREAMING_OPEN_CHANNELS_IN_PARALLEL =
+      "snowflake.streaming.openChannelsInParallel.enabled";
+  public static final boolean SNOWPIPE_STREAMING_OPEN_CHANNELS_IN_PARALLEL_DEFAULT = false;
+
+  // Number of streaming clients the channels of the worker are spread over, when the client
+  // optimization is enabled
+  public static final String SNOWPIPE_STREAMING_CLIENT_POOL_SIZE =
+      "snowflake.streaming.client.pool.size";
+  public static final int SNOWPIPE_STREAMING_CLIENT_POOL_SIZE_DEFAULT = 1;
+
+  // Number of threads inserting the flushed buffers of the channels of a task, they are inserted by
+  // the task thread if 0
+  public static final String SNOWPIPE_STREAMING_INSERT_THREADS =
+      "snowflake.streaming.insert.threads";
+  public static final int SNOWPIPE_STREAMING_INSERT_THREADS_DEFAULT = 0;
+
   // This is the streaming max client lag which can be defined in config
   public static final String SNOWPIPE_STREAMING_ENABLE_SINGLE_BUFFER =
       "snowflake.streaming.enable.single.buffer";
@@ -150,6 +196,12 @@ public class SnowflakeSinkConnectorConfig {
   public static final String SNOWPIPE_STREAMING_CLIENT_PROVIDER_OVERRIDE_MAP =
       "snowflake.streaming.client.provider.override.map";
 
+  // How often committed offset tokens of all channels of a task are fetched in the background, 0
+  // fetches them in preCommit
+  public static final String SNOWPIPE_STREAMING_COMMITTED_OFFSET_POLL_INTERVAL_MS =
+      "snowflake.streaming.committedOffset.pollIntervalMs";
+  public static final long SNOWPIPE_STREAMING_COMMITTED_OFFSET_POLL_INTERVAL_MS_DEFAULT = 0;
+
   // TESTING
   public static final String REBALANCING = "snowflake.test.rebalancing";
   public static final boolean REBALANCING_DEFAULT = false;
@@ -497,6 +549,30 @@ public class SnowflakeSinkConnectorConfig {
             3,
             ConfigDef.Width.NONE,
             BUFFER_FLUSH_TIME_SEC)
+        .define(
+            TASK_MEMORY_BUDGET_BYTES,
+            Type.LONG,
+            TASK_MEMORY_BUDGET_BYTES_DEFAULT,
+            ConfigDef.Range.atLeast(0),
+            Importance.LOW,
+            "Bytes the buffers and the in flight uploads of all partitions of a task may hold."
+                + " Above it the largest buffers are flushed and the partitions holding the most"
+                + " memory are paused until the usage is back below 3/4 of it. 0 disables the"
+                + " limit")
+        .define(
+            SNOWPIPE_ADAPTIVE_FILE_SIZE_BYTES,
+            Type.LONG,
+            SNOWPIPE_ADAPTIVE_FILE_SIZE_BYTES_DEFAULT,
+            ConfigDef.Range.atLeast(0),
+            Importance.LOW,
+            "Size of the files Snowpipe ingests, 100-250 MB being the most efficient. The buffer"
+                + " of each partition is flushed once its records reach this size, learned from"
+                + " the compression of its previous files, instead of buffer.size.bytes."
+                + " buffer.size.bytes stays the minimum, buffer.count.records still flushes the"
+                + " buffer and buffer.flush.time stays the latency bound. Requires"
+                + " snowflake.snowpipe.compressedBuffer.enabled. Combine with"
+                + " snowflake.task.memory.budget.bytes for tasks with many partitions. 0 disables"
+                + " it, only used by Snowpipe")
         .define(
             SNOWFLAKE_METADATA_ALL,
             Type.BOOLEAN,
@@ -606,6 +682,38 @@ public class SnowflakeSinkConnectorConfig {
             Importance.LOW,
             "Defines number of worker threads to associate with the cleaner task. By default there"
                 + " is one cleaner per topic's partition and they all share one worker thread")
+        .define(
+            SNOWPIPE_COMPRESSED_BUFFER_ENABLED,
+            Type.BOOLEAN,
+            SNOWPIPE_COMPRESSED_BUFFER_ENABLED_DEFAULT,
+            Importance.LOW,
+            "Whether to gzip records as soon as they are added to the Snowpipe partition buffer."
+                + " Lowers the memory held per partition to roughly the compressed file size")
+        .define(
+            SNOWPIPE_FLUSH_THREADS,
+            Type.INT,
+            SNOWPIPE_FLUSH_THREADS_DEFAULT,
+            ConfigDef.Range.atLeast(1),
+            Importance.LOW,
+            "Number of threads uploading the flushed buffers of the task's partitions to the"
+                + " stage. With 1 buffers are uploaded one at a time on the task thread")
+        .define(
+            SNOWPIPE_ASYNC_FILE_SUBMISSION_ENABLED,
+            Type.BOOLEAN,
+            SNOWPIPE_ASYNC_FILE_SUBMISSION_ENABLED_DEFAULT,
+            Importance.LOW,
+            "Whether to submit the files put on stage to Snowpipe from a background thread as soon"
+                + " as they are staged. preCommit then commits the offsets submitted so far"
+                + " instead of waiting for the insertFiles calls of all partitions")
+        .define(
+            SNOWPIPE_FILE_COALESCING_ENABLED,
+            Type.BOOLEAN,
+            SNOWPIPE_FILE_COALESCING_ENABLED_DEFAULT,
+            Importance.LOW,
+            "Whether to put the records of the partitions of a table in one file when their"
+                + " buffers are flushed by time, instead of one file per partition. Reduces the"
+                + " number of files of topics with many partitions receiving few records. The"
+                + " files name the offset range of each of their partitions")
         .define(
             SNOWPIPE_STREAMING_CLOSE_CHANNELS_IN_PARALLEL,
             Type.BOOLEAN,
@@ -613,6 +721,34 @@ public class SnowflakeSinkConnectorConfig {
             Importance.MEDIUM,
             "Whether to close Snowpipe Streaming channels in parallel during task shutdown or"
                 + " rebalancing")
+        .define(
+            SNOWPIPE_STREAMING_OPEN_CHANNELS_IN_PARALLEL,
+            Type.BOOLEAN,
+            SNOWPIPE_STREAMING_OPEN_CHANNELS_IN_PARALLEL_DEFAULT,
+            Importance.MEDIUM,
+            "Whether to open Snowpipe Streaming channels in parallel when partitions are assigned"
+                + " to the task")
+        .define(
+            SNOWPIPE_STREAMING_CLIENT_POOL_SIZE,
+            Type.INT,
+            SNOWPIPE_STREAMING_CLIENT_POOL_SIZE_DEFAULT,
+            ConfigDef.Range.atLeast(1),
+            Importance.LOW,
+            "Number of Snowpipe Streaming clients shared by the tasks of a worker when "
+                + ENABLE_STREAMING_CLIENT_OPTIMIZATION_CONFIG
+                + " is enabled. Channels are assigned to a client by their table and partition")
+        .define(
+            SNOWPIPE_STREAMING_INSERT_THREADS,
+            Type.INT,
+            SNOWPIPE_STREAMING_INSERT_THREADS_DEFAULT,
+            ConfigDef.Range.atLeast(0),
+            Importance.LOW,
+            "Number of threads of a task converting and inserting the flushed buffers of its"
+                + " channels, so that the task thread buffers the next records meanwhile. The"
+                + " buffers of a channel are inserted in order. They are inserted by the task"
+                + " thread if 0. Only used when "
+                + SNOWPIPE_STREAMING_ENABLE_SINGLE_BUFFER
+                + " is disabled")
         .define(
             SNOWPIPE_STREAMING_MAX_CLIENT_LAG,
             Type.LONG,
@@ -624,6 +760,15 @@ public class SnowflakeSinkConnectorConfig {
             6,
             ConfigDef.Width.NONE,
             SNOWPIPE_STREAMING_MAX_CLIENT_LAG)
+        .define(
+            SNOWPIPE_STREAMING_COMMITTED_OFFSET_POLL_INTERVAL_MS,
+            Type.LONG,
+            SNOWPIPE_STREAMING_COMMITTED_OFFSET_POLL_INTERVAL_MS_DEFAULT,
+            ConfigDef.Range.atLeast(0),
+            Importance.LOW,
+            "Interval in milliseconds at which the committed offset tokens of all channels of a"
+                + " task are fetched with one request in the background. preCommit then answers"
+                + " from the fetched tokens. 0 fetches the token of each channel in preCommit")
         .define(
             SNOWPIPE_STREAMING_MAX_MEMORY_LIMIT_IN_BYTES,
             Type.LONG,
@@ -19,6 +19,7 @@ package com.snowflake.kafka.connector;
 import static com.snowflake.kafka.connector.internal.streaming.channel.TopicPartitionChannel.NO_OFFSET_TOKEN_REGISTERED_IN_SNOWFLAKE;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.snowflake.kafka.connector.dlq.AsyncKafkaRecordErrorReporter;
 import com.snowflake.kafka.connector.dlq.KafkaRecordErrorReporter;
 import com.snowflake.kafka.connector.internal.KCLogger;
 import com.snowflake.kafka.connector.internal.SnowflakeConnectionService;
@@ -32,12 +33,10 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeoutException;
 import java.util.function.Supplier;
 import org.apache.kafka.clients.consumer.OffsetAndMetadata;
 import org.apache.kafka.common.TopicPartition;
-import org.apache.kafka.connect.errors.ConnectException;
 import org.apache.kafka.connect.errors.RetriableException;
 import org.apache.kafka.connect.sink.ErrantRecordReporter;
 import org.apache.kafka.connect.sink.SinkRecord;
@@ -89,6 +88,9 @@ public class SnowflakeSinkTask extends SinkTask {
 
   private IngestionMethodConfig ingestionMethodConfig;
 
+  // records reported to the DLQ by a put are delivered before the put returns
+  private KafkaRecordErrorReporter kafkaRecordErrorReporter = noOpKafkaRecordErrorReporter();
+
   /** default constructor, invoked by kafka connect framework */
   public SnowflakeSinkTask() {
     DYNAMIC_LOGGER = new KCLogger(this.getClass().getName());
@@ -194,7 +196,7 @@ public class SnowflakeSinkTask extends SinkTask {
     enableRebalancing =
         Boolean.parseBoolean(parsedConfig.get(SnowflakeSinkConnectorConfig.REBALANCING));
 
-    KafkaRecordErrorReporter kafkaRecordErrorReporter = createKafkaRecordErrorReporter();
+    kafkaRecordErrorReporter = createKafkaRecordErrorReporter();
 
     // default to snowpipe
     IngestionMethodConfig ingestionType = IngestionMethodConfig.SNOWPIPE;
@@ -280,6 +282,8 @@ public class SnowflakeSinkTask extends SinkTask {
     if (this.sink != null) {
       this.sink.close(partitions);
     }
+    // closing the partitions flushes their buffers, which may report records to the DLQ
+    kafkaRecordErrorReporter.awaitReportedErrors();
 
     this.DYNAMIC_LOGGER.info(
         "task closed, execution time: {} milliseconds",
@@ -302,6 +306,8 @@ public class SnowflakeSinkTask extends SinkTask {
     final long startTime = System.currentTimeMillis();
 
     getSink().insert(records);
+    // the DLQ deliveries of the batch are awaited together, before its offsets can be committed
+    kafkaRecordErrorReporter.awaitReportedErrors();
 
     logWarningForPutAndPrecommit(
         startTime, Utils.formatString("called PUT with {} records", recordSize));
@@ -321,6 +327,9 @@ public class SnowflakeSinkTask extends SinkTask {
   public Map<TopicPartition, OffsetAndMetadata> preCommit(
       Map<TopicPartition, OffsetAndMetadata> offsets) throws RetriableException {
     long startTime = System.currentTimeMillis();
+    // records may be reported to the DLQ after the last put, by flushes in the background, they
+    // have to be delivered before the offsets past them are committed
+    kafkaRecordErrorReporter.awaitReportedErrors();
 
     // return an empty map means that offset commitment is not desired
     if (sink == null || sink.isClosed()) {
@@ -443,21 +452,7 @@ public class SnowflakeSinkTask extends SinkTask {
       try {
         ErrantRecordReporter errantRecordReporter = context.errantRecordReporter();
         if (errantRecordReporter != null) {
-          result =
-              (record, error) -> {
-                try {
-                  // Blocking this until record is delivered to DLQ
-                  DYNAMIC_LOGGER.debug(
-                      "Sending Sink Record to DLQ with recordOffset:{}, partition:{}",
-                      record.kafkaOffset(),
-                      record.kafkaPartition());
-                  errantRecordReporter.report(record, error).get();
-                } catch (InterruptedException | ExecutionException e) {
-                  final String errMsg = "ERROR reporting records to ErrantRecordReporter";
-                  this.DYNAMIC_LOGGER.error(errMsg, e);
-                  throw new ConnectException(errMsg, e);
-                }
-              };
+          result = new AsyncKafkaRecordErrorReporter(errantRecordReporter);
         } else {
           this.DYNAMIC_LOGGER.info("Errant record reporter is not configured.");
         }
@@ -486,6 +486,17 @@ public class Utils {
                 "Streaming client Channel migration is only available with {}.",
                 IngestionMethodConfig.SNOWPIPE_STREAMING.toString()));
       }
+      // the file size is learned from the compressed bytes of the buffers
+      if (isAdaptiveFileSizeEnabled(config)
+          && !Boolean.parseBoolean(
+              config.get(SnowflakeSinkConnectorConfig.SNOWPIPE_COMPRESSED_BUFFER_ENABLED))) {
+        invalidConfigParams.put(
+            SnowflakeSinkConnectorConfig.SNOWPIPE_ADAPTIVE_FILE_SIZE_BYTES,
+            Utils.formatString(
+                "{} is only available with {} set to true.",
+                SnowflakeSinkConnectorConfig.SNOWPIPE_ADAPTIVE_FILE_SIZE_BYTES,
+                SnowflakeSinkConnectorConfig.SNOWPIPE_COMPRESSED_BUFFER_ENABLED));
+      }
     }
 
     if (config.containsKey(SnowflakeSinkConnectorConfig.TOPICS_TABLES_MAP)
@@ -648,6 +659,24 @@ public class Utils {
     return !isSnowpipeIngestion(config);
   }
 
+  /**
+   * Returns whether SNOWPIPE_ADAPTIVE_FILE_SIZE_BYTES is set to a positive size. An invalid size is
+   * reported by the config definition.
+   *
+   * @param config input config object
+   */
+  private static boolean isAdaptiveFileSizeEnabled(Map<String, String> config) {
+    try {
+      return Long.parseLong(
+              config
+                  .getOrDefault(SnowflakeSinkConnectorConfig.SNOWPIPE_ADAPTIVE_FILE_SIZE_BYTES, "0")
+                  .trim())
+          > 0;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
   /**
    * modify invalid application name in config and return the generated application name
    *
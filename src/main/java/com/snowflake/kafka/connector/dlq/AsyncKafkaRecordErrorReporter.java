@@ -0,0 +1,73 @@
+package com.snowflake.kafka.connector.dlq;
+
+import com.snowflake.kafka.connector.internal.KCLogger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import org.apache.kafka.connect.errors.ConnectException;
+import org.apache.kafka.connect.sink.ErrantRecordReporter;
+import org.apache.kafka.connect.sink.SinkRecord;
+
+/**
+ * Reports records to the {@link ErrantRecordReporter} without waiting for each of them to be
+ * delivered to the DLQ. The records reported during a put are sent together and {@link
+ * #awaitReportedErrors()} waits for all of them at once, before the offsets of the put can be
+ * committed.
+ */
+public class AsyncKafkaRecordErrorReporter implements KafkaRecordErrorReporter {
+  private static final KCLogger LOGGER =
+      new KCLogger(AsyncKafkaRecordErrorReporter.class.getName());
+
+  private final ErrantRecordReporter errantRecordReporter;
+
+  // deliveries to the DLQ which were not awaited yet
+  private List<Future<Void>> pendingReports = new ArrayList<>();
+
+  public AsyncKafkaRecordErrorReporter(ErrantRecordReporter errantRecordReporter) {
+    this.errantRecordReporter = errantRecordReporter;
+  }
+
+  @Override
+  public void reportError(SinkRecord record, Exception e) {
+    LOGGER.debug(
+        "Sending Sink Record to DLQ with recordOffset:{}, partition:{}",
+        record.kafkaOffset(),
+        record.kafkaPartition());
+    Future<Void> report = errantRecordReporter.report(record, e);
+    synchronized (this) {
+      pendingReports.add(report);
+    }
+  }
+
+  @Override
+  public void awaitReportedErrors() {
+    List<Future<Void>> reports;
+    synchronized (this) {
+      if (pendingReports.isEmpty()) {
+        return;
+      }
+      reports = pendingReports;
+      pendingReports = new ArrayList<>();
+    }
+
+    LOGGER.debug("Waiting for {} records to be delivered to DLQ", reports.size());
+    for (Future<Void> report : reports) {
+      try {
+        report.get();
+      } catch (InterruptedException | ExecutionException e) {
+        if (e instanceof InterruptedException) {
+          Thread.currentThread().interrupt();
+        }
+        final String errMsg = "ERROR reporting records to ErrantRecordReporter";
+        LOGGER.error(errMsg, e);
+        throw new ConnectException(errMsg, e);
+      }
+    }
+  }
+
+  /** @return number of deliveries which were not awaited yet */
+  synchronized int getPendingReportCount() {
+    return pendingReports.size();
+  }
+}
@@ -14,4 +14,10 @@ import org.apache.kafka.connect.sink.SinkRecord;
  */
 public interface KafkaRecordErrorReporter {
   void reportError(SinkRecord record, Exception e);
+
+  /**
+   * Wait until the records reported so far are delivered. Reporters which deliver each record
+   * before {@link #reportError(SinkRecord, Exception)} returns have nothing to wait for.
+   */
+  default void awaitReportedErrors() {}
 }
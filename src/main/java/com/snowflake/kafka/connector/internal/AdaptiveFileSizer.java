@@ -0,0 +1,93 @@
+package com.snowflake.kafka.connector.internal;
+
+/**
+ * Flush size of the Snowpipe buffer of a partition, adapted after each flush so that the files of
+ * the partition reach a target size instead of a fixed number of records or buffered bytes.
+ *
+ * <p>The buffer size of records differs from the size of their file: records are gzip compressed
+ * when they are added to a compressed buffer, and the ratio depends on the format of the topic. The
+ * ratio between the compressed bytes of a flushed buffer, which are the bytes of its file, and its
+ * buffer size is learned from the flushes of the partition, and the buffer is flushed once it holds
+ * the target bytes of file. Only compressed buffers are sized this way, the memory held by a buffer
+ * compressed by JDBC while it is uploaded doesn't tell the size of its file.
+ *
+ * <p>The flush time stays the latency bound, a partition which doesn't receive enough records to
+ * reach the target size in time is still flushed by time. The arrival rate of the partition is
+ * learned to project the size of its files, which shows which partitions are flushed by size.
+ *
+ * <p>Updated by the thread flushing the buffer and read by the task thread and JMX, a stale read
+ * only delays the new flush size by one record.
+ */
+class AdaptiveFileSizer {
+  // weight of the last flush in the learned ratio and rate
+  static final double SMOOTHING_FACTOR = 0.3;
+
+  private final long targetFileBytes;
+
+  // bytes of file per byte of buffer size, 1 until learned
+  private volatile double compressionRatio = 1.0;
+  // buffer size bytes received per second
+  private volatile double arrivalBytesPerSecond = 0;
+  private volatile boolean hasFlushed = false;
+
+  /** @param targetFileBytes size of the files the buffer is flushed into */
+  AdaptiveFileSizer(long targetFileBytes) {
+    this.targetFileBytes = targetFileBytes;
+  }
+
+  /**
+   * Learn the compression ratio and the arrival rate of the partition from a flushed buffer
+   *
+   * @param bufferSizeBytes size of the buffer
+   * @param memoryBytes compressed bytes held by the buffer, the size of its file
+   * @param bufferAgeMillis time since the previous flush of the partition
+   */
+  void onFlush(long bufferSizeBytes, long memoryBytes, long bufferAgeMillis) {
+    if (bufferSizeBytes <= 0) {
+      return;
+    }
+    double ratio = (double) memoryBytes / bufferSizeBytes;
+    double rate = bufferSizeBytes * 1000.0 / Math.max(1, bufferAgeMillis);
+    if (hasFlushed) {
+      compressionRatio = smooth(compressionRatio, ratio);
+      arrivalBytesPerSecond = smooth(arrivalBytesPerSecond, rate);
+    } else {
+      compressionRatio = ratio;
+      arrivalBytesPerSecond = rate;
+      hasFlushed = true;
+    }
+  }
+
+  /**
+   * @param minFlushSizeBytes configured buffer size, files are never made smaller
+   * @return buffer size at which the buffer of the partition is flushed
+   */
+  long getFlushSizeBytes(long minFlushSizeBytes) {
+    double ratio = compressionRatio;
+    long flushSizeBytes = ratio <= 0 ? Long.MAX_VALUE : (long) (targetFileBytes / ratio);
+    return Math.max(minFlushSizeBytes, flushSizeBytes);
+  }
+
+  /**
+   * @param minFlushSizeBytes configured buffer size
+   * @param flushTimeMillis flush time of the partition
+   * @return size of the next files, the target size unless the partition is flushed by time
+   */
+  long getProjectedFileBytes(long minFlushSizeBytes, long flushTimeMillis) {
+    double bufferSizeAtFlushTime = arrivalBytesPerSecond * flushTimeMillis / 1000.0;
+    double bufferSize = Math.min(getFlushSizeBytes(minFlushSizeBytes), bufferSizeAtFlushTime);
+    return (long) (bufferSize * compressionRatio);
+  }
+
+  double getCompressionRatio() {
+    return compressionRatio;
+  }
+
+  double getArrivalBytesPerSecond() {
+    return arrivalBytesPerSecond;
+  }
+
+  private static double smooth(double average, double value) {
+    return SMOOTHING_FACTOR * value + (1 - SMOOTHING_FACTOR) * average;
+  }
+}
@@ -0,0 +1,161 @@
+package com.snowflake.kafka.connector.internal;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Append only byte store made of fixed size chunks borrowed from a JVM wide pool.
+ *
+ * <p>Unlike a {@link java.io.ByteArrayOutputStream} it never copies already written bytes when it
+ * grows and never materializes a single contiguous array, so a partition buffer of a few hundred MB
+ * does not need a contiguous allocation of the same size (nor a second one when it is read).
+ *
+ * <p>Chunks are handed back to the pool by {@link #release()}. The store must not be used after it
+ * was released. Writes are not thread safe, the caller is expected to guard the store the same way
+ * it guards the partition buffer owning it.
+ */
+final class ChunkedByteStore extends OutputStream {
+  static final int CHUNK_SIZE_BYTES = 64 * 1024;
+
+  // Upper bound of the memory kept alive by the pool when no partition buffer needs it
+  private static final int MAX_POOLED_CHUNKS = 512; // 32MB
+
+  private static final ConcurrentLinkedQueue<byte[]> CHUNK_POOL = new ConcurrentLinkedQueue<>();
+  private static final AtomicInteger POOLED_CHUNK_COUNT = new AtomicInteger(0);
+
+  private final List<byte[]> chunks = new ArrayList<>();
+
+  // write position inside the last chunk
+  private int positionInLastChunk = CHUNK_SIZE_BYTES;
+  private long size = 0L;
+  private boolean released = false;
+
+  @Override
+  public void write(int b) {
+    ensureWritable();
+    chunks.get(chunks.size() - 1)[positionInLastChunk++] = (byte) b;
+    size++;
+  }
+
+  @Override
+  public void write(byte[] bytes, int offset, int length) {
+    while (length > 0) {
+      ensureWritable();
+      int toCopy = Math.min(length, CHUNK_SIZE_BYTES - positionInLastChunk);
+      System.arraycopy(bytes, offset, chunks.get(chunks.size() - 1), positionInLastChunk, toCopy);
+      positionInLastChunk += toCopy;
+      offset += toCopy;
+      length -= toCopy;
+      size += toCopy;
+    }
+  }
+
+  /** @return number of bytes written so far */
+  long size() {
+    return size;
+  }
+
+  /**
+   * Every call returns an independent stream starting at the first byte, which lets callers replay
+   * the content when an upload is retried.
+   *
+   * @return a stream over the bytes written so far
+   */
+  InputStream newInputStream() {
+    if (released) {
+      throw new IllegalStateException("ChunkedByteStore was already released");
+    }
+    return new ChunkInputStream(size);
+  }
+
+  /** Return all chunks to the pool. Calling it more than once is a no-op. */
+  void release() {
+    if (released) {
+      return;
+    }
+    released = true;
+    for (byte[] chunk : chunks) {
+      if (POOLED_CHUNK_COUNT.incrementAndGet() <= MAX_POOLED_CHUNKS) {
+        CHUNK_POOL.offer(chunk);
+      } else {
+        POOLED_CHUNK_COUNT.decrementAndGet();
+      }
+    }
+    chunks.clear();
+  }
+
+  private void ensureWritable() {
+    if (released) {
+      throw new IllegalStateException("ChunkedByteStore was already released");
+    }
+    if (positionInLastChunk == CHUNK_SIZE_BYTES) {
+      chunks.add(borrowChunk());
+      positionInLastChunk = 0;
+    }
+  }
+
+  private static byte[] borrowChunk() {
+    byte[] chunk = CHUNK_POOL.poll();
+    if (chunk == null) {
+      return new byte[CHUNK_SIZE_BYTES];
+    }
+    POOLED_CHUNK_COUNT.decrementAndGet();
+    return chunk;
+  }
+
+  /** Reads the chunks in place, limited to the size of the store when the stream was opened. */
+  private class ChunkInputStream extends InputStream {
+    private final long limit;
+    private long position = 0L;
+
+    private ChunkInputStream(long limit) {
+      this.limit = limit;
+    }
+
+    @Override
+    public int read() {
+      if (position >= limit) {
+        return -1;
+      }
+      byte b = chunks.get((int) (position / CHUNK_SIZE_BYTES))[(int) (position % CHUNK_SIZE_BYTES)];
+      position++;
+      return b & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+      if (length == 0) {
+        return 0;
+      }
+      if (position >= limit) {
+        return -1;
+      }
+      int read = 0;
+      while (read < length && position < limit) {
+        int offsetInChunk = (int) (position % CHUNK_SIZE_BYTES);
+        int toCopy =
+            (int)
+                Math.min(
+                    Math.min(length - read, CHUNK_SIZE_BYTES - offsetInChunk), limit - position);
+        System.arraycopy(
+            chunks.get((int) (position / CHUNK_SIZE_BYTES)),
+            offsetInChunk,
+            bytes,
+            offset + read,
+            toCopy);
+        read += toCopy;
+        position += toCopy;
+      }
+      return read;
+    }
+
+    @Override
+    public int available() {
+      return (int) Math.min(Integer.MAX_VALUE, limit - position);
+    }
+  }
+}
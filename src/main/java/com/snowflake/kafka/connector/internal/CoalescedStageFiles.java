@@ -0,0 +1,80 @@
+package com.snowflake.kafka.connector.internal;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Staged files holding the records of several partitions of a table, which are submitted to
+ * Snowpipe once for all of them.
+ *
+ * <p>A coalesced file is in the list of files to ingest of each of its partitions, so that none of
+ * them commits the offsets of its records before the file is submitted. The first partition which
+ * submits its files submits the coalesced file with its own pipe, the others only wait for that
+ * submission. A failed submission is done again by the next partition.
+ *
+ * <p>A file is forgotten once each of its partitions either submitted it or was closed.
+ */
+class CoalescedStageFiles {
+  private final ConcurrentMap<String, Submission> submissions = new ConcurrentHashMap<>();
+
+  /**
+   * Start tracking a file put on the stage
+   *
+   * @param fileName coalesced file name
+   * @param partitionCount number of partitions of the file
+   */
+  void add(String fileName, int partitionCount) {
+    submissions.put(fileName, new Submission(partitionCount));
+  }
+
+  /**
+   * Make sure the file is submitted, called by each partition of the file when it submits its files
+   *
+   * @param fileName coalesced file name
+   * @param submitAction submits the file with the pipe of the calling partition
+   * @return true if the file was submitted by this call, false if it was submitted before
+   */
+  boolean submit(String fileName, Runnable submitAction) {
+    Submission submission = submissions.get(fileName);
+    if (submission == null) {
+      return false;
+    }
+    boolean submittedNow;
+    synchronized (submission) {
+      submittedNow = !submission.submitted;
+      if (submittedNow) {
+        // a failure is thrown to the caller, the file is submitted by the next partition
+        submitAction.run();
+        submission.submitted = true;
+      }
+    }
+    release(fileName);
+    return submittedNow;
+  }
+
+  /**
+   * Called by a partition of the file which is closed before it submitted the file
+   *
+   * @param fileName coalesced file name
+   */
+  void release(String fileName) {
+    submissions.computeIfPresent(
+        fileName, (name, submission) -> --submission.remainingPartitions > 0 ? submission : null);
+  }
+
+  /** @return number of files some partitions didn't submit yet */
+  int size() {
+    return submissions.size();
+  }
+
+  private static class Submission {
+    // partitions which didn't submit the file yet, guarded by the map
+    private int remainingPartitions;
+    // guarded by this
+    private boolean submitted = false;
+
+    private Submission(int remainingPartitions) {
+      this.remainingPartitions = remainingPartitions;
+    }
+  }
+}
@@ -1,11 +1,20 @@
 package com.snowflake.kafka.connector.internal;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class FileNameUtils {
   private static final KCLogger LOGGER = new KCLogger(FileNameUtils.class.getName());
 
+  // directory of the files holding the records of several partitions, not a partition number
+  private static final String COALESCED_DIRECTORY = "coalesced";
+
+  // most partitions in a coalesced file, keeps the file names short
+  static final int MAX_COALESCED_PARTITIONS = 16;
+
   /**
    * generate file name File Name Format: app/table/partition/start_end_timeStamp.fileFormat.gz
    * Note: all file names should using the this format
@@ -42,6 +51,47 @@ public class FileNameUtils {
     return fileName;
   }
 
+  /**
+   * generate the name of a file holding the records of several partitions of a table. File Name
+   * Format: app/table/coalesced/partition_start_end-partition_start_end_timeStamp.json.gz, with one
+   * offset range per partition, ordered by partition.
+   *
+   * @param prefix prefix of the coalesced files of the table
+   * @param ranges offset range of each partition in the file, of different partitions
+   * @return file name
+   */
+  static String coalescedFileName(String prefix, List<OffsetRange> ranges) {
+    List<OffsetRange> sortedRanges = new ArrayList<>(ranges);
+    sortedRanges.sort(Comparator.comparingInt(OffsetRange::getPartition));
+    StringBuilder fileName = new StringBuilder(prefix);
+    for (int i = 0; i < sortedRanges.size(); i++) {
+      OffsetRange range = sortedRanges.get(i);
+      if (i > 0) {
+        fileName.append('-');
+      }
+      fileName
+          .append(range.getPartition())
+          .append('_')
+          .append(range.getStartOffset())
+          .append('_')
+          .append(range.getEndOffset());
+    }
+    fileName.append('_').append(System.currentTimeMillis()).append(".json.gz");
+    LOGGER.debug("generated coalesced file name: {}", fileName);
+    return fileName.toString();
+  }
+
+  /**
+   * generate the prefix of the files holding the records of several partitions of a table
+   *
+   * @param appName connector name
+   * @param table table name
+   * @return file prefix
+   */
+  static String coalescedFilePrefix(String appName, String table) {
+    return appName + "/" + table + "/" + COALESCED_DIRECTORY + "/";
+  }
+
   /**
    * generate file name for broken data
    *
@@ -89,6 +139,14 @@ public class FileNameUtils {
   // /startOffset_endOffset_time_format.json.gz
   private static Pattern FILE_NAME_PATTERN =
       Pattern.compile("^[^/]+/[^/]+/(\\d+)/(\\d+)_(\\d+)_(\\d+)\\.json\\.gz$");
+  // applicationName/tableName/coalesced
+  // /partition_startOffset_endOffset[-partition_startOffset_endOffset]*_time.json.gz
+  private static final Pattern COALESCED_FILE_NAME_PATTERN =
+      Pattern.compile(
+          "^[^/]+/[^/]+/"
+              + COALESCED_DIRECTORY
+              + "/((?:\\d+_\\d+_\\d+-)*\\d+_\\d+_\\d+)_(\\d+)\\.json\\.gz$");
+
   /**
    * verify file name
    *
@@ -99,6 +157,37 @@ public class FileNameUtils {
     return FILE_NAME_PATTERN.matcher(fileName).find();
   }
 
+  /**
+   * verify the name of a file holding the records of several partitions
+   *
+   * @param fileName file name
+   * @return true if it is the name of a coalesced file, false otherwise
+   */
+  static boolean verifyCoalescedFileName(String fileName) {
+    return COALESCED_FILE_NAME_PATTERN.matcher(fileName).find();
+  }
+
+  /**
+   * read the offset ranges of the partitions from the name of a coalesced file
+   *
+   * @param fileName coalesced file name
+   * @return offset range of each partition, ordered by partition
+   */
+  static List<OffsetRange> coalescedFileNameToOffsetRanges(String fileName) {
+    Matcher matcher = COALESCED_FILE_NAME_PATTERN.matcher(fileName);
+    if (!matcher.find()) {
+      throw SnowflakeErrors.ERROR_0008.getException("input file name: " + fileName);
+    }
+    List<OffsetRange> ranges = new ArrayList<>();
+    for (String range : matcher.group(1).split("-")) {
+      String[] values = range.split("_");
+      ranges.add(
+          new OffsetRange(
+              Integer.parseInt(values[0]), Long.parseLong(values[1]), Long.parseLong(values[2])));
+    }
+    return ranges;
+  }
+
   /**
    * read start offset from file name
    *
@@ -122,10 +211,14 @@ public class FileNameUtils {
   /**
    * read ingested time from file name
    *
-   * @param fileName file name
+   * @param fileName file name, of a partition or a coalesced file
    * @return ingested time
    */
   static long fileNameToTimeIngested(String fileName) {
+    Matcher matcher = COALESCED_FILE_NAME_PATTERN.matcher(fileName);
+    if (matcher.find()) {
+      return Long.parseLong(matcher.group(2));
+    }
     return Long.parseLong(readFromFileName(fileName, 4));
   }
 
@@ -207,4 +300,29 @@ public class FileNameUtils {
 
     return matcher.group(index);
   }
+
+  /** Offsets of the records of one partition in a coalesced file */
+  static class OffsetRange {
+    private final int partition;
+    private final long startOffset;
+    private final long endOffset;
+
+    OffsetRange(int partition, long startOffset, long endOffset) {
+      this.partition = partition;
+      this.startOffset = startOffset;
+      this.endOffset = endOffset;
+    }
+
+    int getPartition() {
+      return partition;
+    }
+
+    long getStartOffset() {
+      return startOffset;
+    }
+
+    long getEndOffset() {
+      return endOffset;
+    }
+  }
 }
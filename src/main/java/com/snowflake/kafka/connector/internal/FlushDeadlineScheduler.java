@@ -0,0 +1,225 @@
+package com.snowflake.kafka.connector.internal;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+import javax.annotation.Nullable;
+
+/**
+ * Time based flush deadlines of the buffers of a task, ordered by time. Only the buffers holding
+ * records have a deadline, so finding the buffers to flush doesn't depend on the number of
+ * partitions of the task, only on the number of buffers which are due.
+ *
+ * <p>The sink service schedules a buffer when records are added to it and calls {@link #flushDue()}
+ * after each put. Due buffers are also flushed from a background thread, every {@link
+ * #DEFAULT_TICK_MILLIS}, so that the records of a partition which no longer receives any are
+ * flushed on time even if Kafka doesn't call put. The thread is only started once a buffer is
+ * scheduled.
+ *
+ * <p>A buffer is flushed by one thread at a time, the flush action has to be safe to call
+ * concurrently with the task thread adding records to the buffer. A failure of the background flush
+ * is thrown by every later call to {@link #flushDue()} or {@link #throwIfFailed()}, nothing is
+ * flushed in the background anymore. The records of the failed buffer are lost, no offset may be
+ * committed once it failed.
+ *
+ * @param <T> buffer, compared by identity
+ */
+public class FlushDeadlineScheduler<T> {
+  private static final KCLogger LOGGER = new KCLogger(FlushDeadlineScheduler.class.getName());
+
+  /** Deadline of a buffer which holds no record */
+  public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+  // precision of the background flush, the flush time can't be set below one second
+  public static final long DEFAULT_TICK_MILLIS = 1000;
+
+  private final ToLongFunction<T> deadlineFunction;
+  private final Consumer<T> flushAction;
+  private final long tickMillis;
+
+  // all fields below are guarded by this
+  private final PriorityQueue<Deadline<T>> queue =
+      new PriorityQueue<>(Comparator.comparingLong(deadline -> deadline.deadlineMillis));
+  // current deadline of each scheduled buffer, the queue entries of older deadlines are skipped
+  private final Map<T, Long> deadlines = new HashMap<>();
+  @Nullable private ScheduledExecutorService executor;
+  private boolean closed = false;
+
+  // held while due buffers are flushed, a cancelled buffer is no longer flushed once acquired
+  private final Lock flushLock = new ReentrantLock();
+  private final AtomicReference<RuntimeException> backgroundFailure = new AtomicReference<>();
+
+  /**
+   * @param deadlineFunction time in milliseconds at which the records of a buffer have to be
+   *     flushed, {@link #NO_DEADLINE} if it holds none
+   * @param flushAction flushes a buffer whose deadline passed
+   */
+  public FlushDeadlineScheduler(ToLongFunction<T> deadlineFunction, Consumer<T> flushAction) {
+    this(deadlineFunction, flushAction, DEFAULT_TICK_MILLIS);
+  }
+
+  @VisibleForTesting
+  FlushDeadlineScheduler(
+      ToLongFunction<T> deadlineFunction, Consumer<T> flushAction, long tickMillis) {
+    this.deadlineFunction = deadlineFunction;
+    this.flushAction = flushAction;
+    this.tickMillis = tickMillis;
+  }
+
+  /**
+   * Schedule the flush of the buffer at its current deadline, replaces the previous deadline of the
+   * buffer
+   *
+   * @param buffer buffer records were added to or which was flushed
+   */
+  public void schedule(T buffer) {
+    long deadlineMillis = deadlineFunction.applyAsLong(buffer);
+    synchronized (this) {
+      if (deadlineMillis == NO_DEADLINE) {
+        deadlines.remove(buffer);
+        return;
+      }
+      Long previousDeadline = deadlines.put(buffer, deadlineMillis);
+      if (previousDeadline == null || previousDeadline != deadlineMillis) {
+        queue.add(new Deadline<>(buffer, deadlineMillis));
+      }
+      if (executor == null && !closed) {
+        startBackgroundFlush();
+      }
+    }
+  }
+
+  /**
+   * Remove the buffer from the scheduler, waits for its flush if it is being flushed in the
+   * background. Has to be called before the buffer is closed.
+   *
+   * @param buffer buffer which is no longer used
+   */
+  public void cancel(T buffer) {
+    flushLock.lock();
+    try {
+      synchronized (this) {
+        deadlines.remove(buffer);
+      }
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  /**
+   * Flush the buffers whose deadline passed on the calling thread. Nothing is done if they are
+   * being flushed in the background.
+   */
+  public void flushDue() {
+    throwIfFailed();
+    if (!flushLock.tryLock()) {
+      return;
+    }
+    try {
+      flush(pollDue(System.currentTimeMillis()));
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  /** Throw the failure of a background flush, it is thrown again by every call */
+  public void throwIfFailed() {
+    RuntimeException failure = backgroundFailure.get();
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /** Stop flushing in the background, waits for the buffers being flushed */
+  public void close() {
+    synchronized (this) {
+      closed = true;
+      if (executor != null) {
+        executor.shutdown();
+        executor = null;
+      }
+    }
+    flushLock.lock();
+    flushLock.unlock();
+  }
+
+  /** @return number of scheduled buffers */
+  public synchronized int size() {
+    return deadlines.size();
+  }
+
+  @VisibleForTesting
+  synchronized List<T> pollDue(long nowMillis) {
+    List<T> dueBuffers = new ArrayList<>();
+    while (!queue.isEmpty() && queue.peek().deadlineMillis <= nowMillis) {
+      Deadline<T> deadline = queue.poll();
+      // skip the deadlines replaced since, the buffer is in the queue again with the new one
+      if (deadlines.remove(deadline.buffer, deadline.deadlineMillis)) {
+        dueBuffers.add(deadline.buffer);
+      }
+    }
+    return dueBuffers;
+  }
+
+  private void flush(List<T> dueBuffers) {
+    for (T buffer : dueBuffers) {
+      flushAction.accept(buffer);
+      // records added after the deadline have a later one
+      schedule(buffer);
+    }
+  }
+
+  private void startBackgroundFlush() {
+    executor =
+        Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("flush-scheduler-%d").setDaemon(true).build());
+    executor.scheduleWithFixedDelay(
+        this::flushDueInBackground, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private void flushDueInBackground() {
+    // the task thread is flushing the due buffers
+    if (!flushLock.tryLock()) {
+      return;
+    }
+    try {
+      flush(pollDue(System.currentTimeMillis()));
+    } catch (RuntimeException e) {
+      LOGGER.error("Failed to flush buffers in the background: {}", e.getMessage());
+      backgroundFailure.compareAndSet(null, e);
+      synchronized (this) {
+        // the partitions flushed after the failed one could commit offsets past its records
+        closed = true;
+        if (executor != null) {
+          executor.shutdown();
+          executor = null;
+        }
+      }
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  private static class Deadline<T> {
+    private final T buffer;
+    private final long deadlineMillis;
+
+    private Deadline(T buffer, long deadlineMillis) {
+      this.buffer = buffer;
+      this.deadlineMillis = deadlineMillis;
+    }
+  }
+}
@@ -0,0 +1,174 @@
+package com.snowflake.kafka.connector.internal;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import org.apache.kafka.connect.errors.ConnectException;
+
+/**
+ * Uploads flushed Snowpipe partition buffers on a bounded pool of worker threads, so one slow
+ * upload doesn't hold back the buffers of the other partitions of the task.
+ *
+ * <p>Each partition submits its uploads to its own {@link Lane}. Uploads of a lane run one after
+ * the other in submission order, which keeps the flushed offset of a partition contiguous, while
+ * uploads of different lanes run concurrently. Once an upload of a lane fails, the following
+ * uploads of that lane are skipped and the failure is thrown to the task thread by the next call to
+ * {@link Lane#submit(Runnable)} or {@link Lane#throwIfFailed()}.
+ *
+ * <p>At most {@code maxInFlightUploads} buffers are handed off at any time, {@link
+ * Lane#submit(Runnable)} blocks the task thread when the limit is reached. This bounds the memory
+ * held by flushed but not yet uploaded buffers.
+ *
+ * <p>A file holding the buffers of several partitions is submitted to the lanes of all of them with
+ * {@link #submit(Runnable, List)}, it runs after the uploads submitted before to any of these lanes
+ * and before those submitted after.
+ *
+ * <p>The streaming channels use it the same way to insert their flushed buffers off the task
+ * thread.
+ */
+public class PartitionFlushExecutor {
+  private static final KCLogger LOGGER = new KCLogger(PartitionFlushExecutor.class.getName());
+
+  private final ExecutorService executor;
+  private final Semaphore inFlightUploads;
+
+  /**
+   * @param threadCount number of upload threads
+   * @param maxInFlightUploads number of buffers which can be waiting for or being uploaded
+   */
+  public PartitionFlushExecutor(int threadCount, int maxInFlightUploads) {
+    this(threadCount, maxInFlightUploads, "snowpipe-flush-%d");
+  }
+
+  /**
+   * @param threadCount number of upload threads
+   * @param maxInFlightUploads number of buffers which can be waiting for or being uploaded
+   * @param threadNameFormat name format of the upload threads
+   */
+  public PartitionFlushExecutor(int threadCount, int maxInFlightUploads, String threadNameFormat) {
+    this.executor =
+        Executors.newFixedThreadPool(
+            threadCount,
+            new ThreadFactoryBuilder().setNameFormat(threadNameFormat).setDaemon(true).build());
+    this.inFlightUploads = new Semaphore(maxInFlightUploads);
+    LOGGER.info(
+        "Partition flush executor started with {} threads and at most {} in flight uploads",
+        threadCount,
+        maxInFlightUploads);
+  }
+
+  public Lane newLane() {
+    return new Lane();
+  }
+
+  /**
+   * Hand off an upload of the buffers of several partitions, blocks like {@link
+   * Lane#submit(Runnable)}. A failure is thrown by each of the lanes.
+   *
+   * @param upload upload of the flushed buffers of the partitions of the lanes
+   * @param lanes lanes of the partitions, the upload runs after all uploads submitted before to
+   *     them, and the uploads submitted after to any of them run after it
+   */
+  public void submit(Runnable upload, List<Lane> lanes) {
+    lanes.forEach(Lane::throwIfFailed);
+    acquireInFlightUpload();
+    try {
+      CompletableFuture<?>[] tails =
+          lanes.stream().map(lane -> lane.tail).toArray(CompletableFuture[]::new);
+      CompletableFuture<Void> jointTail =
+          CompletableFuture.allOf(tails).thenRunAsync(() -> run(upload, lanes), executor);
+      lanes.forEach(lane -> lane.tail = jointTail);
+    } catch (RuntimeException e) {
+      inFlightUploads.release();
+      throw e;
+    }
+  }
+
+  private void acquireInFlightUpload() {
+    try {
+      inFlightUploads.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ConnectException("Interrupted while waiting for a flush slot", e);
+    }
+  }
+
+  // runs the upload unless one of the lanes failed, a failure fails all of them
+  private void run(Runnable upload, List<Lane> lanes) {
+    try {
+      if (lanes.stream().allMatch(lane -> lane.failure == null)) {
+        upload.run();
+      }
+    } catch (Throwable t) {
+      LOGGER.error("Failed to upload flushed buffer: {}", t.getMessage());
+      lanes.forEach(lane -> lane.failure = t);
+    } finally {
+      inFlightUploads.release();
+    }
+  }
+
+  /** Stop the upload threads once the uploads handed off so far are done */
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  /** Ordered upload queue of one partition */
+  public class Lane {
+    private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+    private volatile Throwable failure;
+
+    private Lane() {}
+
+    /** @return the executor running the uploads of this lane */
+    public PartitionFlushExecutor getExecutor() {
+      return PartitionFlushExecutor.this;
+    }
+
+    /**
+     * Hand off an upload, blocks while the executor already holds the maximum number of uploads
+     *
+     * @param upload upload of a flushed buffer, runs after all uploads submitted before to this
+     *     lane
+     */
+    public void submit(Runnable upload) {
+      throwIfFailed();
+      acquireInFlightUpload();
+      try {
+        tail = tail.thenRunAsync(() -> run(upload), executor);
+      } catch (RuntimeException e) {
+        inFlightUploads.release();
+        throw e;
+      }
+    }
+
+    private void run(Runnable upload) {
+      PartitionFlushExecutor.this.run(upload, Collections.singletonList(this));
+    }
+
+    /** Throw the failure of a previous upload of this lane, if any */
+    public void throwIfFailed() {
+      Throwable t = failure;
+      if (t == null) {
+        return;
+      }
+      if (t instanceof RuntimeException) {
+        throw (RuntimeException) t;
+      }
+      throw new ConnectException("Failed to upload flushed buffer", t);
+    }
+
+    /** Wait until all uploads submitted to this lane are done, failed or skipped */
+    public void awaitCompletion() {
+      try {
+        tail.join();
+      } catch (Exception e) {
+        // failures of uploads are kept in the lane, this only happens if the executor was shut down
+        LOGGER.warn("Pending uploads were not completed: {}", e.getMessage());
+      }
+    }
+  }
+}
@@ -2,9 +2,11 @@ package com.snowflake.kafka.connector.internal;
 
 import com.snowflake.kafka.connector.internal.streaming.ChannelMigrateOffsetTokenResponseDTO;
 import com.snowflake.kafka.connector.internal.telemetry.SnowflakeTelemetryService;
+import java.io.InputStream;
 import java.sql.Connection;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 public interface SnowflakeConnectionService {
   /**
@@ -92,6 +94,15 @@ public interface SnowflakeConnectionService {
    */
   boolean isTableCompatible(String tableName);
 
+  /**
+   * Describe the columns of a table
+   *
+   * @param tableName table name
+   * @return column names, as stored in Snowflake, mapped to whether the column is nullable, in the
+   *     order of the table
+   */
+  Map<String, Boolean> describeTableColumns(String tableName);
+
   /**
    * Check whether the user has the role privilege to do schema evolution and whether the schema
    * evolution option is enabled on the table
@@ -231,6 +242,23 @@ public interface SnowflakeConnectionService {
    */
   void putWithCache(final String stageName, final String fileName, final String content);
 
+  /**
+   * put an already gzip compressed file to stage. Cache credential for AWS, Azure and GCS storage.
+   *
+   * @param stageName stage name
+   * @param fileName file name, see {@link #putWithCache(String, String, String)}
+   * @param compressedContent supplies a new stream over the compressed file content, it is invoked
+   *     once per upload attempt
+   */
+  void putCompressedWithCache(
+      final String stageName, final String fileName, final Supplier<InputStream> compressedContent);
+
+  /**
+   * Register the metrics of the stage credentials cached by {@link #putWithCache(String, String,
+   * String)} as JMX metrics of the task
+   */
+  void registerInternalStageMetrics();
+
   /**
    * put a file to table stage
    *
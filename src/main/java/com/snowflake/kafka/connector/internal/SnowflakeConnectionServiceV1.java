@@ -3,10 +3,15 @@ package com.snowflake.kafka.connector.internal;
 import static com.snowflake.kafka.connector.Utils.TABLE_COLUMN_CONTENT;
 import static com.snowflake.kafka.connector.Utils.TABLE_COLUMN_METADATA;
 
+import com.codahale.metrics.MetricRegistry;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.snowflake.kafka.connector.Utils;
+import com.snowflake.kafka.connector.internal.metrics.MetricsJmxReporter;
 import com.snowflake.kafka.connector.internal.streaming.ChannelMigrateOffsetTokenResponseDTO;
 import com.snowflake.kafka.connector.internal.streaming.ChannelMigrationResponseCode;
 import com.snowflake.kafka.connector.internal.streaming.IngestionMethodConfig;
@@ -14,6 +19,7 @@ import com.snowflake.kafka.connector.internal.streaming.SchematizationUtils;
 import com.snowflake.kafka.connector.internal.telemetry.SnowflakeTelemetryService;
 import com.snowflake.kafka.connector.internal.telemetry.SnowflakeTelemetryServiceFactory;
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.security.PrivateKey;
@@ -22,7 +28,13 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import net.snowflake.client.jdbc.SnowflakeConnectionV1;
 import net.snowflake.client.jdbc.SnowflakeDriver;
 import net.snowflake.client.jdbc.cloud.storage.StageInfo;
@@ -59,6 +71,24 @@ public class SnowflakeConnectionServiceV1 implements SnowflakeConnectionService
 
   private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
 
+  // Keeps each REMOVE statement well below the maximum length of a query
+  private static final int MAX_PURGE_PATTERN_LENGTH = 16 * 1024;
+
+  // Failed files are moved to the table stage in batches of this size, each batch is purged from
+  // the stage once all its files are moved
+  private static final int MOVE_TO_TABLE_STAGE_BATCH_SIZE = 100;
+  // Number of files of a batch transferred concurrently when they can't be copied on the server
+  private static final int MOVE_TO_TABLE_STAGE_THREADS = 4;
+
+  // Turned off once the account doesn't know the COPY FILES statement
+  private volatile boolean copyFilesSupported = true;
+  // vendor codes of a statement the account doesn't support: syntax error, unsupported feature
+  private static final Set<Integer> UNSUPPORTED_STATEMENT_ERROR_CODES = ImmutableSet.of(1003, 2);
+  private static final String FEATURE_NOT_SUPPORTED_SQL_STATE = "0A000";
+  private ExecutorService moveToTableStageExecutor;
+  // reports the metrics of the cached stage credentials, removed when the connection is closed
+  private MetricsJmxReporter internalStageMetricsJmxReporter;
+
   SnowflakeConnectionServiceV1(
       Properties prop,
       SnowflakeURL url,
@@ -373,6 +403,26 @@ public class SnowflakeConnectionServiceV1 implements SnowflakeConnectionService
     return compatible;
   }
 
+  @Override
+  public Map<String, Boolean> describeTableColumns(final String tableName) {
+    checkConnection();
+    InternalUtils.assertNotEmpty("tableName", tableName);
+    String query = "desc table identifier(?)";
+    Map<String, Boolean> columns = new LinkedHashMap<>();
+    try (PreparedStatement stmt = conn.prepareStatement(query)) {
+      stmt.setString(1, tableName);
+      try (ResultSet result = stmt.executeQuery()) {
+        while (result.next()) {
+          // The result schema is column name | data type | kind | null? | ...
+          columns.put(result.getString(1), !"N".equals(result.getString(4)));
+        }
+      }
+    } catch (SQLException e) {
+      throw SnowflakeErrors.ERROR_2014.getException("table name: " + tableName);
+    }
+    return columns;
+  }
+
   @Override
   public void appendMetaColIfNotExist(final String tableName) {
     checkConnection();
@@ -733,8 +783,12 @@ public class SnowflakeConnectionServiceV1 implements SnowflakeConnectionService
   @Override
   public void purgeStage(final String stageName, final List<String> files) {
     InternalUtils.assertNotEmpty("stageName", stageName);
-    for (String fileName : files) {
-      removeFile(stageName, fileName);
+    for (PurgeBatch batch : toPurgeBatches(files, MAX_PURGE_PATTERN_LENGTH)) {
+      if (batch.files.size() == 1) {
+        removeFile(stageName, batch.files.get(0));
+      } else {
+        removeFiles(stageName, batch);
+      }
     }
     LOGGER.info("purge {} files from stage: {}", files.size(), stageName);
   }
@@ -744,31 +798,188 @@ public class SnowflakeConnectionServiceV1 implements SnowflakeConnectionService
       final String tableName, final String stageName, final List<String> files) {
     InternalUtils.assertNotEmpty("tableName", tableName);
     InternalUtils.assertNotEmpty("stageName", stageName);
-    SnowflakeConnectionV1 sfconn = (SnowflakeConnectionV1) conn;
 
-    for (String name : files) {
-      // get
-      InputStream file;
-      try {
-        file = sfconn.downloadStream(stageName, name, true);
-      } catch (Exception e) {
-        throw SnowflakeErrors.ERROR_2002.getException(e, this.telemetry);
+    for (List<String> batch : Lists.partition(files, MOVE_TO_TABLE_STAGE_BATCH_SIZE)) {
+      long startTime = System.currentTimeMillis();
+      List<String> filesToTransfer = copyFilesToTableStage(tableName, stageName, batch);
+      if (!filesToTransfer.isEmpty()) {
+        transferFilesToTableStage(tableName, stageName, filesToTransfer);
       }
-      // put
+      // the files are only removed once all of them are on the table stage
+      purgeStage(stageName, batch);
+      LOGGER.info(
+          "moved {} files from stage: {} to table stage: {} in {} ms, {} copied on server",
+          batch.size(),
+          stageName,
+          tableName,
+          System.currentTimeMillis() - startTime,
+          batch.size() - filesToTransfer.size());
+    }
+  }
+
+  /**
+   * Copy files to the table stage with COPY FILES statements, without moving their content through
+   * the connector
+   *
+   * @return the files which have to be transferred by the connector, either because COPY FILES
+   *     isn't supported by the account, because of their names or because their statement failed
+   */
+  private List<String> copyFilesToTableStage(
+      final String tableName, final String stageName, final List<String> files) {
+    if (!copyFilesSupported) {
+      return files;
+    }
+    Map<String, List<String>> namesByPath = new LinkedHashMap<>();
+    for (String fileName : files) {
+      int nameStart = fileName.lastIndexOf('/') + 1;
+      namesByPath
+          .computeIfAbsent(fileName.substring(0, nameStart), path -> new ArrayList<>())
+          .add(fileName.substring(nameStart));
+    }
+    List<String> filesToTransfer = new ArrayList<>();
+    for (Map.Entry<String, List<String>> entry : namesByPath.entrySet()) {
+      String path = entry.getKey();
+      String query = copyFilesQuery(tableName, stageName, path, entry.getValue());
+      if (query == null || !copyFilesSupported || !copyFiles(tableName, query)) {
+        entry.getValue().forEach(name -> filesToTransfer.add(path + name));
+      }
+    }
+    return filesToTransfer;
+  }
+
+  /** @return false if the statement failed, its files have to be transferred by the connector */
+  private boolean copyFiles(final String tableName, final String query) {
+    try (PreparedStatement stmt = conn.prepareStatement(query)) {
+      stmt.execute();
+      return true;
+    } catch (SQLException e) {
+      if (isUnsupportedStatement(e)) {
+        copyFilesSupported = false;
+        LOGGER.warn(
+            "COPY FILES is not supported, files are transferred by the connector from now on: {}",
+            e.getMessage());
+      } else {
+        LOGGER.warn(
+            "COPY FILES to table stage {} failed, its files are transferred by the connector: {}",
+            tableName,
+            e.getMessage());
+      }
+      return false;
+    }
+  }
+
+  /**
+   * @param e failure of a COPY FILES statement
+   * @return true if the account doesn't know the statement, false if it failed for these files
+   */
+  @VisibleForTesting
+  static boolean isUnsupportedStatement(SQLException e) {
+    return UNSUPPORTED_STATEMENT_ERROR_CODES.contains(e.getErrorCode())
+        || FEATURE_NOT_SUPPORTED_SQL_STATE.equals(e.getSQLState());
+  }
+
+  /**
+   * @return the COPY FILES statement copying given files from a path of the stage to the same path
+   *     of the table stage, null if a name can't be put in a string literal
+   */
+  @VisibleForTesting
+  static String copyFilesQuery(
+      final String tableName, final String stageName, final String path, final List<String> names) {
+    StringJoiner fileList = new StringJoiner(", ", "(", ")");
+    for (String name : names) {
+      if (name.indexOf('\'') >= 0 || name.indexOf('\\') >= 0) {
+        return null;
+      }
+      fileList.add("'" + name + "'");
+    }
+    return "copy files into @%"
+        + tableName
+        + "/"
+        + path
+        + " from @"
+        + stageName
+        + "/"
+        + path
+        + " files = "
+        + fileList;
+  }
+
+  /**
+   * Download and upload files to the table stage, on the shared move threads. The compressed
+   * content is piped from the download to the upload stream as is.
+   */
+  private void transferFilesToTableStage(
+      final String tableName, final String stageName, final List<String> files) {
+    List<Future<?>> transfers = new ArrayList<>(files.size());
+    for (String name : files) {
+      transfers.add(
+          getMoveToTableStageExecutor()
+              .submit(() -> transferFileToTableStage(tableName, stageName, name)));
+    }
+    // wait for all transfers so none of them is still running when the batch is given up
+    RuntimeException failure = null;
+    for (Future<?> transfer : transfers) {
       try {
-        sfconn.uploadStream(
-            "%" + tableName,
-            FileNameUtils.getPrefixFromFileName(name),
-            file,
-            FileNameUtils.removePrefixAndGZFromFileName(name),
-            true);
-      } catch (SQLException e) {
+        transfer.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
         throw SnowflakeErrors.ERROR_2003.getException(e, this.telemetry);
+      } catch (ExecutionException e) {
+        if (failure == null) {
+          failure =
+              e.getCause() instanceof RuntimeException
+                  ? (RuntimeException) e.getCause()
+                  : SnowflakeErrors.ERROR_2003.getException(e, this.telemetry);
+        }
       }
-      LOGGER.info("moved file: {} from stage: {} to table stage: {}", name, stageName, tableName);
-      // remove
-      removeFile(stageName, name);
     }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private void transferFileToTableStage(
+      final String tableName, final String stageName, final String name) {
+    SnowflakeConnectionV1 sfconn = (SnowflakeConnectionV1) conn;
+    // get
+    InputStream file;
+    try {
+      file = sfconn.downloadStream(stageName, name, false);
+    } catch (Exception e) {
+      throw SnowflakeErrors.ERROR_2002.getException(e, this.telemetry);
+    }
+    // put
+    try (InputStream in = file) {
+      sfconn.uploadStream(
+          "%" + tableName,
+          FileNameUtils.getPrefixFromFileName(name),
+          in,
+          name.substring(name.lastIndexOf('/') + 1),
+          false);
+    } catch (SQLException | IOException e) {
+      throw SnowflakeErrors.ERROR_2003.getException(e, this.telemetry);
+    }
+    LOGGER.debug("moved file: {} from stage: {} to table stage: {}", name, stageName, tableName);
+  }
+
+  private synchronized ExecutorService getMoveToTableStageExecutor() {
+    if (moveToTableStageExecutor == null) {
+      ThreadPoolExecutor executor =
+          new ThreadPoolExecutor(
+              MOVE_TO_TABLE_STAGE_THREADS,
+              MOVE_TO_TABLE_STAGE_THREADS,
+              1,
+              TimeUnit.MINUTES,
+              new LinkedBlockingQueue<>(),
+              new ThreadFactoryBuilder()
+                  .setNameFormat("move-to-table-stage-%d")
+                  .setDaemon(true)
+                  .build());
+      // failed files are rare, don't keep idle threads around
+      executor.allowCoreThreadTimeOut(true);
+      moveToTableStageExecutor = executor;
+    }
+    return moveToTableStageExecutor;
   }
 
   @Override
@@ -867,6 +1078,36 @@ public class SnowflakeConnectionServiceV1 implements SnowflakeConnectionService
     }
   }
 
+  @Override
+  public void putCompressedWithCache(
+      final String stageName,
+      final String fileName,
+      final Supplier<InputStream> compressedContent) {
+    // If we don't know the stage type yet, query that first.
+    if (stageType == null) {
+      stageType = internalStage.getStageType(stageName);
+    }
+    try {
+      InternalUtils.backoffAndRetry(
+          telemetry,
+          SnowflakeInternalOperations.UPLOAD_FILE_TO_INTERNAL_STAGE_NO_CONNECTION,
+          () -> {
+            // every attempt needs a stream positioned at the beginning of the file
+            internalStage.putCompressedWithCache(
+                stageName, fileName, compressedContent.get(), stageType);
+            return true;
+          });
+    } catch (Exception e) {
+      LOGGER.error(
+          "Put Compressed With Cache(uploadWithoutConnection) failed after multiple retries for"
+              + " stageName:{}, stageType:{}, fullFilePath:{}",
+          stageName,
+          stageType,
+          fileName);
+      throw SnowflakeErrors.ERROR_2011.getException(e, this.telemetry);
+    }
+  }
+
   @Override
   public void putToTableStage(final String tableName, final String fileName, final byte[] content) {
     InternalUtils.assertNotEmpty("tableName", tableName);
@@ -899,6 +1140,16 @@ public class SnowflakeConnectionServiceV1 implements SnowflakeConnectionService
 
   @Override
   public void close() {
+    synchronized (this) {
+      if (moveToTableStageExecutor != null) {
+        moveToTableStageExecutor.shutdown();
+        moveToTableStageExecutor = null;
+      }
+      if (internalStageMetricsJmxReporter != null) {
+        internalStageMetricsJmxReporter.removeMetricsFromRegistry(getInternalStageMetricsName());
+        internalStageMetricsJmxReporter = null;
+      }
+    }
     try {
       conn.close();
     } catch (SQLException e) {
@@ -1006,6 +1257,121 @@ public class SnowflakeConnectionServiceV1 implements SnowflakeConnectionService
     LOGGER.debug("deleted {} from stage {}", fileName, stageName);
   }
 
+  /**
+   * Remove all files of a batch from given stage with one statement, falls back to removing them
+   * one by one if the statement fails
+   *
+   * @param stageName stage name
+   * @param batch files sharing the same path
+   */
+  private void removeFiles(String stageName, PurgeBatch batch) {
+    String query = "rm @" + stageName + "/" + batch.path + " pattern = '" + batch.pattern() + "'";
+    try (PreparedStatement stmt = conn.prepareStatement(query)) {
+      stmt.execute();
+    } catch (SQLException e) {
+      LOGGER.warn(
+          "failed to purge {} files of {} from stage {} at once, removing them one by one: {}",
+          batch.files.size(),
+          batch.path,
+          stageName,
+          e.getMessage());
+      for (String fileName : batch.files) {
+        removeFile(stageName, fileName);
+      }
+      return;
+    }
+    LOGGER.debug("deleted {} files of {} from stage {}", batch.files.size(), batch.path, stageName);
+  }
+
+  /**
+   * Group files by their path into batches removed with a single REMOVE statement. A file whose
+   * name can't be matched by a pattern gets a batch of its own.
+   *
+   * @param files file names, including their path
+   * @param maxPatternLength maximum length of the pattern of a batch
+   * @return batches in the order of the first file of each batch
+   */
+  @VisibleForTesting
+  static List<PurgeBatch> toPurgeBatches(final List<String> files, final int maxPatternLength) {
+    List<PurgeBatch> batches = new ArrayList<>();
+    // batch of each path which files are still added to
+    Map<String, PurgeBatch> openBatches = new HashMap<>();
+    for (String fileName : files) {
+      int nameStart = fileName.lastIndexOf('/') + 1;
+      String quotedName = quoteForPattern(fileName.substring(nameStart));
+      if (nameStart == 0 || quotedName == null) {
+        batches.add(new PurgeBatch(null, fileName, null));
+        continue;
+      }
+      String path = fileName.substring(0, nameStart);
+      PurgeBatch batch = openBatches.get(path);
+      if (batch == null || !batch.tryAdd(fileName, quotedName, maxPatternLength)) {
+        batch = new PurgeBatch(path, fileName, quotedName);
+        openBatches.put(path, batch);
+        batches.add(batch);
+      }
+    }
+    return batches;
+  }
+
+  /**
+   * @return the regular expression matching exactly given file name, null if the name contains
+   *     characters which would have to be escaped
+   */
+  private static String quoteForPattern(String name) {
+    StringBuilder quoted = new StringBuilder(name.length() + 8);
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if (c == '.') {
+        quoted.append("[.]");
+      } else if (Character.isLetterOrDigit(c) && c < 128 || c == '_' || c == '-') {
+        quoted.append(c);
+      } else {
+        return null;
+      }
+    }
+    return quoted.toString();
+  }
+
+  /** Files sharing the same path on stage, removed by one pattern based REMOVE statement */
+  @VisibleForTesting
+  static class PurgeBatch {
+    // matches the files of a batch below the path, whether or not the stage name is included
+    private static final String PATTERN_PREFIX = ".*/(";
+    private static final String PATTERN_SUFFIX = ")";
+
+    final String path;
+    final List<String> files = new ArrayList<>();
+    private final StringBuilder alternatives = new StringBuilder();
+
+    private PurgeBatch(String path, String fileName, String quotedName) {
+      this.path = path;
+      this.files.add(fileName);
+      if (quotedName != null) {
+        this.alternatives.append(quotedName);
+      }
+    }
+
+    private boolean tryAdd(String fileName, String quotedName, int maxPatternLength) {
+      int length =
+          PATTERN_PREFIX.length()
+              + alternatives.length()
+              + 1
+              + quotedName.length()
+              + PATTERN_SUFFIX.length();
+      if (length > maxPatternLength) {
+        return false;
+      }
+      files.add(fileName);
+      alternatives.append('|').append(quotedName);
+      return true;
+    }
+
+    String pattern() {
+      return PATTERN_PREFIX + alternatives + PATTERN_SUFFIX;
+    }
+  }
+
   @Override
   public Connection getConnection() {
     return this.conn;
@@ -1015,6 +1381,19 @@ public class SnowflakeConnectionServiceV1 implements SnowflakeConnectionService
     return this.internalStage;
   }
 
+  @Override
+  public synchronized void registerInternalStageMetrics() {
+    if (internalStageMetricsJmxReporter == null) {
+      internalStageMetricsJmxReporter = new MetricsJmxReporter(new MetricRegistry(), connectorName);
+      internalStage.registerMetrics(internalStageMetricsJmxReporter, getInternalStageMetricsName());
+    }
+  }
+
+  // the credentials are cached per connection, hence per task
+  private String getInternalStageMetricsName() {
+    return "task-" + taskID;
+  }
+
   @Override
   public ChannelMigrateOffsetTokenResponseDTO migrateStreamingChannelOffsetToken(
       String tableName, String sourceChannelName, String destinationChannelName) {
@@ -1,6 +1,15 @@
 package com.snowflake.kafka.connector.internal;
 
+import static com.snowflake.kafka.connector.internal.metrics.MetricsUtil.CREDENTIAL_CACHE_HIT_COUNT;
+import static com.snowflake.kafka.connector.internal.metrics.MetricsUtil.CREDENTIAL_CACHE_MISS_COUNT;
+import static com.snowflake.kafka.connector.internal.metrics.MetricsUtil.CREDENTIAL_FETCH_LATENCY;
+import static com.snowflake.kafka.connector.internal.metrics.MetricsUtil.STAGE_CREDENTIAL_SUB_DOMAIN;
+import static com.snowflake.kafka.connector.internal.metrics.MetricsUtil.constructMetricName;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.annotations.VisibleForTesting;
+import com.snowflake.kafka.connector.internal.metrics.MetricsJmxReporter;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
@@ -17,46 +26,26 @@ import net.snowflake.client.jdbc.SnowflakeFileTransferMetadataV1;
 import net.snowflake.client.jdbc.SnowflakeSQLException;
 import net.snowflake.client.jdbc.cloud.storage.StageInfo;
 import net.snowflake.client.jdbc.internal.apache.commons.io.FilenameUtils;
+import net.snowflake.client.jdbc.internal.snowflake.common.core.RemoteStoreFileEncryptionMaterial;
 
 /**
  * Implementation of put API through JDBC's API uploadWithoutConnection.
  *
- * <p>We fetch the credentials and cache it for AWS and Azure. We will refresh if cache hits 30 mins
- * (Cache Eviction)
+ * <p>We fetch the credentials and cache them, they are refreshed in the background once they are
+ * older than 3/4 of the expiration time (30 mins) and fetched on the upload once it passed (Cache
+ * Eviction). Concurrent uploads needing the credentials of a stage share a single fetch.
  *
- * <p>For GCS, we dont have any cache, we will make a call to GS for every put API since we require
- * presignedURL
+ * <p>For GCS, credentials are fetched for the path of the file and cached per path. If GS returns a
+ * downscoped token they are reused for all files of the path like for AWS and Azure, if it returns
+ * a presignedURL they are only valid for one file and we make a call to GS for every put.
  */
 public class SnowflakeInternalStage {
-
-  private static class SnowflakeMetadataWithExpiration {
-
-    /* File transfer metadata when fetched from GS call */
-    private final SnowflakeFileTransferMetadataV1 fileTransferMetadata;
-
-    /* Timestamp when GS call happened */
-    private final long timestampLastCredentialFetchMillis;
-
-    /* StageType, can be fetched from fileTransferMetadata */
-    private final StageInfo.StageType stageType;
-
-    SnowflakeMetadataWithExpiration(
-        SnowflakeFileTransferMetadataV1 fileTransferMetadata, long timestamp) {
-      this.fileTransferMetadata = fileTransferMetadata;
-      this.timestampLastCredentialFetchMillis = timestamp;
-      this.stageType = this.fileTransferMetadata.getStageInfo().getStageType();
-    }
-
-    public StageInfo.StageType getStageType() {
-      return this.stageType;
-    }
-  }
-
   private final KCLogger LOGGER = new KCLogger(SnowflakeInternalStage.class.getName());
 
-  // Any operation on the map should be atomic
-  private final ConcurrentMap<String, SnowflakeMetadataWithExpiration> storageInfoCache =
-      new ConcurrentHashMap<>();
+  private final StageCredentialCache<SnowflakeFileTransferMetadataV1> credentialCache;
+
+  // stage type of each stage credentials were fetched for
+  private final ConcurrentMap<String, StageInfo.StageType> stageTypes = new ConcurrentHashMap<>();
 
   // GCS Put version requires the dummy command to have filename and entire filePath including
   // stageName after "@"
@@ -72,7 +61,6 @@ public class SnowflakeInternalStage {
   public static String dummyPutCommandToGetStageType = "PUT file:///tmp/dummyFileName @%s";
 
   private final SnowflakeConnectionV1 conn;
-  private final long expirationTimeMillis;
   // Proxy parameters that we set while calling the snowflake JDBC.
   // Also required to pass in the uploadWithoutConnection API in the SnowflakeFileTransferConfig
   // It may not necessarily just contain proxy parameters, JDBC client filters all other properties.
@@ -81,8 +69,12 @@ public class SnowflakeInternalStage {
   public SnowflakeInternalStage(
       SnowflakeConnectionV1 conn, long expirationTimeMillis, Properties proxyProperties) {
     this.conn = conn;
-    this.expirationTimeMillis = expirationTimeMillis;
     this.proxyProperties = proxyProperties;
+    this.credentialCache =
+        new StageCredentialCache<>(
+            metadata -> !metadata.isForOneFile(),
+            expirationTimeMillis,
+            expirationTimeMillis * 3 / 4);
   }
 
   /**
@@ -118,16 +110,13 @@ public class SnowflakeInternalStage {
    * @return stage if present in cache
    */
   private Optional<StageInfo.StageType> getStageTypeFromCache(final String stageName) {
-    if (storageInfoCache.containsKey(stageName)) {
-      return Optional.of(storageInfoCache.get(stageName).getStageType());
-    }
-    return Optional.empty();
+    return Optional.ofNullable(stageTypes.get(stageName));
   }
 
   /**
    * Upload file to internal stage with previously cached credentials. Refresh credential every 30
-   * minutes for AWS and Azure. We do cache for GCS but we always refresh it for every put(every
-   * file upload)
+   * minutes, ahead of the upload once they were used for 3/4 of it. For GCS they are only cached if
+   * they are not for a single file
    *
    * <p>If we pass in expired credentials, we will get expired credentials error from cloud.
    *
@@ -141,34 +130,59 @@ public class SnowflakeInternalStage {
    */
   public void putWithCache(
       String stageName, String fullFilePath, String data, final StageInfo.StageType stageType) {
-    try {
-      SnowflakeMetadataWithExpiration credential = storageInfoCache.getOrDefault(stageName, null);
+    byte[] dataBytes = data.getBytes(StandardCharsets.UTF_8);
+    upload(stageName, fullFilePath, new ByteArrayInputStream(dataBytes), true, stageType);
+  }
 
-      if (!isCredentialValid(credential, stageType)) {
-        // This should always be executed in GCS
-        LOGGER.debug(
-            "Query credential(Refreshing Credentials) for stageName:{}, filePath:{}",
-            stageName,
-            fullFilePath);
-        refreshCredentials(stageName, stageType, fullFilePath);
-      }
+  /**
+   * Same as {@link #putWithCache(String, String, String, StageInfo.StageType)} but uploads content
+   * which was already gzip compressed by the caller, so it is streamed to the cloud storage as is
+   * instead of being buffered and compressed again by JDBC.
+   *
+   * @param stageName Stage name
+   * @param fullFilePath Full file name to be uploaded, expected to end with .gz
+   * @param compressedData gzip compressed content of the file
+   * @param stageType GCS, Azure or AWS
+   */
+  public void putCompressedWithCache(
+      String stageName,
+      String fullFilePath,
+      InputStream compressedData,
+      final StageInfo.StageType stageType) {
+    upload(stageName, fullFilePath, compressedData, false, stageType);
+  }
+
+  private void upload(
+      String stageName,
+      String fullFilePath,
+      InputStream inStream,
+      boolean requireCompress,
+      final StageInfo.StageType stageType) {
+    String credentialKey = getCredentialKey(stageName, fullFilePath, stageType);
+    SnowflakeFileTransferMetadataV1 cachedMetadata;
+    try {
+      cachedMetadata =
+          credentialCache.get(
+              credentialKey,
+              () -> {
+                LOGGER.debug(
+                    "Query credential(Refreshing Credentials) for stageName:{}, filePath:{}",
+                    stageName,
+                    fullFilePath);
+                return fetchFileTransferMetadata(stageName, stageType, fullFilePath);
+              });
     } catch (Exception e) {
       LOGGER.warn(
           "Failed to refresh Credentials for stageName:{}, filePath:{}", stageName, fullFilePath);
       throw SnowflakeErrors.ERROR_5018.getException(e.getMessage());
     }
 
-    // Lets fetch the file transfer metadata from cache again. (Because we might have refreshed
-    // them)
-    SnowflakeFileTransferMetadataV1 fileTransferMetadata =
-        storageInfoCache.get(stageName).fileTransferMetadata;
-    // Set filename to be uploaded
+    // The cached metadata is shared by the uploads of all partitions of the stage, set the filename
+    // to be uploaded on a copy.
     // This set is not useful in GCS since there is a bug in JDBC which doesnt use destFileName.
     // TODO: https://snowflakecomputing.atlassian.net/browse/SNOW-350676
-    fileTransferMetadata.setPresignedUrlFileName(fullFilePath);
-
-    byte[] dataBytes = data.getBytes(StandardCharsets.UTF_8);
-    InputStream inStream = new ByteArrayInputStream(dataBytes);
+    SnowflakeFileTransferMetadataV1 fileTransferMetadata =
+        withPresignedUrlFileName(cachedMetadata, fullFilePath);
 
     // This uploadWithoutConnection api cannot handle expired credentials very well.
     // Need to prevent passing expired credential to it.
@@ -177,7 +191,7 @@ public class SnowflakeInternalStage {
           SnowflakeFileTransferConfig.Builder.newInstance()
               .setSnowflakeFileTransferMetadata(fileTransferMetadata)
               .setUploadStream(inStream)
-              .setRequireCompress(true)
+              .setRequireCompress(requireCompress)
               // Setting a destinationFileName is a no-op for AWS and Azure since it still uses
               // presignedUrlFileName
               // Setting destFileName is useful for GCS and downscope URL
@@ -198,34 +212,38 @@ public class SnowflakeInternalStage {
           e.getMessage(),
           fullFilePath,
           stageType);
-      storageInfoCache.remove(stageName);
+      credentialCache.invalidate(credentialKey, cachedMetadata);
       throw SnowflakeErrors.ERROR_5018.getException(e.getMessage());
     }
   }
 
   /**
-   * Check if credentials are valid before calling uploadWithoutConnection API. Valid if they are
-   * not null and last fetch time was within {@link #expirationTimeMillis} For GCS, this will be
-   * false and we always refresh the credentials.
+   * Register the credential cache metrics, the counts of uploads which found valid credentials in
+   * the cache or had to wait for them, and the latency of the credential fetches
    *
-   * @param credential to check the validity for
-   * @param stageType stageType of the stage fetched from JDBC and at least one GS call
-   * @return true if we can reuse the credentials, false in case of GCS
+   * @param metricsJmxReporter reporter of the metrics
+   * @param name name the metrics are registered under
    */
-  private boolean isCredentialValid(
-      SnowflakeMetadataWithExpiration credential, final StageInfo.StageType stageType) {
-
-    if (stageType == StageInfo.StageType.GCS) {
-      return false;
+  public void registerMetrics(MetricsJmxReporter metricsJmxReporter, String name) {
+    MetricRegistry registry = metricsJmxReporter.getMetricRegistry();
+    try {
+      registry.register(
+          constructMetricName(name, STAGE_CREDENTIAL_SUB_DOMAIN, CREDENTIAL_CACHE_HIT_COUNT),
+          (Gauge<Long>) credentialCache::getHitCount);
+      registry.register(
+          constructMetricName(name, STAGE_CREDENTIAL_SUB_DOMAIN, CREDENTIAL_CACHE_MISS_COUNT),
+          (Gauge<Long>) credentialCache::getMissCount);
+      registry.register(
+          constructMetricName(name, STAGE_CREDENTIAL_SUB_DOMAIN, CREDENTIAL_FETCH_LATENCY),
+          credentialCache.getFetchLatency());
+    } catch (IllegalArgumentException ex) {
+      LOGGER.warn("Metrics already present:{}", ex.getMessage());
     }
-    // Key is cached and not expired
-    return credential != null
-        && System.currentTimeMillis() - credential.timestampLastCredentialFetchMillis
-            < expirationTimeMillis;
+    metricsJmxReporter.start();
   }
 
   @VisibleForTesting
-  protected void refreshCredentials(
+  protected SnowflakeFileTransferMetadataV1 fetchFileTransferMetadata(
       final String stageName, final StageInfo.StageType stageType, final String fullFilePath)
       throws SnowflakeSQLException {
     String putCommandToFetchMetadata =
@@ -238,21 +256,40 @@ public class SnowflakeInternalStage {
     // transfer metadata list must only have one element
     SnowflakeFileTransferMetadataV1 fileTransferMetadata =
         (SnowflakeFileTransferMetadataV1) agent.getFileTransferMetadatas().get(0);
-    if (fileTransferMetadata.getStageInfo().getStageType() == StageInfo.StageType.LOCAL_FS) {
-      LOGGER.error(
-          "StageName:{} is not a valid stageType:{}",
-          stageName,
-          fileTransferMetadata.getStageInfo().getStageType());
+    StageInfo.StageType fetchedStageType = fileTransferMetadata.getStageInfo().getStageType();
+    if (fetchedStageType == StageInfo.StageType.LOCAL_FS) {
+      LOGGER.error("StageName:{} is not a valid stageType:{}", stageName, fetchedStageType);
       throw SnowflakeErrors.ERROR_5017.getException();
-    } else {
-      // Overwrite the credential to be used
-      SnowflakeMetadataWithExpiration credential =
-          new SnowflakeMetadataWithExpiration(fileTransferMetadata, System.currentTimeMillis());
-      // Caching it here since we require to fetch the credential(Metadata) in the caller function
-      // again.
-      storageInfoCache.put(stageName, credential);
-      LOGGER.debug("Caching credential successful for stage:{}", stageName);
     }
+    stageTypes.put(stageName, fetchedStageType);
+    LOGGER.debug("Fetched credential successful for stage:{}", stageName);
+    return fileTransferMetadata;
+  }
+
+  /**
+   * GCS credentials are fetched for the path of the file, the files of a partition share them. AWS
+   * and Azure credentials are fetched for the whole stage.
+   */
+  private static String getCredentialKey(
+      final String stageName, final String fullFilePath, final StageInfo.StageType stageType) {
+    if (stageType == StageInfo.StageType.GCS) {
+      return stageName + "/" + FilenameUtils.getFullPathNoEndSeparator(fullFilePath);
+    }
+    return stageName;
+  }
+
+  private static SnowflakeFileTransferMetadataV1 withPresignedUrlFileName(
+      SnowflakeFileTransferMetadataV1 metadata, String fullFilePath) {
+    // no encryption material for an unencrypted stage
+    RemoteStoreFileEncryptionMaterial encryptionMaterial = metadata.getEncryptionMaterial();
+    return new SnowflakeFileTransferMetadataV1(
+        metadata.getPresignedUrl(),
+        fullFilePath,
+        encryptionMaterial == null ? null : encryptionMaterial.getQueryStageMasterKey(),
+        encryptionMaterial == null ? null : encryptionMaterial.getQueryId(),
+        encryptionMaterial == null ? null : encryptionMaterial.getSmkId(),
+        metadata.getCommandType(),
+        metadata.getStageInfo());
   }
 
   private String getDummyPutCommandTemplateForFileTransferMetadata(
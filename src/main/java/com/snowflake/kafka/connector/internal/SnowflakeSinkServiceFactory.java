@@ -72,6 +72,59 @@ public class SnowflakeSinkServiceFactory {
         if (useStageFilesProcessor) {
           svc.enableStageFilesProcessor(threadCount);
         }
+
+        if (connectorConfig != null
+            && Boolean.parseBoolean(
+                connectorConfig.get(
+                    SnowflakeSinkConnectorConfig.SNOWPIPE_COMPRESSED_BUFFER_ENABLED))) {
+          svc.enableCompressedBuffer();
+        }
+
+        if (connectorConfig != null
+            && connectorConfig.containsKey(SnowflakeSinkConnectorConfig.SNOWPIPE_FLUSH_THREADS)) {
+          int flushThreads =
+              Integer.parseInt(
+                  connectorConfig.get(SnowflakeSinkConnectorConfig.SNOWPIPE_FLUSH_THREADS));
+          if (flushThreads > 1) {
+            svc.enableParallelFlush(flushThreads);
+          }
+        }
+
+        if (connectorConfig != null
+            && Boolean.parseBoolean(
+                connectorConfig.get(
+                    SnowflakeSinkConnectorConfig.SNOWPIPE_ASYNC_FILE_SUBMISSION_ENABLED))) {
+          svc.enableAsyncFileSubmission();
+        }
+
+        if (connectorConfig != null
+            && Boolean.parseBoolean(
+                connectorConfig.get(
+                    SnowflakeSinkConnectorConfig.SNOWPIPE_FILE_COALESCING_ENABLED))) {
+          svc.enableFileCoalescing();
+        }
+
+        if (connectorConfig != null
+            && connectorConfig.containsKey(SnowflakeSinkConnectorConfig.TASK_MEMORY_BUDGET_BYTES)) {
+          long memoryBudget =
+              Long.parseLong(
+                  connectorConfig.get(SnowflakeSinkConnectorConfig.TASK_MEMORY_BUDGET_BYTES));
+          if (memoryBudget > 0) {
+            svc.enableMemoryGovernor(memoryBudget);
+          }
+        }
+
+        if (connectorConfig != null
+            && connectorConfig.containsKey(
+                SnowflakeSinkConnectorConfig.SNOWPIPE_ADAPTIVE_FILE_SIZE_BYTES)) {
+          long targetFileBytes =
+              Long.parseLong(
+                  connectorConfig.get(
+                      SnowflakeSinkConnectorConfig.SNOWPIPE_ADAPTIVE_FILE_SIZE_BYTES));
+          if (targetFileBytes > 0) {
+            svc.enableAdaptiveFileSize(targetFileBytes);
+          }
+        }
       } else {
         this.service = new SnowflakeSinkServiceV2(conn, connectorConfig);
       }
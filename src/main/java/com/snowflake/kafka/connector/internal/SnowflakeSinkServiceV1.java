@@ -1,13 +1,20 @@
 package com.snowflake.kafka.connector.internal;
 
+import static com.snowflake.kafka.connector.internal.metrics.MetricsUtil.ADAPTIVE_FLUSH_SIZE_BYTES;
+import static com.snowflake.kafka.connector.internal.metrics.MetricsUtil.ARRIVAL_RATE_BYTES_PER_SECOND;
 import static com.snowflake.kafka.connector.internal.metrics.MetricsUtil.BUFFER_RECORD_COUNT;
 import static com.snowflake.kafka.connector.internal.metrics.MetricsUtil.BUFFER_SIZE_BYTES;
 import static com.snowflake.kafka.connector.internal.metrics.MetricsUtil.BUFFER_SUB_DOMAIN;
+import static com.snowflake.kafka.connector.internal.metrics.MetricsUtil.COMPRESSION_RATIO;
+import static com.snowflake.kafka.connector.internal.metrics.MetricsUtil.PROJECTED_FILE_SIZE_BYTES;
 import static org.apache.kafka.common.record.TimestampType.NO_TIMESTAMP_TYPE;
 
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import com.google.common.io.CountingOutputStream;
 import com.snowflake.kafka.connector.SnowflakeSinkConnectorConfig;
 import com.snowflake.kafka.connector.Utils;
 import com.snowflake.kafka.connector.internal.metrics.MetricsJmxReporter;
@@ -19,28 +26,42 @@ import com.snowflake.kafka.connector.records.RecordService;
 import com.snowflake.kafka.connector.records.SnowflakeJsonSchema;
 import com.snowflake.kafka.connector.records.SnowflakeMetadataConfig;
 import com.snowflake.kafka.connector.records.SnowflakeRecordContent;
+import com.snowflake.kafka.connector.records.SnowpipeRecordWriter;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectOutputStream;
+import java.io.SequenceInputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 import javax.annotation.Nullable;
+import net.snowflake.client.jdbc.internal.fasterxml.jackson.core.JsonGenerator;
 import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.connect.data.Schema;
 import org.apache.kafka.connect.sink.SinkRecord;
+import org.apache.kafka.connect.sink.SinkTaskContext;
 
 /**
  * This is per task configuration. A task can be assigned multiple partitions. Major methods are
@@ -85,6 +106,41 @@ class SnowflakeSinkServiceV1 implements SnowflakeSinkService {
   // if this is true, the service will use new file cleaner module
   private boolean useStageFilesProcessor = false;
   @Nullable private ScheduledExecutorService cleanerServiceExecutor;
+  // shared by the stage files processors of all pipes of the task
+  @Nullable private SnowpipeHistoryPoller historyPoller;
+
+  // longest interval between two ingest history polls of a pipe without activity
+  private static final long MAX_HISTORY_POLL_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+  // default is false, unless the configuration provided true
+  // if this is true, records are gzip compressed into pooled chunks as soon as they are buffered
+  private boolean useCompressedBuffer = false;
+
+  // null unless parallel flush is enabled, buffers are then uploaded off the task thread
+  @Nullable private PartitionFlushExecutor flushExecutor;
+
+  // time based flushes of the buffers holding records, also done when Kafka doesn't call put
+  private final FlushDeadlineScheduler<ServiceContext> flushScheduler =
+      new FlushDeadlineScheduler<>(ServiceContext::getFlushDeadline, this::flushByTime);
+
+  // null unless staged files are submitted asynchronously, they are then submitted off the task
+  // thread and getOffset only returns the offsets submitted so far
+  @Nullable private SnowpipeFileSubmitter<ServiceContext> fileSubmitter;
+
+  // 0 unless adaptive file sizing is enabled, the size of the files the buffers are then flushed
+  // into, instead of the configured buffer size and record count
+  private long adaptiveFileTargetBytes = 0;
+
+  // null unless files are coalesced, the buffers of the partitions of a table flushed by time are
+  // then put in one file
+  @Nullable private CoalescedStageFiles coalescedFiles;
+  // partitions of each table, only tracked when files are coalesced
+  private final Map<String, Set<ServiceContext>> tablePartitions = new ConcurrentHashMap<>();
+
+  // null unless a task memory budget is set
+  @Nullable private TaskMemoryGovernor memoryGovernor;
+  // used by the memory governor to pause and resume partitions, could be null during testing
+  @Nullable private SinkTaskContext sinkTaskContext;
 
   SnowflakeSinkServiceV1(SnowflakeConnectionService conn) {
     if (conn == null || conn.isClosed()) {
@@ -123,15 +179,21 @@ class SnowflakeSinkServiceV1 implements SnowflakeSinkService {
       String pipeName =
           Utils.pipeName(conn.getConnectorName(), tableName, topicPartition.partition());
 
-      pipes.put(
-          nameIndex,
+      ServiceContext context =
           new ServiceContext(
               tableName,
               stageName,
               pipeName,
               conn,
+              topicPartition.topic(),
               topicPartition.partition(),
-              cleanerServiceExecutor));
+              cleanerServiceExecutor);
+      pipes.put(nameIndex, context);
+      if (coalescedFiles != null) {
+        tablePartitions
+            .computeIfAbsent(tableName, table -> ConcurrentHashMap.newKeySet())
+            .add(context);
+      }
     }
   }
 
@@ -143,6 +205,8 @@ class SnowflakeSinkServiceV1 implements SnowflakeSinkService {
 
   @Override
   public void insert(final Collection<SinkRecord> records) {
+    // records of a partition may be lost if its buffer failed to be flushed in the background
+    flushScheduler.throwIfFailed();
     // note that records can be empty
     for (SinkRecord record : records) {
       // check if it needs to handle null value records
@@ -152,12 +216,10 @@ class SnowflakeSinkServiceV1 implements SnowflakeSinkService {
       // Might happen a count of record based flushing
       insert(record);
     }
-    // check all sink context to see if they need to be flushed
-    for (ServiceContext pipe : pipes.values()) {
-      // Time based flushing
-      if (pipe.shouldFlush()) {
-        pipe.flushBuffer();
-      }
+    // Time based flushing, only of the buffers which are due
+    flushScheduler.flushDue();
+    if (memoryGovernor != null) {
+      memoryGovernor.enforce(pipes.values(), sinkTaskContext);
     }
   }
 
@@ -211,6 +273,8 @@ class SnowflakeSinkServiceV1 implements SnowflakeSinkService {
           String name = getNameIndex(tp.topic(), tp.partition());
           ServiceContext sc = pipes.remove(name);
           if (sc != null) {
+            tablePartitions.getOrDefault(sc.tableName, Collections.emptySet()).remove(sc);
+            flushScheduler.cancel(sc);
             try {
               sc.close();
             } catch (Exception e) {
@@ -235,20 +299,33 @@ class SnowflakeSinkServiceV1 implements SnowflakeSinkService {
   @Override
   public void closeAll() {
     this.isStopped = true; // release all cleaner and flusher threads
+    flushScheduler.close();
+    tablePartitions.clear();
     pipes.forEach(
         (name, context) -> {
           context.close();
           context.unregisterPipeJMXMetrics();
         });
     pipes.clear();
+    if (fileSubmitter != null) {
+      fileSubmitter.close();
+    }
   }
 
   @Override
   public void stop() {
+    flushScheduler.close();
     if (cleanerServiceExecutor != null) {
       cleanerServiceExecutor.shutdown();
       cleanerServiceExecutor = null;
     }
+    if (flushExecutor != null) {
+      flushExecutor.shutdown();
+      flushExecutor = null;
+    }
+    if (fileSubmitter != null) {
+      fileSubmitter.close();
+    }
     this.isStopped = true; // release all cleaner and flusher threads
   }
 
@@ -336,11 +413,65 @@ class SnowflakeSinkServiceV1 implements SnowflakeSinkService {
       cleanerServiceExecutor.shutdown();
     }
     cleanerServiceExecutor = new ScheduledThreadPoolExecutor(Math.max(1, threadCount));
+    historyPoller =
+        new SnowpipeHistoryPoller(
+            TimeUnit.SECONDS.toMillis(StageFilesProcessor.CLEANUP_PERIOD_SECONDS),
+            MAX_HISTORY_POLL_INTERVAL_MILLIS,
+            StageFilesProcessor.INITIAL_DELAY_SECONDS,
+            StageFilesProcessor.CLEANUP_PERIOD_SECONDS);
+  }
+
+  void enableCompressedBuffer() {
+    this.useCompressedBuffer = true;
+  }
+
+  // upload flushed buffers of different partitions concurrently, has to be called before any
+  // partition is started
+  void enableParallelFlush(int threadCount) {
+    if (flushExecutor != null) {
+      flushExecutor.shutdown();
+    }
+    // a buffer can wait for a thread while another one is uploaded, more would only hold memory
+    flushExecutor = new PartitionFlushExecutor(threadCount, 2 * threadCount);
+  }
+
+  // submit staged files off the task thread, has to be called before any partition is started
+  void enableAsyncFileSubmission() {
+    if (fileSubmitter != null) {
+      fileSubmitter.close();
+    }
+    fileSubmitter = new SnowpipeFileSubmitter<>(ServiceContext::submitStagedFiles);
+  }
+
+  // adapt the flush size of each partition to reach files of the given size, only with compressed
+  // buffers whose size in memory is the size of their file, has to be called before any partition
+  // is started
+  void enableAdaptiveFileSize(long targetFileBytes) {
+    this.adaptiveFileTargetBytes = targetFileBytes;
+  }
+
+  // put the buffers of the partitions of a table flushed by time in one file, has to be called
+  // before any partition is started
+  void enableFileCoalescing() {
+    this.coalescedFiles = new CoalescedStageFiles();
+  }
+
+  // keep the memory held by the buffers and uploads of all partitions under the given budget
+  void enableMemoryGovernor(long maxBytes) {
+    this.memoryGovernor = new TaskMemoryGovernor(maxBytes);
+  }
+
+  @Override
+  public void setSinkTaskContext(SinkTaskContext sinkTaskContext) {
+    this.sinkTaskContext = sinkTaskContext;
   }
 
   @Override
   public void setCustomJMXMetrics(boolean enableJMX) {
     this.enableCustomJMXMonitoring = enableJMX;
+    if (enableJMX) {
+      conn.registerInternalStageMetrics();
+    }
   }
 
   @Override
@@ -365,12 +496,78 @@ class SnowflakeSinkServiceV1 implements SnowflakeSinkService {
     return Optional.empty();
   }
 
+  /**
+   * Flush a buffer whose flush time elapsed. If files are coalesced, the buffers of the other
+   * partitions of its table are put in the same file, a partition of a table receiving few records
+   * then doesn't stage a file of its own each flush time.
+   */
+  private void flushByTime(ServiceContext context) {
+    if (coalescedFiles == null) {
+      context.flushBuffer();
+      return;
+    }
+    // flushed with another partition of its table since it was scheduled
+    if (context.getFlushDeadline() > System.currentTimeMillis()) {
+      return;
+    }
+    // a file holds one offset range per partition number, a partition of another topic of the
+    // table with the same number is flushed alone
+    Map<Integer, ServiceContext> partitions = new TreeMap<>();
+    partitions.put(context.topicPartition.partition(), context);
+    for (ServiceContext partition :
+        tablePartitions.getOrDefault(context.tableName, Collections.emptySet())) {
+      if (!partition.isBufferEmpty()) {
+        partitions.putIfAbsent(partition.topicPartition.partition(), partition);
+      }
+    }
+    for (List<ServiceContext> group :
+        Lists.partition(
+            new ArrayList<>(partitions.values()), FileNameUtils.MAX_COALESCED_PARTITIONS)) {
+      flushCoalesced(group);
+    }
+    // not coalesced if no other partition of the table holds records
+    context.flushBuffer();
+  }
+
+  /**
+   * Put the buffers of the partitions in one file, if at least two of them can be coalesced. The
+   * buffer locks are acquired in partition order, a partition only holds its own otherwise. They
+   * are only held while the buffers are swapped, the file is uploaded once they are released.
+   *
+   * @param group partitions of a table, ordered by partition
+   */
+  private void flushCoalesced(List<ServiceContext> group) {
+    if (group.size() < 2) {
+      return;
+    }
+    Runnable inlineUpload = null;
+    List<ServiceContext> locked = new ArrayList<>();
+    try {
+      for (ServiceContext partition : group) {
+        partition.bufferLock.lock();
+        locked.add(partition);
+      }
+      List<ServiceContext> members =
+          group.stream().filter(ServiceContext::canCoalesce).collect(Collectors.toList());
+      if (members.size() > 1) {
+        inlineUpload = members.get(0).flushCoalesced(members);
+      }
+    } finally {
+      locked.forEach(partition -> partition.bufferLock.unlock());
+    }
+    // the partitions keep adding records to their next buffers while the file is uploaded
+    if (inlineUpload != null) {
+      inlineUpload.run();
+    }
+  }
+
   @VisibleForTesting
   protected static String getNameIndex(String topic, int partition) {
     return topic + "_" + partition;
   }
 
-  private class ServiceContext {
+  private class ServiceContext implements TaskMemoryGovernor.PartitionMemory {
+    private final TopicPartition topicPartition;
     private final String tableName;
     private final String stageName;
     private final String pipeName;
@@ -378,26 +575,40 @@ class SnowflakeSinkServiceV1 implements SnowflakeSinkService {
     private final SnowflakeIngestionService ingestionService;
     private List<String> fileNames;
 
-    // Includes a list of files:
+    // Includes the files:
     // 1. Which are added after a flush into internal stage is successful
     // 2. While an app restarts and we do list on an internal stage to find out what needs to be
     // done on leaked files.
-    private List<String> cleanerFileNames;
-    private SnowpipeBuffer buffer;
+    private StagedFileRegistry cleanerFiles;
+    private SnowpipeBuffer<?> buffer;
+    // serializes the records of this partition straight into the buffer
+    private final SnowpipeRecordWriter recordWriter;
     private final String prefix;
     private final AtomicLong committedOffset; // loaded offset + 1
     private final AtomicLong flushedOffset; // flushed offset (file on stage)
     private final AtomicLong processedOffset; // processed offset
-    private long previousFlushTimeStamp;
+    private volatile long previousFlushTimeStamp;
 
     // threads
     @Nullable private final ExecutorService cleanerExecutor;
     @Nullable private final ExecutorService reprocessCleanerExecutor;
     private final Lock bufferLock;
+    // held from the flush of a buffer until its inline upload is done, the upload runs without the
+    // buffer lock but after the uploads of the buffers flushed before
+    private final Lock uploadLock;
+    // failure of an inline upload, set before the upload lock is released. The records of the
+    // buffer are lost, no buffer flushed after it is staged and no offset is committed anymore
+    @Nullable private volatile RuntimeException uploadFailure;
     private final Lock fileListLock;
     // v2 file cleaner logic - either cleaner executors or stageFileProcessorClient is used
     private final boolean useStageFilesProcessor;
     @Nullable private final StageFilesProcessor.ProgressRegister stageFileProcessorClient;
+    // uploads flushed buffers in order off the task thread, null if they are uploaded inline
+    @Nullable private final PartitionFlushExecutor.Lane flushLane;
+    // memory of the flushed buffers handed to the flush lane and not uploaded yet
+    private final AtomicLong inFlightBytes = new AtomicLong(0);
+    // null unless adaptive file sizing is enabled
+    @Nullable private final AdaptiveFileSizer fileSizer;
 
     // telemetry
     private final SnowflakeTelemetryPipeStatus pipeStatus;
@@ -420,15 +631,18 @@ class SnowflakeSinkServiceV1 implements SnowflakeSinkService {
         String stageName,
         String pipeName,
         SnowflakeConnectionService conn,
+        String topic,
         int partition,
         ScheduledExecutorService v2CleanerExecutor) {
+      this.topicPartition = new TopicPartition(topic, partition);
       this.pipeName = pipeName;
       this.tableName = tableName;
       this.stageName = stageName;
       this.conn = conn;
       this.fileNames = new LinkedList<>();
-      this.cleanerFileNames = new LinkedList<>();
-      this.buffer = new SnowpipeBuffer();
+      this.cleanerFiles = new StagedFileRegistry();
+      this.recordWriter = recordService.createSnowpipeRecordWriter(topic);
+      this.buffer = newBuffer();
       this.ingestionService = conn.buildIngestService(stageName, pipeName);
       this.prefix = FileNameUtils.filePrefix(conn.getConnectorName(), tableName, partition);
       this.processedOffset = new AtomicLong(-1);
@@ -437,7 +651,13 @@ class SnowflakeSinkServiceV1 implements SnowflakeSinkService {
       this.previousFlushTimeStamp = System.currentTimeMillis();
 
       this.bufferLock = new ReentrantLock();
+      this.uploadLock = new ReentrantLock();
       this.fileListLock = new ReentrantLock();
+      this.flushLane = flushExecutor == null ? null : flushExecutor.newLane();
+      this.fileSizer =
+          adaptiveFileTargetBytes > 0 && useCompressedBuffer
+              ? new AdaptiveFileSizer(adaptiveFileTargetBytes)
+              : null;
       this.metricRegistry = new MetricRegistry();
       this.metricsJmxReporter =
           new MetricsJmxReporter(this.metricRegistry, conn.getConnectorName());
@@ -453,6 +673,9 @@ class SnowflakeSinkServiceV1 implements SnowflakeSinkService {
         partitionBufferSizeBytesHistogram =
             this.metricRegistry.histogram(
                 MetricsUtil.constructMetricName(pipeName, BUFFER_SUB_DOMAIN, BUFFER_SIZE_BYTES));
+        if (fileSizer != null) {
+          registerFileSizerMetrics();
+        }
         LOGGER.info(
             "Registered {} metrics for pipeName:{}", metricRegistry.getMetrics().size(), pipeName);
       }
@@ -470,7 +693,8 @@ class SnowflakeSinkServiceV1 implements SnowflakeSinkService {
                 ingestionService,
                 pipeStatus,
                 telemetryService,
-                v2CleanerExecutor);
+                v2CleanerExecutor,
+                historyPoller);
         this.stageFileProcessorClient = processor.trackFilesAsync();
         this.cleanerExecutor = null;
         this.reprocessCleanerExecutor = null;
@@ -499,6 +723,8 @@ class SnowflakeSinkServiceV1 implements SnowflakeSinkService {
         } catch (Exception e) {
           LOGGER.warn("Cleaner and Flusher threads shut down before initialization");
         }
+      } else if (coalescedFiles != null) {
+        listOwnedCoalescedFiles().forEach(stageFileProcessorClient::registerNewStageFile);
       }
       telemetryService.reportKafkaPartitionStart(pipeCreation);
     }
@@ -513,8 +739,8 @@ class SnowflakeSinkServiceV1 implements SnowflakeSinkService {
         List<String> tmpCleanerFileNames = conn.listStage(stageName, prefix);
         fileListLock.lock();
         try {
-          cleanerFileNames.addAll(tmpCleanerFileNames);
-          cleanerFileNames = cleanerFileNames.stream().distinct().collect(Collectors.toList());
+          // files already tracked are ignored
+          cleanerFiles.addAll(tmpCleanerFileNames);
         } finally {
           fileListLock.unlock();
         }
@@ -536,6 +762,9 @@ class SnowflakeSinkServiceV1 implements SnowflakeSinkService {
       List<String> reprocessFiles = new ArrayList<>();
 
       filterFileReprocess(currentFilesOnStage, reprocessFiles, recordOffset);
+      if (coalescedFiles != null) {
+        currentFilesOnStage.addAll(listOwnedCoalescedFiles());
+      }
 
       // Telemetry
       pipeCreation.setFileCountRestart(currentFilesOnStage.size());
@@ -547,7 +776,7 @@ class SnowflakeSinkServiceV1 implements SnowflakeSinkService {
 
       fileListLock.lock();
       try {
-        cleanerFileNames.addAll(currentFilesOnStage);
+        cleanerFiles.addAll(currentFilesOnStage);
       } finally {
         fileListLock.unlock();
       }
@@ -623,19 +852,36 @@ class SnowflakeSinkServiceV1 implements SnowflakeSinkService {
      */
     private void filterFileReprocess(
         List<String> currentFilesOnStage, List<String> reprocessFiles, long recordOffset) {
-      // iterate over a copy since reprocess files get removed from it
-      new LinkedList<>(currentFilesOnStage)
-          .forEach(
-              name -> {
-                long fileStartOffset = FileNameUtils.fileNameToStartOffset(name);
-                // If start offset of this file is greater than the offset of the record that is
-                // sent to the connector,
-                // all content of this file will be reprocessed. Thus this file can be deleted.
-                if (recordOffset <= fileStartOffset) {
-                  reprocessFiles.add(name);
-                  currentFilesOnStage.remove(name);
-                }
-              });
+      // removed in one pass, the stage can hold many files of the partition
+      currentFilesOnStage.removeIf(
+          name -> {
+            long fileStartOffset = FileNameUtils.fileNameToStartOffset(name);
+            // If start offset of this file is greater than the offset of the record that is
+            // sent to the connector,
+            // all content of this file will be reprocessed. Thus this file can be deleted.
+            if (recordOffset <= fileStartOffset) {
+              reprocessFiles.add(name);
+              return true;
+            }
+            return false;
+          });
+    }
+
+    /**
+     * List the coalesced files left on the stage whose first partition is this one, each coalesced
+     * file is tracked by one of its partitions. They are never purged to be reprocessed: the other
+     * partitions of a file may have committed their offsets once it was submitted.
+     */
+    private List<String> listOwnedCoalescedFiles() {
+      String coalescedPrefix =
+          FileNameUtils.coalescedFilePrefix(conn.getConnectorName(), tableName);
+      return conn.listStage(stageName, coalescedPrefix).stream()
+          .filter(FileNameUtils::verifyCoalescedFileName)
+          .filter(
+              name ->
+                  FileNameUtils.coalescedFileNameToOffsetRanges(name).get(0).getPartition()
+                      == topicPartition.partition())
+          .collect(Collectors.toList());
     }
 
     private void stopCleaner() {
@@ -676,27 +922,34 @@ class SnowflakeSinkServiceV1 implements SnowflakeSinkService {
             pipeStatus.updateKafkaLag(System.currentTimeMillis() - snowflakeRecord.timestamp());
           }
 
-          SnowpipeBuffer tmpBuff = null;
+          // the buffer can be flushed in the background, it is flushed under the lock so that the
+          // buffers of the partition are flushed in order
+          Runnable inlineUpload = null;
           bufferLock.lock();
           try {
             processedOffset.set(snowflakeRecord.kafkaOffset());
             pipeStatus.setProcessedOffset(snowflakeRecord.kafkaOffset());
+            boolean wasEmpty = buffer.isEmpty();
             buffer.insert(snowflakeRecord);
-            if (buffer.getBufferSizeBytes() >= getFileSize()
-                || (getRecordNumber() != 0 && buffer.getNumOfRecords() >= getRecordNumber())) {
-              tmpBuff = buffer;
-              this.buffer = new SnowpipeBuffer();
+
+            if (useStageFilesProcessor) {
+              stageFileProcessorClient.newOffset(record.kafkaOffset());
+            }
+
+            if (isBufferFull()) {
+              // the records of a buffer which failed to be flushed in the background are lost
+              flushScheduler.throwIfFailed();
+              SnowpipeBuffer<?> tmpBuff = buffer;
+              this.buffer = newBuffer();
+              inlineUpload = flush(tmpBuff);
+            } else if (wasEmpty) {
+              flushScheduler.schedule(this);
             }
           } finally {
             bufferLock.unlock();
           }
-
-          if (useStageFilesProcessor) {
-            stageFileProcessorClient.newOffset(record.kafkaOffset());
-          }
-
-          if (tmpBuff != null) {
-            flush(tmpBuff);
+          if (inlineUpload != null) {
+            inlineUpload.run();
           }
         }
       }
@@ -753,24 +1006,63 @@ class SnowflakeSinkServiceV1 implements SnowflakeSinkService {
           record.headers());
     }
 
-    private boolean shouldFlush() {
-      return (System.currentTimeMillis() - this.previousFlushTimeStamp) >= (getFlushTime() * 1000);
+    // a partition still uploading a file flushes alone, its files are staged in order
+    private boolean canCoalesce() {
+      return !buffer.isEmpty() && inFlightBytes.get() == 0;
+    }
+
+    private boolean isBufferFull() {
+      long flushSizeBytes =
+          fileSizer == null ? getFileSize() : fileSizer.getFlushSizeBytes(getFileSize());
+      return buffer.getBufferSizeBytes() >= flushSizeBytes
+          || (getRecordNumber() != 0 && buffer.getNumOfRecords() >= getRecordNumber());
+    }
+
+    // the buffer is flushed once the flush time elapsed since the previous flush
+    private long getFlushDeadline() {
+      return buffer.isEmpty()
+          ? FlushDeadlineScheduler.NO_DEADLINE
+          : this.previousFlushTimeStamp + getFlushTime() * 1000;
+    }
+
+    @Override
+    public TopicPartition getTopicPartition() {
+      return topicPartition;
+    }
+
+    @Override
+    public long getBufferedBytes() {
+      return buffer.getMemoryBytes();
     }
 
-    private void flushBuffer() {
+    @Override
+    public long getInFlightBytes() {
+      return inFlightBytes.get();
+    }
+
+    @Override
+    public void flushBuffer() {
       // Just checking buffer size, no atomic operation required
       if (buffer.isEmpty()) {
         return;
       }
-      SnowpipeBuffer tmpBuff;
+      Runnable inlineUpload;
       bufferLock.lock();
       try {
-        tmpBuff = buffer;
-        this.buffer = new SnowpipeBuffer();
+        // the buffer may have been flushed by another thread in the meantime
+        if (buffer.isEmpty()) {
+          return;
+        }
+        SnowpipeBuffer<?> tmpBuff = buffer;
+        this.buffer = newBuffer();
+        inlineUpload = flush(tmpBuff);
       } finally {
         bufferLock.unlock();
       }
-      flush(tmpBuff);
+      // the task thread keeps adding records to the next buffer while the flush scheduler uploads
+      if (inlineUpload != null) {
+        inlineUpload.run();
+      }
     }
 
     private void writeBrokenDataToTableStage(SinkRecord record) {
@@ -799,27 +1091,64 @@ class SnowflakeSinkServiceV1 implements SnowflakeSinkService {
     }
 
     private long getOffset() {
+      // a buffer failed to be uploaded, its records are lost, stop the task before committing the
+      // offsets of the buffers flushed after it
+      flushScheduler.throwIfFailed();
+      throwIfUploadFailed();
+      if (flushLane != null) {
+        flushLane.throwIfFailed();
+      }
+      if (fileSubmitter == null) {
+        submitStagedFiles();
+      }
+      return committedOffset.get();
+    }
+
+    /**
+     * Ingest the files put on stage since the previous call, the committed offset is advanced once
+     * they are submitted. Called by getOffset, or by the file submitter if it is enabled.
+     */
+    private void submitStagedFiles() {
       if (fileNames.isEmpty()) {
-        return committedOffset.get();
+        return;
       }
 
       List<String> fileNamesCopy = new ArrayList<>();
       List<String> fileNamesForMetrics = new ArrayList<>();
+      // uploads may complete concurrently, the flushed offset must match the files taken here
+      long flushedOffsetOfFiles;
       fileListLock.lock();
       try {
         fileNamesCopy.addAll(fileNames);
         fileNamesForMetrics.addAll(fileNames);
         fileNames = new LinkedList<>();
+        flushedOffsetOfFiles = flushedOffset.get();
       } finally {
         fileListLock.unlock();
       }
 
       LOGGER.info("pipe {}, ingest files: {}", pipeName, fileNamesCopy);
 
-      ingestionService.ingestFiles(fileNamesCopy);
+      try {
+        if (coalescedFiles == null) {
+          ingestionService.ingestFiles(fileNamesCopy);
+        } else {
+          fileNamesForMetrics.clear();
+          submitWithCoalescedFiles(fileNamesCopy, fileNamesForMetrics);
+        }
+      } catch (RuntimeException e) {
+        // the files not submitted are submitted again with the next ones, before them
+        fileListLock.lock();
+        try {
+          fileNames.addAll(0, fileNamesCopy);
+        } finally {
+          fileListLock.unlock();
+        }
+        throw e;
+      }
 
       // committedOffset should be updated only when ingestFiles has succeeded.
-      committedOffset.set(flushedOffset.get());
+      committedOffset.set(flushedOffsetOfFiles);
       // update telemetry data
       long currentTime = System.currentTimeMillis();
       pipeStatus.setCommittedOffset(committedOffset.get() - 1);
@@ -827,122 +1156,339 @@ class SnowflakeSinkServiceV1 implements SnowflakeSinkService {
       fileNamesForMetrics.forEach(
           name ->
               pipeStatus.updateCommitLag(currentTime - FileNameUtils.fileNameToTimeIngested(name)));
+    }
 
-      return committedOffset.get();
+    /**
+     * Ingest the files staged by this partition, and the coalesced files holding its records which
+     * weren't submitted by another partition yet
+     *
+     * @param pendingFiles files to ingest, only those not submitted yet are left when it fails
+     * @param submittedFiles filled with the files submitted by this partition
+     */
+    private void submitWithCoalescedFiles(List<String> pendingFiles, List<String> submittedFiles) {
+      List<String> partitionFiles = new ArrayList<>();
+      List<String> coalescedFileNames = new ArrayList<>();
+      pendingFiles.forEach(
+          name ->
+              (FileNameUtils.verifyCoalescedFileName(name) ? coalescedFileNames : partitionFiles)
+                  .add(name));
+      if (!partitionFiles.isEmpty()) {
+        ingestionService.ingestFiles(partitionFiles);
+        submittedFiles.addAll(partitionFiles);
+      }
+      pendingFiles.clear();
+      pendingFiles.addAll(coalescedFileNames);
+      for (String name : coalescedFileNames) {
+        if (coalescedFiles.submit(
+            name, () -> ingestionService.ingestFiles(Collections.singletonList(name)))) {
+          // the ingest history of the pipe which submitted the file reports its status
+          pipeStatus.addAndGetFileCountOnStage(1L);
+          fileListLock.lock();
+          try {
+            trackStagedFile(name);
+          } finally {
+            fileListLock.unlock();
+          }
+          submittedFiles.add(name);
+        }
+        // submitted by this partition or by another one
+        pendingFiles.remove(0);
+      }
     }
 
-    private void flush(final SnowpipeBuffer buff) {
-      if (buff == null || buff.isEmpty()) {
-        return;
+    private SnowpipeBuffer<?> newBuffer() {
+      return useCompressedBuffer ? new CompressedSnowpipeBuffer() : new StringSnowpipeBuffer();
+    }
+
+    /**
+     * Flush the buffer, called with the buffer lock held
+     *
+     * @return the upload of the buffer if it is inline, to be run once the buffer lock is released,
+     *     null if it was handed to the flush lane
+     */
+    @Nullable
+    private Runnable flush(final SnowpipeBuffer<?> buff) {
+      if (buff == null) {
+        return null;
       }
-      this.previousFlushTimeStamp = System.currentTimeMillis();
+      if (buff.isEmpty()) {
+        buff.discard();
+        return null;
+      }
+      onFlush(buff);
 
       // If we failed to submit/put, throw an runtime exception that kills the connector.
-      // SnowflakeThreadPoolUtils.flusherThreadPool.submit(
       String fileName = FileNameUtils.fileName(prefix, buff.getFirstOffset(), buff.getLastOffset());
-      String content = buff.getData();
-      conn.putWithCache(stageName, fileName, content);
+      if (flushLane == null) {
+        // acquired before the buffer lock is released, so that the buffers flushed after wait for
+        // this upload, the flushed offset never passes a file which isn't staged
+        uploadLock.lock();
+        return () -> {
+          try {
+            upload(buff, fileName);
+          } catch (RuntimeException e) {
+            uploadFailure = e;
+            throw e;
+          } finally {
+            uploadLock.unlock();
+          }
+        };
+      } else {
+        // the failure of an asynchronous upload is thrown by the next flush or getOffset call
+        long memoryBytes = buff.getMemoryBytes();
+        inFlightBytes.addAndGet(memoryBytes);
+        flushLane.submit(
+            () -> {
+              try {
+                upload(buff, fileName);
+              } finally {
+                inFlightBytes.addAndGet(-memoryBytes);
+              }
+            });
+        return null;
+      }
+    }
+
+    private void throwIfUploadFailed() {
+      RuntimeException failure = uploadFailure;
+      if (failure != null) {
+        throw failure;
+      }
+    }
+
+    // called once the buffer is no longer the one records are added to
+    private void onFlush(final SnowpipeBuffer<?> buff) {
+      long flushTimeStamp = System.currentTimeMillis();
+      if (fileSizer != null) {
+        fileSizer.onFlush(
+            buff.getBufferSizeBytes(),
+            buff.getMemoryBytes(),
+            flushTimeStamp - this.previousFlushTimeStamp);
+      }
+      this.previousFlushTimeStamp = flushTimeStamp;
+      pipeStatus.resetMemoryUsage();
+    }
+
+    /**
+     * Put the buffer to the internal stage. The flushed offset and the files to ingest are only
+     * updated once the file is on the stage, a file is never ingested nor its offset committed
+     * before.
+     */
+    private void upload(final SnowpipeBuffer<?> buff, String fileName) {
+      throwIfUploadFailed();
+      buff.putToStage(fileName);
+      addStagedFile(buff, fileName, false);
+      LOGGER.info("pipe {}, flush pipe: {}", pipeName, fileName);
+    }
 
+    /**
+     * Flush the buffers of several partitions of the table into one file on the stage, called with
+     * the buffer locks of all of them held
+     *
+     * @param members partitions with records, ordered by partition, starting with this one
+     * @return the upload of the file if it is inline, to be run once the buffer locks are released,
+     *     null if it was handed to the flush lanes of the partitions
+     */
+    @Nullable
+    private Runnable flushCoalesced(List<ServiceContext> members) {
+      List<SnowpipeBuffer<?>> buffers = new ArrayList<>();
+      List<FileNameUtils.OffsetRange> ranges = new ArrayList<>();
+      for (ServiceContext member : members) {
+        SnowpipeBuffer<?> buff = member.buffer;
+        member.buffer = member.newBuffer();
+        member.onFlush(buff);
+        buffers.add(buff);
+        ranges.add(
+            new FileNameUtils.OffsetRange(
+                member.topicPartition.partition(), buff.getFirstOffset(), buff.getLastOffset()));
+      }
+      String fileName =
+          FileNameUtils.coalescedFileName(
+              FileNameUtils.coalescedFilePrefix(conn.getConnectorName(), tableName), ranges);
+      Runnable upload = () -> uploadCoalesced(members, buffers, fileName);
+
+      if (flushLane == null) {
+        // acquired before the buffer locks are released, like a partition flushing alone
+        members.forEach(member -> member.uploadLock.lock());
+        return () -> {
+          try {
+            upload.run();
+          } catch (RuntimeException e) {
+            members.forEach(member -> member.uploadFailure = e);
+            throw e;
+          } finally {
+            members.forEach(member -> member.uploadLock.unlock());
+          }
+        };
+      }
+      // the partitions flush alone until the file is staged, their next files are staged after it
+      List<PartitionFlushExecutor.Lane> lanes = new ArrayList<>();
+      long[] memoryBytes = new long[members.size()];
+      for (int i = 0; i < members.size(); i++) {
+        memoryBytes[i] = buffers.get(i).getMemoryBytes();
+        members.get(i).inFlightBytes.addAndGet(memoryBytes[i]);
+        lanes.add(members.get(i).flushLane);
+      }
+      flushLane
+          .getExecutor()
+          .submit(
+              () -> {
+                try {
+                  upload.run();
+                } finally {
+                  for (int i = 0; i < members.size(); i++) {
+                    members.get(i).inFlightBytes.addAndGet(-memoryBytes[i]);
+                  }
+                }
+              },
+              lanes);
+      return null;
+    }
+
+    private void uploadCoalesced(
+        List<ServiceContext> members, List<SnowpipeBuffer<?>> buffers, String fileName) {
+      members.forEach(ServiceContext::throwIfUploadFailed);
+      putCoalescedToStage(fileName, buffers);
+
+      coalescedFiles.add(fileName, members.size());
+      for (int i = 0; i < members.size(); i++) {
+        members.get(i).addStagedFile(buffers.get(i), fileName, true);
+      }
+      LOGGER.info("pipe {}, flush {} partitions: {}", pipeName, members.size(), fileName);
+    }
+
+    // the buffers of all partitions are of the same kind, their files are concatenated
+    private void putCoalescedToStage(String fileName, List<SnowpipeBuffer<?>> buffers) {
+      if (useCompressedBuffer) {
+        List<ChunkedByteStore> stores = new ArrayList<>();
+        try {
+          for (SnowpipeBuffer<?> buff : buffers) {
+            stores.add(((CompressedSnowpipeBuffer) buff).getData());
+          }
+          // a gzip file can consist of several members
+          conn.putCompressedWithCache(
+              stageName,
+              fileName,
+              () -> {
+                List<InputStream> streams = new ArrayList<>();
+                stores.forEach(store -> streams.add(store.newInputStream()));
+                return new SequenceInputStream(Collections.enumeration(streams));
+              });
+        } finally {
+          stores.forEach(ChunkedByteStore::release);
+        }
+      } else {
+        StringBuilder content = new StringBuilder();
+        for (SnowpipeBuffer<?> buff : buffers) {
+          content.append(((StringSnowpipeBuffer) buff).getData());
+        }
+        conn.putWithCache(stageName, fileName, content.toString());
+      }
+    }
+
+    /**
+     * Add the staged file to the files to ingest. A coalesced file is tracked by the partition
+     * which submits it, the others only wait for its submission before committing their offsets.
+     */
+    private void addStagedFile(final SnowpipeBuffer<?> buff, String fileName, boolean coalesced) {
       // compute metrics which will be exported to JMX for now.
       // TODO: Send it to Telemetry API too
       computeBufferMetrics(buff);
 
-      // This is safe and atomic
-      flushedOffset.updateAndGet((value) -> Math.max(buff.getLastOffset() + 1, value));
-      pipeStatus.setFlushedOffset(flushedOffset.get() - 1);
-      pipeStatus.addAndGetFileCountOnStage(1L); // plus one
-      pipeStatus.resetMemoryUsage();
-
       fileListLock.lock();
       try {
+        // This is safe and atomic
+        flushedOffset.updateAndGet((value) -> Math.max(buff.getLastOffset() + 1, value));
+        pipeStatus.setFlushedOffset(flushedOffset.get() - 1);
         fileNames.add(fileName);
-        if (useStageFilesProcessor) {
-          stageFileProcessorClient.registerNewStageFile(fileName);
-        } else {
-          cleanerFileNames.add(fileName);
+        if (!coalesced) {
+          pipeStatus.addAndGetFileCountOnStage(1L); // plus one
+          trackStagedFile(fileName);
         }
       } finally {
         fileListLock.unlock();
       }
+      if (fileSubmitter != null) {
+        fileSubmitter.submitLater(this);
+      }
+    }
 
-      LOGGER.info("pipe {}, flush pipe: {}", pipeName, fileName);
+    // hand the file to the cleaner, called with the file list lock held
+    private void trackStagedFile(String fileName) {
+      if (useStageFilesProcessor) {
+        stageFileProcessorClient.registerNewStageFile(fileName);
+      } else {
+        cleanerFiles.add(fileName);
+      }
     }
 
     private void checkStatus() {
-      // We are using a temporary list which will reset the cleanerFileNames
-      // After this checkStatus() call, we will have an updated cleanerFileNames which are subset of
-      // existing cleanerFileNames
-      // this time th
-      List<String> tmpFileNames;
+      // We are using a temporary registry which will reset the cleanerFiles
+      // After this checkStatus() call, we will have an updated cleanerFiles which are subset of
+      // existing cleanerFiles
+      StagedFileRegistry tmpFiles;
 
       fileListLock.lock();
       try {
-        tmpFileNames = cleanerFileNames;
-        cleanerFileNames = new LinkedList<>();
+        tmpFiles = cleanerFiles;
+        cleanerFiles = new StagedFileRegistry();
       } finally {
         fileListLock.unlock();
       }
 
       long currentTime = System.currentTimeMillis();
-      List<String> loadedFiles = new LinkedList<>();
-      List<String> failedFiles = new LinkedList<>();
+      List<StagedFileRegistry.StagedFile> loadedFiles = new ArrayList<>();
+      List<StagedFileRegistry.StagedFile> failedFiles = new ArrayList<>();
 
       // ingest report
       // This will update the loadedFiles (successfully loaded) &
       // failedFiles: PARTIAL + FAILED
-      // In any cases tmpFileNames will be updated.
-      // If we get all files in ingestReport, tmpFileNames will be empty
+      // In any cases tmpFiles will be updated.
+      // If we get all files in ingestReport, tmpFiles will be empty
       filterResultFromSnowpipeScan(
-          ingestionService.readIngestReport(tmpFileNames), tmpFileNames, loadedFiles, failedFiles);
-
-      // old files
-      List<String> oldFiles = new LinkedList<>();
-
-      // iterate over a copy since failed files get removed from it
-      // Iterate over those files which were not found in ingest report call and are sitting more
-      // than an hour earlier.
-      // Also add those files into oldFiles which are not purged/found in ingestReport since last 10
-      // minutes.
-      new LinkedList<>(tmpFileNames)
-          .forEach(
-              name -> {
-                long time = FileNameUtils.fileNameToTimeIngested(name);
-                if (time < currentTime - ONE_HOUR) {
-                  failedFiles.add(name);
-                  tmpFileNames.remove(name);
-                } else if (time < currentTime - TEN_MINUTES) {
-                  oldFiles.add(name);
-                }
-              });
+          ingestionService.readIngestReport(tmpFiles.getFileNames()),
+          tmpFiles,
+          loadedFiles,
+          failedFiles);
+
+      // Files which were not found in ingest report call and are sitting more than an hour earlier
+      // are failed, only the files staged before are visited.
+      // Files which are not purged/found in ingestReport since last 10 minutes are old.
+      for (StagedFileRegistry.StagedFile file : tmpFiles.stagedBefore(currentTime - ONE_HOUR)) {
+        failedFiles.add(tmpFiles.remove(file.getName()));
+      }
+      boolean hasOldFiles = !tmpFiles.stagedBefore(currentTime - TEN_MINUTES).isEmpty();
       // load history
       // Use loadHistoryScan API to scan last one hour of data and if filter files from above
       // filtered list.
       // This is the last filtering we do and after this, we start purging loadedFiles and moving
       // failedFiles to tableStage
-      if (!oldFiles.isEmpty()) {
+      if (hasOldFiles) {
         filterResultFromSnowpipeScan(
-            ingestionService.readOneHourHistory(tmpFileNames, currentTime - ONE_HOUR),
-            tmpFileNames,
+            ingestionService.readOneHourHistory(tmpFiles.getFileNames(), currentTime - ONE_HOUR),
+            tmpFiles,
             loadedFiles,
             failedFiles);
       }
-      purge(loadedFiles);
+      purge(toFileNames(loadedFiles));
 
-      moveToTableStage(failedFiles);
+      moveToTableStage(toFileNames(failedFiles));
 
       fileListLock.lock();
       try {
         // Add back all those files which were neither found in ingestReport nor in loadHistoryScan
-        cleanerFileNames.addAll(tmpFileNames);
+        cleanerFiles.addAll(tmpFiles);
       } finally {
         fileListLock.unlock();
       }
 
-      // update purged offset in telemetry
-      loadedFiles.forEach(
-          name ->
-              pipeStatus.setPurgedOffsetAtomically(
-                  value -> Math.max(FileNameUtils.fileNameToEndOffset(name), value)));
+      // update purged offset in telemetry, coalesced files have no offset of this partition
+      loadedFiles.stream()
+          .filter(file -> !file.isCoalesced())
+          .forEach(
+              file ->
+                  pipeStatus.setPurgedOffsetAtomically(
+                      value -> Math.max(file.getEndOffset(), value)));
       // update file count in telemetry
       int fileCountRemovedFromStage = loadedFiles.size() + failedFiles.size();
       pipeStatus.addAndGetFileCountOnStage(-fileCountRemovedFromStage);
@@ -952,29 +1498,25 @@ class SnowflakeSinkServiceV1 implements SnowflakeSinkService {
       pipeStatus.addAndGetFileCountPurged(loadedFiles.size());
       // update lag information
       loadedFiles.forEach(
-          name ->
-              pipeStatus.updateIngestionLag(
-                  currentTime - FileNameUtils.fileNameToTimeIngested(name)));
+          file -> pipeStatus.updateIngestionLag(currentTime - file.getIngestTimeMillis()));
     }
 
     // fileStatus Map may include mapping of fileNames with their ingestion status.
     // It can be received either from insertReport API or loadHistoryScan
     private void filterResultFromSnowpipeScan(
         Map<String, InternalUtils.IngestedFileStatus> fileStatus,
-        List<String> allFiles,
-        List<String> loadedFiles,
-        List<String> failedFiles) {
+        StagedFileRegistry allFiles,
+        List<StagedFileRegistry.StagedFile> loadedFiles,
+        List<StagedFileRegistry.StagedFile> failedFiles) {
       fileStatus.forEach(
           (name, status) -> {
             switch (status) {
               case LOADED:
-                loadedFiles.add(name);
-                allFiles.remove(name);
+                moveFile(allFiles, name, loadedFiles);
                 break;
               case FAILED:
               case PARTIALLY_LOADED:
-                failedFiles.add(name);
-                allFiles.remove(name);
+                moveFile(allFiles, name, failedFiles);
                 break;
               default:
                 // otherwise, do nothing
@@ -982,6 +1524,21 @@ class SnowflakeSinkServiceV1 implements SnowflakeSinkService {
           });
     }
 
+    // the reports only contain the files they were asked about
+    private void moveFile(
+        StagedFileRegistry allFiles, String name, List<StagedFileRegistry.StagedFile> target) {
+      StagedFileRegistry.StagedFile file = allFiles.remove(name);
+      if (file != null) {
+        target.add(file);
+      }
+    }
+
+    private List<String> toFileNames(List<StagedFileRegistry.StagedFile> files) {
+      return files.stream()
+          .map(StagedFileRegistry.StagedFile::getName)
+          .collect(Collectors.toList());
+    }
+
     private void purge(List<String> files) {
       if (!files.isEmpty()) {
         LOGGER.debug(
@@ -1018,6 +1575,33 @@ class SnowflakeSinkServiceV1 implements SnowflakeSinkService {
     }
 
     private void close() {
+      if (flushLane != null) {
+        // files of pending uploads are left on stage, the next owner of the partition purges them
+        // when it reprocesses their offsets
+        flushLane.awaitCompletion();
+      }
+      bufferLock.lock();
+      try {
+        // the buffered records are consumed again by the next owner of the partition
+        buffer.discard();
+      } finally {
+        bufferLock.unlock();
+      }
+      if (fileSubmitter != null) {
+        // staged files not submitted yet are purged when their offsets are reprocessed
+        fileSubmitter.cancel(this);
+      }
+      if (coalescedFiles != null) {
+        // coalesced files are still submitted by the other partitions
+        fileListLock.lock();
+        try {
+          fileNames.stream()
+              .filter(FileNameUtils::verifyCoalescedFileName)
+              .forEach(coalescedFiles::release);
+        } finally {
+          fileListLock.unlock();
+        }
+      }
       if (stageFileProcessorClient != null) {
         stageFileProcessorClient.close();
       } else {
@@ -1075,13 +1659,33 @@ class SnowflakeSinkServiceV1 implements SnowflakeSinkService {
      *
      * @param buffer that was pushed in stage
      */
-    private void computeBufferMetrics(final SnowpipeBuffer buffer) {
+    private void computeBufferMetrics(final SnowpipeBuffer<?> buffer) {
       if (enableCustomJMXMonitoring) {
         partitionBufferSizeBytesHistogram.update(buffer.getBufferSizeBytes());
         partitionBufferCountHistogram.update(buffer.getNumOfRecords());
       }
     }
 
+    /** Register the decisions of the adaptive file sizer as gauges */
+    private void registerFileSizerMetrics() {
+      metricRegistry.register(
+          MetricsUtil.constructMetricName(pipeName, BUFFER_SUB_DOMAIN, ADAPTIVE_FLUSH_SIZE_BYTES),
+          (Gauge<Long>) () -> fileSizer.getFlushSizeBytes(getFileSize()));
+      metricRegistry.register(
+          MetricsUtil.constructMetricName(pipeName, BUFFER_SUB_DOMAIN, COMPRESSION_RATIO),
+          (Gauge<Double>) fileSizer::getCompressionRatio);
+      metricRegistry.register(
+          MetricsUtil.constructMetricName(
+              pipeName, BUFFER_SUB_DOMAIN, ARRIVAL_RATE_BYTES_PER_SECOND),
+          (Gauge<Double>) fileSizer::getArrivalBytesPerSecond);
+      metricRegistry.register(
+          MetricsUtil.constructMetricName(pipeName, BUFFER_SUB_DOMAIN, PROJECTED_FILE_SIZE_BYTES),
+          (Gauge<Long>)
+              () ->
+                  fileSizer.getProjectedFileBytes(
+                      getFileSize(), TimeUnit.SECONDS.toMillis(getFlushTime())));
+    }
+
     /** Equivalent to unregistering all mbeans with a prefix JMX_METRIC_PREFIX */
     private void unregisterPipeJMXMetrics() {
       if (enableCustomJMXMonitoring) {
@@ -1105,49 +1709,221 @@ class SnowflakeSinkServiceV1 implements SnowflakeSinkService {
      * com.snowflake.kafka.connector.SnowflakeSinkTask#put(Collection)} API and it is possible the
      * buffered data is present across multiple PUT apis.
      *
-     * <p>Check the usage of {@link #getData()} to understand when we would empty this buffer and
-     * when we would generate files in internal stage for snowpipe to ingest later using Snowpipe's
-     * REST APIs
+     * <p>Check the usage of {@link #putToStage(String)} to understand when we would empty this
+     * buffer and when we would generate files in internal stage for snowpipe to ingest later using
+     * Snowpipe's REST APIs
      */
-    private class SnowpipeBuffer extends PartitionBuffer<String> {
-      private final StringBuilder stringBuilder;
+    private abstract class SnowpipeBuffer<T> extends PartitionBuffer<T> {
+
+      /**
+       * Upload the buffered records to the internal stage of this pipe
+       *
+       * @param fileName full name of the file in the stage
+       */
+      abstract void putToStage(String fileName);
+
+      /** @return bytes of heap held by the buffered records */
+      abstract long getMemoryBytes();
+
+      /** Free what the buffer holds when its records are dropped, it is not used afterwards */
+      void discard() {}
+
+      void logAndRecordFlush() {
+        LOGGER.debug(
+            "flush buffer: {} records, {} bytes, offset {} - {}",
+            getNumOfRecords(),
+            getBufferSizeBytes(),
+            getFirstOffset(),
+            getLastOffset());
+        pipeStatus.addAndGetTotalSizeOfData(getBufferSizeBytes());
+        pipeStatus.addAndGetTotalNumberOfRecord(getNumOfRecords());
+      }
+
+      @Override
+      public List<SinkRecord> getSinkRecords() {
+        throw new UnsupportedOperationException(
+            "SnowflakeSinkServiceV1 doesnt support getSinkRecords method");
+      }
+    }
 
-      private SnowpipeBuffer() {
+    /** Buffers the records as a String, JDBC compresses the file while uploading it. */
+    private class StringSnowpipeBuffer extends SnowpipeBuffer<String> {
+      private final StringWriter stringWriter;
+      private final JsonGenerator generator;
+
+      private StringSnowpipeBuffer() {
         super();
-        stringBuilder = new StringBuilder();
+        stringWriter = new StringWriter();
+        try {
+          generator = recordWriter.createGenerator(stringWriter);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
       }
 
       @Override
       public void insert(SinkRecord record) {
-        String data = recordService.getProcessedRecordForSnowpipe(record);
+        long lengthBefore = length();
+        try {
+          recordWriter.write(record, generator);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        long dataLength = length() - lengthBefore;
         if (getBufferSizeBytes() == 0L) {
           setFirstOffset(record.kafkaOffset());
         }
 
-        stringBuilder.append(data);
         setNumOfRecords(getNumOfRecords() + 1);
-        setBufferSizeBytes(getBufferSizeBytes() + data.length() * 2L); // 1 char = 2 bytes
+        setBufferSizeBytes(getBufferSizeBytes() + dataLength * 2L); // 1 char = 2 bytes
         setLastOffset(record.kafkaOffset());
-        pipeStatus.addAndGetMemoryUsage(data.length() * 2L);
+        pipeStatus.addAndGetMemoryUsage(dataLength * 2L);
+      }
+
+      @Override
+      long getMemoryBytes() {
+        return getBufferSizeBytes();
+      }
+
+      // number of chars written so far, including the ones still buffered by the generator
+      private long length() {
+        return stringWriter.getBuffer().length() + generator.getOutputBuffered();
       }
 
       public String getData() {
-        String result = stringBuilder.toString();
-        LOGGER.debug(
-            "flush buffer: {} records, {} bytes, offset {} - {}",
-            getNumOfRecords(),
-            getBufferSizeBytes(),
-            getFirstOffset(),
-            getLastOffset());
-        pipeStatus.addAndGetTotalSizeOfData(getBufferSizeBytes());
-        pipeStatus.addAndGetTotalNumberOfRecord(getNumOfRecords());
+        try {
+          generator.flush();
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        String result = stringWriter.toString();
+        logAndRecordFlush();
         return result;
       }
 
       @Override
-      public List<SinkRecord> getSinkRecords() {
-        throw new UnsupportedOperationException(
-            "SnowflakeSinkServiceV1 doesnt support getSinkRecords method");
+      void putToStage(String fileName) {
+        conn.putWithCache(stageName, fileName, getData());
+      }
+    }
+
+    /**
+     * Gzip compresses the records while they are inserted into a {@link ChunkedByteStore}, so the
+     * memory held by a partition is close to the size of the file uploaded to the stage. The buffer
+     * size used for the flush threshold is the size of the uncompressed UTF-8 content.
+     */
+    private class CompressedSnowpipeBuffer extends SnowpipeBuffer<ChunkedByteStore> {
+      private final ChunkedByteStore store;
+      // the streams are opened by the first record, an idle partition holds no deflater
+      private GZIPOutputStream gzipStream;
+      // counts the uncompressed bytes handed over to the gzip stream
+      private CountingOutputStream uncompressedStream;
+      private JsonGenerator generator;
+      private boolean closed = false;
+
+      private CompressedSnowpipeBuffer() {
+        super();
+        store = new ChunkedByteStore();
+      }
+
+      private void openStreams() throws IOException {
+        if (generator != null) {
+          return;
+        }
+        gzipStream = new GZIPOutputStream(store, ChunkedByteStore.CHUNK_SIZE_BYTES);
+        try {
+          uncompressedStream = new CountingOutputStream(gzipStream);
+          generator = recordWriter.createGenerator(uncompressedStream);
+        } catch (IOException | RuntimeException e) {
+          gzipStream.close();
+          throw e;
+        }
+      }
+
+      @Override
+      public void insert(SinkRecord record) {
+        long sizeBefore = uncompressedSize();
+        long compressedSizeBefore = store.size();
+        try {
+          openStreams();
+          recordWriter.write(record, generator);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        if (isEmpty()) {
+          setFirstOffset(record.kafkaOffset());
+        }
+
+        setNumOfRecords(getNumOfRecords() + 1);
+        setBufferSizeBytes(getBufferSizeBytes() + uncompressedSize() - sizeBefore);
+        setLastOffset(record.kafkaOffset());
+        pipeStatus.addAndGetMemoryUsage(store.size() - compressedSizeBefore);
+      }
+
+      @Override
+      long getMemoryBytes() {
+        return store.size();
+      }
+
+      // number of bytes written so far, including the ones still buffered by the generator
+      private long uncompressedSize() {
+        return generator == null
+            ? 0
+            : uncompressedStream.getCount() + generator.getOutputBuffered();
+      }
+
+      /** @return the store holding the complete gzip file, no record can be inserted afterwards */
+      @Override
+      public ChunkedByteStore getData() {
+        try {
+          if (!closed) {
+            // an empty buffer still makes a valid gzip file
+            openStreams();
+          }
+          closeStreams();
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        logAndRecordFlush();
+        return store;
+      }
+
+      @Override
+      void discard() {
+        try {
+          closeStreams();
+        } catch (IOException e) {
+          LOGGER.warn("pipe {}: failed to close a dropped buffer: {}", pipeName, e.getMessage());
+        } finally {
+          store.release();
+        }
+      }
+
+      // completes the gzip file and frees the native memory of its deflater
+      private void closeStreams() throws IOException {
+        if (closed) {
+          return;
+        }
+        closed = true;
+        if (generator == null) {
+          return;
+        }
+        try {
+          // writes the records still buffered by the generator and closes the streams below it
+          generator.close();
+        } finally {
+          gzipStream.close();
+        }
+      }
+
+      @Override
+      void putToStage(String fileName) {
+        ChunkedByteStore data = getData();
+        try {
+          conn.putCompressedWithCache(stageName, fileName, data::newInputStream);
+        } finally {
+          data.release();
+        }
       }
     }
   }
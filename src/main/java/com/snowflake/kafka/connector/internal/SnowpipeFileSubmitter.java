@@ -0,0 +1,126 @@
+package com.snowflake.kafka.connector.internal;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Submits the files staged by the pipes of a task to Snowpipe on a background thread, so that
+ * preCommit only reads the offsets submitted so far and doesn't wait for the insertFiles calls,
+ * which are retried with backoff and can take seconds each.
+ *
+ * <p>A pipe is queued when a file is put on its stage. The pipes are submitted one at a time, in
+ * the order they were queued, and a pipe queued again while it is being submitted is submitted once
+ * more afterwards. The files staged meanwhile are sent together, so one slow insertFiles call
+ * batches the files of all other pipes instead of delaying their offset commits.
+ *
+ * <p>A failed submission is logged and the other pipes are still submitted, the offsets of the
+ * failed pipe are only committed once a later submission succeeds.
+ *
+ * @param <T> pipe, compared by identity
+ */
+class SnowpipeFileSubmitter<T> {
+  private static final KCLogger LOGGER = new KCLogger(SnowpipeFileSubmitter.class.getName());
+
+  private final Consumer<T> submitAction;
+  private final ExecutorService executor;
+
+  // all fields below are guarded by this
+  private final Set<T> queuedPipes = new LinkedHashSet<>();
+  private boolean submitting = false;
+  private boolean closed = false;
+
+  // held while a pipe is submitted
+  private final Lock submitLock = new ReentrantLock();
+
+  /** @param submitAction submits the files staged by the pipe since its previous submission */
+  SnowpipeFileSubmitter(Consumer<T> submitAction) {
+    this.submitAction = submitAction;
+    this.executor =
+        Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder()
+                .setNameFormat("snowpipe-file-submitter-%d")
+                .setDaemon(true)
+                .build());
+  }
+
+  /**
+   * Queue the submission of the files staged by the pipe, called after each file put on its stage
+   *
+   * @param pipe pipe which staged a file
+   */
+  void submitLater(T pipe) {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      queuedPipes.add(pipe);
+      if (submitting) {
+        return;
+      }
+      submitting = true;
+    }
+    executor.execute(this::submitQueued);
+  }
+
+  /**
+   * Remove the pipe from the queue, waits for its submission if it is being submitted. Has to be
+   * called before the ingestion service of the pipe is closed.
+   *
+   * @param pipe pipe which is no longer used
+   */
+  void cancel(T pipe) {
+    synchronized (this) {
+      queuedPipes.remove(pipe);
+    }
+    submitLock.lock();
+    submitLock.unlock();
+  }
+
+  /** Stop submitting, waits for the pipe being submitted */
+  void close() {
+    synchronized (this) {
+      closed = true;
+      queuedPipes.clear();
+    }
+    executor.shutdown();
+    submitLock.lock();
+    submitLock.unlock();
+  }
+
+  /** @return number of pipes waiting for their submission */
+  @VisibleForTesting
+  synchronized int getQueuedPipeCount() {
+    return queuedPipes.size();
+  }
+
+  private void submitQueued() {
+    while (true) {
+      submitLock.lock();
+      try {
+        T pipe;
+        synchronized (this) {
+          Iterator<T> iterator = queuedPipes.iterator();
+          if (!iterator.hasNext()) {
+            submitting = false;
+            return;
+          }
+          pipe = iterator.next();
+          iterator.remove();
+        }
+        submitAction.accept(pipe);
+      } catch (RuntimeException e) {
+        LOGGER.error("Failed to submit staged files to Snowpipe: {}", e.getMessage());
+      } finally {
+        submitLock.unlock();
+      }
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package com.snowflake.kafka.connector.internal;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides when the {@link StageFilesProcessor} of each pipe of a task polls the Snowpipe ingest
+ * history, one instance is shared by all pipes of the task.
+ *
+ * <p>Every pipe is polled at most once per cleanup cycle. A pipe which is busy, i.e. its last poll
+ * returned new file statuses or it has many files waiting for one, is polled every cycle. The
+ * polling interval of an idle pipe doubles with every poll which doesn't return anything new, up to
+ * {@code maxIntervalMillis}. The first cleanup cycles of the pipes are spread over a cycle, so
+ * pipes started together don't all poll in the same second.
+ *
+ * <p>Together this keeps the number of insertReport calls of a task with hundreds of pipes, most of
+ * them with little traffic, below the rate limits of the Snowpipe REST API.
+ */
+class SnowpipeHistoryPoller {
+  private static final KCLogger LOGGER = new KCLogger(SnowpipeHistoryPoller.class.getName());
+
+  // pipes with at least this many files waiting for their status are polled every cycle
+  static final int BUSY_PIPE_FILE_COUNT = 100;
+
+  private final long minIntervalMillis;
+  private final long maxIntervalMillis;
+  private final long initialDelaySeconds;
+  private final long initialDelaySpreadSeconds;
+
+  private final Map<String, PipeState> pipes = new ConcurrentHashMap<>();
+  private final AtomicInteger startedPipes = new AtomicInteger();
+
+  /**
+   * @param minIntervalMillis interval of busy pipes
+   * @param maxIntervalMillis longest interval of idle pipes
+   * @param initialDelaySeconds delay of the first cleanup cycle of a pipe
+   * @param initialDelaySpreadSeconds first cleanup cycles are spread over this many more seconds
+   */
+  SnowpipeHistoryPoller(
+      long minIntervalMillis,
+      long maxIntervalMillis,
+      long initialDelaySeconds,
+      long initialDelaySpreadSeconds) {
+    this.minIntervalMillis = minIntervalMillis;
+    this.maxIntervalMillis = Math.max(minIntervalMillis, maxIntervalMillis);
+    this.initialDelaySeconds = initialDelaySeconds;
+    this.initialDelaySpreadSeconds = initialDelaySpreadSeconds;
+  }
+
+  /** @return poller which lets every pipe poll the history in every cleanup cycle */
+  static SnowpipeHistoryPoller everyCycle(long initialDelaySeconds) {
+    return new SnowpipeHistoryPoller(0, 0, initialDelaySeconds, 0);
+  }
+
+  /** @return delay of the first cleanup cycle of a newly started pipe, in seconds */
+  long nextInitialDelaySeconds() {
+    if (initialDelaySpreadSeconds <= 0) {
+      return initialDelaySeconds;
+    }
+    return initialDelaySeconds + startedPipes.getAndIncrement() % (initialDelaySpreadSeconds + 1);
+  }
+
+  /**
+   * @param pipeName pipe name
+   * @param now current time in milliseconds
+   * @return whether the history of the pipe has to be polled in the current cleanup cycle
+   */
+  boolean shouldPoll(String pipeName, long now) {
+    PipeState state = pipes.get(pipeName);
+    return state == null || now >= state.nextPollTime;
+  }
+
+  /**
+   * Compute when the pipe is polled next, called after each poll of its history
+   *
+   * @param pipeName pipe name
+   * @param waitingFiles number of files of the pipe waiting for their status
+   * @param newStatuses number of file statuses returned by the poll
+   * @param now current time in milliseconds
+   */
+  void onPolled(String pipeName, int waitingFiles, int newStatuses, long now) {
+    PipeState state = pipes.computeIfAbsent(pipeName, name -> new PipeState());
+    if (newStatuses > 0 || waitingFiles >= BUSY_PIPE_FILE_COUNT) {
+      state.interval = minIntervalMillis;
+    } else {
+      state.interval = Math.min(maxIntervalMillis, Math.max(minIntervalMillis, state.interval * 2));
+    }
+    state.nextPollTime = now + state.interval;
+    if (state.interval > minIntervalMillis) {
+      LOGGER.debug(
+          "pipe {} is idle with {} waiting files, next history poll in {} ms",
+          pipeName,
+          waitingFiles,
+          state.interval);
+    }
+  }
+
+  /**
+   * Poll the history of the pipe in its next cleanup cycle, called when new files are ingested
+   *
+   * @param pipeName pipe name
+   */
+  void onNewFiles(String pipeName) {
+    PipeState state = pipes.get(pipeName);
+    if (state != null && state.interval > minIntervalMillis) {
+      state.interval = minIntervalMillis;
+      state.nextPollTime = 0;
+    }
+  }
+
+  /**
+   * Stop tracking the pipe, called when its processor is closed
+   *
+   * @param pipeName pipe name
+   */
+  void forget(String pipeName) {
+    pipes.remove(pipeName);
+  }
+
+  // only accessed by the cleaner of the pipe and the task thread, a stale read delays a poll by one
+  // cycle at most
+  private static class PipeState {
+    private volatile long interval;
+    private volatile long nextPollTime;
+  }
+}
@@ -0,0 +1,210 @@
+package com.snowflake.kafka.connector.internal;
+
+import com.codahale.metrics.Timer;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Credentials of the internal stages, refreshed ahead of their expiration.
+ *
+ * <p>A credential is used for {@code expirationTimeMillis} after it was fetched. Once it is older
+ * than {@code refreshAfterMillis} it is still returned, and a new one is fetched in the background,
+ * so uploads only wait for a fetch when a key is used for the first time or wasn't used for the
+ * whole expiration time.
+ *
+ * <p>At most one fetch per key runs at a time, the threads which need the credential of a key being
+ * fetched wait for that fetch instead of starting their own. A credential which can only be used
+ * for a single file is neither cached nor shared, every caller fetches its own.
+ *
+ * @param <C> credential
+ */
+class StageCredentialCache<C> {
+  private static final KCLogger LOGGER = new KCLogger(StageCredentialCache.class.getName());
+
+  private final Predicate<C> isReusable;
+  private final long expirationTimeMillis;
+  private final long refreshAfterMillis;
+
+  private final ConcurrentMap<String, CachedCredential<C>> credentials = new ConcurrentHashMap<>();
+  // keys whose credentials can only be used for one file, they are fetched for every file
+  private final Set<String> singleFileKeys = ConcurrentHashMap.newKeySet();
+  // fetches in progress, one per key
+  private final ConcurrentMap<String, CompletableFuture<CachedCredential<C>>> fetches =
+      new ConcurrentHashMap<>();
+  // the thread only lives while credentials are refreshed
+  private final Executor refreshExecutor =
+      new ThreadPoolExecutor(
+          0,
+          1,
+          1,
+          TimeUnit.MINUTES,
+          new LinkedBlockingQueue<>(),
+          new ThreadFactoryBuilder()
+              .setNameFormat("stage-credential-refresh-%d")
+              .setDaemon(true)
+              .build());
+
+  // metrics
+  private final AtomicLong hitCount = new AtomicLong(0);
+  private final AtomicLong missCount = new AtomicLong(0);
+  private final Timer fetchLatency = new Timer();
+
+  /**
+   * @param isReusable whether a credential can be used for several files
+   * @param expirationTimeMillis time after its fetch a credential is no longer used
+   * @param refreshAfterMillis time after its fetch a credential is refreshed in the background
+   */
+  StageCredentialCache(
+      Predicate<C> isReusable, long expirationTimeMillis, long refreshAfterMillis) {
+    this.isReusable = isReusable;
+    this.expirationTimeMillis = expirationTimeMillis;
+    this.refreshAfterMillis = Math.min(refreshAfterMillis, expirationTimeMillis);
+  }
+
+  /**
+   * @param key key of the credential, the stage name and the path of the files for GCS
+   * @param fetcher fetches a credential for the file being uploaded, a reusable one is used for the
+   *     other files of the key too
+   * @return a credential which didn't expire, fetched on the calling thread if none is cached
+   * @throws Exception if the credential had to be fetched and the fetch failed
+   */
+  C get(String key, Callable<C> fetcher) throws Exception {
+    long now = System.currentTimeMillis();
+    CachedCredential<C> cached = credentials.get(key);
+    if (cached != null && now - cached.fetchTimeMillis < expirationTimeMillis) {
+      hitCount.incrementAndGet();
+      if (now - cached.fetchTimeMillis >= refreshAfterMillis) {
+        fetchInBackground(key, fetcher);
+      }
+      return cached.credential;
+    }
+    missCount.incrementAndGet();
+    if (singleFileKeys.contains(key)) {
+      return fetch(key, fetcher, new CompletableFuture<>()).credential;
+    }
+
+    CompletableFuture<CachedCredential<C>> fetch = new CompletableFuture<>();
+    CompletableFuture<CachedCredential<C>> runningFetch = fetches.putIfAbsent(key, fetch);
+    if (runningFetch == null) {
+      return fetch(key, fetcher, fetch).credential;
+    }
+    CachedCredential<C> fetched = await(runningFetch);
+    // the credential fetched by another thread is for its file only
+    return fetched.reusable ? fetched.credential : fetch(key, fetcher, fetch).credential;
+  }
+
+  /**
+   * Stop using the credential, called when an upload with it failed
+   *
+   * @param key key of the credential
+   * @param credential credential returned by {@link #get(String, Callable)}
+   */
+  void invalidate(String key, C credential) {
+    // a credential refreshed meanwhile is kept
+    credentials.computeIfPresent(
+        key, (ignored, cached) -> cached.credential == credential ? null : cached);
+  }
+
+  long getHitCount() {
+    return hitCount.get();
+  }
+
+  long getMissCount() {
+    return missCount.get();
+  }
+
+  /** @return latency of the credential fetches, in the foreground and in the background */
+  Timer getFetchLatency() {
+    return fetchLatency;
+  }
+
+  @VisibleForTesting
+  boolean isFetching(String key) {
+    return fetches.containsKey(key);
+  }
+
+  private void fetchInBackground(String key, Callable<C> fetcher) {
+    CompletableFuture<CachedCredential<C>> fetch = new CompletableFuture<>();
+    if (fetches.putIfAbsent(key, fetch) != null) {
+      return;
+    }
+    LOGGER.debug("Refreshing credential of {} in the background", key);
+    try {
+      refreshExecutor.execute(
+          () -> {
+            try {
+              fetch(key, fetcher, fetch);
+            } catch (Exception e) {
+              // the cached credential is used until it expires, it is then fetched on the upload
+              LOGGER.warn("Failed to refresh credential of {}: {}", key, e.getMessage());
+            }
+          });
+    } catch (RuntimeException e) {
+      fetches.remove(key, fetch);
+      throw e;
+    }
+  }
+
+  private CachedCredential<C> fetch(
+      String key, Callable<C> fetcher, CompletableFuture<CachedCredential<C>> fetch)
+      throws Exception {
+    long fetchTimeMillis = System.currentTimeMillis();
+    final Timer.Context fetchTime = fetchLatency.time();
+    try {
+      C credential = fetcher.call();
+      CachedCredential<C> fetched =
+          new CachedCredential<>(credential, fetchTimeMillis, isReusable.test(credential));
+      if (fetched.reusable) {
+        credentials.put(key, fetched);
+        singleFileKeys.remove(key);
+      } else {
+        credentials.remove(key);
+        singleFileKeys.add(key);
+      }
+      fetch.complete(fetched);
+      return fetched;
+    } catch (Exception e) {
+      fetch.completeExceptionally(e);
+      throw e;
+    } finally {
+      fetchTime.stop();
+      fetches.remove(key, fetch);
+    }
+  }
+
+  private static <C> CachedCredential<C> await(CompletableFuture<CachedCredential<C>> fetch)
+      throws Exception {
+    try {
+      return fetch.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Exception) {
+        throw (Exception) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  private static class CachedCredential<C> {
+    private final C credential;
+    private final long fetchTimeMillis;
+    private final boolean reusable;
+
+    private CachedCredential(C credential, long fetchTimeMillis, boolean reusable) {
+      this.credential = credential;
+      this.fetchTimeMillis = fetchTimeMillis;
+      this.reusable = reusable;
+    }
+  }
+}
@@ -69,12 +69,13 @@ class StageFilesProcessor {
   private final SnowflakeTelemetryService telemetryService;
   private final FilteringPredicates filters;
   private final ScheduledExecutorService schedulingExecutor;
+  private final SnowpipeHistoryPoller historyPoller;
   // start first cleanup cycle 60 seconds after start
-  private static final long INITIAL_DELAY_SECONDS = 60;
+  static final long INITIAL_DELAY_SECONDS = 60;
   // then repeat every 61 seconds - potential call to loadHistory is throttled, so this extra second
   // can
   // save us from hitting "too many requests - 429 status code"
-  private static final long CLEANUP_PERIOD_SECONDS = 61;
+  static final long CLEANUP_PERIOD_SECONDS = 61;
 
   /**
    * Client interface for the StageFileProcessor - allows thread safe registration of new files and
@@ -103,7 +104,8 @@ class StageFilesProcessor {
       SnowflakeIngestionService ingestionService,
       SnowflakeTelemetryPipeStatus pipeTelemetry,
       SnowflakeTelemetryService telemetryService,
-      ScheduledExecutorService schedulingExecutor) {
+      ScheduledExecutorService schedulingExecutor,
+      SnowpipeHistoryPoller historyPoller) {
     this(
         pipeName,
         tableName,
@@ -114,6 +116,7 @@ class StageFilesProcessor {
         pipeTelemetry,
         telemetryService,
         schedulingExecutor,
+        historyPoller,
         System::currentTimeMillis);
   }
 
@@ -129,6 +132,33 @@ class StageFilesProcessor {
       SnowflakeTelemetryService telemetryService,
       ScheduledExecutorService schedulingExecutor,
       TimeSupplier currentTimeSupplier) {
+    this(
+        pipeName,
+        tableName,
+        stageName,
+        prefix,
+        conn,
+        ingestionService,
+        pipeTelemetry,
+        telemetryService,
+        schedulingExecutor,
+        SnowpipeHistoryPoller.everyCycle(INITIAL_DELAY_SECONDS),
+        currentTimeSupplier);
+  }
+
+  @VisibleForTesting
+  StageFilesProcessor(
+      String pipeName,
+      String tableName,
+      String stageName,
+      String prefix,
+      SnowflakeConnectionService conn,
+      SnowflakeIngestionService ingestionService,
+      SnowflakeTelemetryPipeStatus pipeTelemetry,
+      SnowflakeTelemetryService telemetryService,
+      ScheduledExecutorService schedulingExecutor,
+      SnowpipeHistoryPoller historyPoller,
+      TimeSupplier currentTimeSupplier) {
     this.pipeName = pipeName;
     this.tableName = tableName;
     this.stageName = stageName;
@@ -139,6 +169,7 @@ class StageFilesProcessor {
     this.telemetryService = telemetryService;
     this.pipeTelemetry = pipeTelemetry;
     this.schedulingExecutor = schedulingExecutor;
+    this.historyPoller = historyPoller;
     this.filters = new FilteringPredicates(currentTimeSupplier, prefix);
   }
 
@@ -192,7 +223,9 @@ class StageFilesProcessor {
 
                 // add all files which might have been collected during the last cycle for
                 // processing
-                register.transferFilesToContext(ctx);
+                if (register.transferFilesToContext(ctx) > 0) {
+                  historyPoller.onNewFiles(pipeName);
+                }
 
                 // initialize state based on the remote stage state (do it on first call or after
                 // error)
@@ -232,7 +265,7 @@ class StageFilesProcessor {
                 ctx.startTrackingHistoryTimestamp = currentTimeSupplier.currentTime();
               }
             },
-            INITIAL_DELAY_SECONDS,
+            historyPoller.nextInitialDelaySeconds(),
             CLEANUP_PERIOD_SECONDS,
             TimeUnit.SECONDS));
   }
@@ -242,6 +275,7 @@ class StageFilesProcessor {
     if (task != null) {
       task.cancel(true);
     }
+    historyPoller.forget(pipeName);
   }
 
   private void initializeCleanStartState(ProcessorContext ctx, boolean firstRun) {
@@ -278,8 +312,15 @@ class StageFilesProcessor {
 
     if (fileCategories.hasStageFiles()) {
       // for all other files:
-      // try to load ingest report and match the status to the file collection
-      loadIngestReport(fileCategories, ctx);
+      // try to load ingest report and match the status to the file collection, idle pipes skip
+      // some cycles and only use the history they already have
+      long now = currentTimeSupplier.currentTime();
+      if (historyPoller.shouldPoll(pipeName, now)) {
+        int newStatuses = loadIngestReport(fileCategories, ctx);
+        historyPoller.onPolled(pipeName, fileCategories.stageFiles.size(), newStatuses, now);
+      } else {
+        fileCategories.updateFileStatus(ctx.ingestHistory);
+      }
       // if there are some stale files - i.e. older than 10 minutes, but no more than 1 hour - try
       // to fetch their history and update their state
       checkAndRefreshStaleFiles(fileCategories, ctx);
@@ -309,7 +350,8 @@ class StageFilesProcessor {
     ctx.files.addAll(fileCategories.dirtyFiles);
   }
 
-  private void loadIngestReport(FileCategorizer fileCategories, ProcessorContext ctx) {
+  /** @return number of file statuses returned by the ingest history */
+  private int loadIngestReport(FileCategorizer fileCategories, ProcessorContext ctx) {
     // do not look up history older than necessary - as this is not absolute time, add 5 seconds
     // overlap to be sure we accommodate for transmission delay
     long secondsSinceStart =
@@ -324,6 +366,7 @@ class StageFilesProcessor {
     mergeHistory(ctx.ingestHistory, history);
 
     fileCategories.updateFileStatus(ctx.ingestHistory);
+    return history.size();
   }
 
   private void mergeHistory(
@@ -370,8 +413,11 @@ class StageFilesProcessor {
             .query(filters.loadedFilesPredicate)
             .peek(
                 file -> {
-                  long fileOffset = FileNameUtils.fileNameToEndOffset(file);
-                  maxFileOffset.set(Math.max(fileOffset, maxFileOffset.get()));
+                  // coalesced files have no offset of this partition
+                  if (FileNameUtils.verifyFileName(file)) {
+                    long fileOffset = FileNameUtils.fileNameToEndOffset(file);
+                    maxFileOffset.set(Math.max(fileOffset, maxFileOffset.get()));
+                  }
                 })
             .collect(Collectors.toList());
 
@@ -471,8 +517,15 @@ class StageFilesProcessor {
     }
 
     private void categorizeFile(String file) {
-      long fileOffset = FileNameUtils.fileNameToStartOffset(file);
       long timestamp = FileNameUtils.fileNameToTimeIngested(file);
+      // a coalesced file is never dirty, the other partitions in it may have committed their
+      // offsets
+      if (FileNameUtils.verifyCoalescedFileName(file)) {
+        stageFiles.put(
+            file, new IngestEntry(InternalUtils.IngestedFileStatus.NOT_FOUND, timestamp));
+        return;
+      }
+      long fileOffset = FileNameUtils.fileNameToStartOffset(file);
       if (fileOffset > currentOffset) {
         dirtyFiles.add(file);
       } else {
@@ -559,7 +612,8 @@ class StageFilesProcessor {
       }
     }
 
-    private void transferFilesToContext(ProcessorContext ctx) {
+    /** @return number of files registered since the last call */
+    private int transferFilesToContext(ProcessorContext ctx) {
       List<String> freshFiles = new ArrayList<>();
       files.drainTo(freshFiles);
       StageFilesProcessor processor = owner.get();
@@ -568,6 +622,7 @@ class StageFilesProcessor {
           freshFiles.size(),
           processor == null ? "n/a" : processor.pipeName);
       ctx.files.addAll(freshFiles);
+      return freshFiles.size();
     }
 
     // only for testing purposes!
@@ -636,10 +691,13 @@ class StageFilesProcessor {
       // partitions
       // but individual processor instance is interested only in tracking files for "this"
       // partition,
-      // thus the file filter - pick up history entries only for files in given partition
+      // thus the file filter - pick up history entries only for files in given partition, and for
+      // the coalesced files, holding the records of several partitions, this pipe submitted
       String prefix = filePrefix.toUpperCase();
       currentPartitionFilePredicate =
-          fileEntry -> fileEntry.getPath().toUpperCase().startsWith(prefix);
+          fileEntry ->
+              fileEntry.getPath().toUpperCase().startsWith(prefix)
+                  || FileNameUtils.verifyCoalescedFileName(fileEntry.getPath());
     }
   }
 
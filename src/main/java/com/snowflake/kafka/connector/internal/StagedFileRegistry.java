@@ -0,0 +1,149 @@
+package com.snowflake.kafka.connector.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Files on the stage of a pipe which the cleaner tracks until they are loaded or failed.
+ *
+ * <p>Each name is parsed once, when the file is added, the offsets and the time of the file are
+ * then read from its {@link StagedFile}. The files are indexed by name, so removing the files found
+ * in an ingest report doesn't scan the tracked files, and ordered by the time they were staged, so
+ * finding the old files only visits those.
+ *
+ * <p>Not thread safe, the service guards it with its file list lock.
+ */
+class StagedFileRegistry {
+  private static final Comparator<StagedFile> BY_TIME =
+      Comparator.comparingLong(StagedFile::getIngestTimeMillis).thenComparing(StagedFile::getName);
+
+  private final Map<String, StagedFile> filesByName = new HashMap<>();
+  private final NavigableSet<StagedFile> filesByTime = new TreeSet<>(BY_TIME);
+
+  /**
+   * @param fileName name of a file of a partition or of a coalesced file
+   * @return false if the file is already tracked
+   */
+  boolean add(String fileName) {
+    if (filesByName.containsKey(fileName)) {
+      return false;
+    }
+    StagedFile file = StagedFile.of(fileName);
+    filesByName.put(fileName, file);
+    filesByTime.add(file);
+    return true;
+  }
+
+  void addAll(Collection<String> fileNames) {
+    fileNames.forEach(this::add);
+  }
+
+  /** Track the files of the other registry, without parsing their names again */
+  void addAll(StagedFileRegistry other) {
+    other.filesByName.forEach(
+        (name, file) -> {
+          if (filesByName.putIfAbsent(name, file) == null) {
+            filesByTime.add(file);
+          }
+        });
+  }
+
+  /** @return the file, null if it isn't tracked */
+  StagedFile remove(String fileName) {
+    StagedFile file = filesByName.remove(fileName);
+    if (file != null) {
+      filesByTime.remove(file);
+    }
+    return file;
+  }
+
+  /**
+   * @param timeMillis time in milliseconds
+   * @return the files staged before the time, oldest first
+   */
+  List<StagedFile> stagedBefore(long timeMillis) {
+    List<StagedFile> files = new ArrayList<>();
+    for (StagedFile file : filesByTime) {
+      if (file.getIngestTimeMillis() >= timeMillis) {
+        break;
+      }
+      files.add(file);
+    }
+    return files;
+  }
+
+  /** @return names of the tracked files, oldest first */
+  List<String> getFileNames() {
+    List<String> names = new ArrayList<>(filesByTime.size());
+    filesByTime.forEach(file -> names.add(file.getName()));
+    return names;
+  }
+
+  int size() {
+    return filesByName.size();
+  }
+
+  boolean isEmpty() {
+    return filesByName.isEmpty();
+  }
+
+  /** A file on the stage, with the values of its name */
+  static class StagedFile {
+    private final String name;
+    private final long ingestTimeMillis;
+    // the offsets of a coalesced file are those of several partitions
+    private final boolean coalesced;
+    private final long startOffset;
+    private final long endOffset;
+
+    private StagedFile(
+        String name, long ingestTimeMillis, boolean coalesced, long startOffset, long endOffset) {
+      this.name = name;
+      this.ingestTimeMillis = ingestTimeMillis;
+      this.coalesced = coalesced;
+      this.startOffset = startOffset;
+      this.endOffset = endOffset;
+    }
+
+    private static StagedFile of(String name) {
+      long ingestTimeMillis = FileNameUtils.fileNameToTimeIngested(name);
+      if (FileNameUtils.verifyCoalescedFileName(name)) {
+        return new StagedFile(name, ingestTimeMillis, true, -1, -1);
+      }
+      return new StagedFile(
+          name,
+          ingestTimeMillis,
+          false,
+          FileNameUtils.fileNameToStartOffset(name),
+          FileNameUtils.fileNameToEndOffset(name));
+    }
+
+    String getName() {
+      return name;
+    }
+
+    long getIngestTimeMillis() {
+      return ingestTimeMillis;
+    }
+
+    boolean isCoalesced() {
+      return coalesced;
+    }
+
+    /** @return start offset of the partition file, -1 for a coalesced file */
+    long getStartOffset() {
+      return startOffset;
+    }
+
+    /** @return end offset of the partition file, -1 for a coalesced file */
+    long getEndOffset() {
+      return endOffset;
+    }
+  }
+}
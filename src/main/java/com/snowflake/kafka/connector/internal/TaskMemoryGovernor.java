@@ -0,0 +1,167 @@
+package com.snowflake.kafka.connector.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.connect.sink.SinkTaskContext;
+
+/**
+ * Keeps the memory held by all partitions of a task under one budget, whatever the number of
+ * partitions assigned to the task. The buffer thresholds only bound the memory of a single
+ * partition.
+ *
+ * <p>The sink service calls {@link #enforce(Collection, SinkTaskContext)} from the task thread
+ * after each batch. When the bytes held by the buffers and the in flight uploads or inserts of all
+ * partitions exceed the budget, the largest buffers are flushed first. If that isn't enough, e.g.
+ * because the memory is held by uploads which didn't complete yet, the partitions holding the most
+ * memory are paused through {@link SinkTaskContext#pause(TopicPartition...)} until the usage drops
+ * below the low water mark, {@link #RESUME_RATIO} of the budget, they are then all resumed.
+ */
+public class TaskMemoryGovernor {
+  private static final KCLogger LOGGER = new KCLogger(TaskMemoryGovernor.class.getName());
+
+  // paused partitions are resumed once the usage is below this part of the budget
+  static final double RESUME_RATIO = 0.75;
+
+  private final long maxBytes;
+  private final long lowWaterBytes;
+
+  // partitions paused by the governor, only accessed by the task thread
+  private final Set<TopicPartition> pausedPartitions = new HashSet<>();
+
+  /** @param maxBytes bytes all partitions of the task may hold */
+  public TaskMemoryGovernor(long maxBytes) {
+    this.maxBytes = maxBytes;
+    this.lowWaterBytes = (long) (maxBytes * RESUME_RATIO);
+    LOGGER.info(
+        "Task memory budget set to {} bytes, paused partitions are resumed below {} bytes",
+        maxBytes,
+        lowWaterBytes);
+  }
+
+  /** Memory held for one partition of the task */
+  public interface PartitionMemory {
+    TopicPartition getTopicPartition();
+
+    /** @return bytes of the records buffered and not yet handed to an upload or insert */
+    long getBufferedBytes();
+
+    /** @return bytes handed to uploads or inserts which didn't complete yet */
+    long getInFlightBytes();
+
+    /** Hand the buffered records to an upload or insert, whatever the flush thresholds */
+    void flushBuffer();
+  }
+
+  /**
+   * Flush buffers and pause or resume partitions to keep the task within its budget
+   *
+   * @param partitions partitions of the task
+   * @param context used to pause and resume partitions, partitions are only flushed if null
+   */
+  public void enforce(Collection<? extends PartitionMemory> partitions, SinkTaskContext context) {
+    Set<TopicPartition> assigned =
+        partitions.stream()
+            .map(PartitionMemory::getTopicPartition)
+            .collect(Collectors.toCollection(HashSet::new));
+    // a revoked partition is no longer paused by the consumer
+    pausedPartitions.retainAll(assigned);
+
+    long usedBytes = usedBytes(partitions);
+    if (usedBytes > maxBytes) {
+      usedBytes = flushLargestBuffers(partitions, usedBytes);
+    }
+
+    if (usedBytes > maxBytes && context != null) {
+      pauseLargestPartitions(partitions, usedBytes, context);
+    } else if (usedBytes <= lowWaterBytes && !pausedPartitions.isEmpty() && context != null) {
+      LOGGER.info(
+          "Task memory usage {} bytes is below {} bytes, resuming partitions {}",
+          usedBytes,
+          lowWaterBytes,
+          pausedPartitions);
+      context.resume(pausedPartitions.toArray(new TopicPartition[0]));
+      pausedPartitions.clear();
+    }
+  }
+
+  /** @return partitions currently paused by the governor */
+  Set<TopicPartition> getPausedPartitions() {
+    return pausedPartitions;
+  }
+
+  private long flushLargestBuffers(
+      Collection<? extends PartitionMemory> partitions, long usedBytes) {
+    List<PartitionMemory> byBufferedBytes = new ArrayList<>(partitions);
+    byBufferedBytes.sort(Comparator.comparingLong(PartitionMemory::getBufferedBytes).reversed());
+
+    int flushedCount = 0;
+    // flushing releases the buffer or turns it into an in flight upload
+    for (PartitionMemory partition : byBufferedBytes) {
+      if (usedBytes <= lowWaterBytes || partition.getBufferedBytes() == 0) {
+        break;
+      }
+      partition.flushBuffer();
+      usedBytes = usedBytes(partitions);
+      flushedCount++;
+    }
+    LOGGER.info(
+        "Task memory budget of {} bytes exceeded, flushed {} buffers, {} bytes still held",
+        maxBytes,
+        flushedCount,
+        usedBytes);
+    return usedBytes;
+  }
+
+  private void pauseLargestPartitions(
+      Collection<? extends PartitionMemory> partitions, long usedBytes, SinkTaskContext context) {
+    // in flight uploads complete concurrently, sort on the bytes held at one point in time
+    Map<TopicPartition, Long> partitionBytes = new HashMap<>();
+    partitions.forEach(
+        partition -> partitionBytes.put(partition.getTopicPartition(), partitionBytes(partition)));
+    List<TopicPartition> byUsedBytes = new ArrayList<>(partitionBytes.keySet());
+    byUsedBytes.sort(Comparator.comparingLong(partitionBytes::get).reversed());
+
+    // stop reading from the partitions holding the memory the task has to release
+    long bytesToRelease = usedBytes - lowWaterBytes;
+    List<TopicPartition> toPause = new ArrayList<>();
+    for (TopicPartition partition : byUsedBytes) {
+      long bytes = partitionBytes.get(partition);
+      if (bytesToRelease <= 0 || bytes == 0) {
+        break;
+      }
+      bytesToRelease -= bytes;
+      if (pausedPartitions.add(partition)) {
+        toPause.add(partition);
+      }
+    }
+
+    if (!toPause.isEmpty()) {
+      LOGGER.warn(
+          "Task memory usage {} bytes exceeds the budget of {} bytes, pausing partitions {}",
+          usedBytes,
+          maxBytes,
+          toPause);
+      context.pause(toPause.toArray(new TopicPartition[0]));
+    }
+  }
+
+  private static long usedBytes(Collection<? extends PartitionMemory> partitions) {
+    long usedBytes = 0;
+    for (PartitionMemory partition : partitions) {
+      usedBytes += partitionBytes(partition);
+    }
+    return usedBytes;
+  }
+
+  private static long partitionBytes(PartitionMemory partition) {
+    return partition.getBufferedBytes() + partition.getInFlightBytes();
+  }
+}
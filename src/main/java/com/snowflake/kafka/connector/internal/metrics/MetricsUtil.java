@@ -80,15 +80,48 @@ public class MetricsUtil {
   // in memory buffer count representing the number of records in kafka
   public static final String BUFFER_RECORD_COUNT = "buffer-record-count";
 
+  // buffer size at which the adaptive file sizer flushes the buffer of a partition
+  public static final String ADAPTIVE_FLUSH_SIZE_BYTES = "adaptive-flush-size-bytes";
+
+  // bytes of the files of a partition per buffered byte, learned by the adaptive file sizer
+  public static final String COMPRESSION_RATIO = "compression-ratio";
+
+  // buffered bytes per second received by a partition, learned by the adaptive file sizer
+  public static final String ARRIVAL_RATE_BYTES_PER_SECOND = "arrival-rate-bytes-per-second";
+
+  // size of the next files of a partition, below the target if it is flushed by time
+  public static final String PROJECTED_FILE_SIZE_BYTES = "projected-file-size-bytes";
+
   // Event Latency related constants
 
   public static final String LATENCY_SUB_DOMAIN = "latencies";
 
+  // Internal stage credential cache related constants
+  public static final String STAGE_CREDENTIAL_SUB_DOMAIN = "stage-credentials";
+
+  // number of uploads which found valid credentials in the cache
+  public static final String CREDENTIAL_CACHE_HIT_COUNT = "cache-hit-count";
+
+  // number of uploads which had to wait for credentials to be fetched
+  public static final String CREDENTIAL_CACHE_MISS_COUNT = "cache-miss-count";
+
+  // time to fetch credentials from GS, in the background or on the upload
+  public static final String CREDENTIAL_FETCH_LATENCY = "fetch-latency";
+
   // ************ Streaming Constants ************//
   /** See {@link BufferedTopicPartitionChannel} for offset description */
   public static final String OFFSET_PERSISTED_IN_SNOWFLAKE = "persisted-in-snowflake-offset";
 
   public static final String LATEST_CONSUMER_OFFSET = "latest-consumer-offset";
+
+  // Streaming client pool related constants
+  public static final String STREAMING_CLIENT_SUB_DOMAIN = "streaming-client";
+
+  // number of channels opened with a client of the pool
+  public static final String CLIENT_CHANNEL_COUNT = "channel-count";
+
+  // number of times a client of the pool was recreated because it became invalid
+  public static final String CLIENT_RECREATED_COUNT = "recreated-count";
   // ********** ^ Streaming Constants ^ **********//
 
   public enum EventType {
@@ -0,0 +1,162 @@
+package com.snowflake.kafka.connector.internal.streaming;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.snowflake.kafka.connector.internal.ColumnInfos;
+import com.snowflake.kafka.connector.internal.KCLogger;
+import com.snowflake.kafka.connector.internal.SnowflakeConnectionService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntFunction;
+import org.apache.kafka.connect.sink.SinkRecord;
+
+/**
+ * Evolves the schema of the table of a channel for a whole batch of rows before the batch is
+ * inserted.
+ *
+ * <p>The columns of the batch are compared against the columns the channel saw when it was opened:
+ * the union of the columns missing from the table and of the NOT NULL columns which are missing or
+ * null in any row is handed to the {@link SchemaEvolutionCoordinator}, which applies what other
+ * channels didn't already apply with at most one ALTER TABLE per kind of change. The channel is
+ * then reopened to see the new columns and the batch is inserted with a single insertRows call.
+ */
+class BatchSchemaEvolver {
+  private static final KCLogger LOGGER = new KCLogger(BatchSchemaEvolver.class.getName());
+
+  private final SnowflakeConnectionService conn;
+  private final SchemaEvolutionCoordinator.TableSchema table;
+
+  // columns of the table when the channel was opened, null if unknown
+  private SchemaEvolutionCoordinator.Snapshot channelSchema;
+
+  BatchSchemaEvolver(
+      SnowflakeConnectionService conn, SchemaEvolutionCoordinator.TableSchema table) {
+    this.conn = conn;
+    this.table = table;
+  }
+
+  /** Called before the channel is opened, it sees the columns known to the coordinator */
+  void onChannelOpening() {
+    channelSchema = table.peek();
+  }
+
+  /**
+   * Alter the table so that all rows of the batch can be inserted
+   *
+   * @param rows rows of the batch, keyed by column name as sent to insertRows
+   * @param recordOfRow sink record a row was converted from, used to find the type of new columns
+   * @return whether the table has columns the channel doesn't know yet, i.e. the channel has to be
+   *     reopened before the batch is inserted
+   */
+  boolean evolveSchemaIfNeeded(
+      List<Map<String, Object>> rows, IntFunction<SinkRecord> recordOfRow) {
+    if (channelSchema == null) {
+      channelSchema = table.get(conn);
+      if (channelSchema == null) {
+        // schema mismatches are handled once insertRows reports them
+        return false;
+      }
+    }
+
+    SchemaDiff diff = SchemaDiff.compute(channelSchema.columns, rows);
+    if (diff.isEmpty()) {
+      return false;
+    }
+
+    // the type of a new column is taken from the first record with a value for it
+    Map<Integer, List<String>> extraColumnsByRow = new LinkedHashMap<>();
+    diff.extraColumns.forEach(
+        (column, rowIdx) ->
+            extraColumnsByRow.computeIfAbsent(rowIdx, idx -> new ArrayList<>()).add(column));
+    Map<String, ColumnInfos> extraColumnsInfos = new HashMap<>();
+    extraColumnsByRow.forEach(
+        (rowIdx, extraColumns) ->
+            extraColumnsInfos.putAll(
+                SchematizationUtils.getColumnInfos(recordOfRow.apply(rowIdx), extraColumns)));
+
+    LOGGER.info(
+        "Triggering schema evolution for {} rows. NonNullableColumns={}, extraColumns={}",
+        rows.size(),
+        String.join(",", diff.nonNullableColumns),
+        String.join(",", extraColumnsInfos.keySet()));
+    table.evolve(conn, diff.nonNullableColumns, extraColumnsInfos);
+    return true;
+  }
+
+  /**
+   * Evolve the schema for the columns reported by insertRows, which the cached columns didn't
+   * predict, e.g. because the table was altered by someone else
+   *
+   * @param nonNullableColumns columns which have to be nullable
+   * @param extraColumnsInfos columns which have to be added, mapped to their types
+   */
+  void evolveReportedColumns(
+      List<String> nonNullableColumns, Map<String, ColumnInfos> extraColumnsInfos) {
+    table.refresh(conn, channelSchema);
+    table.evolve(conn, nonNullableColumns, extraColumnsInfos);
+  }
+
+  /**
+   * @param column column name as sent to insertRows, quoted unless it is a connector column
+   * @return column name as stored in Snowflake
+   */
+  private static String storedName(String column) {
+    return SchematizationUtils.formatName(column);
+  }
+
+  /** Columns which have to be added or made nullable before a batch can be inserted */
+  @VisibleForTesting
+  static class SchemaDiff {
+    // quoted column name -> index of the row the type of the column is taken from
+    final Map<String, Integer> extraColumns = new LinkedHashMap<>();
+    // quoted names of NOT NULL columns with missing or null values
+    final List<String> nonNullableColumns = new ArrayList<>();
+
+    /**
+     * @param tableColumns column name as stored in Snowflake -> whether the column is nullable
+     * @param rows rows of the batch
+     * @return the columns to change
+     */
+    static SchemaDiff compute(Map<String, Boolean> tableColumns, List<Map<String, Object>> rows) {
+      SchemaDiff diff = new SchemaDiff();
+      List<String> notNullColumns = new ArrayList<>();
+      tableColumns.forEach(
+          (column, nullable) -> {
+            if (!nullable) {
+              notNullColumns.add(column);
+            }
+          });
+      Set<String> nonNullableColumns = new LinkedHashSet<>();
+
+      for (int idx = 0; idx < rows.size(); idx++) {
+        Map<String, Object> row = rows.get(idx);
+        for (Map.Entry<String, Object> entry : row.entrySet()) {
+          String column = entry.getKey();
+          if (tableColumns.containsKey(storedName(column))) {
+            continue;
+          }
+          Integer typeRowIdx = diff.extraColumns.get(column);
+          if (typeRowIdx == null
+              || (entry.getValue() != null && rows.get(typeRowIdx).get(column) == null)) {
+            diff.extraColumns.put(column, idx);
+          }
+        }
+        for (String column : notNullColumns) {
+          if (row.get('"' + column + '"') == null && row.get(column) == null) {
+            nonNullableColumns.add('"' + column + '"');
+          }
+        }
+      }
+      diff.nonNullableColumns.addAll(nonNullableColumns);
+      return diff;
+    }
+
+    boolean isEmpty() {
+      return extraColumns.isEmpty() && nonNullableColumns.isEmpty();
+    }
+  }
+}
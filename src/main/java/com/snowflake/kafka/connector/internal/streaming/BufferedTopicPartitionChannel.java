@@ -7,7 +7,6 @@ import static com.snowflake.kafka.connector.SnowflakeSinkConnectorConfig.ERRORS_
 import static com.snowflake.kafka.connector.internal.streaming.StreamingUtils.DURATION_BETWEEN_GET_OFFSET_TOKEN_RETRY;
 import static com.snowflake.kafka.connector.internal.streaming.StreamingUtils.MAX_GET_OFFSET_TOKEN_RETRIES;
 import static java.time.temporal.ChronoUnit.SECONDS;
-import static org.apache.kafka.common.record.TimestampType.NO_TIMESTAMP_TYPE;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.MoreObjects;
@@ -17,8 +16,11 @@ import com.snowflake.kafka.connector.SnowflakeSinkConnectorConfig;
 import com.snowflake.kafka.connector.Utils;
 import com.snowflake.kafka.connector.dlq.KafkaRecordErrorReporter;
 import com.snowflake.kafka.connector.internal.BufferThreshold;
+import com.snowflake.kafka.connector.internal.ColumnInfos;
+import com.snowflake.kafka.connector.internal.FlushDeadlineScheduler;
 import com.snowflake.kafka.connector.internal.KCLogger;
 import com.snowflake.kafka.connector.internal.PartitionBuffer;
+import com.snowflake.kafka.connector.internal.PartitionFlushExecutor;
 import com.snowflake.kafka.connector.internal.SnowflakeConnectionService;
 import com.snowflake.kafka.connector.internal.SnowflakeErrors;
 import com.snowflake.kafka.connector.internal.SnowflakeKafkaConnectorException;
@@ -38,8 +40,8 @@ import java.io.ByteArrayOutputStream;
 import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -49,6 +51,8 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
 import net.snowflake.client.jdbc.internal.fasterxml.jackson.core.JsonProcessingException;
 import net.snowflake.ingest.streaming.InsertValidationResponse;
 import net.snowflake.ingest.streaming.OpenChannelRequest;
@@ -83,7 +87,7 @@ public class BufferedTopicPartitionChannel implements TopicPartitionChannel {
       new KCLogger(BufferedTopicPartitionChannel.class.getName());
 
   // last time we invoked insertRows API
-  private long previousFlushTimeStampMs;
+  private volatile long previousFlushTimeStampMs;
 
   /* Buffer to hold JSON converted incoming SinkRecords */
   private StreamingBuffer streamingBuffer;
@@ -92,7 +96,27 @@ public class BufferedTopicPartitionChannel implements TopicPartitionChannel {
 
   // used to communicate to the streaming ingest's insertRows API
   // This is non final because we might decide to get the new instance of Channel
-  private SnowflakeStreamingIngestChannel channel;
+  private volatile SnowflakeStreamingIngestChannel channel;
+
+  // inserts the flushed buffers in order off the task thread, null if they are inserted by the
+  // thread flushing them
+  @Nullable private PartitionFlushExecutor.Lane insertLane;
+
+  // called once an insert off the task thread requires the offset in Kafka to be reset
+  @Nullable private Runnable offsetResetListener;
+
+  // bytes of the buffers handed to the insert lane and not inserted yet
+  private final AtomicLong inFlightBytes = new AtomicLong(0);
+
+  // thread Kafka Connect inserts the records from, null until the first record
+  private volatile Thread taskThread;
+
+  // reset of the offset in Kafka found by a flush off the task thread, applied by the task thread
+  private volatile PendingOffsetReset pendingOffsetReset;
+
+  // incremented by each reset of the offset in Kafka, the buffers handed to the insert lane before
+  // are no longer inserted
+  private final AtomicLong offsetResetCount = new AtomicLong(0);
 
   // -------- private final fields -------- //
 
@@ -115,6 +139,10 @@ public class BufferedTopicPartitionChannel implements TopicPartitionChannel {
   private final AtomicLong latestConsumerOffset =
       new AtomicLong(NO_OFFSET_TOKEN_REGISTERED_IN_SNOWFLAKE);
 
+  // Offset token of the last rows inserted into the channel, what Snowflake commits once the
+  // channel is flushed
+  private volatile long lastInsertedOffset = NO_OFFSET_TOKEN_REGISTERED_IN_SNOWFLAKE;
+
   // Indicates whether we need to skip and discard any leftover rows in the current batch, this
   // could happen when the channel gets invalidated and reset, then anything left in the buffer
   // should be skipped
@@ -137,6 +165,9 @@ public class BufferedTopicPartitionChannel implements TopicPartitionChannel {
   /* Responsible for converting records to Json */
   private final RecordService recordService;
 
+  /* Columns of the table whose objects and arrays are passed to the channel as Map and List */
+  private final SemiStructuredColumns semiStructuredColumns = new SemiStructuredColumns();
+
   /* Responsible for returning errors to DLQ if records have failed to be ingested. */
   private final KafkaRecordErrorReporter kafkaRecordErrorReporter;
 
@@ -166,6 +197,9 @@ public class BufferedTopicPartitionChannel implements TopicPartitionChannel {
   // Whether schema evolution could be done on this channel
   private final boolean enableSchemaEvolution;
 
+  // Evolves the schema of the table for a whole buffer before it is inserted
+  private final BatchSchemaEvolver schemaEvolver;
+
   // Reference to the Snowflake connection service
   private final SnowflakeConnectionService conn;
 
@@ -270,6 +304,14 @@ public class BufferedTopicPartitionChannel implements TopicPartitionChannel {
         this.recordService.setAndGetEnableSchematizationFromConfig(sfConnectorConfig);
 
     this.enableSchemaEvolution = this.enableSchematization && hasSchemaEvolutionPermission;
+    this.schemaEvolver =
+        new BatchSchemaEvolver(
+            this.conn,
+            SchemaEvolutionCoordinator.getInstance()
+                .getTable(
+                    sfConnectorConfig.get(Utils.SF_DATABASE),
+                    sfConnectorConfig.get(Utils.SF_SCHEMA),
+                    this.tableName));
 
     if (isEnableChannelOffsetMigration(sfConnectorConfig)) {
       /* Channel Name format V2 is computed from connector name, topic and partition */
@@ -285,6 +327,7 @@ public class BufferedTopicPartitionChannel implements TopicPartitionChannel {
     final long lastCommittedOffsetToken = fetchOffsetTokenWithRetry();
     this.offsetPersistedInSnowflake.set(lastCommittedOffsetToken);
     this.processedOffset.set(lastCommittedOffsetToken);
+    this.lastInsertedOffset = lastCommittedOffsetToken;
 
     // setup telemetry and metrics
     String connectorName =
@@ -351,10 +394,17 @@ public class BufferedTopicPartitionChannel implements TopicPartitionChannel {
       this.latestConsumerOffset.set(kafkaSinkRecord.kafkaOffset());
     }
 
+    this.taskThread = Thread.currentThread();
+    if (insertLane != null) {
+      insertLane.throwIfFailed();
+    }
+
     // Reset the value if it's a new batch
     if (isFirstRowPerPartitionInBatch) {
       needToSkipCurrentBatch = false;
     }
+    // skips the rest of the batch, the offset in Kafka is reset once the batch is done
+    applyPendingOffsetReset();
 
     // Simply skip inserting into the buffer if the row should be ignored after channel reset
     if (needToSkipCurrentBatch) {
@@ -371,7 +421,8 @@ public class BufferedTopicPartitionChannel implements TopicPartitionChannel {
     // incoming record offset is 1 + the processed offset
     if (currentProcessedOffset == NO_OFFSET_TOKEN_REGISTERED_IN_SNOWFLAKE
         || kafkaSinkRecord.kafkaOffset() >= currentProcessedOffset + 1) {
-      StreamingBuffer copiedStreamingBuffer = null;
+      // the buffer can be flushed in the background, it is inserted under the lock so that the
+      // rows of the channel are inserted in order
       bufferLock.lock();
       try {
         this.streamingBuffer.insert(kafkaSinkRecord);
@@ -381,7 +432,7 @@ public class BufferedTopicPartitionChannel implements TopicPartitionChannel {
                 streamingBuffer.getBufferSizeBytes())
             || this.streamingBufferThreshold.shouldFlushOnBufferRecordCount(
                 streamingBuffer.getNumOfRecords())) {
-          copiedStreamingBuffer = streamingBuffer;
+          StreamingBuffer copiedStreamingBuffer = streamingBuffer;
           this.streamingBuffer = new StreamingBuffer();
           LOGGER.debug(
               "Flush based on buffered bytes or buffered number of records for"
@@ -391,16 +442,13 @@ public class BufferedTopicPartitionChannel implements TopicPartitionChannel {
               copiedStreamingBuffer.getBufferSizeBytes(),
               copiedStreamingBuffer.getSinkRecords().size(),
               this.streamingBufferThreshold);
+          // If we found reaching buffer size threshold or count based threshold, we will
+          // immediately flush (Insert them)
+          insertOrHandOff(copiedStreamingBuffer);
         }
       } finally {
         bufferLock.unlock();
       }
-
-      // If we found reaching buffer size threshold or count based threshold, we will immediately
-      // flush (Insert them)
-      if (copiedStreamingBuffer != null) {
-        insertRecords(copiedStreamingBuffer);
-      }
     } else {
       LOGGER.warn(
           "Channel {} - skipping current record - expected offset {} but received {}. The current"
@@ -475,6 +523,9 @@ public class BufferedTopicPartitionChannel implements TopicPartitionChannel {
 
   @Override
   public void insertBufferedRecordsIfFlushTimeThresholdReached() {
+    if (isTaskThread()) {
+      applyPendingOffsetReset();
+    }
     if (this.streamingBufferThreshold.shouldFlushOnBufferTime(this.previousFlushTimeStampMs)) {
       LOGGER.debug(
           "Time based flush for channel:{}, CurrentTimeMs:{}, previousFlushTimeMs:{},"
@@ -483,18 +534,104 @@ public class BufferedTopicPartitionChannel implements TopicPartitionChannel {
           System.currentTimeMillis(),
           this.previousFlushTimeStampMs,
           this.streamingBufferThreshold.getFlushTimeThresholdSeconds());
-      StreamingBuffer copiedStreamingBuffer;
-      bufferLock.lock();
-      try {
-        copiedStreamingBuffer = this.streamingBuffer;
-        this.streamingBuffer = new StreamingBuffer();
-      } finally {
-        bufferLock.unlock();
-      }
-      if (copiedStreamingBuffer != null) {
-        insertRecords(copiedStreamingBuffer);
-      }
+      flushBuffer();
+    }
+  }
+
+  @Override
+  public void flushBuffer() {
+    bufferLock.lock();
+    try {
+      StreamingBuffer copiedStreamingBuffer = this.streamingBuffer;
+      this.streamingBuffer = new StreamingBuffer();
+      insertOrHandOff(copiedStreamingBuffer);
+    } finally {
+      bufferLock.unlock();
+    }
+  }
+
+  /**
+   * Insert the flushed buffer, or hand it to the insert lane. Called with the buffer lock held, so
+   * that the buffers are inserted in the order they were flushed whichever thread flushes them.
+   */
+  private void insertOrHandOff(StreamingBuffer flushedBuffer) {
+    if (insertLane == null || flushedBuffer.isEmpty()) {
+      insertRecords(flushedBuffer);
+      return;
     }
+    long resetCount = offsetResetCount.get();
+    long bufferBytes = flushedBuffer.getBufferSizeBytes();
+    inFlightBytes.addAndGet(bufferBytes);
+    try {
+      insertLane.submit(
+          () -> {
+            try {
+              if (resetCount == offsetResetCount.get()) {
+                insertRecords(flushedBuffer);
+              } else {
+                // the records are sent again from the offset the partition was reset to
+                LOGGER.info(
+                    "Skipping buffer:{} of channel:{} handed off before the reset of its offset",
+                    flushedBuffer,
+                    this.getChannelNameFormatV1());
+              }
+            } finally {
+              inFlightBytes.addAndGet(-bufferBytes);
+            }
+          });
+    } catch (RuntimeException e) {
+      inFlightBytes.addAndGet(-bufferBytes);
+      throw e;
+    }
+    // the next time based flush is counted from the hand off
+    this.previousFlushTimeStampMs = System.currentTimeMillis();
+  }
+
+  /**
+   * Insert the flushed buffers on the threads of the executor, the task thread converts and buffers
+   * the next records meanwhile. Has to be called before the first record is inserted.
+   *
+   * <p>The offset in Kafka is only reset by the task thread, between two records of a batch, so
+   * that the records it already received for the partition are skipped. When an insert off the task
+   * thread reopens the channel, the buffers handed off after are skipped and the reset is applied
+   * by the next call to {@link #insertRecord(SinkRecord, boolean)} or {@link
+   * #insertBufferedRecordsIfFlushTimeThresholdReached()} on the task thread.
+   *
+   * @param insertExecutor executor shared by the channels of the task
+   * @param offsetResetListener called once a reset has to be applied by the task thread
+   */
+  void enableAsyncInsert(PartitionFlushExecutor insertExecutor, Runnable offsetResetListener) {
+    this.insertLane = insertExecutor.newLane();
+    this.offsetResetListener = offsetResetListener;
+  }
+
+  @Override
+  public long getFlushDeadlineMs() {
+    if (pendingOffsetReset != null) {
+      // the task thread applies the reset when the channel is flushed
+      return 0;
+    }
+    return streamingBuffer.isEmpty()
+        ? FlushDeadlineScheduler.NO_DEADLINE
+        : this.previousFlushTimeStampMs
+            + this.streamingBufferThreshold.getFlushTimeThresholdSeconds() * 1000;
+  }
+
+  @Override
+  public TopicPartition getTopicPartition() {
+    return topicPartition;
+  }
+
+  @Override
+  public long getBufferedBytes() {
+    return streamingBuffer.getBufferSizeBytes();
+  }
+
+  // insertRows returns once the rows are handed to the ingest SDK, which bounds the memory of the
+  // rows it didn't flush yet on its own
+  @Override
+  public long getInFlightBytes() {
+    return inFlightBytes.get();
   }
 
   public InsertRowsResponse insertRecords(StreamingBuffer streamingBufferToInsert) {
@@ -504,9 +641,20 @@ public class BufferedTopicPartitionChannel implements TopicPartitionChannel {
       this.previousFlushTimeStampMs = System.currentTimeMillis();
       return null;
     }
+    if (pendingOffsetReset != null) {
+      // the records are sent again once the task thread resets the offset in Kafka
+      LOGGER.info(
+          "Skipping buffer:{} of channel:{} until the reset of its offset",
+          streamingBufferToInsert,
+          this.getChannelNameFormatV1());
+      return null;
+    }
     InsertRowsResponse response = null;
     try {
       response = insertRowsWithFallback(streamingBufferToInsert);
+      if (!response.needToResetOffset()) {
+        this.lastInsertedOffset = streamingBufferToInsert.getLastOffset();
+      }
       // Updates the flush time (last time we called insertRows API)
       this.previousFlushTimeStampMs = System.currentTimeMillis();
 
@@ -582,15 +730,20 @@ public class BufferedTopicPartitionChannel implements TopicPartitionChannel {
     return Failsafe.with(reopenChannelFallbackExecutorForInsertRows)
         .get(
             new InsertRowsApiResponseSupplier(
-                this.channel, buffer, this.enableSchemaEvolution, this.conn));
+                this.channel,
+                buffer,
+                this.enableSchemaEvolution,
+                this.schemaEvolver,
+                this::reopenChannelAfterSchemaEvolution));
   }
 
   /** Invokes the API given the channel and streaming Buffer. */
   private static class InsertRowsApiResponseSupplier
       implements CheckedSupplier<InsertRowsResponse> {
 
-    // Reference to the Snowpipe Streaming channel
-    private final SnowflakeStreamingIngestChannel channel;
+    // Reference to the Snowpipe Streaming channel, replaced when it is reopened after schema
+    // evolution
+    private SnowflakeStreamingIngestChannel channel;
 
     // Buffer that holds the original sink records from kafka
     private final StreamingBuffer insertRowsStreamingBuffer;
@@ -598,18 +751,28 @@ public class BufferedTopicPartitionChannel implements TopicPartitionChannel {
     // Whether the schema evolution is enabled
     private final boolean enableSchemaEvolution;
 
-    // Connection service which will be used to do the ALTER TABLE command for schema evolution
-    private final SnowflakeConnectionService conn;
+    // Evolves the schema of the table for the whole batch before it is inserted
+    private final BatchSchemaEvolver schemaEvolver;
+
+    // Reopens the channel after schema evolution, returns null if the offset has to be reset
+    private final Supplier<SnowflakeStreamingIngestChannel> channelReopener;
 
     private InsertRowsApiResponseSupplier(
         SnowflakeStreamingIngestChannel channelForInsertRows,
         StreamingBuffer insertRowsStreamingBuffer,
         boolean enableSchemaEvolution,
-        SnowflakeConnectionService conn) {
+        BatchSchemaEvolver schemaEvolver,
+        Supplier<SnowflakeStreamingIngestChannel> channelReopener) {
       this.channel = channelForInsertRows;
       this.insertRowsStreamingBuffer = insertRowsStreamingBuffer;
       this.enableSchemaEvolution = enableSchemaEvolution;
-      this.conn = conn;
+      this.schemaEvolver = schemaEvolver;
+      this.channelReopener = channelReopener;
+    }
+
+    /** @return index in the buffer of the sink record the row at rowIdx was converted from */
+    private int originalIndex(List<Long> offsets, int rowIdx) {
+      return (int) (offsets.get(rowIdx) - this.insertRowsStreamingBuffer.getFirstOffset());
     }
 
     @Override
@@ -622,70 +785,74 @@ public class BufferedTopicPartitionChannel implements TopicPartitionChannel {
           this.insertRowsStreamingBuffer.getData();
       List<Map<String, Object>> records = recordsAndOffsets.getKey();
       List<Long> offsets = recordsAndOffsets.getValue();
+      if (enableSchemaEvolution
+          // evolve the schema for the whole batch upfront, so it can be inserted in one call
+          && this.schemaEvolver.evolveSchemaIfNeeded(
+              records,
+              idx -> this.insertRowsStreamingBuffer.getSinkRecord(originalIndex(offsets, idx)))) {
+        SnowflakeStreamingIngestChannel reopenedChannel = this.channelReopener.get();
+        if (reopenedChannel == null) {
+          return new InsertRowsResponse(new InsertValidationResponse(), true);
+        }
+        this.channel = reopenedChannel;
+      }
+      InsertValidationResponse response =
+          this.channel.insertRows(
+              records,
+              Long.toString(this.insertRowsStreamingBuffer.getFirstOffset()),
+              Long.toString(this.insertRowsStreamingBuffer.getLastOffset()));
+      if (!enableSchemaEvolution || !response.hasErrors()) {
+        return new InsertRowsResponse(response, false);
+      }
+
       InsertValidationResponse finalResponse = new InsertValidationResponse();
       boolean needToResetOffset = false;
-      if (!enableSchemaEvolution) {
-        finalResponse =
-            this.channel.insertRows(
-                records,
-                Long.toString(this.insertRowsStreamingBuffer.getFirstOffset()),
-                Long.toString(this.insertRowsStreamingBuffer.getLastOffset()));
-      } else {
-        for (int idx = 0; idx < records.size(); idx++) {
-          // For schema evolution, we need to call the insertRows API row by row in order to
-          // preserve the original order, for anything after the first schema mismatch error we will
-          // retry after the evolution
-          InsertValidationResponse response =
-              this.channel.insertRow(records.get(idx), Long.toString(offsets.get(idx)));
-          if (response.hasErrors()) {
-            InsertValidationResponse.InsertError insertError = response.getInsertErrors().get(0);
-            List<String> extraColNames = insertError.getExtraColNames();
-
-            List<String> missingNotNullColNames = insertError.getMissingNotNullColNames();
-            Set<String> nonNullableColumns =
-                new HashSet<>(
-                    missingNotNullColNames != null
-                        ? missingNotNullColNames
-                        : Collections.emptySet());
-
-            List<String> nullValueForNotNullColNames = insertError.getNullValueForNotNullColNames();
-            nonNullableColumns.addAll(
-                nullValueForNotNullColNames != null
-                    ? nullValueForNotNullColNames
-                    : Collections.emptySet());
-
-            long originalSinkRecordIdx =
-                offsets.get(idx) - this.insertRowsStreamingBuffer.getFirstOffset();
-
-            if (extraColNames == null && nonNullableColumns.isEmpty()) {
-              InsertValidationResponse.InsertError newInsertError =
-                  new InsertValidationResponse.InsertError(
-                      insertError.getRowContent(), originalSinkRecordIdx);
-              newInsertError.setException(insertError.getException());
-              newInsertError.setExtraColNames(insertError.getExtraColNames());
-              newInsertError.setMissingNotNullColNames(insertError.getMissingNotNullColNames());
-              newInsertError.setNullValueForNotNullColNames(
-                  insertError.getNullValueForNotNullColNames());
-              // Simply added to the final response if it's not schema related errors
-              finalResponse.addError(insertError);
-            } else {
-              LOGGER.info(
-                  "Triggering schema evolution. NonNullableColumns={}, extraColumns={}",
-                  String.join(",", nonNullableColumns),
-                  extraColNames == null ? "null" : String.join(",", extraColNames));
-              SchematizationUtils.evolveSchemaIfNeeded(
-                  this.conn,
-                  this.channel.getTableName(),
-                  new ArrayList<>(nonNullableColumns),
-                  extraColNames,
-                  this.insertRowsStreamingBuffer.getSinkRecord(originalSinkRecordIdx));
-              // Offset reset needed since it's possible that we successfully ingested partial batch
-              needToResetOffset = true;
-              break;
-            }
-          }
+      Set<String> nonNullableColumns = new LinkedHashSet<>();
+      Map<String, ColumnInfos> extraColumnsInfos = new HashMap<>();
+      for (InsertValidationResponse.InsertError insertError : response.getInsertErrors()) {
+        List<String> extraColNames = insertError.getExtraColNames();
+        List<String> missingNotNullColNames = insertError.getMissingNotNullColNames();
+        List<String> nullValueForNotNullColNames = insertError.getNullValueForNotNullColNames();
+        long originalSinkRecordIdx = originalIndex(offsets, (int) insertError.getRowIndex());
+
+        if (extraColNames == null
+            && missingNotNullColNames == null
+            && nullValueForNotNullColNames == null) {
+          // Simply added to the final response if it's not schema related errors
+          InsertValidationResponse.InsertError newInsertError =
+              new InsertValidationResponse.InsertError(
+                  insertError.getRowContent(), originalSinkRecordIdx);
+          newInsertError.setException(insertError.getException());
+          finalResponse.addError(newInsertError);
+          continue;
+        }
+        needToResetOffset = true;
+        if (missingNotNullColNames != null) {
+          nonNullableColumns.addAll(missingNotNullColNames);
+        }
+        if (nullValueForNotNullColNames != null) {
+          nonNullableColumns.addAll(nullValueForNotNullColNames);
+        }
+        if (extraColNames != null) {
+          SchematizationUtils.getColumnInfos(
+                  this.insertRowsStreamingBuffer.getSinkRecord(originalSinkRecordIdx),
+                  extraColNames)
+              .forEach(extraColumnsInfos::putIfAbsent);
         }
       }
+
+      if (needToResetOffset) {
+        // the table changed since its columns were cached, or the ALTER failed
+        LOGGER.info(
+            "Triggering schema evolution. NonNullableColumns={}, extraColumns={}",
+            String.join(",", nonNullableColumns),
+            String.join(",", extraColumnsInfos.keySet()));
+        this.schemaEvolver.evolveReportedColumns(
+            new ArrayList<>(nonNullableColumns), extraColumnsInfos);
+        // Offset reset needed since it's possible that we successfully ingested partial batch, the
+        // rows with other errors are reported when the batch is inserted again
+        return new InsertRowsResponse(new InsertValidationResponse(), true);
+      }
       return new InsertRowsResponse(finalResponse, needToResetOffset);
     }
   }
@@ -776,7 +943,8 @@ public class BufferedTopicPartitionChannel implements TopicPartitionChannel {
     }
   }
 
-  // TODO: SNOW-529755 POLL committed offsets in background thread
+  // CommittedOffsetPoller polls the committed offsets of all channels in the background, this
+  // fetches the offset of this channel when no recent polled offset is available
 
   @Override
   public long getOffsetSafeToCommitToKafka() {
@@ -908,7 +1076,28 @@ public class BufferedTopicPartitionChannel implements TopicPartitionChannel {
       return;
     }
 
+    if (!isTaskThread()) {
+      // the task thread may be adding records of the current batch to the buffer, it has to skip
+      // them itself
+      this.channel = newChannel;
+      this.pendingOffsetReset =
+          new PendingOffsetReset(streamingApiFallbackInvoker, offsetRecoveredFromSnowflake);
+      offsetResetCount.incrementAndGet();
+      LOGGER.warn(
+          "{} Channel:{}, OffsetRecoveredFromSnowflake:{}, kafka offset will be reset to:{} by"
+              + " the task thread",
+          streamingApiFallbackInvoker,
+          this.getChannelNameFormatV1(),
+          offsetRecoveredFromSnowflake,
+          offsetToResetInKafka);
+      if (offsetResetListener != null) {
+        offsetResetListener.run();
+      }
+      return;
+    }
+
     // reset the buffer
+    offsetResetCount.incrementAndGet();
     this.bufferLock.lock();
     try {
       LOGGER.warn(
@@ -925,6 +1114,7 @@ public class BufferedTopicPartitionChannel implements TopicPartitionChannel {
       // might get rejected.
       this.offsetPersistedInSnowflake.set(offsetRecoveredFromSnowflake);
       this.processedOffset.set(offsetRecoveredFromSnowflake);
+      this.lastInsertedOffset = offsetRecoveredFromSnowflake;
 
       // Set the flag so that any leftover rows in the buffer should be skipped, it will be
       // re-ingested since the offset in kafka was reset
@@ -941,6 +1131,81 @@ public class BufferedTopicPartitionChannel implements TopicPartitionChannel {
         offsetToResetInKafka);
   }
 
+  // the offset in Kafka is reset from the thread the records are inserted from, or the one opening
+  // the channel
+  private boolean isTaskThread() {
+    Thread thread = this.taskThread;
+    return thread == null || thread == Thread.currentThread();
+  }
+
+  /**
+   * Apply the reset of the offset in Kafka found by a flush off the task thread. The flush
+   * scheduler can flush the channel in the background, but the offset is only reset by the task
+   * thread, between two records of a batch, so that the records it already received for the
+   * partition are skipped.
+   */
+  private void applyPendingOffsetReset() {
+    PendingOffsetReset reset = this.pendingOffsetReset;
+    if (reset == null) {
+      return;
+    }
+    this.pendingOffsetReset = null;
+    resetChannelMetadataAfterRecovery(reset.invoker, reset.offsetRecoveredFromSnowflake, channel);
+  }
+
+  private static class PendingOffsetReset {
+    private final StreamingApiFallbackInvoker invoker;
+    private final long offsetRecoveredFromSnowflake;
+
+    private PendingOffsetReset(
+        StreamingApiFallbackInvoker invoker, long offsetRecoveredFromSnowflake) {
+      this.invoker = invoker;
+      this.offsetRecoveredFromSnowflake = offsetRecoveredFromSnowflake;
+    }
+  }
+
+  /**
+   * Reopen the channel after schema evolution, a channel only sees the columns the table had when
+   * it was opened.
+   *
+   * <p>The channel is closed first, which waits until the rows inserted into it are committed. If
+   * the reopened channel then starts from the last inserted offset, the buffer can be inserted
+   * without resetting the offset in Kafka.
+   *
+   * @return the reopened channel, null if the rows of the closed channel weren't committed and the
+   *     offset has to be reset
+   */
+  private SnowflakeStreamingIngestChannel reopenChannelAfterSchemaEvolution() {
+    try {
+      this.channel.close().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (ExecutionException | SFException e) {
+      LOGGER.warn(
+          "Failure closing channel:{} after schema evolution: {}",
+          this.getChannelNameFormatV1(),
+          e.getMessage());
+    }
+    SnowflakeStreamingIngestChannel newChannel =
+        reopenChannel(StreamingApiFallbackInvoker.INSERT_ROWS_SCHEMA_EVOLUTION_FALLBACK);
+    this.channel = newChannel;
+    long committedOffset = fetchLatestOffsetFromChannel(newChannel);
+    if (committedOffset != this.lastInsertedOffset) {
+      LOGGER.warn(
+          "Channel:{} reopened after schema evolution at offset:{}, expected:{}",
+          this.getChannelNameFormatV1(),
+          committedOffset,
+          this.lastInsertedOffset);
+      return null;
+    }
+    LOGGER.info(
+        "Channel:{} reopened after schema evolution at offset:{}",
+        this.getChannelNameFormatV1(),
+        committedOffset);
+    return newChannel;
+  }
+
   /**
    * {@link Fallback} executes below code if retries have failed on {@link SFException}.
    *
@@ -1008,6 +1273,8 @@ public class BufferedTopicPartitionChannel implements TopicPartitionChannel {
    * @return new channel which was fetched after open/reopen
    */
   private SnowflakeStreamingIngestChannel openChannelForTable() {
+    // the channel sees the columns of the table at the time it is opened
+    this.schemaEvolver.onChannelOpening();
     OpenChannelRequest channelRequest =
         OpenChannelRequest.builder(this.channelNameFormatV1)
             .setDBName(this.sfConnectorConfig.get(Utils.SF_DATABASE))
@@ -1025,6 +1292,7 @@ public class BufferedTopicPartitionChannel implements TopicPartitionChannel {
 
   @Override
   public void closeChannel() {
+    stopAsyncInserts();
     try {
       this.channel.close().get();
 
@@ -1048,11 +1316,21 @@ public class BufferedTopicPartitionChannel implements TopicPartitionChannel {
 
   @Override
   public CompletableFuture<Void> closeChannelAsync() {
+    stopAsyncInserts();
     return closeChannelWrapped()
         .thenAccept(__ -> onCloseChannelSuccess())
         .exceptionally(this::tryRecoverFromCloseChannelError);
   }
 
+  // the buffers handed off and not inserted yet are skipped, their records are sent again to the
+  // channel opened after the rebalance
+  private void stopAsyncInserts() {
+    if (insertLane != null) {
+      offsetResetCount.incrementAndGet();
+      insertLane.awaitCompletion();
+    }
+  }
+
   private CompletableFuture<Void> closeChannelWrapped() {
     try {
       return this.channel.close();
@@ -1192,72 +1470,65 @@ public class BufferedTopicPartitionChannel implements TopicPartitionChannel {
   }
 
   /**
-   * Get Approximate size of Sink Record which we get from Kafka. This is useful to find out how
-   * much data(records) we have buffered per channel/partition.
-   *
-   * <p>This is an approximate size since there is no API available to find out size of record.
-   *
-   * <p>We first serialize the incoming kafka record into a Json format and find estimate size.
+   * Converts the kafka record into the row passed to insertRows API, together with the size of the
+   * row. Conversion happens once when the record enters the buffer, the row is kept until the
+   * buffer is flushed.
    *
-   * <p>Please note, the size we calculate here is not accurate and doesnt match with actual size of
-   * Kafka record which we buffer in memory. (Kafka Sink Record has lot of other metadata
-   * information which is discarded when we calculate the size of Json Record)
+   * <p>The size is an approximation of the memory used by the row: there is no API available to
+   * find out the size of a record, it doesn't include the Kafka Sink Record which has lot of other
+   * metadata information.
    *
-   * <p>We also do the same processing just before calling insertRows API for the buffered rows.
-   *
-   * <p>Downside of this calculation is we might try to buffer more records but we could be close to
-   * JVM memory getting full
+   * <p>Broken records and records which can't be converted are not rejected here, they are reported
+   * to the DLQ when the buffer is flushed, see {@link StreamingBuffer#getData()}.
    *
    * @param kafkaSinkRecord sink record received as is from Kafka (With connector specific converter
    *     being invoked)
-   * @return Approximate long size of record in bytes. 0 if record is broken
+   * @return the converted row and its approximate size in bytes
    */
-  protected long getApproxSizeOfRecordInBytes(SinkRecord kafkaSinkRecord) {
-    long sinkRecordBufferSizeInBytes = 0L;
-
+  private ConvertedRecord convertRecord(SinkRecord kafkaSinkRecord) {
     SinkRecord snowflakeRecord = getSnowflakeSinkRecordFromKafkaRecord(kafkaSinkRecord);
 
     if (isRecordBroken(snowflakeRecord)) {
       // we won't be able to find accurate size of serialized record since serialization itself
       // failed
       // But this will not happen in streaming ingest since we deprecated custom converters.
-      return 0L;
+      return new ConvertedRecord(null, new DataException("Broken Record"), 0L);
     }
 
     try {
       // get the row that we want to insert into Snowflake.
       Map<String, Object> tableRow =
-          recordService.getProcessedRecordForStreamingIngest(snowflakeRecord);
-      // need to loop through the map and get the object node
-      for (Map.Entry<String, Object> entry : tableRow.entrySet()) {
-        sinkRecordBufferSizeInBytes += entry.getKey().length() * 2L;
-        // Can Typecast into string because value is JSON
-        Object value = entry.getValue();
-        if (value != null) {
-          if (value instanceof String) {
-            sinkRecordBufferSizeInBytes += ((String) value).length() * 2L; // 1 char = 2 bytes
-          } else {
-            // for now it could only be a list of string
-            for (String s : (List<String>) value) {
-              sinkRecordBufferSizeInBytes += s.length() * 2L;
-            }
-          }
-        }
+          recordService.getProcessedRecordForStreamingIngest(
+              snowflakeRecord, semiStructuredColumns.forChannel(this.channel));
+      return new ConvertedRecord(
+          tableRow,
+          null,
+          StreamingUtils.getRowSizeInBytes(tableRow) + StreamingUtils.MAX_RECORD_OVERHEAD_BYTES);
+    } catch (JsonProcessingException e) {
+      return new ConvertedRecord(null, e, StreamingUtils.MAX_RECORD_OVERHEAD_BYTES);
+    } catch (SnowflakeKafkaConnectorException e) {
+      if (e.checkErrorCode(SnowflakeErrors.ERROR_0010)) {
+        return new ConvertedRecord(null, e, StreamingUtils.MAX_RECORD_OVERHEAD_BYTES);
       }
+      throw new RuntimeException(e);
     } catch (Exception e) {
-      boolean isJsonProcessingEx = e instanceof JsonProcessingException;
-      boolean isSnowflakeParsingEx =
-          e instanceof SnowflakeKafkaConnectorException
-              && ((SnowflakeKafkaConnectorException) e).checkErrorCode(SnowflakeErrors.ERROR_0010);
-      if (!(isJsonProcessingEx || isSnowflakeParsingEx)) {
-        // We ignore any errors parsing exceptions here because this is just calculating the record
-        // size
-        throw new RuntimeException(e);
-      }
+      throw new RuntimeException(e);
     }
+  }
 
-    sinkRecordBufferSizeInBytes += StreamingUtils.MAX_RECORD_OVERHEAD_BYTES;
-    return sinkRecordBufferSizeInBytes;
+  /** A kafka record converted by {@link #convertRecord(SinkRecord)} */
+  private static class ConvertedRecord {
+    // null if the record couldn't be converted
+    private final Map<String, Object> row;
+    // reason why the record couldn't be converted, reported to the DLQ on flush
+    private final Exception conversionError;
+    private final long sizeInBytes;
+
+    private ConvertedRecord(Map<String, Object> row, Exception conversionError, long sizeInBytes) {
+      this.row = row;
+      this.conversionError = conversionError;
+      this.sizeInBytes = sizeInBytes;
+    }
   }
 
   // ------ INNER CLASS ------ //
@@ -1270,91 +1541,69 @@ public class BufferedTopicPartitionChannel implements TopicPartitionChannel {
    * records from Kafka and once threshold has reached, we would call insertRows API to insert into
    * Snowflake.
    *
-   * <p>We would transform kafka records to Snowflake understood records (In JSON format) just
-   * before calling insertRows API.
+   * <p>We transform kafka records to Snowflake understood records (In JSON format) when they are
+   * inserted in the buffer, the original kafka records are kept for schema evolution and the DLQ.
    */
   @VisibleForTesting
   class StreamingBuffer extends PartitionBuffer<Pair<List<Map<String, Object>>, List<Long>>> {
     // Records coming from Kafka
     private final List<SinkRecord> sinkRecords;
 
+    // Rows converted from sinkRecords, same index as the record they were converted from
+    private final List<ConvertedRecord> convertedRecords;
+
     StreamingBuffer() {
       super();
       sinkRecords = new ArrayList<>();
+      convertedRecords = new ArrayList<>();
     }
 
     @Override
     public void insert(SinkRecord kafkaSinkRecord) {
+      final ConvertedRecord convertedRecord = convertRecord(kafkaSinkRecord);
       if (sinkRecords.isEmpty()) {
         setFirstOffset(kafkaSinkRecord.kafkaOffset());
       }
       sinkRecords.add(kafkaSinkRecord);
+      convertedRecords.add(convertedRecord);
 
       setNumOfRecords(getNumOfRecords() + 1);
       setLastOffset(kafkaSinkRecord.kafkaOffset());
 
-      final long currentKafkaRecordSizeInBytes = getApproxSizeOfRecordInBytes(kafkaSinkRecord);
       // update size of buffer
-      setBufferSizeBytes(getBufferSizeBytes() + currentKafkaRecordSizeInBytes);
+      setBufferSizeBytes(getBufferSizeBytes() + convertedRecord.sizeInBytes);
     }
 
     /**
      * Get all rows and their offsets. Each map corresponds to one row whose keys are column names
      * and values are corresponding data in that column.
      *
-     * <p>This goes over through all buffered kafka records and transforms into JsonSchema and
-     * JsonNode Check {@link #handleNativeRecord(SinkRecord, boolean)}
+     * <p>Rows were converted when the records were inserted, see {@link
+     * #convertRecord(SinkRecord)}. Records which couldn't be converted are sent to the DLQ here.
      *
      * @return A pair that contains the records and their corresponding offsets
      */
     @Override
     public Pair<List<Map<String, Object>>, List<Long>> getData() {
-      final List<Map<String, Object>> records = new ArrayList<>();
-      final List<Long> offsets = new ArrayList<>();
+      final List<Map<String, Object>> records = new ArrayList<>(sinkRecords.size());
+      final List<Long> offsets = new ArrayList<>(sinkRecords.size());
 
-      for (SinkRecord kafkaSinkRecord : sinkRecords) {
-        SinkRecord snowflakeRecord = getSnowflakeSinkRecordFromKafkaRecord(kafkaSinkRecord);
+      for (int idx = 0; idx < sinkRecords.size(); idx++) {
+        SinkRecord kafkaSinkRecord = sinkRecords.get(idx);
+        ConvertedRecord convertedRecord = convertedRecords.get(idx);
 
-        // broken record
-        if (isRecordBroken(snowflakeRecord)) {
+        if (convertedRecord.row != null) {
+          records.add(convertedRecord.row);
+          offsets.add(kafkaSinkRecord.kafkaOffset());
+        } else {
           // check for error tolerance and log tolerance values
           // errors.log.enable and errors.tolerance
-          LOGGER.debug(
-              "Broken record offset:{}, topic:{}",
+          LOGGER.warn(
+              "Cannot convert record offset:{}, topic:{}, reason:{}. Sending to DLQ.",
               kafkaSinkRecord.kafkaOffset(),
-              kafkaSinkRecord.topic());
-          kafkaRecordErrorReporter.reportError(kafkaSinkRecord, new DataException("Broken Record"));
-        } else {
-          // lag telemetry, note that sink record timestamp might be null
-          if (snowflakeRecord.timestamp() != null
-              && snowflakeRecord.timestampType() != NO_TIMESTAMP_TYPE) {
-            // TODO:SNOW-529751 telemetry
-          }
-
-          // Convert this records into Json Schema which has content and metadata, add it to DLQ if
-          // there is an exception
-          try {
-            Map<String, Object> tableRow =
-                recordService.getProcessedRecordForStreamingIngest(snowflakeRecord);
-            records.add(tableRow);
-            offsets.add(snowflakeRecord.kafkaOffset());
-          } catch (JsonProcessingException e) {
-            LOGGER.warn(
-                "Record has JsonProcessingException offset:{}, topic:{}",
-                kafkaSinkRecord.kafkaOffset(),
-                kafkaSinkRecord.topic());
-            kafkaRecordErrorReporter.reportError(kafkaSinkRecord, e);
-          } catch (SnowflakeKafkaConnectorException e) {
-            if (e.checkErrorCode(SnowflakeErrors.ERROR_0010)) {
-              LOGGER.warn(
-                  "Cannot parse record offset:{}, topic:{}. Sending to DLQ.",
-                  kafkaSinkRecord.kafkaOffset(),
-                  kafkaSinkRecord.topic());
-              kafkaRecordErrorReporter.reportError(kafkaSinkRecord, e);
-            } else {
-              throw e;
-            }
-          }
+              kafkaSinkRecord.topic(),
+              convertedRecord.conversionError.getMessage());
+          kafkaRecordErrorReporter.reportError(kafkaSinkRecord, convertedRecord.conversionError);
         }
       }
       LOGGER.debug(
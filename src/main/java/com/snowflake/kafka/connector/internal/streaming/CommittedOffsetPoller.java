@@ -0,0 +1,264 @@
+package com.snowflake.kafka.connector.internal.streaming;
+
+import static com.snowflake.kafka.connector.internal.metrics.MetricsUtil.constructMetricName;
+import static com.snowflake.kafka.connector.internal.streaming.channel.TopicPartitionChannel.NO_OFFSET_TOKEN_REGISTERED_IN_SNOWFLAKE;
+
+import com.codahale.metrics.Gauge;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.snowflake.kafka.connector.internal.KCLogger;
+import com.snowflake.kafka.connector.internal.metrics.MetricsJmxReporter;
+import com.snowflake.kafka.connector.internal.metrics.MetricsUtil;
+import com.snowflake.kafka.connector.internal.streaming.channel.TopicPartitionChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import net.snowflake.ingest.streaming.SnowflakeStreamingIngestChannel;
+import net.snowflake.ingest.streaming.SnowflakeStreamingIngestClient;
+
+/**
+ * Fetches the committed offset tokens of all open channels of a task in the background, with one
+ * {@link SnowflakeStreamingIngestClient#getLatestCommittedOffsetTokens(List)} call per client and
+ * poll.
+ *
+ * <p>preCommit answers from the cached tokens instead of fetching the token of every channel one
+ * after the other. A cached token is only used if it was fetched for the current channel instance
+ * of the partition and isn't older than the maximum staleness, otherwise the offset is fetched by
+ * the partition channel with its usual retries and fallback. A stale token is always safe to
+ * commit, it is lower or equal to the token in Snowflake.
+ */
+class CommittedOffsetPoller {
+  private static final KCLogger LOGGER = new KCLogger(CommittedOffsetPoller.class.getName());
+
+  static final String COMMITTED_OFFSET_STALENESS = "committed-offset-staleness-ms";
+
+  private final SnowflakeStreamingIngestClient client;
+  private final long pollIntervalMillis;
+  private final long maxStalenessMillis;
+  private final LongSupplier currentTimeSupplier;
+
+  // partition channel key -> partition channel, updated by the task thread
+  private final Map<String, TopicPartitionChannel> channels = new ConcurrentHashMap<>();
+  // partition channel key -> client the channel was opened with
+  private final Map<String, SnowflakeStreamingIngestClient> channelClients =
+      new ConcurrentHashMap<>();
+  // partition channel key -> last fetched token
+  private final Map<String, CachedOffset> committedOffsets = new ConcurrentHashMap<>();
+
+  private volatile long lastSuccessfulPollTime;
+  private ScheduledExecutorService executor;
+
+  /**
+   * @param client streaming client of the channels, unless another one is given in {@link
+   *     #addChannel(String, TopicPartitionChannel, SnowflakeStreamingIngestClient)}
+   * @param pollIntervalMillis delay between two polls
+   * @param maxStalenessMillis age after which cached tokens are no longer used
+   */
+  CommittedOffsetPoller(
+      SnowflakeStreamingIngestClient client, long pollIntervalMillis, long maxStalenessMillis) {
+    this(client, pollIntervalMillis, maxStalenessMillis, System::currentTimeMillis);
+  }
+
+  @VisibleForTesting
+  CommittedOffsetPoller(
+      SnowflakeStreamingIngestClient client,
+      long pollIntervalMillis,
+      long maxStalenessMillis,
+      LongSupplier currentTimeSupplier) {
+    this.client = client;
+    this.pollIntervalMillis = pollIntervalMillis;
+    this.maxStalenessMillis = maxStalenessMillis;
+    this.currentTimeSupplier = currentTimeSupplier;
+    this.lastSuccessfulPollTime = currentTimeSupplier.getAsLong();
+  }
+
+  /** Start polling on a background thread */
+  synchronized void start() {
+    if (executor != null) {
+      return;
+    }
+    executor =
+        Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder()
+                .setNameFormat("committed-offset-poller-%d")
+                .setDaemon(true)
+                .build());
+    executor.scheduleWithFixedDelay(
+        this::poll, pollIntervalMillis, pollIntervalMillis, TimeUnit.MILLISECONDS);
+    LOGGER.info("Committed offset poller started with interval {} ms", pollIntervalMillis);
+  }
+
+  /**
+   * Register the staleness of the cached tokens as a gauge
+   *
+   * @param metricsJmxReporter reporter of the task
+   * @param name first part of the metric name, identifies the task
+   */
+  void registerMetrics(MetricsJmxReporter metricsJmxReporter, String name) {
+    try {
+      metricsJmxReporter
+          .getMetricRegistry()
+          .register(
+              constructMetricName(name, MetricsUtil.OFFSET_SUB_DOMAIN, COMMITTED_OFFSET_STALENESS),
+              (Gauge<Long>) this::getStalenessMillis);
+    } catch (IllegalArgumentException ex) {
+      LOGGER.warn("Metrics already present:{}", ex.getMessage());
+    }
+    metricsJmxReporter.start();
+  }
+
+  /** Stop polling, cached tokens are no longer used */
+  synchronized void close() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+    channels.clear();
+    channelClients.clear();
+    committedOffsets.clear();
+  }
+
+  /**
+   * @param partitionChannelKey partition channel key
+   * @param channel newly created partition channel, opened with the client of the poller
+   */
+  void addChannel(String partitionChannelKey, TopicPartitionChannel channel) {
+    addChannel(partitionChannelKey, channel, client);
+  }
+
+  /**
+   * @param partitionChannelKey partition channel key
+   * @param channel newly created partition channel
+   * @param channelClient client the channel was opened with
+   */
+  void addChannel(
+      String partitionChannelKey,
+      TopicPartitionChannel channel,
+      SnowflakeStreamingIngestClient channelClient) {
+    committedOffsets.remove(partitionChannelKey);
+    channelClients.put(partitionChannelKey, channelClient);
+    channels.put(partitionChannelKey, channel);
+  }
+
+  /** @param partitionChannelKey key of a closed partition channel */
+  void removeChannel(String partitionChannelKey) {
+    channels.remove(partitionChannelKey);
+    channelClients.remove(partitionChannelKey);
+    committedOffsets.remove(partitionChannelKey);
+  }
+
+  /**
+   * Same as {@link TopicPartitionChannel#getOffsetSafeToCommitToKafka()}, answered from the cached
+   * token when it is recent enough
+   *
+   * @param partitionChannelKey partition channel key
+   * @param channel partition channel
+   * @return offset to commit to Kafka
+   */
+  long getOffsetSafeToCommitToKafka(String partitionChannelKey, TopicPartitionChannel channel) {
+    CachedOffset cached = committedOffsets.get(partitionChannelKey);
+    if (cached == null
+        // the channel was reopened since the token was fetched
+        || cached.channel != channel.getChannel()
+        || currentTimeSupplier.getAsLong() - cached.fetchTime > maxStalenessMillis) {
+      return channel.getOffsetSafeToCommitToKafka();
+    }
+    return cached.offset == NO_OFFSET_TOKEN_REGISTERED_IN_SNOWFLAKE
+        ? NO_OFFSET_TOKEN_REGISTERED_IN_SNOWFLAKE
+        : cached.offset + 1;
+  }
+
+  /** @return milliseconds since the last successful poll */
+  long getStalenessMillis() {
+    return currentTimeSupplier.getAsLong() - lastSuccessfulPollTime;
+  }
+
+  /** Fetch the committed tokens of all open channels */
+  @VisibleForTesting
+  void poll() {
+    // the tokens of the channels of one client are fetched with one call
+    Map<SnowflakeStreamingIngestClient, Map<String, SnowflakeStreamingIngestChannel>>
+        channelsByClient = new LinkedHashMap<>();
+    channels.forEach(
+        (key, channel) -> {
+          SnowflakeStreamingIngestChannel sdkChannel = channel.getChannel();
+          if (sdkChannel != null && !sdkChannel.isClosed()) {
+            channelsByClient
+                .computeIfAbsent(
+                    channelClients.getOrDefault(key, client), c -> new LinkedHashMap<>())
+                .put(key, sdkChannel);
+          }
+        });
+
+    long fetchTime = currentTimeSupplier.getAsLong();
+    boolean fetchedAll = true;
+    for (Map.Entry<SnowflakeStreamingIngestClient, Map<String, SnowflakeStreamingIngestChannel>>
+        entry : channelsByClient.entrySet()) {
+      fetchedAll &= fetchCommittedOffsets(entry.getKey(), entry.getValue(), fetchTime);
+    }
+    if (fetchedAll) {
+      lastSuccessfulPollTime = fetchTime;
+    }
+  }
+
+  private boolean fetchCommittedOffsets(
+      SnowflakeStreamingIngestClient client,
+      Map<String, SnowflakeStreamingIngestChannel> sdkChannels,
+      long fetchTime) {
+    Map<String, String> tokens;
+    try {
+      tokens = client.getLatestCommittedOffsetTokens(new ArrayList<>(sdkChannels.values()));
+    } catch (Exception e) {
+      // cached tokens age and preCommit falls back to fetching them per channel, which retries and
+      // reopens invalid channels
+      LOGGER.warn(
+          "Failed to fetch committed offset tokens of {} channels: {}",
+          sdkChannels.size(),
+          e.getMessage());
+      return false;
+    }
+
+    sdkChannels.forEach(
+        (key, sdkChannel) -> {
+          String fullyQualifiedName = sdkChannel.getFullyQualifiedName();
+          if (!tokens.containsKey(fullyQualifiedName)) {
+            return;
+          }
+          String token = tokens.get(fullyQualifiedName);
+          try {
+            long offset =
+                token == null ? NO_OFFSET_TOKEN_REGISTERED_IN_SNOWFLAKE : Long.parseLong(token);
+            // skip channels closed while polling
+            if (channels.containsKey(key)) {
+              committedOffsets.put(key, new CachedOffset(sdkChannel, offset, fetchTime));
+            }
+          } catch (NumberFormatException ex) {
+            // left to the partition channel, which fails the task for tokens which aren't offsets
+            LOGGER.error(
+                "The offsetToken string does not contain a parsable long:{} for channel:{}",
+                token,
+                fullyQualifiedName);
+          }
+        });
+    LOGGER.debug("Fetched committed offset tokens of {} channels", tokens.size());
+    return true;
+  }
+
+  private static class CachedOffset {
+    private final SnowflakeStreamingIngestChannel channel;
+    private final long offset;
+    private final long fetchTime;
+
+    private CachedOffset(SnowflakeStreamingIngestChannel channel, long offset, long fetchTime) {
+      this.channel = channel;
+      this.offset = offset;
+      this.fetchTime = fetchTime;
+    }
+  }
+}
@@ -21,6 +21,8 @@ import com.snowflake.kafka.connector.SnowflakeSinkConnectorConfig;
 import com.snowflake.kafka.connector.Utils;
 import com.snowflake.kafka.connector.dlq.KafkaRecordErrorReporter;
 import com.snowflake.kafka.connector.internal.BufferThreshold;
+import com.snowflake.kafka.connector.internal.ColumnInfos;
+import com.snowflake.kafka.connector.internal.FlushDeadlineScheduler;
 import com.snowflake.kafka.connector.internal.KCLogger;
 import com.snowflake.kafka.connector.internal.SnowflakeConnectionService;
 import com.snowflake.kafka.connector.internal.SnowflakeErrors;
@@ -38,10 +40,14 @@ import dev.failsafe.Fallback;
 import dev.failsafe.RetryPolicy;
 import java.io.ByteArrayOutputStream;
 import java.io.ObjectOutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
@@ -108,6 +114,9 @@ public class DirectTopicPartitionChannel implements TopicPartitionChannel {
   /* Responsible for converting records to Json */
   private final RecordService recordService;
 
+  /* Columns of the table whose objects and arrays are passed to the channel as Map and List */
+  private final SemiStructuredColumns semiStructuredColumns = new SemiStructuredColumns();
+
   /* Responsible for returning errors to DLQ if records have failed to be ingested. */
   private final KafkaRecordErrorReporter kafkaRecordErrorReporter;
 
@@ -134,11 +143,26 @@ public class DirectTopicPartitionChannel implements TopicPartitionChannel {
   // Whether schema evolution could be done on this channel
   private final boolean enableSchemaEvolution;
 
+  // Evolves the schema of the table together with the other channels of the table
+  private final BatchSchemaEvolver schemaEvolver;
+
   // Reference to the Snowflake connection service
   private final SnowflakeConnectionService conn;
 
   private final SnowflakeTelemetryChannelStatus snowflakeTelemetryChannelStatus;
 
+  // Bounds the number of rows and bytes inserted with one insertRows call
+  private final BufferThreshold streamingBufferThreshold;
+
+  // Rows converted from the records of the current put, inserted together by one insertRows call
+  // once the put is done, see insertBufferedRecordsIfFlushTimeThresholdReached
+  private final List<Map<String, Object>> batchRows = new ArrayList<>();
+
+  // Records the rows of the batch were converted from, same index as batchRows
+  private final List<SinkRecord> batchRecords = new ArrayList<>();
+
+  private long batchSizeBytes = 0;
+
   /**
    * Used to send telemetry to Snowflake. Currently, TelemetryClient created from a Snowflake
    * Connection Object, i.e. not a session-less Client
@@ -218,6 +242,7 @@ public class DirectTopicPartitionChannel implements TopicPartitionChannel {
     this.kafkaRecordErrorReporter = Preconditions.checkNotNull(kafkaRecordErrorReporter);
     this.sinkTaskContext = Preconditions.checkNotNull(sinkTaskContext);
     this.conn = conn;
+    this.streamingBufferThreshold = Preconditions.checkNotNull(streamingBufferThreshold);
 
     this.recordService = recordService;
     this.telemetryServiceV2 = Preconditions.checkNotNull(telemetryService);
@@ -233,6 +258,14 @@ public class DirectTopicPartitionChannel implements TopicPartitionChannel {
         this.recordService.setAndGetEnableSchematizationFromConfig(sfConnectorConfig);
 
     this.enableSchemaEvolution = this.enableSchematization && hasSchemaEvolutionPermission;
+    this.schemaEvolver =
+        new BatchSchemaEvolver(
+            this.conn,
+            SchemaEvolutionCoordinator.getInstance()
+                .getTable(
+                    sfConnectorConfig.get(Utils.SF_DATABASE),
+                    sfConnectorConfig.get(Utils.SF_SCHEMA),
+                    this.tableName));
 
     if (isEnableChannelOffsetMigration(sfConnectorConfig)) {
       /* Channel Name format V2 is computed from connector name, topic and partition */
@@ -316,6 +349,7 @@ public class DirectTopicPartitionChannel implements TopicPartitionChannel {
 
     // Reset the value if it's a new batch
     if (isFirstRowPerPartitionInBatch) {
+      insertBatch();
       needToSkipCurrentBatch = false;
     }
 
@@ -333,7 +367,7 @@ public class DirectTopicPartitionChannel implements TopicPartitionChannel {
     // incoming record offset is 1 + the processed offset
     if (currentProcessedOffset == NO_OFFSET_TOKEN_REGISTERED_IN_SNOWFLAKE
         || kafkaSinkRecord.kafkaOffset() >= currentProcessedOffset + 1) {
-      transformAndSend(kafkaSinkRecord);
+      addToBatch(kafkaSinkRecord);
     } else {
       LOGGER.warn(
           "Channel {} - skipping current record - expected offset {} but received {}. The current"
@@ -406,32 +440,90 @@ public class DirectTopicPartitionChannel implements TopicPartitionChannel {
 
   // --------------- BUFFER FLUSHING LOGIC --------------- //
 
+  /**
+   * Called once all records of a put were passed to {@link #insertRecord(SinkRecord, boolean)},
+   * inserts the rows of the put which are still in the batch. There is no time based flush, the
+   * rows are never kept across puts.
+   */
   @Override
-  @Deprecated
   public void insertBufferedRecordsIfFlushTimeThresholdReached() {
-    // It is just a leftover after buffered channel, not needed here as a buffer was removed in the
-    // current class.
-    // todo remove this method in the future
+    insertBatch();
   }
 
-  private void transformAndSend(SinkRecord kafkaSinkRecord) {
-    try {
-      Map<String, Object> transformedRecord = transformDataBeforeSending(kafkaSinkRecord);
-      if (!transformedRecord.isEmpty()) {
-        InsertValidationResponse response =
-            insertRowWithFallback(transformedRecord, kafkaSinkRecord.kafkaOffset());
-        this.processedOffset.set(kafkaSinkRecord.kafkaOffset());
+  // the rows are never kept across puts
+  @Override
+  public long getFlushDeadlineMs() {
+    return FlushDeadlineScheduler.NO_DEADLINE;
+  }
 
-        if (response.hasErrors()) {
-          LOGGER.warn(
-              "insertRow for channel:{} resulted in errors:{},",
-              this.getChannelNameFormatV1(),
-              response.hasErrors());
+  @Override
+  public TopicPartition getTopicPartition() {
+    return topicPartition;
+  }
 
-          handleInsertRowFailure(response.getInsertErrors(), kafkaSinkRecord);
-        }
+  @Override
+  public long getBufferedBytes() {
+    return batchSizeBytes;
+  }
+
+  // insertRows returns once the rows are handed to the ingest SDK
+  @Override
+  public long getInFlightBytes() {
+    return 0;
+  }
+
+  @Override
+  public void flushBuffer() {
+    insertBatch();
+  }
+
+  private void addToBatch(SinkRecord kafkaSinkRecord) {
+    Map<String, Object> transformedRecord = transformDataBeforeSending(kafkaSinkRecord);
+    if (transformedRecord.isEmpty()) {
+      return;
+    }
+    batchRows.add(transformedRecord);
+    batchRecords.add(kafkaSinkRecord);
+    batchSizeBytes +=
+        StreamingUtils.getRowSizeInBytes(transformedRecord)
+            + StreamingUtils.MAX_RECORD_OVERHEAD_BYTES;
+    this.processedOffset.set(kafkaSinkRecord.kafkaOffset());
+
+    if (streamingBufferThreshold.shouldFlushOnBufferByteSize(batchSizeBytes)
+        || streamingBufferThreshold.shouldFlushOnBufferRecordCount(batchRows.size())) {
+      insertBatch();
+    }
+  }
+
+  /** Insert the rows of the batch with a single insertRows call */
+  private void insertBatch() {
+    if (batchRows.isEmpty()) {
+      return;
+    }
+    List<Map<String, Object>> rows = new ArrayList<>(batchRows);
+    List<SinkRecord> records = new ArrayList<>(batchRecords);
+    batchRows.clear();
+    batchRecords.clear();
+    batchSizeBytes = 0;
+
+    try {
+      if (enableSchemaEvolution && this.schemaEvolver.evolveSchemaIfNeeded(rows, records::get)) {
+        // the channel has to be reopened to see the new columns, the records are sent again
+        streamingApiFallbackSupplier(
+            StreamingApiFallbackInvoker.INSERT_ROWS_SCHEMA_EVOLUTION_FALLBACK);
+        return;
       }
 
+      InsertValidationResponse response =
+          insertRowsWithFallback(
+              rows, records.get(0).kafkaOffset(), records.get(records.size() - 1).kafkaOffset());
+      if (response.hasErrors()) {
+        LOGGER.warn(
+            "insertRows for channel:{} resulted in {} errors",
+            this.getChannelNameFormatV1(),
+            response.getErrorRowCount());
+        handleInsertRowsFailure(response.getInsertErrors(), records);
+      }
     } catch (TopicPartitionChannelInsertionException ex) {
       // Suppressing the exception because other channels might still continue to ingest
       LOGGER.warn(
@@ -455,10 +547,14 @@ public class DirectTopicPartitionChannel implements TopicPartitionChannel {
    * net.snowflake.ingest.streaming.InsertValidationResponse.InsertError} in form of response inside
    * {@link InsertValidationResponse}
    *
+   * @param rows rows of the batch
+   * @param firstOffset offset of the first record of the batch
+   * @param lastOffset offset of the last record of the batch, committed once the rows are flushed
+   *     by the ingest SDK
    * @return InsertValidationResponse a response that wraps around InsertValidationResponse
    */
-  private InsertValidationResponse insertRowWithFallback(
-      Map<String, Object> transformedRecord, long offset) {
+  private InsertValidationResponse insertRowsWithFallback(
+      List<Map<String, Object>> rows, long firstOffset, long lastOffset) {
     Fallback<Object> reopenChannelFallbackExecutorForInsertRows =
         Fallback.builder(
                 executionAttemptedEvent -> {
@@ -483,7 +579,10 @@ public class DirectTopicPartitionChannel implements TopicPartitionChannel {
             .build();
 
     return Failsafe.with(reopenChannelFallbackExecutorForInsertRows)
-        .get(() -> this.channel.insertRow(transformedRecord, Long.toString(offset)));
+        .get(
+            () ->
+                this.channel.insertRows(
+                    rows, Long.toString(firstOffset), Long.toString(lastOffset)));
   }
 
   /**
@@ -509,27 +608,40 @@ public class DirectTopicPartitionChannel implements TopicPartitionChannel {
   /**
    * Invoked only when {@link InsertValidationResponse} has errors.
    *
-   * <p>This function checks if we need to log errors, send it to DLQ or just ignore and throw
-   * exception.
+   * <p>This function checks if we need to evolve the schema, log errors, send them to DLQ or just
+   * ignore and throw exception.
    *
    * @param insertErrors errors from validation response. (Only if it has errors)
+   * @param insertedRecords records of the batch, to map {@link SinkRecord} with insertErrors
    */
-  private void handleInsertRowFailure(
-      List<InsertValidationResponse.InsertError> insertErrors, SinkRecord kafkaSinkRecord) {
+  private void handleInsertRowsFailure(
+      List<InsertValidationResponse.InsertError> insertErrors, List<SinkRecord> insertedRecords) {
     if (enableSchemaEvolution) {
-      InsertValidationResponse.InsertError insertError = insertErrors.get(0);
-      List<String> extraColNames = insertError.getExtraColNames();
-      List<String> nonNullableColumns = insertError.getMissingNotNullColNames();
-      List<String> nullValueForNotNullColNames = insertError.getNullValueForNotNullColNames();
-      if (extraColNames != null
-          || nonNullableColumns != null
-          || nullValueForNotNullColNames != null) {
-        SchematizationUtils.evolveSchemaIfNeeded(
-            this.conn,
-            this.channel.getTableName(),
-            join(nonNullableColumns, nullValueForNotNullColNames),
-            extraColNames,
-            kafkaSinkRecord);
+      boolean needToEvolveSchema = false;
+      Set<String> nonNullableColumns = new LinkedHashSet<>();
+      Map<String, ColumnInfos> extraColumnsInfos = new HashMap<>();
+      for (InsertValidationResponse.InsertError insertError : insertErrors) {
+        List<String> extraColNames = insertError.getExtraColNames();
+        List<String> missingNotNullColNames = insertError.getMissingNotNullColNames();
+        List<String> nullValueForNotNullColNames = insertError.getNullValueForNotNullColNames();
+        if (extraColNames == null
+            && missingNotNullColNames == null
+            && nullValueForNotNullColNames == null) {
+          continue;
+        }
+        needToEvolveSchema = true;
+        nonNullableColumns.addAll(join(missingNotNullColNames, nullValueForNotNullColNames));
+        if (extraColNames != null) {
+          SchematizationUtils.getColumnInfos(
+                  insertedRecords.get((int) insertError.getRowIndex()), extraColNames)
+              .forEach(extraColumnsInfos::putIfAbsent);
+        }
+      }
+      if (needToEvolveSchema) {
+        this.schemaEvolver.evolveReportedColumns(
+            new ArrayList<>(nonNullableColumns), extraColumnsInfos);
+        // the rows of the batch which were inserted are skipped when the batch is sent again, the
+        // rows with other errors are reported then
         streamingApiFallbackSupplier(
             StreamingApiFallbackInvoker.INSERT_ROWS_SCHEMA_EVOLUTION_FALLBACK);
         return;
@@ -550,17 +662,13 @@ public class DirectTopicPartitionChannel implements TopicPartitionChannel {
             ERRORS_DEAD_LETTER_QUEUE_TOPIC_NAME_CONFIG);
       } else {
         LOGGER.warn(
-            "Adding the message to Dead Letter Queue topic: {}",
+            "Adding {} messages to Dead Letter Queue topic: {}",
+            insertErrors.size(),
             ERRORS_DEAD_LETTER_QUEUE_TOPIC_NAME_CONFIG);
-        this.kafkaRecordErrorReporter.reportError(
-            kafkaSinkRecord,
-            insertErrors.stream()
-                .map(InsertValidationResponse.InsertError::getException)
-                .findFirst()
-                .orElseThrow(
-                    () ->
-                        new IllegalStateException(
-                            "Reported record error, however exception list is empty.")));
+        for (InsertValidationResponse.InsertError insertError : insertErrors) {
+          this.kafkaRecordErrorReporter.reportError(
+              insertedRecords.get((int) insertError.getRowIndex()), insertError.getException());
+        }
       }
     } else {
       final String errMsg =
@@ -580,7 +688,8 @@ public class DirectTopicPartitionChannel implements TopicPartitionChannel {
             Optional.ofNullable(nullValueForNotNullColNames).orElse(ImmutableList.of())));
   }
 
-  // TODO: SNOW-529755 POLL committed offsets in background thread
+  // CommittedOffsetPoller polls the committed offsets of all channels in the background, this
+  // fetches the offset of this channel when no recent polled offset is available
 
   @Override
   public long getOffsetSafeToCommitToKafka() {
@@ -800,6 +909,8 @@ public class DirectTopicPartitionChannel implements TopicPartitionChannel {
    * @return new channel which was fetched after open/reopen
    */
   private SnowflakeStreamingIngestChannel openChannelForTable() {
+    // the channel sees the columns of the table at the time it is opened
+    this.schemaEvolver.onChannelOpening();
     OpenChannelRequest channelRequest =
         OpenChannelRequest.builder(this.channelNameFormatV1)
             .setDBName(this.sfConnectorConfig.get(Utils.SF_DATABASE))
@@ -930,9 +1041,8 @@ public class DirectTopicPartitionChannel implements TopicPartitionChannel {
 
   @Override
   @VisibleForTesting
-  @Deprecated
   public boolean isPartitionBufferEmpty() {
-    return true;
+    return batchRecords.isEmpty();
   }
 
   @Override
@@ -1000,7 +1110,8 @@ public class DirectTopicPartitionChannel implements TopicPartitionChannel {
       // Convert this records into Json Schema which has content and metadata, add it to DLQ if
       // there is an exception
       try {
-        return recordService.getProcessedRecordForStreamingIngest(snowflakeSinkRecord);
+        return recordService.getProcessedRecordForStreamingIngest(
+            snowflakeSinkRecord, semiStructuredColumns.forChannel(this.channel));
       } catch (JsonProcessingException e) {
         LOGGER.warn(
             "Record has JsonProcessingException offset:{}, topic:{}",
@@ -0,0 +1,171 @@
+package com.snowflake.kafka.connector.internal.streaming;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.snowflake.kafka.connector.internal.ColumnInfos;
+import com.snowflake.kafka.connector.internal.KCLogger;
+import com.snowflake.kafka.connector.internal.SnowflakeConnectionService;
+import com.snowflake.kafka.connector.internal.SnowflakeKafkaConnectorException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Coordinates schema evolution of the tables written by the streaming channels of a Kafka worker
+ * node, shared by all its connectors and tasks like {@link StreamingClientProvider}.
+ *
+ * <p>Each table has a versioned cache of its columns. Evolution requests for a table are executed
+ * one at a time: a request first drops the columns which were already added or made nullable by the
+ * requests before it, so when all partitions of a topic see the same new field at the same time,
+ * one of them runs the ALTER TABLE and the others only wait for it and pick up the new columns.
+ */
+class SchemaEvolutionCoordinator {
+  private static final KCLogger LOGGER = new KCLogger(SchemaEvolutionCoordinator.class.getName());
+
+  private static final SchemaEvolutionCoordinator INSTANCE = new SchemaEvolutionCoordinator();
+
+  // fully qualified table name -> table
+  private final Map<String, TableSchema> tables = new ConcurrentHashMap<>();
+
+  @VisibleForTesting
+  SchemaEvolutionCoordinator() {}
+
+  /** @return coordinator of the worker node */
+  static SchemaEvolutionCoordinator getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * @param database database of the table
+   * @param schema schema of the table
+   * @param tableName table name
+   * @return the shared state of the table
+   */
+  TableSchema getTable(String database, String schema, String tableName) {
+    return tables.computeIfAbsent(
+        database + "." + schema + "." + tableName, key -> new TableSchema(tableName));
+  }
+
+  /** Columns of a table at some version */
+  static class Snapshot {
+    // column name as stored in Snowflake -> whether the column is nullable
+    final Map<String, Boolean> columns;
+    final long version;
+
+    private Snapshot(Map<String, Boolean> columns, long version) {
+      this.columns = Collections.unmodifiableMap(columns);
+      this.version = version;
+    }
+  }
+
+  /** Cached columns of a table and lock of its schema evolution */
+  static class TableSchema {
+    private final String tableName;
+
+    // null until the columns are loaded
+    private volatile Snapshot snapshot;
+    private long version;
+
+    private TableSchema(String tableName) {
+      this.tableName = tableName;
+    }
+
+    /** @return the cached columns, null if they were not loaded yet */
+    Snapshot peek() {
+      return snapshot;
+    }
+
+    /**
+     * @param conn connection used to load the columns
+     * @return the cached columns, loaded with DESC TABLE if needed, null if they can't be loaded
+     */
+    synchronized Snapshot get(SnowflakeConnectionService conn) {
+      if (snapshot == null) {
+        reload(conn);
+      }
+      return snapshot;
+    }
+
+    /**
+     * Reload the columns, unless they were already reloaded or changed since the given snapshot was
+     * taken. Called when insertRows reports a schema mismatch the cache didn't predict.
+     *
+     * @param conn connection used to load the columns
+     * @param seen snapshot used by the caller, null if it had none
+     * @return the current columns, null if they can't be loaded
+     */
+    synchronized Snapshot refresh(SnowflakeConnectionService conn, Snapshot seen) {
+      if (snapshot == null || snapshot == seen) {
+        reload(conn);
+      }
+      return snapshot;
+    }
+
+    /**
+     * Add the extra columns and drop NOT NULL of the given columns, skipping what was already done
+     * by other channels. Concurrent callers wait for each other.
+     *
+     * @param conn connection used to alter the table
+     * @param nonNullableColumns quoted names of the columns which have to be nullable
+     * @param extraColumnsInfos quoted names of the columns which have to be added, mapped to their
+     *     types
+     * @return the columns after the evolution, null if they can't be loaded
+     */
+    synchronized Snapshot evolve(
+        SnowflakeConnectionService conn,
+        List<String> nonNullableColumns,
+        Map<String, ColumnInfos> extraColumnsInfos) {
+      Snapshot current = get(conn);
+      Map<String, Boolean> columns = current == null ? Collections.emptyMap() : current.columns;
+
+      List<String> remainingNonNullableColumns = new ArrayList<>();
+      for (String column : nonNullableColumns) {
+        if (!Boolean.TRUE.equals(columns.get(SchematizationUtils.formatName(column)))) {
+          remainingNonNullableColumns.add(column);
+        }
+      }
+      Map<String, ColumnInfos> remainingExtraColumnsInfos = new HashMap<>();
+      extraColumnsInfos.forEach(
+          (column, columnInfos) -> {
+            if (!columns.containsKey(SchematizationUtils.formatName(column))) {
+              remainingExtraColumnsInfos.put(column, columnInfos);
+            }
+          });
+
+      if (current != null
+          && remainingNonNullableColumns.isEmpty()
+          && remainingExtraColumnsInfos.isEmpty()) {
+        LOGGER.info(
+            "Schema of table {} was already evolved at version {}", tableName, current.version);
+        return current;
+      }
+
+      SchematizationUtils.evolveSchemaIfNeeded(
+          conn, tableName, remainingNonNullableColumns, remainingExtraColumnsInfos);
+      // read back what the table looks like, the ALTER may have failed or raced with another worker
+      reload(conn);
+      return snapshot;
+    }
+
+    private void reload(SnowflakeConnectionService conn) {
+      Map<String, Boolean> columns;
+      try {
+        columns = conn.describeTableColumns(tableName);
+      } catch (SnowflakeKafkaConnectorException e) {
+        LOGGER.warn("Failed to describe columns of table {}: {}", tableName, e.getMessage());
+        snapshot = null;
+        return;
+      }
+      if (columns == null || columns.isEmpty()) {
+        snapshot = null;
+        return;
+      }
+      snapshot = new Snapshot(new LinkedHashMap<>(columns), ++version);
+      LOGGER.debug(
+          "Loaded {} columns of table {} at version {}", columns.size(), tableName, version);
+    }
+  }
+}
@@ -75,8 +75,29 @@ public class SchematizationUtils {
       List<String> nonNullableColumns,
       List<String> extraColNames,
       SinkRecord record) {
+    evolveSchemaIfNeeded(
+        conn,
+        tableName,
+        nonNullableColumns,
+        extraColNames == null ? null : getColumnInfos(record, extraColNames));
+  }
+
+  /**
+   * Execute a ALTER TABLE command if there is any extra column that needs to be added, or any
+   * column nullability that needs to be updated, used by schema evolution
+   *
+   * @param conn connection to the Snowflake
+   * @param tableName table name
+   * @param nonNullableColumns a list of columns that needs to update the nullability
+   * @param extraColumnsInfos the columns that needs to be added, mapped to their types
+   */
+  public static void evolveSchemaIfNeeded(
+      @Nonnull SnowflakeConnectionService conn,
+      String tableName,
+      List<String> nonNullableColumns,
+      Map<String, ColumnInfos> extraColumnsInfos) {
     // Update nullability if needed, ignore any exceptions since other task might be succeeded
-    if (nonNullableColumns != null) {
+    if (nonNullableColumns != null && !nonNullableColumns.isEmpty()) {
       try {
         conn.alterNonNullableColumns(tableName, nonNullableColumns);
       } catch (SnowflakeKafkaConnectorException e) {
@@ -91,8 +112,7 @@ public class SchematizationUtils {
     }
 
     // Add columns if needed, ignore any exceptions since other task might be succeeded
-    if (extraColNames != null) {
-      Map<String, ColumnInfos> extraColumnsInfos = getColumnInfos(record, extraColNames);
+    if (extraColumnsInfos != null && !extraColumnsInfos.isEmpty()) {
       try {
         conn.appendColumnsToTable(tableName, extraColumnsInfos);
       } catch (SnowflakeKafkaConnectorException e) {
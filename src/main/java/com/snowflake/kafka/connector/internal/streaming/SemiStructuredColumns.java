@@ -0,0 +1,62 @@
+package com.snowflake.kafka.connector.internal.streaming;
+
+import com.google.common.collect.ImmutableSet;
+import java.util.Map;
+import java.util.Set;
+import net.snowflake.ingest.streaming.SnowflakeStreamingIngestChannel;
+import net.snowflake.ingest.streaming.internal.ColumnProperties;
+
+/**
+ * VARIANT, OBJECT and ARRAY columns of the table of a channel. The Streaming Ingest SDK only
+ * accepts objects and arrays as Map and List for these columns, the values of other columns are
+ * passed as JSON text.
+ *
+ * <p>The columns are read from the table schema the channel was opened with, and read again once
+ * the channel is reopened, after schema evolution for example.
+ */
+class SemiStructuredColumns {
+  private static final Set<String> SEMI_STRUCTURED_TYPES =
+      ImmutableSet.of("VARIANT", "OBJECT", "ARRAY");
+
+  // columns of the channel they were read from, replaced together
+  private volatile ChannelColumns channelColumns;
+
+  /**
+   * @param channel current channel of the partition
+   * @return quoted names of the semi-structured columns, as in the rows of {@link
+   *     com.snowflake.kafka.connector.records.RecordService#getProcessedRecordForStreamingIngest}
+   */
+  Set<String> forChannel(SnowflakeStreamingIngestChannel channel) {
+    ChannelColumns columns = this.channelColumns;
+    if (columns == null || columns.channel != channel) {
+      columns = new ChannelColumns(channel, readColumns(channel));
+      this.channelColumns = columns;
+    }
+    return columns.names;
+  }
+
+  private static Set<String> readColumns(SnowflakeStreamingIngestChannel channel) {
+    ImmutableSet.Builder<String> names = ImmutableSet.builder();
+    Map<String, ColumnProperties> tableSchema = channel.getTableSchema();
+    if (tableSchema != null) {
+      tableSchema.forEach(
+          (name, properties) -> {
+            if (properties != null && SEMI_STRUCTURED_TYPES.contains(properties.getLogicalType())) {
+              // the SDK keys the columns by their unquoted name
+              names.add('"' + name.replace("\"", "\"\"") + '"');
+            }
+          });
+    }
+    return names.build();
+  }
+
+  private static class ChannelColumns {
+    private final SnowflakeStreamingIngestChannel channel;
+    private final Set<String> names;
+
+    private ChannelColumns(SnowflakeStreamingIngestChannel channel, Set<String> names) {
+      this.channel = channel;
+      this.names = names;
+    }
+  }
+}
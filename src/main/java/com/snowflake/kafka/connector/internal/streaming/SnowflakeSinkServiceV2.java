@@ -3,35 +3,61 @@ package com.snowflake.kafka.connector.internal.streaming;
 import static com.snowflake.kafka.connector.SnowflakeSinkConnectorConfig.BUFFER_SIZE_BYTES_DEFAULT;
 import static com.snowflake.kafka.connector.SnowflakeSinkConnectorConfig.ENABLE_STREAMING_CLIENT_OPTIMIZATION_DEFAULT;
 import static com.snowflake.kafka.connector.SnowflakeSinkConnectorConfig.SNOWFLAKE_ROLE;
+import static com.snowflake.kafka.connector.SnowflakeSinkConnectorConfig.SNOWPIPE_STREAMING_CLIENT_POOL_SIZE;
+import static com.snowflake.kafka.connector.SnowflakeSinkConnectorConfig.SNOWPIPE_STREAMING_CLIENT_POOL_SIZE_DEFAULT;
 import static com.snowflake.kafka.connector.SnowflakeSinkConnectorConfig.SNOWPIPE_STREAMING_CLOSE_CHANNELS_IN_PARALLEL;
 import static com.snowflake.kafka.connector.SnowflakeSinkConnectorConfig.SNOWPIPE_STREAMING_CLOSE_CHANNELS_IN_PARALLEL_DEFAULT;
+import static com.snowflake.kafka.connector.SnowflakeSinkConnectorConfig.SNOWPIPE_STREAMING_COMMITTED_OFFSET_POLL_INTERVAL_MS;
+import static com.snowflake.kafka.connector.SnowflakeSinkConnectorConfig.SNOWPIPE_STREAMING_COMMITTED_OFFSET_POLL_INTERVAL_MS_DEFAULT;
+import static com.snowflake.kafka.connector.SnowflakeSinkConnectorConfig.SNOWPIPE_STREAMING_INSERT_THREADS;
+import static com.snowflake.kafka.connector.SnowflakeSinkConnectorConfig.SNOWPIPE_STREAMING_INSERT_THREADS_DEFAULT;
+import static com.snowflake.kafka.connector.SnowflakeSinkConnectorConfig.SNOWPIPE_STREAMING_OPEN_CHANNELS_IN_PARALLEL;
+import static com.snowflake.kafka.connector.SnowflakeSinkConnectorConfig.SNOWPIPE_STREAMING_OPEN_CHANNELS_IN_PARALLEL_DEFAULT;
+import static com.snowflake.kafka.connector.SnowflakeSinkConnectorConfig.TASK_MEMORY_BUDGET_BYTES;
+import static com.snowflake.kafka.connector.SnowflakeSinkConnectorConfig.TASK_MEMORY_BUDGET_BYTES_DEFAULT;
+import static com.snowflake.kafka.connector.internal.metrics.MetricsUtil.CLIENT_CHANNEL_COUNT;
+import static com.snowflake.kafka.connector.internal.metrics.MetricsUtil.CLIENT_RECREATED_COUNT;
+import static com.snowflake.kafka.connector.internal.metrics.MetricsUtil.constructMetricName;
 import static com.snowflake.kafka.connector.internal.streaming.StreamingUtils.STREAMING_BUFFER_COUNT_RECORDS_DEFAULT;
 import static com.snowflake.kafka.connector.internal.streaming.StreamingUtils.STREAMING_BUFFER_FLUSH_TIME_DEFAULT_SEC;
 import static com.snowflake.kafka.connector.internal.streaming.channel.TopicPartitionChannel.NO_OFFSET_TOKEN_REGISTERED_IN_SNOWFLAKE;
 
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.snowflake.kafka.connector.SnowflakeSinkConnectorConfig;
 import com.snowflake.kafka.connector.Utils;
 import com.snowflake.kafka.connector.dlq.KafkaRecordErrorReporter;
+import com.snowflake.kafka.connector.internal.FlushDeadlineScheduler;
 import com.snowflake.kafka.connector.internal.KCLogger;
+import com.snowflake.kafka.connector.internal.PartitionFlushExecutor;
 import com.snowflake.kafka.connector.internal.SnowflakeConnectionService;
 import com.snowflake.kafka.connector.internal.SnowflakeErrors;
 import com.snowflake.kafka.connector.internal.SnowflakeSinkService;
+import com.snowflake.kafka.connector.internal.TaskMemoryGovernor;
 import com.snowflake.kafka.connector.internal.metrics.MetricsJmxReporter;
+import com.snowflake.kafka.connector.internal.metrics.MetricsUtil;
 import com.snowflake.kafka.connector.internal.parameters.InternalBufferParameters;
 import com.snowflake.kafka.connector.internal.streaming.channel.TopicPartitionChannel;
 import com.snowflake.kafka.connector.internal.telemetry.SnowflakeTelemetryService;
 import com.snowflake.kafka.connector.records.RecordService;
 import com.snowflake.kafka.connector.records.SnowflakeMetadataConfig;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import net.snowflake.ingest.streaming.SnowflakeStreamingIngestClient;
 import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.connect.sink.SinkRecord;
@@ -91,9 +117,20 @@ public class SnowflakeSinkServiceV2 implements SnowflakeSinkService {
   private SinkTaskContext sinkTaskContext;
 
   // ------ Streaming Ingest ------ //
-  // needs url, username. p8 key, role name
+  // needs url, username. p8 key, role name, null if the channels are spread over a client pool
   private SnowflakeStreamingIngestClient streamingIngestClient;
 
+  // Spreads the channels over several clients, null if all channels use streamingIngestClient
+  private StreamingClientPool clientPool;
+
+  // partition channel key -> client of the pool the channel was opened with
+  private final Map<String, SnowflakeStreamingIngestClient> channelClients =
+      new ConcurrentHashMap<>();
+
+  // client of the pool -> partition channel keys of the channels opened with it
+  private final Map<SnowflakeStreamingIngestClient, Set<String>> clientChannels =
+      new ConcurrentHashMap<>();
+
   // Config set in JSON
   private final Map<String, String> connectorConfig;
 
@@ -101,6 +138,11 @@ public class SnowflakeSinkServiceV2 implements SnowflakeSinkService {
 
   private final boolean closeChannelsInParallel;
 
+  private final boolean openChannelsInParallel;
+
+  // upper bound of the number of channels opened at the same time
+  private static final int OPEN_CHANNELS_MAX_PARALLELISM = 16;
+
   /**
    * Key is formulated in {@link #partitionChannelKey(String, int)} }
    *
@@ -114,6 +156,21 @@ public class SnowflakeSinkServiceV2 implements SnowflakeSinkService {
   // Set that keeps track of the channels that have been seen per input batch
   private final Set<String> channelsVisitedPerBatch = new HashSet<>();
 
+  // Fetches committed offset tokens of all channels in the background, null if disabled
+  private CommittedOffsetPoller committedOffsetPoller;
+
+  // Keeps the memory of the buffers of all channels under the task budget, null if disabled
+  private TaskMemoryGovernor memoryGovernor;
+
+  // Time based flushes of the channels buffering rows, also done when Kafka doesn't call put
+  private final FlushDeadlineScheduler<TopicPartitionChannel> flushScheduler =
+      new FlushDeadlineScheduler<>(
+          TopicPartitionChannel::getFlushDeadlineMs,
+          TopicPartitionChannel::insertBufferedRecordsIfFlushTimeThresholdReached);
+
+  // Inserts the flushed buffers of the channels off the task thread, null if disabled
+  private PartitionFlushExecutor insertExecutor;
+
   public SnowflakeSinkServiceV2(
       SnowflakeConnectionService conn, Map<String, String> connectorConfig) {
     if (conn == null || conn.isClosed()) {
@@ -142,9 +199,24 @@ public class SnowflakeSinkServiceV2 implements SnowflakeSinkService {
             .map(Boolean::parseBoolean)
             .orElse(SNOWPIPE_STREAMING_CLOSE_CHANNELS_IN_PARALLEL_DEFAULT);
 
-    this.streamingIngestClient =
-        StreamingClientProvider.getStreamingClientProviderInstance()
-            .getClient(this.connectorConfig);
+    this.openChannelsInParallel =
+        Optional.ofNullable(connectorConfig.get(SNOWPIPE_STREAMING_OPEN_CHANNELS_IN_PARALLEL))
+            .map(Boolean::parseBoolean)
+            .orElse(SNOWPIPE_STREAMING_OPEN_CHANNELS_IN_PARALLEL_DEFAULT);
+
+    int clientPoolSize =
+        Optional.ofNullable(connectorConfig.get(SNOWPIPE_STREAMING_CLIENT_POOL_SIZE))
+            .map(Integer::parseInt)
+            .orElse(SNOWPIPE_STREAMING_CLIENT_POOL_SIZE_DEFAULT);
+    if (clientPoolSize > 1 && isClientOptimizationEnabled()) {
+      this.clientPool =
+          StreamingClientProvider.getStreamingClientProviderInstance()
+              .getClientPool(this.connectorConfig);
+    } else {
+      this.streamingIngestClient =
+          StreamingClientProvider.getStreamingClientProviderInstance()
+              .getClient(this.connectorConfig);
+    }
 
     this.partitionsToChannel = new HashMap<>();
 
@@ -156,6 +228,37 @@ public class SnowflakeSinkServiceV2 implements SnowflakeSinkService {
             ? "default_connector"
             : this.conn.getConnectorName();
     this.metricsJmxReporter = new MetricsJmxReporter(new MetricRegistry(), connectorName);
+
+    long offsetPollIntervalMs =
+        Optional.ofNullable(
+                connectorConfig.get(SNOWPIPE_STREAMING_COMMITTED_OFFSET_POLL_INTERVAL_MS))
+            .map(Long::parseLong)
+            .orElse(SNOWPIPE_STREAMING_COMMITTED_OFFSET_POLL_INTERVAL_MS_DEFAULT);
+    if (offsetPollIntervalMs > 0) {
+      // tokens missed by a few polls are still used, older ones are fetched again in preCommit
+      this.committedOffsetPoller =
+          new CommittedOffsetPoller(
+              this.streamingIngestClient, offsetPollIntervalMs, 5 * offsetPollIntervalMs);
+      this.committedOffsetPoller.start();
+    }
+
+    long memoryBudget =
+        Optional.ofNullable(connectorConfig.get(TASK_MEMORY_BUDGET_BYTES))
+            .map(Long::parseLong)
+            .orElse(TASK_MEMORY_BUDGET_BYTES_DEFAULT);
+    if (memoryBudget > 0) {
+      this.memoryGovernor = new TaskMemoryGovernor(memoryBudget);
+    }
+
+    int insertThreads =
+        Optional.ofNullable(connectorConfig.get(SNOWPIPE_STREAMING_INSERT_THREADS))
+            .map(Integer::parseInt)
+            .orElse(SNOWPIPE_STREAMING_INSERT_THREADS_DEFAULT);
+    if (insertThreads > 0 && !InternalBufferParameters.isSingleBufferEnabled(connectorConfig)) {
+      // a buffer can wait for a thread while another one is inserted, more would only hold memory
+      this.insertExecutor =
+          new PartitionFlushExecutor(insertThreads, 2 * insertThreads, "streaming-insert-%d");
+    }
   }
 
   @VisibleForTesting
@@ -194,6 +297,10 @@ public class SnowflakeSinkServiceV2 implements SnowflakeSinkService {
             .getClient(this.connectorConfig);
     this.enableSchematization = enableSchematization;
     this.closeChannelsInParallel = closeChannelsInParallel;
+    this.openChannelsInParallel =
+        connectorConfig != null
+            && Boolean.parseBoolean(
+                connectorConfig.get(SNOWPIPE_STREAMING_OPEN_CHANNELS_IN_PARALLEL));
     this.partitionsToChannel = partitionsToChannel;
 
     this.tableName2SchemaEvolutionPermission = new HashMap<>();
@@ -234,14 +341,90 @@ public class SnowflakeSinkServiceV2 implements SnowflakeSinkService {
   @Override
   public void startPartitions(
       Collection<TopicPartition> partitions, Map<String, String> topic2Table) {
+    Map<String, List<TopicPartition>> partitionsByTable = new LinkedHashMap<>();
     partitions.forEach(
-        tp -> {
-          String tableName = Utils.tableName(tp.topic(), topic2Table);
-          createTableIfNotExists(tableName);
+        tp ->
+            partitionsByTable
+                .computeIfAbsent(
+                    Utils.tableName(tp.topic(), topic2Table), table -> new ArrayList<>())
+                .add(tp));
 
-          createStreamingChannelForTopicPartition(
-              tableName, tp, tableName2SchemaEvolutionPermission.get(tableName));
-        });
+    // each table is checked once, whatever the number of its partitions
+    partitionsByTable.keySet().forEach(this::createTableIfNotExists);
+
+    if (openChannelsInParallel && partitions.size() > 1) {
+      openChannelsInParallel(partitionsByTable);
+    } else {
+      partitionsByTable.forEach(
+          (tableName, tps) ->
+              tps.forEach(
+                  tp ->
+                      createStreamingChannelForTopicPartition(
+                          tableName, tp, tableName2SchemaEvolutionPermission.get(tableName))));
+    }
+  }
+
+  /**
+   * Open the channels of all partitions on a bounded pool. Each channel runs the offset migration,
+   * opens the streaming channel and fetches its offset token in its own thread, the channels are
+   * registered on the calling thread once all of them are open.
+   */
+  private void openChannelsInParallel(Map<String, List<TopicPartition>> partitionsByTable) {
+    int partitionCount = partitionsByTable.values().stream().mapToInt(List::size).sum();
+    ExecutorService executor =
+        Executors.newFixedThreadPool(
+            Math.min(partitionCount, OPEN_CHANNELS_MAX_PARALLELISM),
+            new ThreadFactoryBuilder().setNameFormat("open-channel-%d").setDaemon(true).build());
+    // channels reset the offset of their partition while they are opened
+    SinkTaskContext context =
+        this.sinkTaskContext == null ? null : new SynchronizedSinkTaskContext(this.sinkTaskContext);
+
+    Map<String, CompletableFuture<TopicPartitionChannel>> channels = new LinkedHashMap<>();
+    try {
+      partitionsByTable.forEach(
+          (tableName, tps) -> {
+            boolean hasSchemaEvolutionPermission =
+                tableName2SchemaEvolutionPermission.get(tableName);
+            for (TopicPartition tp : tps) {
+              String partitionChannelKey = partitionChannelKey(tp.topic(), tp.partition());
+              channels.put(
+                  partitionChannelKey,
+                  CompletableFuture.supplyAsync(
+                      () ->
+                          createTopicPartitionChannel(
+                              tableName,
+                              tp,
+                              hasSchemaEvolutionPermission,
+                              partitionChannelKey,
+                              context),
+                      executor));
+            }
+          });
+
+      // register every opened channel, so they are closed with the task if another one failed
+      RuntimeException failure = null;
+      for (Map.Entry<String, CompletableFuture<TopicPartitionChannel>> entry :
+          channels.entrySet()) {
+        try {
+          registerChannel(entry.getKey(), entry.getValue().join());
+        } catch (CompletionException e) {
+          LOGGER.error(
+              "Failed to open channel for partition:{}, error:{}",
+              entry.getKey(),
+              e.getCause().getMessage());
+          if (failure == null) {
+            failure =
+                e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+          }
+        }
+      }
+      if (failure != null) {
+        throw failure;
+      }
+      LOGGER.info("Opened {} channels in parallel", channels.size());
+    } finally {
+      executor.shutdown();
+    }
   }
 
   /**
@@ -257,21 +440,118 @@ public class SnowflakeSinkServiceV2 implements SnowflakeSinkService {
     final String partitionChannelKey =
         partitionChannelKey(topicPartition.topic(), topicPartition.partition());
     // Create new instance of TopicPartitionChannel which will always open the channel.
-    partitionsToChannel.put(
+    registerChannel(
         partitionChannelKey,
         createTopicPartitionChannel(
-            tableName, topicPartition, hasSchemaEvolutionPermission, partitionChannelKey));
+            tableName,
+            topicPartition,
+            hasSchemaEvolutionPermission,
+            partitionChannelKey,
+            this.sinkTaskContext));
+  }
+
+  private void registerChannel(
+      String partitionChannelKey, TopicPartitionChannel topicPartitionChannel) {
+    TopicPartitionChannel previousChannel =
+        partitionsToChannel.put(partitionChannelKey, topicPartitionChannel);
+    if (previousChannel != null && previousChannel != topicPartitionChannel) {
+      // the rows buffered by a replaced channel are no longer inserted
+      flushScheduler.cancel(previousChannel);
+    }
+    if (committedOffsetPoller != null) {
+      SnowflakeStreamingIngestClient channelClient = channelClients.get(partitionChannelKey);
+      if (channelClient == null) {
+        committedOffsetPoller.addChannel(partitionChannelKey, topicPartitionChannel);
+      } else {
+        committedOffsetPoller.addChannel(partitionChannelKey, topicPartitionChannel, channelClient);
+      }
+    }
+  }
+
+  /** Called once the channel of the partition is closed, or no longer used */
+  private void deregisterChannel(String partitionChannelKey) {
+    TopicPartitionChannel topicPartitionChannel = partitionsToChannel.get(partitionChannelKey);
+    if (topicPartitionChannel != null) {
+      flushScheduler.cancel(topicPartitionChannel);
+    }
+    if (committedOffsetPoller != null) {
+      committedOffsetPoller.removeChannel(partitionChannelKey);
+    }
+    SnowflakeStreamingIngestClient channelClient = channelClients.remove(partitionChannelKey);
+    if (channelClient != null) {
+      removeClientChannel(channelClient, partitionChannelKey);
+      clientPool.releaseClient(channelClient);
+    }
+  }
+
+  private void addClientChannel(
+      String partitionChannelKey, SnowflakeStreamingIngestClient channelClient) {
+    SnowflakeStreamingIngestClient previousClient =
+        channelClients.put(partitionChannelKey, channelClient);
+    if (previousClient != null && previousClient != channelClient) {
+      removeClientChannel(previousClient, partitionChannelKey);
+    }
+    clientChannels
+        .computeIfAbsent(channelClient, client -> ConcurrentHashMap.newKeySet())
+        .add(partitionChannelKey);
+  }
+
+  private void removeClientChannel(
+      SnowflakeStreamingIngestClient channelClient, String partitionChannelKey) {
+    clientChannels.computeIfPresent(
+        channelClient,
+        (client, channelKeys) -> {
+          channelKeys.remove(partitionChannelKey);
+          return channelKeys.isEmpty() ? null : channelKeys;
+        });
+  }
+
+  private TopicPartitionChannel createTopicPartitionChannel(
+      String tableName,
+      TopicPartition topicPartition,
+      boolean hasSchemaEvolutionPermission,
+      String partitionChannelKey,
+      SinkTaskContext sinkTaskContext) {
+    if (clientPool == null) {
+      return createTopicPartitionChannel(
+          this.streamingIngestClient,
+          tableName,
+          topicPartition,
+          hasSchemaEvolutionPermission,
+          partitionChannelKey,
+          sinkTaskContext);
+    }
+
+    SnowflakeStreamingIngestClient channelClient =
+        clientPool.getClient(tableName, topicPartition.partition());
+    try {
+      TopicPartitionChannel topicPartitionChannel =
+          createTopicPartitionChannel(
+              channelClient,
+              tableName,
+              topicPartition,
+              hasSchemaEvolutionPermission,
+              partitionChannelKey,
+              sinkTaskContext);
+      addClientChannel(partitionChannelKey, channelClient);
+      return topicPartitionChannel;
+    } catch (RuntimeException e) {
+      clientPool.releaseClient(channelClient);
+      throw e;
+    }
   }
 
   private TopicPartitionChannel createTopicPartitionChannel(
+      SnowflakeStreamingIngestClient channelClient,
       String tableName,
       TopicPartition topicPartition,
       boolean hasSchemaEvolutionPermission,
-      String partitionChannelKey) {
+      String partitionChannelKey,
+      SinkTaskContext sinkTaskContext) {
 
     return InternalBufferParameters.isSingleBufferEnabled(connectorConfig)
         ? new DirectTopicPartitionChannel(
-            this.streamingIngestClient,
+            channelClient,
             topicPartition,
             partitionChannelKey, // Streaming channel name
             tableName,
@@ -279,14 +559,31 @@ public class SnowflakeSinkServiceV2 implements SnowflakeSinkService {
             new StreamingBufferThreshold(this.flushTimeSeconds, this.fileSizeBytes, this.recordNum),
             this.connectorConfig,
             this.kafkaRecordErrorReporter,
-            this.sinkTaskContext,
+            sinkTaskContext,
             this.conn,
             this.recordService,
             this.conn.getTelemetryClient(),
             this.enableCustomJMXMonitoring,
             this.metricsJmxReporter)
-        : new BufferedTopicPartitionChannel(
-            this.streamingIngestClient,
+        : createBufferedTopicPartitionChannel(
+            channelClient,
+            tableName,
+            topicPartition,
+            hasSchemaEvolutionPermission,
+            partitionChannelKey,
+            sinkTaskContext);
+  }
+
+  private BufferedTopicPartitionChannel createBufferedTopicPartitionChannel(
+      SnowflakeStreamingIngestClient channelClient,
+      String tableName,
+      TopicPartition topicPartition,
+      boolean hasSchemaEvolutionPermission,
+      String partitionChannelKey,
+      SinkTaskContext sinkTaskContext) {
+    BufferedTopicPartitionChannel topicPartitionChannel =
+        new BufferedTopicPartitionChannel(
+            channelClient,
             topicPartition,
             partitionChannelKey, // Streaming channel name
             tableName,
@@ -294,12 +591,18 @@ public class SnowflakeSinkServiceV2 implements SnowflakeSinkService {
             new StreamingBufferThreshold(this.flushTimeSeconds, this.fileSizeBytes, this.recordNum),
             this.connectorConfig,
             this.kafkaRecordErrorReporter,
-            this.sinkTaskContext,
+            sinkTaskContext,
             this.conn,
             this.recordService,
             this.conn.getTelemetryClient(),
             this.enableCustomJMXMonitoring,
             this.metricsJmxReporter);
+    if (insertExecutor != null) {
+      // the task thread resets the offset once the channel is due
+      topicPartitionChannel.enableAsyncInsert(
+          insertExecutor, () -> flushScheduler.schedule(topicPartitionChannel));
+    }
+    return topicPartitionChannel;
   }
 
   /**
@@ -314,8 +617,13 @@ public class SnowflakeSinkServiceV2 implements SnowflakeSinkService {
    */
   @Override
   public void insert(final Collection<SinkRecord> records) {
+    // rows of a channel may be lost if its buffer failed to be inserted in the background
+    flushScheduler.throwIfFailed();
     // note that records can be empty but, we will still need to check for time based flush
     channelsVisitedPerBatch.clear();
+    if (clientPool != null) {
+      reopenChannelsOfInvalidClients();
+    }
     for (SinkRecord record : records) {
       // check if it needs to handle null value records
       if (recordService.shouldSkipNullValue(record, behaviorOnNullValues)) {
@@ -327,10 +635,45 @@ public class SnowflakeSinkServiceV2 implements SnowflakeSinkService {
       insert(record);
     }
 
-    // check all partitions to see if they need to be flushed based on time
-    for (TopicPartitionChannel partitionChannel : partitionsToChannel.values()) {
-      // Time based flushing
+    // only the channels of the batch and the ones due for a time based flush are visited
+    for (String partitionChannelKey : channelsVisitedPerBatch) {
+      TopicPartitionChannel partitionChannel = partitionsToChannel.get(partitionChannelKey);
       partitionChannel.insertBufferedRecordsIfFlushTimeThresholdReached();
+      flushScheduler.schedule(partitionChannel);
+    }
+    flushScheduler.flushDue();
+
+    if (memoryGovernor != null) {
+      memoryGovernor.enforce(partitionsToChannel.values(), sinkTaskContext);
+    }
+  }
+
+  /**
+   * The channels opened with a client of the pool which became invalid can't insert rows or reopen
+   * themselves. They are opened again with the client the pool now assigns to them, which resets
+   * the Kafka offset of their partition to the one committed in Snowflake.
+   */
+  private void reopenChannelsOfInvalidClients() {
+    // each client of the pool is checked once, only the channels of the invalid ones are visited
+    List<String> channelsToReopen = new ArrayList<>();
+    clientChannels.forEach(
+        (channelClient, channelKeys) -> {
+          if (!StreamingClientHandler.isClientValid(channelClient)) {
+            channelsToReopen.addAll(channelKeys);
+          }
+        });
+
+    for (String partitionChannelKey : channelsToReopen) {
+      TopicPartitionChannel topicPartitionChannel = partitionsToChannel.get(partitionChannelKey);
+      LOGGER.warn(
+          "Streaming client of channel:{} is not valid, reopening the channel with another client",
+          partitionChannelKey);
+      deregisterChannel(partitionChannelKey);
+      topicPartitionChannel.closeChannelAsync().join();
+      TopicPartition topicPartition = topicPartitionChannel.getTopicPartition();
+      String tableName = Utils.tableName(topicPartition.topic(), topicToTableMap);
+      createStreamingChannelForTopicPartition(
+          tableName, topicPartition, tableName2SchemaEvolutionPermission.get(tableName));
     }
   }
 
@@ -365,8 +708,13 @@ public class SnowflakeSinkServiceV2 implements SnowflakeSinkService {
     String partitionChannelKey =
         partitionChannelKey(topicPartition.topic(), topicPartition.partition());
     if (partitionsToChannel.containsKey(partitionChannelKey)) {
-      long offset = partitionsToChannel.get(partitionChannelKey).getOffsetSafeToCommitToKafka();
-      partitionsToChannel.get(partitionChannelKey).setLatestConsumerOffset(offset);
+      TopicPartitionChannel topicPartitionChannel = partitionsToChannel.get(partitionChannelKey);
+      long offset =
+          committedOffsetPoller == null
+              ? topicPartitionChannel.getOffsetSafeToCommitToKafka()
+              : committedOffsetPoller.getOffsetSafeToCommitToKafka(
+                  partitionChannelKey, topicPartitionChannel);
+      topicPartitionChannel.setLatestConsumerOffset(offset);
 
       return offset;
     } else {
@@ -390,6 +738,7 @@ public class SnowflakeSinkServiceV2 implements SnowflakeSinkService {
 
   @Override
   public void closeAll() {
+    flushScheduler.close();
     if (closeChannelsInParallel) {
       closeAllInParallel();
     } else {
@@ -397,9 +746,18 @@ public class SnowflakeSinkServiceV2 implements SnowflakeSinkService {
     }
 
     partitionsToChannel.clear();
-
-    StreamingClientProvider.getStreamingClientProviderInstance()
-        .closeClient(this.connectorConfig, this.streamingIngestClient);
+    closeCommittedOffsetPoller();
+    shutdownInsertExecutor();
+
+    if (clientPool != null) {
+      channelClients.clear();
+      clientChannels.clear();
+      StreamingClientProvider.getStreamingClientProviderInstance()
+          .closeClientPool(this.connectorConfig);
+    } else {
+      StreamingClientProvider.getStreamingClientProviderInstance()
+          .closeClient(this.connectorConfig, this.streamingIngestClient);
+    }
   }
 
   private void closeAllSequentially() {
@@ -460,6 +818,7 @@ public class SnowflakeSinkServiceV2 implements SnowflakeSinkService {
               partitionChannelKey(topicPartition.topic(), topicPartition.partition());
           TopicPartitionChannel topicPartitionChannel =
               partitionsToChannel.get(partitionChannelKey);
+          deregisterChannel(partitionChannelKey);
           // Check for null since it's possible that the something goes wrong even before the
           // channels are created
           if (topicPartitionChannel != null) {
@@ -485,6 +844,7 @@ public class SnowflakeSinkServiceV2 implements SnowflakeSinkService {
     String key = partitionChannelKey(topicPartition.topic(), topicPartition.partition());
 
     TopicPartitionChannel topicPartitionChannel = partitionsToChannel.get(key);
+    deregisterChannel(key);
 
     LOGGER.info(
         "Closing partitionChannel:{}, partition:{}, topic:{}",
@@ -501,17 +861,28 @@ public class SnowflakeSinkServiceV2 implements SnowflakeSinkService {
             .thenAccept(__ -> partitionsToChannel.remove(key));
   }
 
+  private void shutdownInsertExecutor() {
+    if (insertExecutor != null) {
+      insertExecutor.shutdown();
+      insertExecutor = null;
+    }
+  }
+
+  private void closeCommittedOffsetPoller() {
+    if (committedOffsetPoller != null) {
+      committedOffsetPoller.close();
+    }
+  }
+
   @Override
   public void stop() {
-    final boolean isOptimizationEnabled =
-        Boolean.parseBoolean(
-            connectorConfig.getOrDefault(
-                SnowflakeSinkConnectorConfig.ENABLE_STREAMING_CLIENT_OPTIMIZATION_CONFIG,
-                Boolean.toString(ENABLE_STREAMING_CLIENT_OPTIMIZATION_DEFAULT)));
+    flushScheduler.close();
+    closeCommittedOffsetPoller();
+    shutdownInsertExecutor();
     // when optimization is enabled single streamingIngestClient instance may be used by many
     // SinkService instances
     // stopping the client may cause unexpected behaviour
-    if (!isOptimizationEnabled) {
+    if (!isClientOptimizationEnabled()) {
       try {
         StreamingClientProvider.getStreamingClientProviderInstance()
             .closeClient(connectorConfig, this.streamingIngestClient);
@@ -524,6 +895,13 @@ public class SnowflakeSinkServiceV2 implements SnowflakeSinkService {
     }
   }
 
+  private boolean isClientOptimizationEnabled() {
+    return Boolean.parseBoolean(
+        connectorConfig.getOrDefault(
+            SnowflakeSinkConnectorConfig.ENABLE_STREAMING_CLIENT_OPTIMIZATION_CONFIG,
+            Boolean.toString(ENABLE_STREAMING_CLIENT_OPTIMIZATION_DEFAULT)));
+  }
+
   /* Undefined */
   @Override
   public boolean isClosed() {
@@ -615,6 +993,39 @@ public class SnowflakeSinkServiceV2 implements SnowflakeSinkService {
   @Override
   public void setCustomJMXMetrics(boolean enableJMX) {
     this.enableCustomJMXMonitoring = enableJMX;
+    if (enableJMX && committedOffsetPoller != null) {
+      committedOffsetPoller.registerMetrics(
+          metricsJmxReporter, "task-" + connectorConfig.getOrDefault(Utils.TASK_ID, "-1"));
+    }
+    if (enableJMX && clientPool != null) {
+      registerClientPoolMetrics();
+    }
+  }
+
+  /** Register the number of channels and recreations of each client of the pool as gauges */
+  private void registerClientPoolMetrics() {
+    String taskName = "task-" + connectorConfig.getOrDefault(Utils.TASK_ID, "-1");
+    for (int slot = 0; slot < clientPool.size(); slot++) {
+      final int clientSlot = slot;
+      String clientName = taskName + "-client-" + slot;
+      try {
+        metricsJmxReporter
+            .getMetricRegistry()
+            .register(
+                constructMetricName(
+                    clientName, MetricsUtil.STREAMING_CLIENT_SUB_DOMAIN, CLIENT_CHANNEL_COUNT),
+                (Gauge<Integer>) () -> clientPool.getChannelCount(clientSlot));
+        metricsJmxReporter
+            .getMetricRegistry()
+            .register(
+                constructMetricName(
+                    clientName, MetricsUtil.STREAMING_CLIENT_SUB_DOMAIN, CLIENT_RECREATED_COUNT),
+                (Gauge<Integer>) () -> clientPool.getRecreatedCount(clientSlot));
+      } catch (IllegalArgumentException ex) {
+        LOGGER.warn("Metrics already present:{}", ex.getMessage());
+      }
+    }
+    metricsJmxReporter.start();
   }
 
   @Override
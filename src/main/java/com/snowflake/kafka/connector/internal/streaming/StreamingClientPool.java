@@ -0,0 +1,196 @@
+package com.snowflake.kafka.connector.internal.streaming;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.snowflake.kafka.connector.internal.KCLogger;
+import java.nio.charset.StandardCharsets;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import net.snowflake.ingest.streaming.SnowflakeStreamingIngestClient;
+
+/**
+ * A fixed number of streaming clients created from the same {@link StreamingClientProperties}, each
+ * with its own flush threads, memory limit and upload pipeline. Channels are assigned to a client
+ * by consistent hashing of their table and partition, so the channel of a partition always lands on
+ * the same client, whichever task of the worker opens it.
+ *
+ * <p>A client which became invalid is recreated the next time a channel is assigned to it. If it
+ * can't be recreated, the client is removed from the hash ring and only its channels move to the
+ * remaining clients, until the pool is closed.
+ */
+public class StreamingClientPool {
+  private static final KCLogger LOGGER = new KCLogger(StreamingClientPool.class.getName());
+
+  // points of each client on the hash ring, spreads the channels evenly across the clients
+  static final int VIRTUAL_NODES_PER_CLIENT = 128;
+
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_32_fixed();
+
+  private final StreamingClientProperties clientProperties;
+  private final StreamingClientHandler streamingClientHandler;
+
+  // all fields below are guarded by this
+  private final SnowflakeStreamingIngestClient[] clients;
+  // number of channels assigned to the current client of each slot
+  private final int[] channelCounts;
+  // number of times the client of each slot was recreated
+  private final int[] recreatedCounts;
+  // hash -> slot of the client, only contains the clients which could be created
+  private final TreeMap<Integer, Integer> ring = new TreeMap<>();
+  private boolean closed = false;
+
+  /**
+   * @param clientProperties properties of all clients of the pool
+   * @param size number of clients, they are created when the first channel is assigned to them
+   * @param streamingClientHandler handler to create and close the clients
+   */
+  public StreamingClientPool(
+      StreamingClientProperties clientProperties,
+      int size,
+      StreamingClientHandler streamingClientHandler) {
+    this.clientProperties = clientProperties;
+    this.streamingClientHandler = streamingClientHandler;
+    this.clients = new SnowflakeStreamingIngestClient[size];
+    this.channelCounts = new int[size];
+    this.recreatedCounts = new int[size];
+    for (int slot = 0; slot < size; slot++) {
+      addToRing(slot);
+    }
+    LOGGER.info(
+        "Created streaming client pool of {} clients for client {}",
+        size,
+        clientProperties.clientName);
+  }
+
+  /**
+   * Gets the client the channel of the given table and partition is assigned to, creates or
+   * recreates it if it isn't valid
+   *
+   * @param tableName table of the channel
+   * @param partition partition of the channel
+   * @return a valid client
+   */
+  public synchronized SnowflakeStreamingIngestClient getClient(String tableName, int partition) {
+    if (closed) {
+      throw new IllegalStateException(
+          "Streaming client pool " + clientProperties.clientName + " is closed");
+    }
+    int hash = hash(tableName + "_" + partition);
+    while (true) {
+      int slot = slotOf(hash);
+      try {
+        SnowflakeStreamingIngestClient client = validClient(slot);
+        channelCounts[slot]++;
+        return client;
+      } catch (RuntimeException e) {
+        removeFromRing(slot);
+        if (ring.isEmpty()) {
+          throw e;
+        }
+        LOGGER.error(
+            "Failed to create client {} of the streaming client pool, moving its channels to the"
+                + " other clients: {}",
+            slot,
+            e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Called once the channel opened with the client is closed
+   *
+   * @param client client returned by {@link #getClient(String, int)}
+   */
+  public synchronized void releaseClient(SnowflakeStreamingIngestClient client) {
+    for (int slot = 0; slot < clients.length; slot++) {
+      // the count of a recreated client starts again from 0
+      if (clients[slot] == client && channelCounts[slot] > 0) {
+        channelCounts[slot]--;
+        return;
+      }
+    }
+  }
+
+  /** Closes all clients of the pool, they are not recreated */
+  public synchronized void close() {
+    closed = true;
+    for (int slot = 0; slot < clients.length; slot++) {
+      if (clients[slot] != null) {
+        streamingClientHandler.closeClient(clients[slot]);
+        clients[slot] = null;
+      }
+      channelCounts[slot] = 0;
+    }
+  }
+
+  /** @return number of clients of the pool */
+  public int size() {
+    return clients.length;
+  }
+
+  /**
+   * @param slot index of the client in the pool
+   * @return number of channels assigned to the client
+   */
+  public synchronized int getChannelCount(int slot) {
+    return channelCounts[slot];
+  }
+
+  /**
+   * @param slot index of the client in the pool
+   * @return number of times the client was recreated because it became invalid
+   */
+  public synchronized int getRecreatedCount(int slot) {
+    return recreatedCounts[slot];
+  }
+
+  /**
+   * @param slot index of the client in the pool
+   * @return whether channels are assigned to the client, false once it couldn't be created
+   */
+  public synchronized boolean isInRing(int slot) {
+    return ring.containsValue(slot);
+  }
+
+  // TEST ONLY - the client currently created for the slot, null if none
+  @VisibleForTesting
+  synchronized SnowflakeStreamingIngestClient getCreatedClient(int slot) {
+    return clients[slot];
+  }
+
+  private SnowflakeStreamingIngestClient validClient(int slot) {
+    SnowflakeStreamingIngestClient client = clients[slot];
+    if (StreamingClientHandler.isClientValid(client)) {
+      return client;
+    }
+    if (client != null) {
+      LOGGER.warn(
+          "Client {} of the streaming client pool is not valid, recreating it", client.getName());
+      recreatedCounts[slot]++;
+      // the channels of the invalid client are opened again with the new one
+      channelCounts[slot] = 0;
+    }
+    clients[slot] = streamingClientHandler.createClient(clientProperties);
+    return clients[slot];
+  }
+
+  private int slotOf(int hash) {
+    SortedMap<Integer, Integer> tail = ring.tailMap(hash);
+    return tail.isEmpty() ? ring.firstEntry().getValue() : tail.get(tail.firstKey());
+  }
+
+  private void addToRing(int slot) {
+    for (int node = 0; node < VIRTUAL_NODES_PER_CLIENT; node++) {
+      ring.put(hash(clientProperties.clientName + "#" + slot + "#" + node), slot);
+    }
+  }
+
+  private void removeFromRing(int slot) {
+    ring.values().removeIf(nodeSlot -> nodeSlot == slot);
+  }
+
+  private static int hash(String key) {
+    return HASH_FUNCTION.hashString(key, StandardCharsets.UTF_8).asInt();
+  }
+}
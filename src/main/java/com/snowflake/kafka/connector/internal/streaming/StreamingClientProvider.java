@@ -18,12 +18,16 @@
 package com.snowflake.kafka.connector.internal.streaming;
 
 import static com.snowflake.kafka.connector.SnowflakeSinkConnectorConfig.ENABLE_STREAMING_CLIENT_OPTIMIZATION_DEFAULT;
+import static com.snowflake.kafka.connector.SnowflakeSinkConnectorConfig.SNOWPIPE_STREAMING_CLIENT_POOL_SIZE;
+import static com.snowflake.kafka.connector.SnowflakeSinkConnectorConfig.SNOWPIPE_STREAMING_CLIENT_POOL_SIZE_DEFAULT;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.snowflake.kafka.connector.SnowflakeSinkConnectorConfig;
 import com.snowflake.kafka.connector.internal.KCLogger;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Supplier;
 import net.snowflake.ingest.internal.com.github.benmanes.caffeine.cache.Caffeine;
 import net.snowflake.ingest.internal.com.github.benmanes.caffeine.cache.LoadingCache;
@@ -121,6 +125,9 @@ public class StreamingClientProvider {
 
   private final StreamingClientHandler streamingClientHandler;
   private LoadingCache<StreamingClientProperties, SnowflakeStreamingIngestClient> registeredClients;
+  // pools of clients shared by the tasks of the worker, see getClientPool
+  private final Map<StreamingClientProperties, StreamingClientPool> registeredPools =
+      new ConcurrentHashMap<>();
 
   /**
    * Private constructor to retain singleton
@@ -206,6 +213,39 @@ public class StreamingClientProvider {
     this.streamingClientHandler.closeClient(client);
   }
 
+  /**
+   * Gets the pool of clients registered for the given connector config or creates it. Unlike {@link
+   * #getClient(Map)}, the channels are spread over {@link
+   * SnowflakeSinkConnectorConfig#SNOWPIPE_STREAMING_CLIENT_POOL_SIZE} clients instead of sharing
+   * one, only used if the client optimization is enabled.
+   *
+   * @param connectorConfig The connector config
+   * @return A pool of streaming clients
+   */
+  public StreamingClientPool getClientPool(Map<String, String> connectorConfig) {
+    StreamingClientProperties clientProperties = new StreamingClientProperties(connectorConfig);
+    int poolSize =
+        Optional.ofNullable(connectorConfig.get(SNOWPIPE_STREAMING_CLIENT_POOL_SIZE))
+            .map(Integer::parseInt)
+            .orElse(SNOWPIPE_STREAMING_CLIENT_POOL_SIZE_DEFAULT);
+    return this.registeredPools.computeIfAbsent(
+        clientProperties,
+        properties -> new StreamingClientPool(properties, poolSize, this.streamingClientHandler));
+  }
+
+  /**
+   * Closes all clients of the pool registered for the given connector config and deregisters it
+   *
+   * @param connectorConfig The configuration to deregister
+   */
+  public void closeClientPool(Map<String, String> connectorConfig) {
+    StreamingClientPool pool =
+        this.registeredPools.remove(new StreamingClientProperties(connectorConfig));
+    if (pool != null) {
+      pool.close();
+    }
+  }
+
   // TEST ONLY - to get a provider with injected properties
   @VisibleForTesting
   public static StreamingClientProvider getStreamingClientProviderForTests(
@@ -9,6 +9,7 @@ import static com.snowflake.kafka.connector.SnowflakeSinkConnectorConfig.ERRORS_
 import static com.snowflake.kafka.connector.SnowflakeSinkConnectorConfig.ErrorTolerance;
 import static com.snowflake.kafka.connector.SnowflakeSinkConnectorConfig.INGESTION_METHOD_OPT;
 import static com.snowflake.kafka.connector.SnowflakeSinkConnectorConfig.KEY_CONVERTER_CONFIG_FIELD;
+import static com.snowflake.kafka.connector.SnowflakeSinkConnectorConfig.SNOWPIPE_STREAMING_COMMITTED_OFFSET_POLL_INTERVAL_MS;
 import static com.snowflake.kafka.connector.SnowflakeSinkConnectorConfig.SNOWPIPE_STREAMING_ENABLE_SINGLE_BUFFER;
 import static com.snowflake.kafka.connector.SnowflakeSinkConnectorConfig.SNOWPIPE_STREAMING_MAX_CLIENT_LAG;
 import static com.snowflake.kafka.connector.SnowflakeSinkConnectorConfig.SNOWPIPE_STREAMING_MAX_MEMORY_LIMIT_IN_BYTES;
@@ -22,6 +23,7 @@ import com.snowflake.kafka.connector.Utils;
 import com.snowflake.kafka.connector.internal.BufferThreshold;
 import java.time.Duration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
@@ -256,6 +258,11 @@ public class StreamingUtils {
             ensureValidLong(inputConfig, SNOWPIPE_STREAMING_MAX_CLIENT_LAG, invalidParams);
           }
 
+          if (inputConfig.containsKey(SNOWPIPE_STREAMING_COMMITTED_OFFSET_POLL_INTERVAL_MS)) {
+            ensureValidLong(
+                inputConfig, SNOWPIPE_STREAMING_COMMITTED_OFFSET_POLL_INTERVAL_MS, invalidParams);
+          }
+
           if (inputConfig.containsKey(SNOWPIPE_STREAMING_MAX_MEMORY_LIMIT_IN_BYTES)) {
             ensureValidLong(
                 inputConfig, SNOWPIPE_STREAMING_MAX_MEMORY_LIMIT_IN_BYTES, invalidParams);
@@ -345,4 +352,50 @@ public class StreamingUtils {
 
     return invalidParams;
   }
+
+  /**
+   * Approximate size of a row passed to insertRows, there is no API available to find out the size
+   * of a row.
+   *
+   * @param tableRow row keyed by column name
+   * @return size of the row in bytes
+   */
+  static long getRowSizeInBytes(Map<String, Object> tableRow) {
+    long rowSizeInBytes = 0L;
+    // need to loop through the map and get the object node
+    for (Map.Entry<String, Object> entry : tableRow.entrySet()) {
+      rowSizeInBytes += entry.getKey().length() * 2L;
+      rowSizeInBytes += getValueSizeInBytes(entry.getValue());
+    }
+    return rowSizeInBytes;
+  }
+
+  /**
+   * Approximate size of a column value: strings count 2 bytes per char, other scalars 8 bytes and
+   * schematized semi-structured values the sum of their elements.
+   */
+  private static long getValueSizeInBytes(Object value) {
+    if (value == null) {
+      return 0L;
+    }
+    if (value instanceof String) {
+      return ((String) value).length() * 2L; // 1 char = 2 bytes
+    }
+    if (value instanceof Map) {
+      long sizeInBytes = 0L;
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        sizeInBytes += ((String) entry.getKey()).length() * 2L;
+        sizeInBytes += getValueSizeInBytes(entry.getValue());
+      }
+      return sizeInBytes;
+    }
+    if (value instanceof List) {
+      long sizeInBytes = 0L;
+      for (Object element : (List<?>) value) {
+        sizeInBytes += getValueSizeInBytes(element);
+      }
+      return sizeInBytes;
+    }
+    return Long.BYTES;
+  }
 }
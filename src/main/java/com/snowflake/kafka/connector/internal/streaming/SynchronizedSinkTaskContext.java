@@ -0,0 +1,65 @@
+package com.snowflake.kafka.connector.internal.streaming;
+
+import java.util.Map;
+import java.util.Set;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.connect.sink.ErrantRecordReporter;
+import org.apache.kafka.connect.sink.SinkTaskContext;
+
+/**
+ * {@link SinkTaskContext} which can be used by several threads. The context of the Kafka Connect
+ * runtime is only meant to be used by the task thread, channels opened on other threads (e.g. to
+ * reset their offset) go through this wrapper.
+ */
+class SynchronizedSinkTaskContext implements SinkTaskContext {
+  private final SinkTaskContext delegate;
+
+  SynchronizedSinkTaskContext(SinkTaskContext delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public synchronized Map<String, String> configs() {
+    return delegate.configs();
+  }
+
+  @Override
+  public synchronized void offset(Map<TopicPartition, Long> offsets) {
+    delegate.offset(offsets);
+  }
+
+  @Override
+  public synchronized void offset(TopicPartition tp, long offset) {
+    delegate.offset(tp, offset);
+  }
+
+  @Override
+  public synchronized void timeout(long timeoutMs) {
+    delegate.timeout(timeoutMs);
+  }
+
+  @Override
+  public synchronized Set<TopicPartition> assignment() {
+    return delegate.assignment();
+  }
+
+  @Override
+  public synchronized void pause(TopicPartition... partitions) {
+    delegate.pause(partitions);
+  }
+
+  @Override
+  public synchronized void resume(TopicPartition... partitions) {
+    delegate.resume(partitions);
+  }
+
+  @Override
+  public synchronized void requestCommit() {
+    delegate.requestCommit();
+  }
+
+  @Override
+  public synchronized ErrantRecordReporter errantRecordReporter() {
+    return delegate.errantRecordReporter();
+  }
+}
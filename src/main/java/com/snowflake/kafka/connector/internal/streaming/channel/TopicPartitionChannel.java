@@ -1,11 +1,13 @@
 package com.snowflake.kafka.connector.internal.streaming.channel;
 
+import com.snowflake.kafka.connector.internal.TaskMemoryGovernor;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import net.snowflake.ingest.utils.SFException;
 import org.apache.kafka.connect.sink.SinkRecord;
 
-public interface TopicPartitionChannel extends ExposingInternalsTopicPartitionChannel {
+public interface TopicPartitionChannel
+    extends ExposingInternalsTopicPartitionChannel, TaskMemoryGovernor.PartitionMemory {
   long NO_OFFSET_TOKEN_REGISTERED_IN_SNOWFLAKE = -1L;
 
   /**
@@ -94,6 +96,14 @@ public interface TopicPartitionChannel extends ExposingInternalsTopicPartitionCh
    */
   void insertBufferedRecordsIfFlushTimeThresholdReached();
 
+  /**
+   * @return time in milliseconds at which the buffered rows have to be inserted by {@link
+   *     #insertBufferedRecordsIfFlushTimeThresholdReached()}, {@link
+   *     com.snowflake.kafka.connector.internal.FlushDeadlineScheduler#NO_DEADLINE} if there are
+   *     none
+   */
+  long getFlushDeadlineMs();
+
   // todo it should belong to a buffered channel
   void setLatestConsumerOffset(long consumerOffset);
 }
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2024 Snowflake Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.snowflake.kafka.connector.records;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.temporal.Temporal;
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import net.snowflake.client.jdbc.internal.fasterxml.jackson.databind.JsonNode;
+import net.snowflake.client.jdbc.internal.fasterxml.jackson.databind.node.ArrayNode;
+import net.snowflake.client.jdbc.internal.fasterxml.jackson.databind.node.JsonNodeFactory;
+import net.snowflake.client.jdbc.internal.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericEnumSymbol;
+import org.apache.avro.generic.GenericFixed;
+import org.apache.avro.generic.IndexedRecord;
+
+/**
+ * Converts a decoded Avro datum into a JsonNode without going through its JSON text.
+ *
+ * <p>The result is the node {@code mapper.readTree(GenericData.get().toString(datum))} would
+ * return, e.g. bytes are ISO_8859_1 decoded strings, fixed values are arrays of signed bytes, NaN
+ * and infinite numbers are strings and decimals converted by {@code DecimalConversion} are numbers.
+ * Converted records don't change when the connector switches from the text round trip to this
+ * converter.
+ */
+final class AvroJsonNodeConverter {
+  private static final JsonNodeFactory FACTORY = JsonNodeFactory.instance;
+
+  private AvroJsonNodeConverter() {}
+
+  /**
+   * @param datum value read by a generic datum reader
+   * @return JsonNode representation of the datum
+   */
+  static JsonNode toJsonNode(Object datum) {
+    if (datum == null) {
+      return FACTORY.nullNode();
+    }
+    if (datum instanceof IndexedRecord) {
+      return recordToJsonNode((IndexedRecord) datum);
+    }
+    if (datum instanceof Collection) {
+      ArrayNode array = FACTORY.arrayNode(((Collection<?>) datum).size());
+      for (Object element : (Collection<?>) datum) {
+        array.add(toJsonNode(element));
+      }
+      return array;
+    }
+    if (datum instanceof Map) {
+      ObjectNode object = FACTORY.objectNode();
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) datum).entrySet()) {
+        object.set(String.valueOf(entry.getKey()), toJsonNode(entry.getValue()));
+      }
+      return object;
+    }
+    if (datum instanceof CharSequence || datum instanceof GenericEnumSymbol) {
+      return FACTORY.textNode(datum.toString());
+    }
+    if (datum instanceof ByteBuffer) {
+      // same as GenericData.toString, bytes without logical type are ISO_8859_1 decoded
+      return FACTORY.textNode(
+          StandardCharsets.ISO_8859_1.decode(((ByteBuffer) datum).duplicate()).toString());
+    }
+    if (datum instanceof Integer) {
+      return FACTORY.numberNode((Integer) datum);
+    }
+    if (datum instanceof Long) {
+      return integralNode((Long) datum);
+    }
+    if (datum instanceof Double) {
+      double value = (Double) datum;
+      return Double.isNaN(value) || Double.isInfinite(value)
+          ? FACTORY.textNode(datum.toString())
+          : FACTORY.numberNode(value);
+    }
+    if (datum instanceof Float) {
+      float value = (Float) datum;
+      // a float is printed with its own shortest representation which is then parsed as a double
+      return Float.isNaN(value) || Float.isInfinite(value)
+          ? FACTORY.textNode(datum.toString())
+          : FACTORY.numberNode(Double.parseDouble(datum.toString()));
+    }
+    if (datum instanceof Boolean) {
+      return FACTORY.booleanNode((Boolean) datum);
+    }
+    if (datum instanceof BigDecimal) {
+      return decimalNode((BigDecimal) datum);
+    }
+    if (datum instanceof GenericFixed) {
+      byte[] bytes = ((GenericFixed) datum).bytes();
+      ArrayNode array = FACTORY.arrayNode(bytes.length);
+      for (byte b : bytes) {
+        array.add((int) b);
+      }
+      return array;
+    }
+    if (datum instanceof Temporal || datum instanceof UUID) {
+      return FACTORY.textNode(datum.toString());
+    }
+    throw new IllegalArgumentException(
+        "Unsupported Avro datum type: " + datum.getClass().getName());
+  }
+
+  private static ObjectNode recordToJsonNode(IndexedRecord record) {
+    ObjectNode object = FACTORY.objectNode();
+    for (Schema.Field field : record.getSchema().getFields()) {
+      object.set(field.name(), toJsonNode(record.get(field.pos())));
+    }
+    return object;
+  }
+
+  // integral numbers get the smallest node type holding them, like a parsed JSON number does
+  private static JsonNode integralNode(long value) {
+    return value == (int) value ? FACTORY.numberNode((int) value) : FACTORY.numberNode(value);
+  }
+
+  private static JsonNode decimalNode(BigDecimal value) {
+    if (value.scale() != 0) {
+      // printed with a fraction or an exponent, parsed as a double
+      return FACTORY.numberNode(Double.parseDouble(value.toString()));
+    }
+    BigInteger unscaled = value.unscaledValue();
+    return unscaled.bitLength() < Long.SIZE
+        ? integralNode(unscaled.longValue())
+        : FACTORY.numberNode(unscaled);
+  }
+}
@@ -0,0 +1,353 @@
+/*
+ * Copyright (c) 2024 Snowflake Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.snowflake.kafka.connector.records;
+
+import static com.snowflake.kafka.connector.records.RecordService.ISO_DATE_TIME_FORMAT;
+import static com.snowflake.kafka.connector.records.RecordService.MAX_SNOWFLAKE_NUMBER_PRECISION;
+import static com.snowflake.kafka.connector.records.RecordService.TIME_FORMAT;
+import static com.snowflake.kafka.connector.records.RecordService.TIME_FORMAT_STREAMING;
+
+import com.google.common.collect.MapMaker;
+import com.snowflake.kafka.connector.internal.SnowflakeErrors;
+import java.lang.ref.WeakReference;
+import java.math.BigDecimal;
+import java.text.SimpleDateFormat;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import net.snowflake.client.jdbc.internal.fasterxml.jackson.databind.JsonNode;
+import net.snowflake.client.jdbc.internal.fasterxml.jackson.databind.node.ArrayNode;
+import net.snowflake.client.jdbc.internal.fasterxml.jackson.databind.node.JsonNodeFactory;
+import net.snowflake.client.jdbc.internal.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.kafka.connect.data.ConnectSchema;
+import org.apache.kafka.connect.data.Date;
+import org.apache.kafka.connect.data.Decimal;
+import org.apache.kafka.connect.data.Field;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.data.Time;
+import org.apache.kafka.connect.data.Timestamp;
+
+/**
+ * Converts values of one Connect schema into JSON, see {@link RecordService#convertToJson(Schema,
+ * Object, boolean)} for the output format.
+ *
+ * <p>A schema is compiled once into a tree of converters, one per nested schema, so the type of the
+ * schema and its logical name are resolved at compile time instead of for every value. Compiled
+ * converters are cached by schema identity: converters like the JsonConverter or the Avro converter
+ * return the same schema instance for all records of a given schema version. The cache holds
+ * schemas weakly, it doesn't keep schemas which are not used anymore alive. A converter only
+ * references its own schema weakly for the same reason, the schema is kept alive by the caller
+ * converting a value of it, or by the enclosing schema of a nested one.
+ */
+abstract class CompiledJsonConverter {
+  private static final JsonNodeFactory FACTORY = JsonNodeFactory.instance;
+
+  private static final ConcurrentMap<Schema, CompiledJsonConverter> SNOWPIPE_CONVERTERS =
+      new MapMaker().weakKeys().makeMap();
+  private static final ConcurrentMap<Schema, CompiledJsonConverter> STREAMING_CONVERTERS =
+      new MapMaker().weakKeys().makeMap();
+
+  private final WeakReference<Schema> schema;
+
+  private CompiledJsonConverter(Schema schema) {
+    this.schema = new WeakReference<>(schema);
+  }
+
+  Schema schema() {
+    return schema.get();
+  }
+
+  /**
+   * @param schema schema of the values to convert, not null
+   * @param isStreaming indicates whether this is part of snowpipe streaming
+   * @return the converter of this schema, compiled on first use
+   */
+  static CompiledJsonConverter forSchema(Schema schema, boolean isStreaming) {
+    // only immutable schemas are cached, a SchemaBuilder can still change after it was used
+    if (!(schema instanceof ConnectSchema)) {
+      return compile(schema, isStreaming);
+    }
+    ConcurrentMap<Schema, CompiledJsonConverter> cache =
+        isStreaming ? STREAMING_CONVERTERS : SNOWPIPE_CONVERTERS;
+    CompiledJsonConverter converter = cache.get(schema);
+    if (converter == null) {
+      converter = compile(schema, isStreaming);
+      CompiledJsonConverter existing = cache.putIfAbsent(schema, converter);
+      if (existing != null) {
+        converter = existing;
+      }
+    }
+    return converter;
+  }
+
+  /**
+   * Convert a value of the compiled schema
+   *
+   * @param value object to be converted
+   * @return a JsonNode of the object
+   */
+  JsonNode convert(Object value) {
+    Schema schema = schema();
+    if (value == null) {
+      if (schema.defaultValue() != null) {
+        value = schema.defaultValue();
+      } else if (schema.isOptional()) {
+        return FACTORY.nullNode();
+      } else {
+        throw SnowflakeErrors.ERROR_5015.getException(
+            "Conversion error: null value for field that is required and has no default value");
+      }
+    }
+    try {
+      return convertValue(value);
+    } catch (ClassCastException e) {
+      throw SnowflakeErrors.ERROR_5015.getException(
+          "Invalid type for " + schema.type() + ": " + value.getClass());
+    }
+  }
+
+  abstract JsonNode convertValue(Object value);
+
+  private static CompiledJsonConverter compile(Schema schema, boolean isStreaming) {
+    switch (schema.type()) {
+      case INT8:
+        return new CompiledJsonConverter(schema) {
+          @Override
+          JsonNode convertValue(Object value) {
+            return FACTORY.numberNode((Byte) value);
+          }
+        };
+      case INT16:
+        return new CompiledJsonConverter(schema) {
+          @Override
+          JsonNode convertValue(Object value) {
+            return FACTORY.numberNode((Short) value);
+          }
+        };
+      case INT32:
+        if (Date.LOGICAL_NAME.equals(schema.name())) {
+          return new DateFormatConverter(schema, ISO_DATE_TIME_FORMAT);
+        }
+        if (Time.LOGICAL_NAME.equals(schema.name())) {
+          return new DateFormatConverter(schema, isStreaming ? TIME_FORMAT_STREAMING : TIME_FORMAT);
+        }
+        return new CompiledJsonConverter(schema) {
+          @Override
+          JsonNode convertValue(Object value) {
+            return FACTORY.numberNode((Integer) value);
+          }
+        };
+      case INT64:
+        if (Timestamp.LOGICAL_NAME.equals(schema.name())) {
+          return new CompiledJsonConverter(schema) {
+            @Override
+            JsonNode convertValue(Object value) {
+              return FACTORY.numberNode(((java.util.Date) value).getTime());
+            }
+          };
+        }
+        return new CompiledJsonConverter(schema) {
+          @Override
+          JsonNode convertValue(Object value) {
+            return FACTORY.numberNode((Long) value);
+          }
+        };
+      case FLOAT32:
+        return new CompiledJsonConverter(schema) {
+          @Override
+          JsonNode convertValue(Object value) {
+            return FACTORY.numberNode((Float) value);
+          }
+        };
+      case FLOAT64:
+        return new CompiledJsonConverter(schema) {
+          @Override
+          JsonNode convertValue(Object value) {
+            return FACTORY.numberNode((Double) value);
+          }
+        };
+      case BOOLEAN:
+        return new CompiledJsonConverter(schema) {
+          @Override
+          JsonNode convertValue(Object value) {
+            return FACTORY.booleanNode((Boolean) value);
+          }
+        };
+      case STRING:
+        return new CompiledJsonConverter(schema) {
+          @Override
+          JsonNode convertValue(Object value) {
+            return FACTORY.textNode(((CharSequence) value).toString());
+          }
+        };
+      case BYTES:
+        if (Decimal.LOGICAL_NAME.equals(schema.name())) {
+          return new CompiledJsonConverter(schema) {
+            @Override
+            JsonNode convertValue(Object value) {
+              BigDecimal bigDecimalValue = (BigDecimal) value;
+              if (bigDecimalValue.precision() > MAX_SNOWFLAKE_NUMBER_PRECISION) {
+                // in order to prevent losing precision, convert this value to text
+                return FACTORY.textNode(bigDecimalValue.toString());
+              }
+              return FACTORY.numberNode(bigDecimalValue);
+            }
+          };
+        }
+        return new CompiledJsonConverter(schema) {
+          @Override
+          JsonNode convertValue(Object value) {
+            return FACTORY.binaryNode(RecordService.toByteArray(value));
+          }
+        };
+      case ARRAY:
+        return new ArrayConverter(schema, elementConverter(schema.valueSchema(), isStreaming));
+      case MAP:
+        return new MapConverter(
+            schema,
+            elementConverter(schema.keySchema(), isStreaming),
+            elementConverter(schema.valueSchema(), isStreaming));
+      case STRUCT:
+        // custom schemas like SnowflakeJsonSchema have no fields, no struct can match them
+        List<Field> fields = schema.fields() == null ? Collections.emptyList() : schema.fields();
+        CompiledJsonConverter[] fieldConverters = new CompiledJsonConverter[fields.size()];
+        for (int i = 0; i < fieldConverters.length; i++) {
+          fieldConverters[i] = compile(fields.get(i).schema(), isStreaming);
+        }
+        return new StructConverter(schema, fields.toArray(new Field[0]), fieldConverters);
+      default:
+        throw SnowflakeErrors.ERROR_5015.getException("Couldn't convert " + schema + " to JSON.");
+    }
+  }
+
+  /** Element schemas are expected, but schemaless elements are converted based on their class */
+  private static CompiledJsonConverter elementConverter(Schema schema, boolean isStreaming) {
+    if (schema != null) {
+      return compile(schema, isStreaming);
+    }
+    return new CompiledJsonConverter(null) {
+      @Override
+      JsonNode convert(Object value) {
+        return RecordService.convertToJson(null, value, isStreaming);
+      }
+
+      @Override
+      JsonNode convertValue(Object value) {
+        return convert(value);
+      }
+    };
+  }
+
+  private static class DateFormatConverter extends CompiledJsonConverter {
+    private final ThreadLocal<SimpleDateFormat> format;
+
+    private DateFormatConverter(Schema schema, ThreadLocal<SimpleDateFormat> format) {
+      super(schema);
+      this.format = format;
+    }
+
+    @Override
+    JsonNode convertValue(Object value) {
+      return FACTORY.textNode(format.get().format((java.util.Date) value));
+    }
+  }
+
+  private static class ArrayConverter extends CompiledJsonConverter {
+    private final CompiledJsonConverter elementConverter;
+
+    private ArrayConverter(Schema schema, CompiledJsonConverter elementConverter) {
+      super(schema);
+      this.elementConverter = elementConverter;
+    }
+
+    @Override
+    JsonNode convertValue(Object value) {
+      Collection<?> collection = (Collection<?>) value;
+      ArrayNode list = FACTORY.arrayNode(collection.size());
+      for (Object elem : collection) {
+        list.add(elementConverter.convert(elem));
+      }
+      return list;
+    }
+  }
+
+  private static class MapConverter extends CompiledJsonConverter {
+    private final CompiledJsonConverter keyConverter;
+    private final CompiledJsonConverter valueConverter;
+    // If true, using string keys and JSON object; if false, using non-string keys and
+    // Array-encoding
+    private final boolean objectMode;
+
+    private MapConverter(
+        Schema schema, CompiledJsonConverter keyConverter, CompiledJsonConverter valueConverter) {
+      super(schema);
+      this.keyConverter = keyConverter;
+      this.valueConverter = valueConverter;
+      this.objectMode =
+          schema.keySchema() != null && schema.keySchema().type() == Schema.Type.STRING;
+    }
+
+    @Override
+    JsonNode convertValue(Object value) {
+      Map<?, ?> map = (Map<?, ?>) value;
+      if (objectMode) {
+        ObjectNode obj = FACTORY.objectNode();
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+          JsonNode mapKey = keyConverter.convert(entry.getKey());
+          obj.set(mapKey.asText(), valueConverter.convert(entry.getValue()));
+        }
+        return obj;
+      }
+      ArrayNode list = FACTORY.arrayNode(map.size());
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        JsonNode mapKey = keyConverter.convert(entry.getKey());
+        JsonNode mapValue = valueConverter.convert(entry.getValue());
+        list.add(FACTORY.arrayNode(2).add(mapKey).add(mapValue));
+      }
+      return list;
+    }
+  }
+
+  private static class StructConverter extends CompiledJsonConverter {
+    private final Field[] fields;
+    private final CompiledJsonConverter[] fieldConverters;
+
+    private StructConverter(
+        Schema schema, Field[] fields, CompiledJsonConverter[] fieldConverters) {
+      super(schema);
+      this.fields = fields;
+      this.fieldConverters = fieldConverters;
+    }
+
+    @Override
+    JsonNode convertValue(Object value) {
+      Struct struct = (Struct) value;
+      // schema converters usually return the same instance for all records of a schema
+      if (struct.schema() != schema() && !struct.schema().equals(schema())) {
+        throw SnowflakeErrors.ERROR_5015.getException("Mismatching schema.");
+      }
+      ObjectNode obj = FACTORY.objectNode();
+      for (int i = 0; i < fields.length; i++) {
+        obj.set(fields[i].name(), fieldConverters[i].convert(struct.get(fields[i])));
+      }
+      return obj;
+    }
+  }
+}
@@ -24,16 +24,20 @@ import com.snowflake.kafka.connector.SnowflakeSinkConnectorConfig;
 import com.snowflake.kafka.connector.Utils;
 import com.snowflake.kafka.connector.internal.KCLogger;
 import com.snowflake.kafka.connector.internal.SnowflakeErrors;
-import java.math.BigDecimal;
 import java.nio.ByteBuffer;
 import java.text.SimpleDateFormat;
 import java.time.Clock;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TimeZone;
 import javax.annotation.Nullable;
 import net.snowflake.client.jdbc.internal.fasterxml.jackson.core.JsonProcessingException;
@@ -44,12 +48,7 @@ import net.snowflake.client.jdbc.internal.fasterxml.jackson.databind.node.JsonNo
 import net.snowflake.client.jdbc.internal.fasterxml.jackson.databind.node.ObjectNode;
 import org.apache.kafka.common.record.TimestampType;
 import org.apache.kafka.connect.data.ConnectSchema;
-import org.apache.kafka.connect.data.Date;
-import org.apache.kafka.connect.data.Decimal;
-import org.apache.kafka.connect.data.Field;
 import org.apache.kafka.connect.data.Schema;
-import org.apache.kafka.connect.data.Struct;
-import org.apache.kafka.connect.data.Time;
 import org.apache.kafka.connect.data.Timestamp;
 import org.apache.kafka.connect.header.Header;
 import org.apache.kafka.connect.header.Headers;
@@ -62,7 +61,7 @@ import org.apache.kafka.connect.sink.SinkRecord;
 public class RecordService {
   private final KCLogger LOGGER = new KCLogger(RecordService.class.getName());
 
-  private static final ObjectMapper MAPPER = new ObjectMapper();
+  static final ObjectMapper MAPPER = new ObjectMapper();
 
   // deleted private to use these values in test
   static final String OFFSET = "offset";
@@ -73,7 +72,7 @@ public class RecordService {
   static final String META = "meta";
   static final String SCHEMA_ID = "schema_id";
   static final String CONNECTOR_PUSH_TIME = "SnowflakeConnectorPushTime";
-  private static final String KEY_SCHEMA_ID = "key_schema_id";
+  static final String KEY_SCHEMA_ID = "key_schema_id";
   static final String HEADERS = "headers";
 
   private boolean enableSchematization = false;
@@ -152,20 +151,7 @@ public class RecordService {
    * @return a Row wrapper which contains both actual content(payload) and metadata
    */
   private SnowflakeTableRow processRecord(SinkRecord record, @Nullable Instant connectorPushTime) {
-    SnowflakeRecordContent valueContent;
-
-    if (record.value() == null || record.valueSchema() == null) {
-      valueContent = new SnowflakeRecordContent();
-    } else {
-      if (!record.valueSchema().name().equals(SnowflakeJsonSchema.NAME)) {
-        throw SnowflakeErrors.ERROR_0009.getException();
-      }
-      if (!(record.value() instanceof SnowflakeRecordContent)) {
-        throw SnowflakeErrors.ERROR_0010.getException(
-            "Input record should be SnowflakeRecordContent object");
-      }
-      valueContent = (SnowflakeRecordContent) record.value();
-    }
+    SnowflakeRecordContent valueContent = getValueContent(record);
 
     ObjectNode meta = MAPPER.createObjectNode();
     if (metadataConfig.topicFlag) {
@@ -200,6 +186,41 @@ public class RecordService {
     return new SnowflakeTableRow(valueContent, meta);
   }
 
+  /**
+   * Get the value of a record, only values produced by snowflake converters are supported
+   *
+   * @param record SinkRecord
+   * @return the record content, an empty content for null values
+   */
+  static SnowflakeRecordContent getValueContent(SinkRecord record) {
+    if (record.value() == null || record.valueSchema() == null) {
+      return new SnowflakeRecordContent();
+    }
+    if (!record.valueSchema().name().equals(SnowflakeJsonSchema.NAME)) {
+      throw SnowflakeErrors.ERROR_0009.getException();
+    }
+    if (!(record.value() instanceof SnowflakeRecordContent)) {
+      throw SnowflakeErrors.ERROR_0010.getException(
+          "Input record should be SnowflakeRecordContent object");
+    }
+    return (SnowflakeRecordContent) record.value();
+  }
+
+  /**
+   * Creates a writer which serializes the records of one topic partition for Snowpipe straight into
+   * a stream, see {@link SnowpipeRecordWriter}
+   *
+   * @param topic topic of the partition
+   * @return a new writer
+   */
+  public SnowpipeRecordWriter createSnowpipeRecordWriter(String topic) {
+    return new SnowpipeRecordWriter(this, topic);
+  }
+
+  SnowflakeMetadataConfig getMetadataConfig() {
+    return metadataConfig;
+  }
+
   /**
    * Given a single Record from put API, process it and convert it into a Json String.
    *
@@ -242,11 +263,26 @@ public class RecordService {
    */
   public Map<String, Object> getProcessedRecordForStreamingIngest(SinkRecord record)
       throws JsonProcessingException {
+    return getProcessedRecordForStreamingIngest(record, Collections.emptySet());
+  }
+
+  /**
+   * Same as {@link #getProcessedRecordForStreamingIngest(SinkRecord)}, but with schematization the
+   * objects and arrays of the semi-structured columns are passed as Map and List instead of JSON
+   * text
+   *
+   * @param record record from Kafka to (Which was serialized in Json)
+   * @param semiStructuredColumns quoted names of the VARIANT, OBJECT and ARRAY columns of the table
+   * @return Json String with metadata and actual Payload from Kafka Record
+   */
+  public Map<String, Object> getProcessedRecordForStreamingIngest(
+      SinkRecord record, Set<String> semiStructuredColumns) throws JsonProcessingException {
     SnowflakeTableRow row = processRecord(record, clock.instant());
     final Map<String, Object> streamingIngestRow = new HashMap<>();
     for (JsonNode node : row.content.getData()) {
       if (enableSchematization) {
-        streamingIngestRow.putAll(getMapFromJsonNodeForStreamingIngest(node));
+        streamingIngestRow.putAll(
+            getMapFromJsonNodeForStreamingIngest(node, semiStructuredColumns));
       } else {
         streamingIngestRow.put(TABLE_COLUMN_CONTENT, MAPPER.writeValueAsString(node));
       }
@@ -258,8 +294,8 @@ public class RecordService {
     return streamingIngestRow;
   }
 
-  private Map<String, Object> getMapFromJsonNodeForStreamingIngest(JsonNode node)
-      throws JsonProcessingException {
+  private Map<String, Object> getMapFromJsonNodeForStreamingIngest(
+      JsonNode node, Set<String> semiStructuredColumns) throws JsonProcessingException {
     final Map<String, Object> streamingIngestRow = new HashMap<>();
 
     // return empty if tombstone record
@@ -270,18 +306,27 @@ public class RecordService {
     Iterator<String> columnNames = node.fieldNames();
     while (columnNames.hasNext()) {
       String columnName = columnNames.next();
+      String quotedColumnName = Utils.quoteNameIfNeeded(columnName);
       JsonNode columnNode = node.get(columnName);
       Object columnValue;
       if (columnNode.isTextual()) {
         columnValue = columnNode.textValue();
       } else if (columnNode.isNull()) {
         columnValue = null;
+      } else if (columnNode.isNumber()) {
+        // numbers are passed as their JSON text, the Streaming Ingest SDK parses it for any column
+        // type while it rejects Java numbers for TIMESTAMP, DATE and TIME columns (epoch values)
+        columnValue = columnNode.asText();
+      } else if (columnNode.isBoolean()) {
+        columnValue = columnNode.booleanValue();
+      } else if (columnNode.isContainerNode() && semiStructuredColumns.contains(quotedColumnName)) {
+        // Map and List values are rejected for other column types, VARCHAR for example
+        columnValue = toStreamingIngestValue(columnNode);
       } else {
         columnValue = MAPPER.writeValueAsString(columnNode);
       }
-      // while the value is always dumped into a string, the Streaming Ingest SDK
-      // will transform the value according to its type in the table
-      streamingIngestRow.put(Utils.quoteNameIfNeeded(columnName), columnValue);
+      // the Streaming Ingest SDK will transform the value according to its type in the table
+      streamingIngestRow.put(quotedColumnName, columnValue);
     }
     // Thrown an exception if the input JsonNode is not in the expected format
     if (streamingIngestRow.isEmpty()) {
@@ -291,6 +336,43 @@ public class RecordService {
     return streamingIngestRow;
   }
 
+  /**
+   * Convert a JSON node nested in a column into the Java value the Streaming Ingest SDK accepts for
+   * semi-structured columns, so it doesn't need to be written as JSON here and parsed again by the
+   * SDK.
+   *
+   * @param node JSON node of a column value or of an element of a column value
+   * @return Map for objects, List for arrays, String, Number, Boolean or null for scalars
+   */
+  private static Object toStreamingIngestValue(JsonNode node) {
+    switch (node.getNodeType()) {
+      case OBJECT:
+        Map<String, Object> object = new LinkedHashMap<>();
+        Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+        while (fields.hasNext()) {
+          Map.Entry<String, JsonNode> field = fields.next();
+          object.put(field.getKey(), toStreamingIngestValue(field.getValue()));
+        }
+        return object;
+      case ARRAY:
+        List<Object> array = new ArrayList<>(node.size());
+        for (JsonNode element : node) {
+          array.add(toStreamingIngestValue(element));
+        }
+        return array;
+      case NUMBER:
+        return node.numberValue();
+      case BOOLEAN:
+        return node.booleanValue();
+      case NULL:
+      case MISSING:
+        return null;
+      default:
+        // strings, and binary values which are base64 encoded strings in JSON
+        return node.asText();
+    }
+  }
+
   /** For now there are two columns one is content and other is metadata. Both are Json */
   private static class SnowflakeTableRow {
     // This can be a JsonNode but we will keep this as is.
@@ -308,21 +390,9 @@ public class RecordService {
       return;
     }
 
-    if (record.keySchema() == null) {
-      throw SnowflakeErrors.ERROR_0010.getException(
-          "Unsupported Key format, please implement either String Key Converter or Snowflake"
-              + " Converters");
-    }
-
-    if (record.keySchema().toString().equals(Schema.STRING_SCHEMA.toString())) {
+    if (isStringKey(record)) {
       meta.put(KEY, record.key().toString());
-    } else if (SnowflakeJsonSchema.NAME.equals(record.keySchema().name())) {
-      if (!(record.key() instanceof SnowflakeRecordContent)) {
-        throw SnowflakeErrors.ERROR_0010.getException(
-            "Input record key should be SnowflakeRecordContent object if key schema is"
-                + " SNOWFLAKE_JSON_SCHEMA");
-      }
-
+    } else {
       SnowflakeRecordContent keyContent = (SnowflakeRecordContent) record.key();
 
       JsonNode[] keyData = keyContent.getData();
@@ -337,6 +407,34 @@ public class RecordService {
       if (keyContent.getSchemaID() != SnowflakeRecordContent.NON_AVRO_SCHEMA) {
         meta.put(KEY_SCHEMA_ID, keyContent.getSchemaID());
       }
+    }
+  }
+
+  /**
+   * Validate the key of a record which is not null
+   *
+   * @param record SinkRecord with a key
+   * @return true if the key is a string, false if it is a {@link SnowflakeRecordContent}
+   */
+  static boolean isStringKey(SinkRecord record) {
+    Schema keySchema = record.keySchema();
+    if (keySchema == null) {
+      throw SnowflakeErrors.ERROR_0010.getException(
+          "Unsupported Key format, please implement either String Key Converter or Snowflake"
+              + " Converters");
+    }
+
+    // avoid building the string representation of the common unnamed string schema
+    if ((keySchema.type() == Schema.Type.STRING && keySchema.name() == null)
+        || keySchema.toString().equals(Schema.STRING_SCHEMA.toString())) {
+      return true;
+    } else if (SnowflakeJsonSchema.NAME.equals(keySchema.name())) {
+      if (!(record.key() instanceof SnowflakeRecordContent)) {
+        throw SnowflakeErrors.ERROR_0010.getException(
+            "Input record key should be SnowflakeRecordContent object if key schema is"
+                + " SNOWFLAKE_JSON_SCHEMA");
+      }
+      return false;
     } else {
       throw SnowflakeErrors.ERROR_0010.getException(
           "Unsupported Key format, please implement either String Key Converter or Snowflake"
@@ -356,169 +454,117 @@ public class RecordService {
    * Convert this object, in the org.apache.kafka.connect.data format, into a JSON object, returning
    * the converted object.
    *
+   * <p>Values with a schema are converted by the {@link CompiledJsonConverter} of their schema.
+   *
    * @param schema schema of the object
    * @param logicalValue object to be converted
    * @param isStreaming indicates whether this is part of snowpipe streaming
    * @return a JsonNode of the object
    */
   public static JsonNode convertToJson(Schema schema, Object logicalValue, boolean isStreaming) {
-    if (logicalValue == null) {
-      if (schema
-          == null) // Any schema is valid and we don't have a default, so treat this as an optional
-        // schema
-        return null;
-      if (schema.defaultValue() != null)
-        return convertToJson(schema, schema.defaultValue(), isStreaming);
-      if (schema.isOptional()) return JsonNodeFactory.instance.nullNode();
-      throw SnowflakeErrors.ERROR_5015.getException(
-          "Conversion error: null value for field that is required and has no default value");
+    if (schema != null) {
+      return CompiledJsonConverter.forSchema(schema, isStreaming).convert(logicalValue);
     }
+    // Any schema is valid and we don't have a default, so treat this as an optional schema
+    if (logicalValue == null) return null;
 
     Object value = logicalValue;
-    try {
-      final Schema.Type schemaType;
-      if (schema == null) {
-        Schema.Type primitiveType = ConnectSchema.schemaType(value.getClass());
-        if (primitiveType != null) {
-          schemaType = primitiveType;
-        } else {
-          if (value instanceof java.util.Date) {
-            schema = Timestamp.SCHEMA;
-            schemaType = Schema.Type.INT64;
-          } else {
-            throw SnowflakeErrors.ERROR_5015.getException(
-                "Java class " + value.getClass() + " does not have corresponding schema type.");
-          }
-        }
-      } else {
-        schemaType = schema.type();
+    Schema.Type schemaType = ConnectSchema.schemaType(value.getClass());
+    if (schemaType == null) {
+      if (value instanceof java.util.Date) {
+        return convertToJson(Timestamp.SCHEMA, value, isStreaming);
       }
-      switch (schemaType) {
-        case INT8:
-          return JsonNodeFactory.instance.numberNode((Byte) value);
-        case INT16:
-          return JsonNodeFactory.instance.numberNode((Short) value);
-        case INT32:
-          if (schema != null && Date.LOGICAL_NAME.equals(schema.name())) {
-            return JsonNodeFactory.instance.textNode(
-                ISO_DATE_TIME_FORMAT.get().format((java.util.Date) value));
-          }
-          if (schema != null && Time.LOGICAL_NAME.equals(schema.name())) {
-            ThreadLocal<SimpleDateFormat> format =
-                isStreaming ? TIME_FORMAT_STREAMING : TIME_FORMAT;
-            return JsonNodeFactory.instance.textNode(format.get().format((java.util.Date) value));
-          }
-          return JsonNodeFactory.instance.numberNode((Integer) value);
-        case INT64:
-          if (schema != null && Timestamp.LOGICAL_NAME.equals(schema.name())) {
-            return JsonNodeFactory.instance.numberNode(
-                Timestamp.fromLogical(schema, (java.util.Date) value));
+      throw SnowflakeErrors.ERROR_5015.getException(
+          "Java class " + value.getClass() + " does not have corresponding schema type.");
+    }
+    switch (schemaType) {
+      case INT8:
+        return JsonNodeFactory.instance.numberNode((Byte) value);
+      case INT16:
+        return JsonNodeFactory.instance.numberNode((Short) value);
+      case INT32:
+        return JsonNodeFactory.instance.numberNode((Integer) value);
+      case INT64:
+        return JsonNodeFactory.instance.numberNode((Long) value);
+      case FLOAT32:
+        return JsonNodeFactory.instance.numberNode((Float) value);
+      case FLOAT64:
+        return JsonNodeFactory.instance.numberNode((Double) value);
+      case BOOLEAN:
+        return JsonNodeFactory.instance.booleanNode((Boolean) value);
+      case STRING:
+        CharSequence charSeq = (CharSequence) value;
+        return JsonNodeFactory.instance.textNode(charSeq.toString());
+      case BYTES:
+        return JsonNodeFactory.instance.binaryNode(toByteArray(value));
+      case ARRAY:
+        {
+          Collection collection = (Collection) value;
+          ArrayNode list = JsonNodeFactory.instance.arrayNode();
+          for (Object elem : collection) {
+            list.add(convertToJson(null, elem, isStreaming));
           }
-          return JsonNodeFactory.instance.numberNode((Long) value);
-        case FLOAT32:
-          return JsonNodeFactory.instance.numberNode((Float) value);
-        case FLOAT64:
-          return JsonNodeFactory.instance.numberNode((Double) value);
-        case BOOLEAN:
-          return JsonNodeFactory.instance.booleanNode((Boolean) value);
-        case STRING:
-          CharSequence charSeq = (CharSequence) value;
-          return JsonNodeFactory.instance.textNode(charSeq.toString());
-        case BYTES:
-          if (schema != null && Decimal.LOGICAL_NAME.equals(schema.name())) {
-            BigDecimal bigDecimalValue = (BigDecimal) value;
-            if (bigDecimalValue.precision() > MAX_SNOWFLAKE_NUMBER_PRECISION) {
-              // in order to prevent losing precision, convert this value to text
-              return JsonNodeFactory.instance.textNode(bigDecimalValue.toString());
+          return list;
+        }
+      case MAP:
+        {
+          Map<?, ?> map = (Map<?, ?>) value;
+          // If true, using string keys and JSON object; if false, using non-string keys and
+          // Array-encoding
+          boolean objectMode = true;
+          for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (!(entry.getKey() instanceof String)) {
+              objectMode = false;
+              break;
             }
-            return JsonNodeFactory.instance.numberNode(bigDecimalValue);
           }
-
-          byte[] valueArr = null;
-          if (value instanceof byte[]) valueArr = (byte[]) value;
-          else if (value instanceof ByteBuffer) {
-            ByteBuffer byteBufferValue = (ByteBuffer) value;
-            if (byteBufferValue.hasArray()) valueArr = ((ByteBuffer) value).array();
-            else {
-              // If the byte buffer is read only, make a copy of the buffer then access the byte
-              // array.
-              ByteBuffer clone = ByteBuffer.allocate(byteBufferValue.capacity());
-              byteBufferValue.rewind();
-              clone.put(byteBufferValue);
-              byteBufferValue.rewind();
-              clone.flip();
-              valueArr = clone.array();
-            }
+          ObjectNode obj = null;
+          ArrayNode list = null;
+          if (objectMode) obj = JsonNodeFactory.instance.objectNode();
+          else list = JsonNodeFactory.instance.arrayNode();
+          for (Map.Entry<?, ?> entry : map.entrySet()) {
+            JsonNode mapKey = convertToJson(null, entry.getKey(), isStreaming);
+            JsonNode mapValue = convertToJson(null, entry.getValue(), isStreaming);
+
+            if (objectMode) obj.set(mapKey.asText(), mapValue);
+            else list.add(JsonNodeFactory.instance.arrayNode().add(mapKey).add(mapValue));
           }
+          return objectMode ? obj : list;
+        }
+      case STRUCT:
+        // a struct always carries its schema, it can't match a missing one
+        throw SnowflakeErrors.ERROR_5015.getException("Mismatching schema.");
+    }
 
-          if (valueArr == null)
-            throw SnowflakeErrors.ERROR_5015.getException(
-                "Invalid type for bytes type: " + value.getClass());
-
-          return JsonNodeFactory.instance.binaryNode(valueArr);
+    throw SnowflakeErrors.ERROR_5015.getException("Couldn't convert " + value + " to JSON.");
+  }
 
-        case ARRAY:
-          {
-            Collection collection = (Collection) value;
-            ArrayNode list = JsonNodeFactory.instance.arrayNode();
-            for (Object elem : collection) {
-              Schema valueSchema = schema == null ? null : schema.valueSchema();
-              JsonNode fieldValue = convertToJson(valueSchema, elem, isStreaming);
-              list.add(fieldValue);
-            }
-            return list;
-          }
-        case MAP:
-          {
-            Map<?, ?> map = (Map<?, ?>) value;
-            // If true, using string keys and JSON object; if false, using non-string keys and
-            // Array-encoding
-            boolean objectMode;
-            if (schema == null) {
-              objectMode = true;
-              for (Map.Entry<?, ?> entry : map.entrySet()) {
-                if (!(entry.getKey() instanceof String)) {
-                  objectMode = false;
-                  break;
-                }
-              }
-            } else {
-              objectMode =
-                  (schema.keySchema() != null && schema.keySchema().type() == Schema.Type.STRING);
-            }
-            ObjectNode obj = null;
-            ArrayNode list = null;
-            if (objectMode) obj = JsonNodeFactory.instance.objectNode();
-            else list = JsonNodeFactory.instance.arrayNode();
-            for (Map.Entry<?, ?> entry : map.entrySet()) {
-              Schema keySchema = schema == null ? null : schema.keySchema();
-              Schema valueSchema = schema == null ? null : schema.valueSchema();
-              JsonNode mapKey = convertToJson(keySchema, entry.getKey(), isStreaming);
-              JsonNode mapValue = convertToJson(valueSchema, entry.getValue(), isStreaming);
-
-              if (objectMode) obj.set(mapKey.asText(), mapValue);
-              else list.add(JsonNodeFactory.instance.arrayNode().add(mapKey).add(mapValue));
-            }
-            return objectMode ? obj : list;
-          }
-        case STRUCT:
-          {
-            Struct struct = (Struct) value;
-            if (struct.schema() != schema)
-              throw SnowflakeErrors.ERROR_5015.getException("Mismatching schema.");
-            ObjectNode obj = JsonNodeFactory.instance.objectNode();
-            for (Field field : schema.fields()) {
-              obj.set(field.name(), convertToJson(field.schema(), struct.get(field), isStreaming));
-            }
-            return obj;
-          }
+  /**
+   * @param value value of a BYTES schema without logical type
+   * @return the bytes of the value
+   */
+  static byte[] toByteArray(Object value) {
+    byte[] valueArr = null;
+    if (value instanceof byte[]) valueArr = (byte[]) value;
+    else if (value instanceof ByteBuffer) {
+      ByteBuffer byteBufferValue = (ByteBuffer) value;
+      if (byteBufferValue.hasArray()) valueArr = ((ByteBuffer) value).array();
+      else {
+        // If the byte buffer is read only, make a copy of the buffer then access the byte
+        // array.
+        ByteBuffer clone = ByteBuffer.allocate(byteBufferValue.capacity());
+        byteBufferValue.rewind();
+        clone.put(byteBufferValue);
+        byteBufferValue.rewind();
+        clone.flip();
+        valueArr = clone.array();
       }
+    }
 
-      throw SnowflakeErrors.ERROR_5015.getException("Couldn't convert " + value + " to JSON.");
-    } catch (ClassCastException e) {
+    if (valueArr == null)
       throw SnowflakeErrors.ERROR_5015.getException(
-          "Invalid type for " + schema.type() + ": " + value.getClass());
-    }
+          "Invalid type for bytes type: " + value.getClass());
+    return valueArr;
   }
 
   /**
@@ -19,26 +19,34 @@ package com.snowflake.kafka.connector.records;
 import com.snowflake.kafka.connector.internal.SnowflakeErrors;
 import io.confluent.kafka.schemaregistry.client.CachedSchemaRegistryClient;
 import io.confluent.kafka.schemaregistry.client.SchemaRegistryClient;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import net.snowflake.client.jdbc.internal.fasterxml.jackson.databind.JsonNode;
 import org.apache.avro.Conversions;
 import org.apache.avro.Schema;
 import org.apache.avro.SchemaParseException;
 import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericDatumReader;
-import org.apache.avro.generic.GenericRecord;
-import org.apache.avro.io.DatumReader;
-import org.apache.avro.io.Decoder;
 import org.apache.avro.io.DecoderFactory;
 import org.apache.kafka.connect.data.SchemaAndValue;
 
 public class SnowflakeAvroConverter extends SnowflakeConverter {
+  // Conversion for logical type Decimal. There are conversions for other logical types as well.
+  private static final GenericData GENERIC_DATA = new GenericData();
+
+  static {
+    GENERIC_DATA.addLogicalTypeConversion(new Conversions.DecimalConversion());
+  }
+
   private SchemaRegistryClient schemaRegistry = null;
 
+  // Resolving a writer schema against a reader schema is expensive, readers are built once per pair
+  private final Map<SchemaPair, GenericDatumReader<Object>> datumReaders =
+      new ConcurrentHashMap<>();
+
   public static final String BREAK_ON_SCHEMA_REGISTRY_ERROR = "break.on.schema.registry.error";
   public static final String READER_SCHEMA = "reader.schema";
 
@@ -153,15 +161,15 @@ public class SnowflakeAvroConverter extends SnowflakeConverter {
     }
 
     try {
-      int length = buffer.limit() - 1 - 4;
-      byte[] data = new byte[length];
-      buffer.get(data, 0, length);
-
       return new SchemaAndValue(
           new SnowflakeJsonSchema(),
           new SnowflakeRecordContent(
               parseAvroWithSchema(
-                  data, writerSchema, readerSchema == null ? writerSchema : readerSchema),
+                  bytes,
+                  buffer.position(),
+                  buffer.remaining(),
+                  writerSchema,
+                  readerSchema == null ? writerSchema : readerSchema),
               id));
     } catch (Exception e) {
       if (breakOnSchemaRegistryError) {
@@ -185,24 +193,58 @@ public class SnowflakeAvroConverter extends SnowflakeConverter {
    * https://avro.apache.org/docs/1.9.2/spec.html#Schema+Resolution
    *
    * @param data avro data
+   * @param offset position of the first byte of the record in data
+   * @param length length of the record in data
    * @param writerSchema avro schema with which data got serialized
    * @param readerSchema avro schema that describes the shape of the returned JsonNode
    * @return JsonNode array
    */
-  private JsonNode parseAvroWithSchema(final byte[] data, Schema writerSchema, Schema readerSchema)
+  private JsonNode parseAvroWithSchema(
+      final byte[] data, int offset, int length, Schema writerSchema, Schema readerSchema)
       throws IOException {
-    final GenericData genericData = new GenericData();
-    // Conversion for logical type Decimal. There are conversions for other logical types as well.
-    genericData.addLogicalTypeConversion(new Conversions.DecimalConversion());
-
-    InputStream is = new ByteArrayInputStream(data);
-    Decoder decoder = DecoderFactory.get().binaryDecoder(is, null);
-    DatumReader<GenericRecord> reader =
-        new GenericDatumReader<>(writerSchema, readerSchema, genericData);
-    GenericRecord datum = reader.read(null, decoder);
-    // For byte data without logical type, this toString method handles it this way:
+    GenericDatumReader<Object> reader =
+        datumReaders.computeIfAbsent(
+            new SchemaPair(writerSchema, readerSchema),
+            pair -> new GenericDatumReader<>(pair.writerSchema, pair.readerSchema, GENERIC_DATA));
+    Object datum =
+        reader.read(null, DecoderFactory.get().binaryDecoder(data, offset, length, null));
+    // For byte data without logical type, the datum is converted the way its toString method does:
     // writeEscapedString(StandardCharsets.ISO_8859_1.decode(bytes), buffer);
     // The generated string is escaped ISO_8859_1 decoded string.
-    return mapper.readTree(datum.toString());
+    return AvroJsonNodeConverter.toJsonNode(datum);
+  }
+
+  // for testing only
+  int getCachedDatumReaderCount() {
+    return datumReaders.size();
+  }
+
+  /** Cache key of a datum reader */
+  private static final class SchemaPair {
+    private final Schema writerSchema;
+    private final Schema readerSchema;
+
+    private SchemaPair(Schema writerSchema, Schema readerSchema) {
+      this.writerSchema = writerSchema;
+      this.readerSchema = readerSchema;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof SchemaPair)) {
+        return false;
+      }
+      SchemaPair that = (SchemaPair) o;
+      // schemas returned by the registry client are cached, they are usually the same instances
+      return writerSchema.equals(that.writerSchema) && readerSchema.equals(that.readerSchema);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(writerSchema, readerSchema);
+    }
   }
 }
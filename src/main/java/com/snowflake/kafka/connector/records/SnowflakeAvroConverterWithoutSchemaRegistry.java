@@ -23,7 +23,6 @@ import net.snowflake.client.jdbc.internal.fasterxml.jackson.databind.JsonNode;
 import org.apache.avro.file.DataFileReader;
 import org.apache.avro.file.SeekableByteArrayInput;
 import org.apache.avro.generic.GenericDatumReader;
-import org.apache.avro.generic.GenericRecord;
 import org.apache.avro.io.DatumReader;
 import org.apache.kafka.connect.data.SchemaAndValue;
 
@@ -41,9 +40,9 @@ public class SnowflakeAvroConverterWithoutSchemaRegistry extends SnowflakeConver
       return new SchemaAndValue(new SnowflakeJsonSchema(), new SnowflakeRecordContent());
     }
     try {
-      // avro input parser
-      DatumReader<GenericRecord> datumReader = new GenericDatumReader<>();
-      DataFileReader<GenericRecord> dataFileReader;
+      // avro input parser, the file header carries the writer schema so the reader is bound to it
+      DatumReader<Object> datumReader = new GenericDatumReader<>();
+      DataFileReader<Object> dataFileReader;
 
       try {
         dataFileReader = new DataFileReader<>(new SeekableByteArrayInput(value), datumReader);
@@ -54,18 +53,7 @@ public class SnowflakeAvroConverterWithoutSchemaRegistry extends SnowflakeConver
 
       ArrayList<JsonNode> buffer = new ArrayList<>();
       while (dataFileReader.hasNext()) {
-        String jsonString = dataFileReader.next().toString();
-        try {
-          buffer.add(mapper.readTree(jsonString));
-        } catch (IOException e) {
-          throw SnowflakeErrors.ERROR_0010.getException(
-              "Failed to parse JSON"
-                  + " "
-                  + "record\nInput String: "
-                  + jsonString
-                  + "\n"
-                  + e.getMessage());
-        }
+        buffer.add(AvroJsonNodeConverter.toJsonNode(dataFileReader.next()));
       }
 
       JsonNode[] result = new JsonNode[buffer.size()];
@@ -0,0 +1,196 @@
+package com.snowflake.kafka.connector.records;
+
+import static com.snowflake.kafka.connector.records.RecordService.CONTENT;
+import static com.snowflake.kafka.connector.records.RecordService.HEADERS;
+import static com.snowflake.kafka.connector.records.RecordService.KEY;
+import static com.snowflake.kafka.connector.records.RecordService.KEY_SCHEMA_ID;
+import static com.snowflake.kafka.connector.records.RecordService.META;
+import static com.snowflake.kafka.connector.records.RecordService.OFFSET;
+import static com.snowflake.kafka.connector.records.RecordService.PARTITION;
+import static com.snowflake.kafka.connector.records.RecordService.SCHEMA_ID;
+import static com.snowflake.kafka.connector.records.RecordService.TOPIC;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import net.snowflake.client.jdbc.internal.fasterxml.jackson.core.JsonEncoding;
+import net.snowflake.client.jdbc.internal.fasterxml.jackson.core.JsonGenerator;
+import net.snowflake.client.jdbc.internal.fasterxml.jackson.core.SerializableString;
+import net.snowflake.client.jdbc.internal.fasterxml.jackson.core.io.SerializedString;
+import net.snowflake.client.jdbc.internal.fasterxml.jackson.databind.JsonNode;
+import org.apache.kafka.common.record.TimestampType;
+import org.apache.kafka.connect.sink.SinkRecord;
+
+/**
+ * Serializes records of one topic partition for Snowpipe directly into an output buffer.
+ *
+ * <p>The output is the same as {@link RecordService#getProcessedRecordForSnowpipe(SinkRecord)},
+ * i.e. <i>{"content":{...},"meta":{...}}</i> per content node, but no metadata tree nor
+ * intermediate String is created for a record. Field names and the topic name are encoded once per
+ * writer and reused for every record.
+ *
+ * <p>A writer is not thread safe. The caller is expected to guard it like the partition buffer it
+ * writes into.
+ */
+public class SnowpipeRecordWriter {
+  private static final SerializedString CONTENT_FIELD = new SerializedString(CONTENT);
+  private static final SerializedString META_FIELD = new SerializedString(META);
+  private static final SerializedString TOPIC_FIELD = new SerializedString(TOPIC);
+  private static final SerializedString OFFSET_FIELD = new SerializedString(OFFSET);
+  private static final SerializedString PARTITION_FIELD = new SerializedString(PARTITION);
+  private static final SerializedString SCHEMA_ID_FIELD = new SerializedString(SCHEMA_ID);
+  private static final SerializedString KEY_FIELD = new SerializedString(KEY);
+  private static final SerializedString KEY_SCHEMA_ID_FIELD = new SerializedString(KEY_SCHEMA_ID);
+  private static final SerializedString HEADERS_FIELD = new SerializedString(HEADERS);
+  private static final SerializedString CREATE_TIME_FIELD =
+      new SerializedString(TimestampType.CREATE_TIME.name);
+  private static final SerializedString LOG_APPEND_TIME_FIELD =
+      new SerializedString(TimestampType.LOG_APPEND_TIME.name);
+
+  private final RecordService recordService;
+  private final String topic;
+  private final SerializedString encodedTopic;
+
+  SnowpipeRecordWriter(RecordService recordService, String topic) {
+    this.recordService = recordService;
+    this.topic = topic;
+    this.encodedTopic = new SerializedString(topic);
+  }
+
+  /**
+   * @param out stream the generator writes UTF-8 encoded JSON to
+   * @return a generator to pass to {@link #write(SinkRecord, JsonGenerator)}, it can be reused for
+   *     all records written to the stream
+   */
+  public JsonGenerator createGenerator(OutputStream out) throws IOException {
+    return RecordService.MAPPER
+        .getFactory()
+        .createGenerator(out, JsonEncoding.UTF8)
+        .setRootValueSeparator(null);
+  }
+
+  /**
+   * @param out writer the generator writes JSON to
+   * @return a generator to pass to {@link #write(SinkRecord, JsonGenerator)}, it can be reused for
+   *     all records written to the writer
+   */
+  public JsonGenerator createGenerator(Writer out) throws IOException {
+    return RecordService.MAPPER.getFactory().createGenerator(out).setRootValueSeparator(null);
+  }
+
+  /**
+   * Serialize a record with its metadata. The record is validated before anything is written, so a
+   * record which can't be processed never leaves a partial row in the output. Content is buffered
+   * in the generator, call {@link JsonGenerator#flush()} to push it to the underlying output and
+   * {@link JsonGenerator#getOutputBuffered()} to account for what was not pushed yet.
+   *
+   * @param record record from Kafka, converted by a snowflake converter
+   * @param generator generator created by this writer
+   */
+  public void write(SinkRecord record, JsonGenerator generator) throws IOException {
+    SnowflakeRecordContent valueContent = RecordService.getValueContent(record);
+    boolean isStringKey = record.key() != null && RecordService.isStringKey(record);
+    SnowflakeMetadataConfig metadataConfig = recordService.getMetadataConfig();
+    JsonNode headers =
+        metadataConfig.allFlag && !record.headers().isEmpty()
+            ? RecordService.parseHeaders(record.headers())
+            : null;
+
+    for (JsonNode node : valueContent.getData()) {
+      generator.writeStartObject();
+      generator.writeFieldName(CONTENT_FIELD);
+      generator.writeTree(node);
+      if (metadataConfig.allFlag) {
+        generator.writeFieldName(META_FIELD);
+        writeMetadata(record, valueContent, isStringKey, headers, metadataConfig, generator);
+      }
+      generator.writeEndObject();
+    }
+  }
+
+  private void writeMetadata(
+      SinkRecord record,
+      SnowflakeRecordContent valueContent,
+      boolean isStringKey,
+      JsonNode headers,
+      SnowflakeMetadataConfig metadataConfig,
+      JsonGenerator generator)
+      throws IOException {
+    generator.writeStartObject();
+    if (metadataConfig.topicFlag) {
+      generator.writeFieldName(TOPIC_FIELD);
+      if (topic.equals(record.topic())) {
+        generator.writeString(encodedTopic);
+      } else {
+        generator.writeString(record.topic());
+      }
+    }
+    if (metadataConfig.offsetAndPartitionFlag) {
+      generator.writeFieldName(OFFSET_FIELD);
+      generator.writeNumber(record.kafkaOffset());
+      generator.writeFieldName(PARTITION_FIELD);
+      if (record.kafkaPartition() == null) {
+        generator.writeNull();
+      } else {
+        generator.writeNumber(record.kafkaPartition());
+      }
+    }
+
+    // ignore if no timestamp
+    if (record.timestampType() != TimestampType.NO_TIMESTAMP_TYPE
+        && metadataConfig.createtimeFlag) {
+      generator.writeFieldName(timestampField(record.timestampType()));
+      if (record.timestamp() == null) {
+        generator.writeNull();
+      } else {
+        generator.writeNumber(record.timestamp());
+      }
+    }
+
+    // include schema id if using avro with schema registry
+    if (valueContent.getSchemaID() != SnowflakeRecordContent.NON_AVRO_SCHEMA) {
+      generator.writeFieldName(SCHEMA_ID_FIELD);
+      generator.writeNumber(valueContent.getSchemaID());
+    }
+
+    if (record.key() != null) {
+      writeKey(record, isStringKey, generator);
+    }
+
+    if (headers != null) {
+      generator.writeFieldName(HEADERS_FIELD);
+      generator.writeTree(headers);
+    }
+    generator.writeEndObject();
+  }
+
+  private static void writeKey(SinkRecord record, boolean isStringKey, JsonGenerator generator)
+      throws IOException {
+    generator.writeFieldName(KEY_FIELD);
+    if (isStringKey) {
+      generator.writeString(record.key().toString());
+      return;
+    }
+
+    SnowflakeRecordContent keyContent = (SnowflakeRecordContent) record.key();
+    JsonNode[] keyData = keyContent.getData();
+    if (keyData.length == 1) {
+      generator.writeTree(keyData[0]);
+    } else {
+      generator.writeStartArray();
+      for (JsonNode keyNode : keyData) {
+        generator.writeTree(keyNode);
+      }
+      generator.writeEndArray();
+    }
+
+    if (keyContent.getSchemaID() != SnowflakeRecordContent.NON_AVRO_SCHEMA) {
+      generator.writeFieldName(KEY_SCHEMA_ID_FIELD);
+      generator.writeNumber(keyContent.getSchemaID());
+    }
+  }
+
+  private static SerializableString timestampField(TimestampType timestampType) {
+    return timestampType == TimestampType.CREATE_TIME ? CREATE_TIME_FIELD : LOG_APPEND_TIME_FIELD;
+  }
+}
@@ -710,6 +710,21 @@ public class ConnectorConfigTest {
         .hasMessageContaining(IngestionMethodConfig.SNOWPIPE_STREAMING.toString());
   }
 
+  @Test
+  public void testAdaptiveFileSizeRequiresCompressedBuffer() {
+    Map<String, String> config = getConfig();
+    config.put(
+        SnowflakeSinkConnectorConfig.INGESTION_METHOD_OPT,
+        IngestionMethodConfig.SNOWPIPE.toString());
+    config.put(SnowflakeSinkConnectorConfig.SNOWPIPE_ADAPTIVE_FILE_SIZE_BYTES, "104857600");
+    assertThatThrownBy(() -> Utils.validateConfig(config))
+        .isInstanceOf(SnowflakeKafkaConnectorException.class)
+        .hasMessageContaining(SnowflakeSinkConnectorConfig.SNOWPIPE_COMPRESSED_BUFFER_ENABLED);
+
+    config.put(SnowflakeSinkConnectorConfig.SNOWPIPE_COMPRESSED_BUFFER_ENABLED, "true");
+    Utils.validateConfig(config);
+  }
+
   @Test
   public void testValidSchematizationForStreamingSnowpipe() {
     Map<String, String> config = getConfig();
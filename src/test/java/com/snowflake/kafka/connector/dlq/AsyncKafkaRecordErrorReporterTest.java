@@ -0,0 +1,87 @@
+package com.snowflake.kafka.connector.dlq;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.errors.ConnectException;
+import org.apache.kafka.connect.errors.DataException;
+import org.apache.kafka.connect.sink.ErrantRecordReporter;
+import org.apache.kafka.connect.sink.SinkRecord;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsyncKafkaRecordErrorReporterTest {
+  private final List<CompletableFuture<Void>> deliveries = new ArrayList<>();
+  private ErrantRecordReporter errantRecordReporter;
+  private AsyncKafkaRecordErrorReporter reporter;
+
+  @Before
+  public void setUp() {
+    errantRecordReporter = mock(ErrantRecordReporter.class);
+    when(errantRecordReporter.report(any(), any()))
+        .thenAnswer(
+            invocation -> {
+              CompletableFuture<Void> delivery = new CompletableFuture<>();
+              deliveries.add(delivery);
+              return delivery;
+            });
+    reporter = new AsyncKafkaRecordErrorReporter(errantRecordReporter);
+  }
+
+  @Test
+  public void testReportDoesNotWaitForDelivery() {
+    for (int offset = 0; offset < 10000; offset++) {
+      reporter.reportError(record(offset), new DataException("Broken Record"));
+    }
+
+    verify(errantRecordReporter, times(10000)).report(any(), any());
+    Assert.assertEquals(10000, reporter.getPendingReportCount());
+  }
+
+  @Test
+  public void testAwaitAllDeliveries() throws Exception {
+    reporter.reportError(record(0), new DataException("Broken Record"));
+    reporter.reportError(record(1), new DataException("Broken Record"));
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<?> await = executor.submit(reporter::awaitReportedErrors);
+      deliveries.get(0).complete(null);
+      Thread.sleep(50);
+      Assert.assertFalse(await.isDone());
+
+      deliveries.get(1).complete(null);
+      await.get(10, TimeUnit.SECONDS);
+    } finally {
+      executor.shutdownNow();
+    }
+    Assert.assertEquals(0, reporter.getPendingReportCount());
+  }
+
+  @Test
+  public void testFailedDeliveryIsThrown() {
+    reporter.reportError(record(0), new DataException("Broken Record"));
+    deliveries.get(0).completeExceptionally(new RuntimeException("DLQ unavailable"));
+
+    Assert.assertThrows(ConnectException.class, reporter::awaitReportedErrors);
+    // the failure is only thrown once
+    reporter.awaitReportedErrors();
+  }
+
+  private static SinkRecord record(long offset) {
+    return new SinkRecord(
+        "topic", 0, Schema.STRING_SCHEMA, "key", Schema.STRING_SCHEMA, "value", offset);
+  }
+}
@@ -33,6 +33,10 @@ public final class InMemoryKafkaRecordErrorReporter implements KafkaRecordErrorR
       this.e = e;
     }
 
+    public SinkRecord getRecord() {
+      return record;
+    }
+
     @Override
     public String toString() {
       return "ReportedData{" + "record=" + record + ", e=" + e + '}';
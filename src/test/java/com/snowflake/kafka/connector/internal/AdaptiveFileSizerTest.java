@@ -0,0 +1,73 @@
+package com.snowflake.kafka.connector.internal;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AdaptiveFileSizerTest {
+  private static final long TARGET_FILE_BYTES = 100_000_000;
+  private static final long MIN_FLUSH_SIZE_BYTES = 5_000_000;
+
+  @Test
+  public void testFlushSizeBeforeFirstFlush() {
+    AdaptiveFileSizer sizer = new AdaptiveFileSizer(TARGET_FILE_BYTES);
+
+    Assert.assertEquals(TARGET_FILE_BYTES, sizer.getFlushSizeBytes(MIN_FLUSH_SIZE_BYTES));
+    Assert.assertEquals(1.0, sizer.getCompressionRatio(), 0);
+  }
+
+  @Test
+  public void testFlushSizeFollowsCompressionRatio() {
+    AdaptiveFileSizer sizer = new AdaptiveFileSizer(TARGET_FILE_BYTES);
+
+    // compressed to a tenth of the buffer size
+    sizer.onFlush(TARGET_FILE_BYTES, TARGET_FILE_BYTES / 10, 1000);
+
+    Assert.assertEquals(0.1, sizer.getCompressionRatio(), 1e-9);
+    Assert.assertEquals(TARGET_FILE_BYTES * 10, sizer.getFlushSizeBytes(MIN_FLUSH_SIZE_BYTES), 1);
+  }
+
+  @Test
+  public void testRatioIsSmoothed() {
+    AdaptiveFileSizer sizer = new AdaptiveFileSizer(TARGET_FILE_BYTES);
+    sizer.onFlush(1000, 100, 1000);
+
+    // one badly compressed buffer only moves the ratio by the smoothing factor
+    sizer.onFlush(1000, 1000, 1000);
+
+    double expected =
+        AdaptiveFileSizer.SMOOTHING_FACTOR * 1.0 + (1 - AdaptiveFileSizer.SMOOTHING_FACTOR) * 0.1;
+    Assert.assertEquals(expected, sizer.getCompressionRatio(), 1e-9);
+  }
+
+  @Test
+  public void testFlushSizeIsNeverBelowMinimum() {
+    AdaptiveFileSizer sizer = new AdaptiveFileSizer(1000);
+    sizer.onFlush(1000, 1000, 1000);
+
+    Assert.assertEquals(MIN_FLUSH_SIZE_BYTES, sizer.getFlushSizeBytes(MIN_FLUSH_SIZE_BYTES));
+  }
+
+  @Test
+  public void testProjectedFileSizeOfPartitionFlushedByTime() {
+    AdaptiveFileSizer sizer = new AdaptiveFileSizer(TARGET_FILE_BYTES);
+    // 1 MB per second, compressed to a half
+    sizer.onFlush(10_000_000, 5_000_000, 10_000);
+
+    Assert.assertEquals(1_000_000, sizer.getArrivalBytesPerSecond(), 1e-6);
+    // 120 seconds of records are below the flush size, the partition is flushed by time
+    Assert.assertEquals(60_000_000, sizer.getProjectedFileBytes(MIN_FLUSH_SIZE_BYTES, 120_000));
+    // 1000 seconds of records reach the target size first
+    Assert.assertEquals(
+        TARGET_FILE_BYTES, sizer.getProjectedFileBytes(MIN_FLUSH_SIZE_BYTES, 1_000_000));
+  }
+
+  @Test
+  public void testEmptyBufferIsIgnored() {
+    AdaptiveFileSizer sizer = new AdaptiveFileSizer(TARGET_FILE_BYTES);
+
+    sizer.onFlush(0, 0, 1000);
+
+    Assert.assertEquals(1.0, sizer.getCompressionRatio(), 0);
+    Assert.assertEquals(0, sizer.getArrivalBytesPerSecond(), 0);
+  }
+}
@@ -0,0 +1,71 @@
+package com.snowflake.kafka.connector.internal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.Test;
+
+class ChunkedByteStoreTest {
+
+  @Test
+  void shouldReadBackBytesSpanningMultipleChunks() throws IOException {
+    byte[] data = new byte[ChunkedByteStore.CHUNK_SIZE_BYTES * 3 + 17];
+    new Random(42).nextBytes(data);
+
+    ChunkedByteStore store = new ChunkedByteStore();
+    store.write(data[0]);
+    store.write(data, 1, data.length - 1);
+
+    assertThat(store.size()).isEqualTo(data.length);
+    assertThat(readFully(store.newInputStream())).isEqualTo(data);
+    // a second stream starts from the beginning again, required for upload retries
+    assertThat(readFully(store.newInputStream())).isEqualTo(data);
+    store.release();
+  }
+
+  @Test
+  void shouldHoldValidGzipContent() throws IOException {
+    String content = "{\"content\":{\"a\":1},\"meta\":{\"offset\":0}}";
+
+    ChunkedByteStore store = new ChunkedByteStore();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(store)) {
+      for (int i = 0; i < 10000; i++) {
+        gzip.write(content.getBytes(StandardCharsets.UTF_8));
+      }
+    }
+
+    byte[] decompressed = readFully(new GZIPInputStream(store.newInputStream()));
+    assertThat(decompressed.length).isEqualTo(content.length() * 10000);
+    assertThat(new String(decompressed, 0, content.length(), StandardCharsets.UTF_8))
+        .isEqualTo(content);
+    store.release();
+  }
+
+  @Test
+  void shouldRejectUsageAfterRelease() {
+    ChunkedByteStore store = new ChunkedByteStore();
+    store.write(1);
+    store.release();
+    store.release();
+
+    assertThatThrownBy(() -> store.write(1)).isInstanceOf(IllegalStateException.class);
+    assertThatThrownBy(store::newInputStream).isInstanceOf(IllegalStateException.class);
+  }
+
+  private static byte[] readFully(InputStream inputStream) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[1000];
+    int read;
+    while ((read = inputStream.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
+    }
+    return out.toByteArray();
+  }
+}
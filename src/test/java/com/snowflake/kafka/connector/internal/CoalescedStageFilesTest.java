@@ -0,0 +1,64 @@
+package com.snowflake.kafka.connector.internal;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CoalescedStageFilesTest {
+  private static final String FILE = "connector/table/coalesced/0_0_9-1_0_4_1700000000000.json.gz";
+
+  private final CoalescedStageFiles files = new CoalescedStageFiles();
+  private final AtomicInteger submitCount = new AtomicInteger(0);
+
+  @Test
+  public void testFileIsSubmittedOnce() {
+    files.add(FILE, 3);
+
+    Assert.assertTrue(files.submit(FILE, submitCount::incrementAndGet));
+    Assert.assertFalse(files.submit(FILE, submitCount::incrementAndGet));
+    Assert.assertEquals(1, submitCount.get());
+    Assert.assertEquals(1, files.size());
+
+    Assert.assertFalse(files.submit(FILE, submitCount::incrementAndGet));
+    Assert.assertEquals(1, submitCount.get());
+    // every partition submitted the file
+    Assert.assertEquals(0, files.size());
+  }
+
+  @Test
+  public void testFailedSubmissionIsDoneByNextPartition() {
+    files.add(FILE, 2);
+
+    Assert.assertThrows(
+        RuntimeException.class,
+        () ->
+            files.submit(
+                FILE,
+                () -> {
+                  throw new RuntimeException("insertFiles failed");
+                }));
+
+    Assert.assertTrue(files.submit(FILE, submitCount::incrementAndGet));
+    Assert.assertEquals(1, submitCount.get());
+    // the partition whose submission failed still has to submit the file
+    Assert.assertEquals(1, files.size());
+    Assert.assertFalse(files.submit(FILE, submitCount::incrementAndGet));
+    Assert.assertEquals(0, files.size());
+  }
+
+  @Test
+  public void testClosedPartitionsReleaseTheFile() {
+    files.add(FILE, 2);
+
+    files.release(FILE);
+    Assert.assertEquals(1, files.size());
+    Assert.assertTrue(files.submit(FILE, submitCount::incrementAndGet));
+    Assert.assertEquals(0, files.size());
+  }
+
+  @Test
+  public void testUnknownFileIsNotSubmitted() {
+    Assert.assertFalse(files.submit(FILE, submitCount::incrementAndGet));
+    Assert.assertEquals(0, submitCount.get());
+  }
+}
@@ -1,5 +1,8 @@
 package com.snowflake.kafka.connector.internal;
 
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
 import org.junit.Test;
 
 public class FileNameUtilsTest {
@@ -54,6 +57,38 @@ public class FileNameUtilsTest {
     assert TestUtils.verifyBrokenRecordName(brokenFileName);
   }
 
+  @Test
+  public void testCoalescedFileName() {
+    String prefix = FileNameUtils.coalescedFilePrefix(TestUtils.TEST_CONNECTOR_NAME, "test_table");
+    long time1 = System.currentTimeMillis();
+    String fileName =
+        FileNameUtils.coalescedFileName(
+            prefix,
+            Arrays.asList(
+                new FileNameUtils.OffsetRange(12, 300, 310),
+                new FileNameUtils.OffsetRange(3, 0, 9)));
+
+    Assert.assertTrue(FileNameUtils.verifyCoalescedFileName(fileName));
+    // not the file of a partition
+    Assert.assertFalse(FileNameUtils.verifyFileName(fileName));
+    Assert.assertTrue(fileName.startsWith(prefix + "3_0_9-12_300_310_"));
+
+    List<FileNameUtils.OffsetRange> ranges =
+        FileNameUtils.coalescedFileNameToOffsetRanges(fileName);
+    Assert.assertEquals(2, ranges.size());
+    Assert.assertEquals(3, ranges.get(0).getPartition());
+    Assert.assertEquals(0, ranges.get(0).getStartOffset());
+    Assert.assertEquals(9, ranges.get(0).getEndOffset());
+    Assert.assertEquals(12, ranges.get(1).getPartition());
+    Assert.assertEquals(300, ranges.get(1).getStartOffset());
+    Assert.assertEquals(310, ranges.get(1).getEndOffset());
+    Assert.assertTrue(FileNameUtils.fileNameToTimeIngested(fileName) >= time1);
+
+    String partitionFileName =
+        FileNameUtils.fileName(TestUtils.TEST_CONNECTOR_NAME, "test_table", 3, 0, 9);
+    Assert.assertFalse(FileNameUtils.verifyCoalescedFileName(partitionFileName));
+  }
+
   @Test
   public void testFileExpiration() {
     long time = System.currentTimeMillis();
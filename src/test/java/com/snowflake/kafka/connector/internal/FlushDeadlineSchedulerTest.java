@@ -0,0 +1,133 @@
+package com.snowflake.kafka.connector.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FlushDeadlineSchedulerTest {
+  private final List<Buffer> flushed = Collections.synchronizedList(new ArrayList<>());
+  private FlushDeadlineScheduler<Buffer> scheduler;
+
+  @After
+  public void tearDown() {
+    if (scheduler != null) {
+      scheduler.close();
+    }
+  }
+
+  @Test
+  public void testOnlyDueBuffersArePolled() {
+    scheduler = newScheduler(TimeUnit.HOURS.toMillis(1));
+    Buffer b0 = new Buffer(300);
+    Buffer b1 = new Buffer(100);
+    Buffer b2 = new Buffer(200);
+    Buffer empty = new Buffer(FlushDeadlineScheduler.NO_DEADLINE);
+    Arrays.asList(b0, b1, b2, empty).forEach(scheduler::schedule);
+
+    Assert.assertEquals(3, scheduler.size());
+    Assert.assertTrue(scheduler.pollDue(99).isEmpty());
+    Assert.assertEquals(Arrays.asList(b1, b2), scheduler.pollDue(250));
+    Assert.assertEquals(Collections.singletonList(b0), scheduler.pollDue(1000));
+    Assert.assertEquals(0, scheduler.size());
+  }
+
+  @Test
+  public void testRescheduledBufferIsPolledAtItsNewDeadline() {
+    scheduler = newScheduler(TimeUnit.HOURS.toMillis(1));
+    Buffer b0 = new Buffer(100);
+    scheduler.schedule(b0);
+    // flushed by its size and records added again
+    b0.deadlineMillis = 500;
+    scheduler.schedule(b0);
+
+    Assert.assertTrue(scheduler.pollDue(200).isEmpty());
+    Assert.assertEquals(Collections.singletonList(b0), scheduler.pollDue(500));
+
+    // flushed by its size and nothing added since
+    b0.deadlineMillis = FlushDeadlineScheduler.NO_DEADLINE;
+    scheduler.schedule(b0);
+    Assert.assertEquals(0, scheduler.size());
+  }
+
+  @Test
+  public void testCancelledBufferIsNotFlushed() {
+    scheduler = newScheduler(TimeUnit.HOURS.toMillis(1));
+    Buffer b0 = new Buffer(0);
+    Buffer b1 = new Buffer(0);
+    scheduler.schedule(b0);
+    scheduler.schedule(b1);
+
+    scheduler.cancel(b0);
+    scheduler.flushDue();
+
+    Assert.assertEquals(Collections.singletonList(b1), flushed);
+  }
+
+  @Test
+  public void testIdleBufferIsFlushedInBackground() throws Exception {
+    CountDownLatch flushedLatch = new CountDownLatch(1);
+    scheduler =
+        new FlushDeadlineScheduler<>(
+            buffer -> buffer.deadlineMillis,
+            buffer -> {
+              buffer.deadlineMillis = FlushDeadlineScheduler.NO_DEADLINE;
+              flushedLatch.countDown();
+            },
+            10);
+    Buffer b0 = new Buffer(System.currentTimeMillis() + 50);
+    scheduler.schedule(b0);
+
+    // flushDue is never called
+    Assert.assertTrue(flushedLatch.await(10, TimeUnit.SECONDS));
+    Assert.assertEquals(0, scheduler.size());
+  }
+
+  @Test
+  public void testBackgroundFailureIsThrown() throws Exception {
+    RuntimeException failure = new RuntimeException("upload failed");
+    CountDownLatch failedLatch = new CountDownLatch(1);
+    scheduler =
+        new FlushDeadlineScheduler<>(
+            buffer -> buffer.deadlineMillis,
+            buffer -> {
+              failedLatch.countDown();
+              throw failure;
+            },
+            10);
+    scheduler.schedule(new Buffer(0));
+
+    Assert.assertTrue(failedLatch.await(10, TimeUnit.SECONDS));
+    // the failure is recorded once the tick is done
+    scheduler.close();
+    RuntimeException thrown = Assert.assertThrows(RuntimeException.class, scheduler::flushDue);
+    Assert.assertSame(failure, thrown);
+    // the records of the failed buffer are lost, the failure is thrown until the task stops
+    Assert.assertSame(
+        failure, Assert.assertThrows(RuntimeException.class, scheduler::throwIfFailed));
+    Assert.assertSame(failure, Assert.assertThrows(RuntimeException.class, scheduler::flushDue));
+  }
+
+  private FlushDeadlineScheduler<Buffer> newScheduler(long tickMillis) {
+    return new FlushDeadlineScheduler<>(
+        buffer -> buffer.deadlineMillis,
+        buffer -> {
+          buffer.deadlineMillis = FlushDeadlineScheduler.NO_DEADLINE;
+          flushed.add(buffer);
+        },
+        tickMillis);
+  }
+
+  private static class Buffer {
+    private volatile long deadlineMillis;
+
+    private Buffer(long deadlineMillis) {
+      this.deadlineMillis = deadlineMillis;
+    }
+  }
+}
@@ -0,0 +1,173 @@
+package com.snowflake.kafka.connector.internal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class PartitionFlushExecutorTest {
+  private PartitionFlushExecutor executor;
+
+  @AfterEach
+  void tearDown() {
+    if (executor != null) {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void shouldRunUploadsOfLaneInOrder() {
+    executor = new PartitionFlushExecutor(4, 100);
+    PartitionFlushExecutor.Lane lane = executor.newLane();
+    List<Integer> uploaded = Collections.synchronizedList(new ArrayList<>());
+
+    for (int i = 0; i < 50; i++) {
+      int offset = i;
+      lane.submit(() -> uploaded.add(offset));
+    }
+    lane.awaitCompletion();
+
+    List<Integer> expected = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      expected.add(i);
+    }
+    assertThat(uploaded).isEqualTo(expected);
+  }
+
+  @Test
+  void shouldRunLanesConcurrently() throws InterruptedException {
+    executor = new PartitionFlushExecutor(2, 4);
+    CountDownLatch blocked = new CountDownLatch(1);
+    CountDownLatch otherUploaded = new CountDownLatch(1);
+
+    executor.newLane().submit(() -> awaitQuietly(blocked));
+    executor.newLane().submit(otherUploaded::countDown);
+
+    // the second partition is uploaded while the first one is still uploading
+    assertThat(otherUploaded.await(10, TimeUnit.SECONDS)).isTrue();
+    blocked.countDown();
+  }
+
+  @Test
+  void shouldBlockWhenMaxInFlightUploadsReached() throws InterruptedException {
+    executor = new PartitionFlushExecutor(1, 1);
+    PartitionFlushExecutor.Lane lane = executor.newLane();
+    CountDownLatch blocked = new CountDownLatch(1);
+    AtomicBoolean secondSubmitted = new AtomicBoolean(false);
+
+    lane.submit(() -> awaitQuietly(blocked));
+    Thread submitter =
+        new Thread(
+            () -> {
+              lane.submit(() -> {});
+              secondSubmitted.set(true);
+            });
+    submitter.start();
+
+    submitter.join(200);
+    assertThat(secondSubmitted.get()).isFalse();
+
+    blocked.countDown();
+    submitter.join(10000);
+    assertThat(secondSubmitted.get()).isTrue();
+  }
+
+  @Test
+  void shouldSkipFollowingUploadsAndRethrowFailure() {
+    executor = new PartitionFlushExecutor(2, 10);
+    PartitionFlushExecutor.Lane lane = executor.newLane();
+    PartitionFlushExecutor.Lane otherLane = executor.newLane();
+    AtomicInteger uploaded = new AtomicInteger();
+    SnowflakeKafkaConnectorException failure =
+        SnowflakeErrors.ERROR_2003.getException("upload failed");
+
+    // the failing upload waits until the following upload is submitted
+    CountDownLatch submitted = new CountDownLatch(1);
+    lane.submit(
+        () -> {
+          awaitQuietly(submitted);
+          throw failure;
+        });
+    lane.submit(uploaded::incrementAndGet);
+    submitted.countDown();
+    otherLane.submit(uploaded::incrementAndGet);
+    lane.awaitCompletion();
+    otherLane.awaitCompletion();
+
+    // only the upload of the other partition ran
+    assertThat(uploaded.get()).isEqualTo(1);
+    assertThatThrownBy(lane::throwIfFailed).isSameAs(failure);
+    assertThatThrownBy(() -> lane.submit(uploaded::incrementAndGet)).isSameAs(failure);
+    otherLane.throwIfFailed();
+  }
+
+  @Test
+  void shouldRunUploadOfSeveralLanesBetweenTheirUploads() {
+    executor = new PartitionFlushExecutor(4, 10);
+    PartitionFlushExecutor.Lane lane = executor.newLane();
+    PartitionFlushExecutor.Lane otherLane = executor.newLane();
+    List<String> uploaded = Collections.synchronizedList(new ArrayList<>());
+
+    // the uploads submitted before wait until both are submitted
+    CountDownLatch submitted = new CountDownLatch(1);
+    lane.submit(
+        () -> {
+          awaitQuietly(submitted);
+          uploaded.add("lane");
+        });
+    otherLane.submit(
+        () -> {
+          awaitQuietly(submitted);
+          uploaded.add("otherLane");
+        });
+    executor.submit(() -> uploaded.add("coalesced"), Arrays.asList(lane, otherLane));
+    lane.submit(() -> uploaded.add("lane after"));
+    otherLane.submit(() -> uploaded.add("otherLane after"));
+    submitted.countDown();
+    lane.awaitCompletion();
+    otherLane.awaitCompletion();
+
+    assertThat(uploaded.indexOf("coalesced"))
+        .isGreaterThan(uploaded.indexOf("lane"))
+        .isGreaterThan(uploaded.indexOf("otherLane"))
+        .isLessThan(uploaded.indexOf("lane after"))
+        .isLessThan(uploaded.indexOf("otherLane after"));
+  }
+
+  @Test
+  void shouldFailAllLanesOfFailedUpload() {
+    executor = new PartitionFlushExecutor(2, 10);
+    PartitionFlushExecutor.Lane lane = executor.newLane();
+    PartitionFlushExecutor.Lane otherLane = executor.newLane();
+    SnowflakeKafkaConnectorException failure =
+        SnowflakeErrors.ERROR_2003.getException("upload failed");
+
+    executor.submit(
+        () -> {
+          throw failure;
+        },
+        Arrays.asList(lane, otherLane));
+    lane.awaitCompletion();
+    otherLane.awaitCompletion();
+
+    assertThatThrownBy(lane::throwIfFailed).isSameAs(failure);
+    assertThatThrownBy(otherLane::throwIfFailed).isSameAs(failure);
+  }
+
+  private static void awaitQuietly(CountDownLatch latch) {
+    try {
+      latch.await(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -1,11 +1,18 @@
 package com.snowflake.kafka.connector.internal;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.snowflake.kafka.connector.internal.streaming.ChannelMigrateOffsetTokenResponseDTO;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
 import org.junit.Test;
 
 public class SnowflakeConnectionServiceV1Test {
@@ -36,4 +43,88 @@ public class SnowflakeConnectionServiceV1Test {
         .thenCallRealMethod();
     v1MockConnectionService.getChannelMigrateOffsetTokenResponseDTO(validMigrationResponse);
   }
+
+  @Test
+  public void testPurgeBatches() {
+    List<String> files =
+        Arrays.asList(
+            "app/table/0/1_10_100.json.gz",
+            "app/table/1/1_10_100.json.gz",
+            "app/table/0/11_20_200.json.gz",
+            "app/table/0/21_30_300.json.gz",
+            "app/table/0/broken name.gz",
+            "no_prefix.json.gz");
+
+    List<SnowflakeConnectionServiceV1.PurgeBatch> batches =
+        SnowflakeConnectionServiceV1.toPurgeBatches(files, 1000);
+
+    assertEquals(4, batches.size());
+    assertEquals("app/table/0/", batches.get(0).path);
+    assertEquals(
+        Arrays.asList(
+            "app/table/0/1_10_100.json.gz",
+            "app/table/0/11_20_200.json.gz",
+            "app/table/0/21_30_300.json.gz"),
+        batches.get(0).files);
+    assertEquals(
+        ".*/(1_10_100[.]json[.]gz|11_20_200[.]json[.]gz|21_30_300[.]json[.]gz)",
+        batches.get(0).pattern());
+    assertEquals("app/table/1/", batches.get(1).path);
+    assertEquals(Arrays.asList("app/table/1/1_10_100.json.gz"), batches.get(1).files);
+    // names which can't be matched by a pattern are removed one by one
+    assertEquals(Arrays.asList("app/table/0/broken name.gz"), batches.get(2).files);
+    assertEquals(Arrays.asList("no_prefix.json.gz"), batches.get(3).files);
+  }
+
+  @Test
+  public void testPurgeBatchesSplitByPatternLength() {
+    List<String> files =
+        Arrays.asList(
+            "app/table/0/1_10_100.json.gz",
+            "app/table/0/11_20_200.json.gz",
+            "app/table/0/21_30_300.json.gz");
+
+    // room for the first two names only
+    List<SnowflakeConnectionServiceV1.PurgeBatch> batches =
+        SnowflakeConnectionServiceV1.toPurgeBatches(files, 60);
+
+    assertEquals(2, batches.size());
+    assertEquals(".*/(1_10_100[.]json[.]gz|11_20_200[.]json[.]gz)", batches.get(0).pattern());
+    assertEquals(Arrays.asList("app/table/0/21_30_300.json.gz"), batches.get(1).files);
+  }
+
+  @Test
+  public void testCopyFilesQuery() {
+    assertEquals(
+        "copy files into @%table/app/table/0/ from @stage/app/table/0/ files ="
+            + " ('1_10_100.json.gz', '11_20_200.json.gz')",
+        SnowflakeConnectionServiceV1.copyFilesQuery(
+            "table",
+            "stage",
+            "app/table/0/",
+            Arrays.asList("1_10_100.json.gz", "11_20_200.json.gz")));
+    assertNull(
+        SnowflakeConnectionServiceV1.copyFilesQuery(
+            "table", "stage", "app/table/0/", Arrays.asList("it's.json.gz")));
+  }
+
+  @Test
+  public void testCopyFilesUnsupportedStatement() {
+    // syntax error of an account which doesn't know the statement, unsupported feature
+    assertTrue(
+        SnowflakeConnectionServiceV1.isUnsupportedStatement(
+            new SQLException(
+                "syntax error line 1 at position 0 unexpected 'copy'", "42000", 1003)));
+    assertTrue(
+        SnowflakeConnectionServiceV1.isUnsupportedStatement(
+            new SQLException("Unsupported feature 'COPY FILES'", "0A000", 2)));
+    // failures of the statement for the given files, e.g. a missing file or a timeout
+    assertFalse(
+        SnowflakeConnectionServiceV1.isUnsupportedStatement(
+            new SQLException("Remote file was not found", "02000", 253006)));
+    assertFalse(
+        SnowflakeConnectionServiceV1.isUnsupportedStatement(
+            new SQLException(
+                "Statement reached its statement or warehouse timeout", "57014", 630)));
+  }
 }
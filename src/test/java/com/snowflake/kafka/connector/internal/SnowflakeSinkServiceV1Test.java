@@ -0,0 +1,90 @@
+package com.snowflake.kafka.connector.internal;
+
+import static org.mockito.ArgumentMatchers.anyString;
+
+import com.snowflake.kafka.connector.SnowflakeSinkConnectorConfig;
+import com.snowflake.kafka.connector.internal.telemetry.SnowflakeTelemetryService;
+import com.snowflake.kafka.connector.records.SnowflakeJsonConverter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.SchemaAndValue;
+import org.apache.kafka.connect.sink.SinkRecord;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class SnowflakeSinkServiceV1Test {
+  private static final String TOPIC = "test_topic";
+  private static final int PARTITION = 0;
+
+  private SnowflakeSinkService service;
+
+  @After
+  public void tearDown() {
+    if (service != null) {
+      service.closeAll();
+      service.stop();
+    }
+  }
+
+  @Test
+  public void testNoOffsetCommittedPastBufferLostInBackground() throws Exception {
+    SnowflakeConnectionService conn = Mockito.mock(SnowflakeConnectionService.class);
+    Mockito.when(conn.getConnectorName()).thenReturn(TestUtils.TEST_CONNECTOR_NAME);
+    SnowflakeTelemetryService telemetryService = Mockito.mock(SnowflakeTelemetryService.class);
+    Mockito.when(conn.getTelemetryClient()).thenReturn(telemetryService);
+    SnowflakeIngestionService ingestionService = Mockito.mock(SnowflakeIngestionService.class);
+    Mockito.when(conn.buildIngestService(anyString(), anyString())).thenReturn(ingestionService);
+
+    RuntimeException failure = new RuntimeException("upload failed");
+    CountDownLatch backgroundUploadStarted = new CountDownLatch(1);
+    Mockito.doAnswer(
+            invocation -> {
+              if (!Thread.currentThread().getName().startsWith("flush-scheduler")) {
+                return null;
+              }
+              backgroundUploadStarted.countDown();
+              // the task thread flushes the next records of the partition by size meanwhile
+              Thread.sleep(500);
+              throw failure;
+            })
+        .when(conn)
+        .putWithCache(anyString(), anyString(), anyString());
+
+    TopicPartition topicPartition = new TopicPartition(TOPIC, PARTITION);
+    service =
+        SnowflakeSinkServiceFactory.builder(conn)
+            .setRecordNumber(2)
+            .setFlushTime(SnowflakeSinkConnectorConfig.BUFFER_FLUSH_TIME_SEC_MIN)
+            .addTask("test_table", topicPartition)
+            .build();
+
+    // the buffer of the first record is flushed by time in the background and lost
+    service.insert(Collections.singletonList(record(0)));
+    Assert.assertTrue(backgroundUploadStarted.await(30, TimeUnit.SECONDS));
+    RuntimeException thrown =
+        Assert.assertThrows(
+            RuntimeException.class, () -> service.insert(Arrays.asList(record(1), record(2))));
+    Assert.assertSame(failure, thrown);
+
+    // preCommit gets no offset past the lost record, the buffer flushed after it isn't staged
+    thrown = Assert.assertThrows(RuntimeException.class, () -> service.getOffset(topicPartition));
+    Assert.assertSame(failure, thrown);
+    Mockito.verify(conn, Mockito.times(1)).putWithCache(anyString(), anyString(), anyString());
+    Mockito.verify(ingestionService, Mockito.never()).ingestFiles(Mockito.any());
+  }
+
+  private static SinkRecord record(long offset) {
+    SchemaAndValue input =
+        new SnowflakeJsonConverter()
+            .toConnectData(TOPIC, "{\"name\":\"test\"}".getBytes(StandardCharsets.UTF_8));
+    return new SinkRecord(
+        TOPIC, PARTITION, Schema.STRING_SCHEMA, "test", input.schema(), input.value(), offset);
+  }
+}
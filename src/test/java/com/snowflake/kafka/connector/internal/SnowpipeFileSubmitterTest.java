@@ -0,0 +1,133 @@
+package com.snowflake.kafka.connector.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SnowpipeFileSubmitterTest {
+  private final List<String> submitted = Collections.synchronizedList(new ArrayList<>());
+  private SnowpipeFileSubmitter<String> submitter;
+
+  @After
+  public void tearDown() {
+    if (submitter != null) {
+      submitter.close();
+    }
+  }
+
+  @Test
+  public void testPipesAreSubmittedInBackground() throws Exception {
+    CountDownLatch submittedLatch = new CountDownLatch(2);
+    submitter =
+        new SnowpipeFileSubmitter<>(
+            pipe -> {
+              submitted.add(pipe);
+              submittedLatch.countDown();
+            });
+
+    submitter.submitLater("pipe_0");
+    submitter.submitLater("pipe_1");
+
+    Assert.assertTrue(submittedLatch.await(10, TimeUnit.SECONDS));
+    Assert.assertEquals(Arrays.asList("pipe_0", "pipe_1"), submitted);
+  }
+
+  @Test
+  public void testSlowPipeBatchesTheFilesOfOtherPipes() throws Exception {
+    CountDownLatch slowSubmissionStarted = new CountDownLatch(1);
+    CountDownLatch releaseSlowSubmission = new CountDownLatch(1);
+    CountDownLatch submittedLatch = new CountDownLatch(3);
+    submitter =
+        new SnowpipeFileSubmitter<>(
+            pipe -> {
+              if (pipe.equals("slow_pipe")) {
+                slowSubmissionStarted.countDown();
+                await(releaseSlowSubmission);
+              }
+              submitted.add(pipe);
+              submittedLatch.countDown();
+            });
+
+    submitter.submitLater("slow_pipe");
+    Assert.assertTrue(slowSubmissionStarted.await(10, TimeUnit.SECONDS));
+    // several files staged by each pipe during the slow submission
+    for (int file = 0; file < 3; file++) {
+      submitter.submitLater("pipe_0");
+      submitter.submitLater("pipe_1");
+    }
+    Assert.assertEquals(2, submitter.getQueuedPipeCount());
+
+    releaseSlowSubmission.countDown();
+    Assert.assertTrue(submittedLatch.await(10, TimeUnit.SECONDS));
+    Assert.assertEquals(Arrays.asList("slow_pipe", "pipe_0", "pipe_1"), submitted);
+  }
+
+  @Test
+  public void testFailedSubmissionDoesNotStopOtherPipes() throws Exception {
+    CountDownLatch submittedLatch = new CountDownLatch(1);
+    submitter =
+        new SnowpipeFileSubmitter<>(
+            pipe -> {
+              if (pipe.equals("failing_pipe")) {
+                throw new RuntimeException("insertFiles failed");
+              }
+              submitted.add(pipe);
+              submittedLatch.countDown();
+            });
+
+    submitter.submitLater("failing_pipe");
+    submitter.submitLater("pipe_0");
+
+    Assert.assertTrue(submittedLatch.await(10, TimeUnit.SECONDS));
+    Assert.assertEquals(Collections.singletonList("pipe_0"), submitted);
+  }
+
+  @Test
+  public void testCancelWaitsForTheSubmissionInProgress() throws Exception {
+    CountDownLatch submissionStarted = new CountDownLatch(1);
+    CountDownLatch releaseSubmission = new CountDownLatch(1);
+    submitter =
+        new SnowpipeFileSubmitter<>(
+            pipe -> {
+              submissionStarted.countDown();
+              await(releaseSubmission);
+              submitted.add(pipe);
+            });
+    submitter.submitLater("pipe_0");
+    Assert.assertTrue(submissionStarted.await(10, TimeUnit.SECONDS));
+    submitter.submitLater("pipe_0");
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<?> cancel = executor.submit(() -> submitter.cancel("pipe_0"));
+      Thread.sleep(50);
+      Assert.assertFalse(cancel.isDone());
+
+      releaseSubmission.countDown();
+      cancel.get(10, TimeUnit.SECONDS);
+    } finally {
+      executor.shutdownNow();
+    }
+    // the files staged during the submission are not submitted anymore
+    submitter.close();
+    Assert.assertEquals(Collections.singletonList("pipe_0"), submitted);
+    Assert.assertEquals(0, submitter.getQueuedPipeCount());
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
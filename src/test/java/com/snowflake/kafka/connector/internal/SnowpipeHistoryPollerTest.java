@@ -0,0 +1,70 @@
+package com.snowflake.kafka.connector.internal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class SnowpipeHistoryPollerTest {
+  private static final String PIPE = "pipe";
+
+  private final SnowpipeHistoryPoller poller = new SnowpipeHistoryPoller(1000, 8000, 60, 3);
+
+  @Test
+  void shouldPollNewPipe() {
+    assertThat(poller.shouldPoll(PIPE, 0)).isTrue();
+  }
+
+  @Test
+  void shouldBackOffIdlePipe() {
+    poller.onPolled(PIPE, 1, 0, 0);
+    assertThat(poller.shouldPoll(PIPE, 1000)).isTrue();
+
+    poller.onPolled(PIPE, 1, 0, 1000);
+    assertThat(poller.shouldPoll(PIPE, 2000)).isFalse();
+    assertThat(poller.shouldPoll(PIPE, 3000)).isTrue();
+
+    poller.onPolled(PIPE, 1, 0, 3000);
+    poller.onPolled(PIPE, 1, 0, 7000);
+    poller.onPolled(PIPE, 1, 0, 15000);
+    // the interval doesn't grow beyond the maximum
+    assertThat(poller.shouldPoll(PIPE, 22000)).isFalse();
+    assertThat(poller.shouldPoll(PIPE, 23000)).isTrue();
+  }
+
+  @Test
+  void shouldPollBusyPipeEveryCycle() {
+    poller.onPolled(PIPE, 1, 0, 0);
+    poller.onPolled(PIPE, 1, 0, 1000);
+
+    poller.onPolled(PIPE, 1, 3, 3000);
+    assertThat(poller.shouldPoll(PIPE, 4000)).isTrue();
+
+    poller.onPolled(PIPE, 1, 0, 4000);
+    poller.onPolled(PIPE, SnowpipeHistoryPoller.BUSY_PIPE_FILE_COUNT, 0, 6000);
+    assertThat(poller.shouldPoll(PIPE, 7000)).isTrue();
+  }
+
+  @Test
+  void shouldPollAgainAfterNewFiles() {
+    poller.onPolled(PIPE, 1, 0, 0);
+    poller.onPolled(PIPE, 1, 0, 1000);
+    assertThat(poller.shouldPoll(PIPE, 2000)).isFalse();
+
+    poller.onNewFiles(PIPE);
+    assertThat(poller.shouldPoll(PIPE, 2000)).isTrue();
+
+    poller.onPolled(PIPE, 1, 0, 2000);
+    poller.forget(PIPE);
+    assertThat(poller.shouldPoll(PIPE, 2000)).isTrue();
+  }
+
+  @Test
+  void shouldSpreadInitialDelays() {
+    assertThat(poller.nextInitialDelaySeconds()).isEqualTo(60);
+    assertThat(poller.nextInitialDelaySeconds()).isEqualTo(61);
+    assertThat(poller.nextInitialDelaySeconds()).isEqualTo(62);
+    assertThat(poller.nextInitialDelaySeconds()).isEqualTo(63);
+    assertThat(poller.nextInitialDelaySeconds()).isEqualTo(60);
+    assertThat(SnowpipeHistoryPoller.everyCycle(60).nextInitialDelaySeconds()).isEqualTo(60);
+  }
+}
@@ -0,0 +1,134 @@
+package com.snowflake.kafka.connector.internal;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StageCredentialCacheTest {
+  private static final String STAGE = "stage";
+
+  private final AtomicInteger fetchCount = new AtomicInteger(0);
+
+  @Test
+  public void testCredentialIsReusedUntilItExpires() throws Exception {
+    StageCredentialCache<String> cache = new StageCredentialCache<>(credential -> true, 200, 200);
+
+    Assert.assertEquals("credential-1", cache.get(STAGE, this::fetch));
+    Assert.assertEquals("credential-1", cache.get(STAGE, this::fetch));
+    Assert.assertEquals(1, cache.getMissCount());
+    Assert.assertEquals(1, cache.getHitCount());
+
+    Thread.sleep(300);
+    Assert.assertEquals("credential-2", cache.get(STAGE, this::fetch));
+    Assert.assertEquals(2, cache.getMissCount());
+    Assert.assertEquals(2, cache.getFetchLatency().getCount());
+  }
+
+  @Test
+  public void testCredentialIsRefreshedInBackground() throws Exception {
+    StageCredentialCache<String> cache =
+        new StageCredentialCache<>(credential -> true, TimeUnit.HOURS.toMillis(1), 100);
+    Assert.assertEquals("credential-1", cache.get(STAGE, this::fetch));
+
+    Thread.sleep(200);
+    // the cached credential is still used while the new one is fetched
+    Assert.assertEquals("credential-1", cache.get(STAGE, this::fetch));
+    waitForFetches(cache);
+
+    Assert.assertEquals("credential-2", cache.get(STAGE, this::fetch));
+    Assert.assertEquals(1, cache.getMissCount());
+    Assert.assertEquals(2, cache.getHitCount());
+  }
+
+  @Test
+  public void testConcurrentMissesShareOneFetch() throws Exception {
+    StageCredentialCache<String> cache =
+        new StageCredentialCache<>(credential -> true, TimeUnit.HOURS.toMillis(1), Long.MAX_VALUE);
+    CountDownLatch fetchStarted = new CountDownLatch(1);
+    CountDownLatch releaseFetch = new CountDownLatch(1);
+    Callable<String> slowFetch =
+        () -> {
+          fetchStarted.countDown();
+          Assert.assertTrue(releaseFetch.await(10, TimeUnit.SECONDS));
+          return fetch();
+        };
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<String> first = executor.submit(() -> cache.get(STAGE, slowFetch));
+      Assert.assertTrue(fetchStarted.await(10, TimeUnit.SECONDS));
+      Future<String> second = executor.submit(() -> cache.get(STAGE, this::fetch));
+      Thread.sleep(50);
+      Assert.assertFalse(second.isDone());
+
+      releaseFetch.countDown();
+      Assert.assertEquals("credential-1", first.get(10, TimeUnit.SECONDS));
+      Assert.assertEquals("credential-1", second.get(10, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdownNow();
+    }
+    Assert.assertEquals(1, fetchCount.get());
+  }
+
+  @Test
+  public void testSingleFileCredentialIsNotReused() throws Exception {
+    StageCredentialCache<String> cache =
+        new StageCredentialCache<>(credential -> false, TimeUnit.HOURS.toMillis(1), 0);
+
+    Assert.assertEquals("credential-1", cache.get(STAGE, this::fetch));
+    Assert.assertEquals("credential-2", cache.get(STAGE, this::fetch));
+    Assert.assertEquals(0, cache.getHitCount());
+    Assert.assertEquals(2, cache.getMissCount());
+  }
+
+  @Test
+  public void testInvalidatedCredentialIsFetchedAgain() throws Exception {
+    StageCredentialCache<String> cache =
+        new StageCredentialCache<>(credential -> true, TimeUnit.HOURS.toMillis(1), Long.MAX_VALUE);
+    String credential = cache.get(STAGE, this::fetch);
+
+    cache.invalidate(STAGE, credential);
+
+    Assert.assertEquals("credential-2", cache.get(STAGE, this::fetch));
+    // an older credential doesn't invalidate the current one
+    cache.invalidate(STAGE, credential);
+    Assert.assertEquals("credential-2", cache.get(STAGE, this::fetch));
+  }
+
+  @Test
+  public void testFailedFetchIsThrown() {
+    StageCredentialCache<String> cache =
+        new StageCredentialCache<>(credential -> true, TimeUnit.HOURS.toMillis(1), Long.MAX_VALUE);
+
+    Exception failure = new Exception("GS unavailable");
+    Exception thrown =
+        Assert.assertThrows(
+            Exception.class,
+            () ->
+                cache.get(
+                    STAGE,
+                    () -> {
+                      throw failure;
+                    }));
+    Assert.assertSame(failure, thrown);
+    Assert.assertFalse(cache.isFetching(STAGE));
+  }
+
+  private String fetch() {
+    return "credential-" + fetchCount.incrementAndGet();
+  }
+
+  private static void waitForFetches(StageCredentialCache<String> cache) throws Exception {
+    long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+    while (cache.isFetching(STAGE) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    Assert.assertFalse(cache.isFetching(STAGE));
+  }
+}
@@ -157,6 +157,23 @@ class StageFilesProcessor_FileCategorizerTest {
         .containsAll(files);
   }
 
+  @Test
+  void coalescedFilesWillNeverBeCategorizedAsDirty() {
+    DateTime ts = new DateTime(2000, 1, 10, 12, 0, DateTimeZone.UTC);
+    String partitionFile = String.format("connector/topic/0/100_199_%d.json.gz", ts.getMillis());
+    String coalescedFile =
+        String.format("connector/topic/coalesced/0_100_109-1_50_59_%d.json.gz", ts.getMillis());
+    List<String> files = new ArrayList<>();
+    files.add(partitionFile);
+    files.add(coalescedFile);
+
+    StageFilesProcessor.FileCategorizer victim =
+        StageFilesProcessor.FileCategorizer.build(files, 10);
+
+    assertThat(victim.hasDirtyFiles()).isTrue();
+    assertThat(victim.query(t -> true).collect(Collectors.toList())).containsOnly(coalescedFile);
+  }
+
   @Test
   void allFilesWillBeCategorizedAsDirtyFilesIfOffsetIsSmallerThanLastSubmittedFile() {
     DateTime ts = new DateTime(2000, 1, 10, 12, 0, DateTimeZone.UTC);
@@ -0,0 +1,82 @@
+package com.snowflake.kafka.connector.internal;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StagedFileRegistryTest {
+  private static final long TIME = 1700000000000L;
+
+  private final StagedFileRegistry registry = new StagedFileRegistry();
+
+  @Test
+  public void testFileNameIsParsedOnce() {
+    String name = FileNameUtils.fileName("connector", "table", 3, 100, 199, TIME);
+
+    Assert.assertTrue(registry.add(name));
+    Assert.assertFalse(registry.add(name));
+    Assert.assertEquals(1, registry.size());
+
+    StagedFileRegistry.StagedFile file = registry.remove(name);
+    Assert.assertEquals(name, file.getName());
+    Assert.assertEquals(100, file.getStartOffset());
+    Assert.assertEquals(199, file.getEndOffset());
+    Assert.assertEquals(TIME, file.getIngestTimeMillis());
+    Assert.assertFalse(file.isCoalesced());
+    Assert.assertTrue(registry.isEmpty());
+    Assert.assertNull(registry.remove(name));
+  }
+
+  @Test
+  public void testCoalescedFile() {
+    String name = "connector/table/coalesced/0_0_9-1_5_7_" + TIME + ".json.gz";
+
+    registry.add(name);
+
+    StagedFileRegistry.StagedFile file = registry.remove(name);
+    Assert.assertTrue(file.isCoalesced());
+    Assert.assertEquals(TIME, file.getIngestTimeMillis());
+  }
+
+  @Test
+  public void testFilesAreOrderedByTime() {
+    String newest = FileNameUtils.fileName("connector", "table", 0, 20, 29, TIME + 2000);
+    String oldest = FileNameUtils.fileName("connector", "table", 0, 0, 9, TIME);
+    String middle = FileNameUtils.fileName("connector", "table", 0, 10, 19, TIME + 1000);
+    registry.addAll(Arrays.asList(newest, oldest, middle));
+
+    Assert.assertEquals(Arrays.asList(oldest, middle, newest), registry.getFileNames());
+    Assert.assertEquals(Arrays.asList(oldest, middle), names(registry.stagedBefore(TIME + 2000)));
+    Assert.assertEquals(Collections.emptyList(), registry.stagedBefore(TIME));
+
+    registry.remove(middle);
+    Assert.assertEquals(Arrays.asList(oldest, newest), registry.getFileNames());
+  }
+
+  @Test
+  public void testFilesOfAnotherRegistryAreAdded() {
+    String first = FileNameUtils.fileName("connector", "table", 0, 0, 9, TIME);
+    String second = FileNameUtils.fileName("connector", "table", 0, 10, 19, TIME + 1000);
+    registry.add(first);
+    StagedFileRegistry other = new StagedFileRegistry();
+    other.addAll(Arrays.asList(first, second));
+
+    registry.addAll(other);
+
+    Assert.assertEquals(Arrays.asList(first, second), registry.getFileNames());
+  }
+
+  @Test
+  public void testInvalidFileNameIsRejected() {
+    Assert.assertThrows(
+        SnowflakeKafkaConnectorException.class, () -> registry.add("connector/table/file.gz"));
+    Assert.assertTrue(registry.isEmpty());
+  }
+
+  private static List<String> names(List<StagedFileRegistry.StagedFile> files) {
+    return files.stream().map(StagedFileRegistry.StagedFile::getName).collect(Collectors.toList());
+  }
+}
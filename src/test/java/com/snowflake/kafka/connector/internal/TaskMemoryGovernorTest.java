@@ -0,0 +1,144 @@
+package com.snowflake.kafka.connector.internal;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.connect.sink.SinkTaskContext;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TaskMemoryGovernorTest {
+  private SinkTaskContext context;
+  private TaskMemoryGovernor governor;
+
+  @Before
+  public void setUp() {
+    context = mock(SinkTaskContext.class);
+    governor = new TaskMemoryGovernor(1000);
+  }
+
+  @Test
+  public void testNothingDoneWithinBudget() {
+    Partition p0 = new Partition(0, 400, 0, false);
+    Partition p1 = new Partition(1, 500, 100, false);
+
+    governor.enforce(Arrays.asList(p0, p1), context);
+
+    Assert.assertEquals(0, p0.flushCount);
+    Assert.assertEquals(0, p1.flushCount);
+    verifyZeroInteractions(context);
+  }
+
+  @Test
+  public void testFlushLargestBuffersFirst() {
+    Partition p0 = new Partition(0, 300, 0, false);
+    Partition p1 = new Partition(1, 600, 0, false);
+    Partition p2 = new Partition(2, 200, 0, false);
+
+    governor.enforce(Arrays.asList(p0, p1, p2), context);
+
+    // 1100 bytes, flushing the largest buffer is enough to get below 750
+    Assert.assertEquals(0, p0.flushCount);
+    Assert.assertEquals(1, p1.flushCount);
+    Assert.assertEquals(0, p2.flushCount);
+    verifyZeroInteractions(context);
+  }
+
+  @Test
+  public void testPauseAndResumeLargestPartitions() {
+    // flushed buffers become in flight uploads which still hold the memory
+    Partition p0 = new Partition(0, 100, 600, true);
+    Partition p1 = new Partition(1, 100, 200, true);
+    Partition p2 = new Partition(2, 50, 50, true);
+    List<Partition> partitions = Arrays.asList(p0, p1, p2);
+
+    governor.enforce(partitions, context);
+
+    Assert.assertEquals(1, p0.flushCount);
+    Assert.assertEquals(1, p1.flushCount);
+    Assert.assertEquals(1, p2.flushCount);
+    // 1100 bytes, pausing the partition holding 700 of them is enough to get below 750
+    verify(context).pause(new TopicPartition("topic", 0));
+    Assert.assertEquals(
+        Collections.singleton(new TopicPartition("topic", 0)), governor.getPausedPartitions());
+
+    // above the low water mark, the partitions stay paused
+    p0.inFlightBytes = 500;
+    governor.enforce(partitions, context);
+    verify(context, never()).resume(new TopicPartition("topic", 0));
+
+    p0.inFlightBytes = 0;
+    governor.enforce(partitions, context);
+    verify(context).resume(new TopicPartition("topic", 0));
+    Assert.assertTrue(governor.getPausedPartitions().isEmpty());
+  }
+
+  @Test
+  public void testRevokedPartitionIsForgotten() {
+    Partition p0 = new Partition(0, 0, 2000, false);
+    governor.enforce(Collections.singletonList(p0), context);
+    Assert.assertEquals(1, governor.getPausedPartitions().size());
+
+    governor.enforce(Collections.emptyList(), context);
+
+    Assert.assertTrue(governor.getPausedPartitions().isEmpty());
+    verify(context, never()).resume(new TopicPartition("topic", 0));
+  }
+
+  @Test
+  public void testOnlyFlushWithoutContext() {
+    Partition p0 = new Partition(0, 100, 2000, false);
+
+    governor.enforce(Collections.singletonList(p0), null);
+
+    Assert.assertEquals(1, p0.flushCount);
+    Assert.assertTrue(governor.getPausedPartitions().isEmpty());
+  }
+
+  private static class Partition implements TaskMemoryGovernor.PartitionMemory {
+    private final TopicPartition topicPartition;
+    // whether a flush turns the buffer into an in flight upload or releases it
+    private final boolean asyncFlush;
+    private long bufferedBytes;
+    private long inFlightBytes;
+    private int flushCount;
+
+    private Partition(int partition, long bufferedBytes, long inFlightBytes, boolean asyncFlush) {
+      this.topicPartition = new TopicPartition("topic", partition);
+      this.bufferedBytes = bufferedBytes;
+      this.inFlightBytes = inFlightBytes;
+      this.asyncFlush = asyncFlush;
+    }
+
+    @Override
+    public TopicPartition getTopicPartition() {
+      return topicPartition;
+    }
+
+    @Override
+    public long getBufferedBytes() {
+      return bufferedBytes;
+    }
+
+    @Override
+    public long getInFlightBytes() {
+      return inFlightBytes;
+    }
+
+    @Override
+    public void flushBuffer() {
+      if (asyncFlush) {
+        inFlightBytes += bufferedBytes;
+      }
+      bufferedBytes = 0;
+      flushCount++;
+    }
+  }
+}
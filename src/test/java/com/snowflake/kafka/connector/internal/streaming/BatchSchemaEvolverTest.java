@@ -0,0 +1,175 @@
+package com.snowflake.kafka.connector.internal.streaming;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.snowflake.kafka.connector.internal.ColumnInfos;
+import com.snowflake.kafka.connector.internal.SnowflakeConnectionService;
+import com.snowflake.kafka.connector.internal.SnowflakeErrors;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.SchemaBuilder;
+import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.sink.SinkRecord;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class BatchSchemaEvolverTest {
+  private static final String TABLE = "test_table";
+
+  private static final Schema SCHEMA =
+      SchemaBuilder.struct()
+          .field("id", Schema.INT32_SCHEMA)
+          .field("name", Schema.OPTIONAL_STRING_SCHEMA)
+          .field("age", Schema.OPTIONAL_INT64_SCHEMA)
+          .build();
+
+  private SnowflakeConnectionService conn;
+  private BatchSchemaEvolver evolver;
+
+  @Before
+  public void setUp() {
+    conn = mock(SnowflakeConnectionService.class);
+    Map<String, Boolean> columns = new LinkedHashMap<>();
+    columns.put("RECORD_METADATA", true);
+    columns.put("ID", false);
+    columns.put("NAME", false);
+    Map<String, Boolean> evolvedColumns = new LinkedHashMap<>(columns);
+    evolvedColumns.put("NAME", true);
+    evolvedColumns.put("AGE", true);
+    when(conn.describeTableColumns(TABLE)).thenReturn(columns).thenReturn(evolvedColumns);
+    evolver =
+        new BatchSchemaEvolver(
+            conn, new SchemaEvolutionCoordinator().getTable("db", "schema", TABLE));
+  }
+
+  @Test
+  public void testDiffUnionOfAllRows() {
+    Map<String, Boolean> columns = new HashMap<>();
+    columns.put("RECORD_METADATA", true);
+    columns.put("ID", false);
+    columns.put("NAME", false);
+    columns.put("CITY", false);
+
+    BatchSchemaEvolver.SchemaDiff diff =
+        BatchSchemaEvolver.SchemaDiff.compute(
+            columns,
+            Arrays.asList(
+                row("RECORD_METADATA", "{}", "\"ID\"", 1, "\"NAME\"", "a", "\"CITY\"", "b"),
+                row("RECORD_METADATA", "{}", "\"ID\"", 2, "\"AGE\"", null, "\"CITY\"", "c"),
+                row("RECORD_METADATA", "{}", "\"ID\"", 3, "\"AGE\"", 5L, "\"CITY\"", null)));
+
+    // the type of AGE is taken from the first row with a value
+    Assert.assertEquals(Collections.singletonMap("\"AGE\"", 2), diff.extraColumns);
+    Assert.assertEquals(Arrays.asList("\"NAME\"", "\"CITY\""), diff.nonNullableColumns);
+  }
+
+  @Test
+  public void testNoDiff() {
+    BatchSchemaEvolver.SchemaDiff diff =
+        BatchSchemaEvolver.SchemaDiff.compute(
+            Collections.singletonMap("ID", false), Collections.singletonList(row("\"ID\"", 1)));
+
+    Assert.assertTrue(diff.isEmpty());
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testEvolveWholeBatchOnce() {
+    List<SinkRecord> records =
+        Arrays.asList(record(0, 1, "a", null), record(1, 2, null, 7L), record(2, 3, "c", 8L));
+    List<Map<String, Object>> rows =
+        Arrays.asList(
+            row("RECORD_METADATA", "{}", "\"ID\"", 1, "\"NAME\"", "a"),
+            row("RECORD_METADATA", "{}", "\"ID\"", 2, "\"AGE\"", 7L),
+            row("RECORD_METADATA", "{}", "\"ID\"", 3, "\"NAME\"", "c", "\"AGE\"", 8L));
+
+    Assert.assertTrue(evolver.evolveSchemaIfNeeded(rows, records::get));
+
+    verify(conn, times(1)).alterNonNullableColumns(TABLE, Collections.singletonList("\"NAME\""));
+    ArgumentCaptor<Map<String, ColumnInfos>> extraColumns = ArgumentCaptor.forClass(Map.class);
+    verify(conn, times(1)).appendColumnsToTable(eq(TABLE), extraColumns.capture());
+    Assert.assertEquals(Collections.singleton("\"AGE\""), extraColumns.getValue().keySet());
+    Assert.assertEquals("BIGINT", extraColumns.getValue().get("\"AGE\"").getColumnType());
+
+    // the columns are read back after the ALTER, the reopened channel sees them
+    verify(conn, times(2)).describeTableColumns(TABLE);
+    evolver.onChannelOpening();
+    Assert.assertFalse(evolver.evolveSchemaIfNeeded(rows, records::get));
+    verify(conn, times(1)).appendColumnsToTable(any(), anyMap());
+  }
+
+  @Test
+  public void testReopenWhenOtherChannelEvolvedTable() {
+    SchemaEvolutionCoordinator.TableSchema table =
+        new SchemaEvolutionCoordinator().getTable("db", "schema", TABLE);
+    BatchSchemaEvolver otherEvolver = new BatchSchemaEvolver(conn, table);
+    evolver = new BatchSchemaEvolver(conn, table);
+    List<SinkRecord> records = Collections.singletonList(record(0, 1, "a", 7L));
+    List<Map<String, Object>> rows =
+        Collections.singletonList(row("RECORD_METADATA", "{}", "\"ID\"", 1, "\"AGE\"", 7L));
+    evolver.evolveSchemaIfNeeded(Collections.emptyList(), records::get);
+
+    Assert.assertTrue(otherEvolver.evolveSchemaIfNeeded(rows, records::get));
+    // the column was added by the other channel, this channel only has to be reopened
+    Assert.assertTrue(evolver.evolveSchemaIfNeeded(rows, records::get));
+
+    verify(conn, times(1)).appendColumnsToTable(any(), anyMap());
+    verify(conn, times(2)).describeTableColumns(TABLE);
+  }
+
+  @Test
+  public void testEvolveReportedColumns() {
+    evolver.onChannelOpening();
+    evolver.evolveSchemaIfNeeded(Collections.emptyList(), idx -> null);
+
+    evolver.evolveReportedColumns(
+        Collections.singletonList("\"NAME\""),
+        Collections.singletonMap("\"AGE\"", new ColumnInfos("BIGINT", null)));
+
+    // the columns are reloaded first, they are already there
+    verify(conn, times(2)).describeTableColumns(TABLE);
+    verify(conn, never()).appendColumnsToTable(any(), anyMap());
+    verify(conn, never()).alterNonNullableColumns(any(), anyList());
+  }
+
+  @Test
+  public void testSkipWhenColumnsUnknown() {
+    when(conn.describeTableColumns(TABLE))
+        .thenThrow(SnowflakeErrors.ERROR_2014.getException("table name: " + TABLE));
+
+    Assert.assertFalse(
+        evolver.evolveSchemaIfNeeded(
+            Collections.singletonList(row("\"AGE\"", 7L)), idx -> record(0, 1, null, 7L)));
+
+    verify(conn, never()).appendColumnsToTable(any(), anyMap());
+    verify(conn, never()).alterNonNullableColumns(any(), anyList());
+  }
+
+  private static Map<String, Object> row(Object... keysAndValues) {
+    Map<String, Object> row = new HashMap<>();
+    for (int idx = 0; idx < keysAndValues.length; idx += 2) {
+      row.put((String) keysAndValues[idx], keysAndValues[idx + 1]);
+    }
+    return row;
+  }
+
+  private static SinkRecord record(long offset, int id, String name, Long age) {
+    Struct value = new Struct(SCHEMA).put("id", id).put("name", name).put("age", age);
+    return new SinkRecord("topic", 0, Schema.STRING_SCHEMA, "key", SCHEMA, value, offset);
+  }
+}
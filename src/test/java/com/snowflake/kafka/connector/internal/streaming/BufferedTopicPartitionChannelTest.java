@@ -8,15 +8,21 @@ import com.snowflake.kafka.connector.SnowflakeSinkConnectorConfig;
 import com.snowflake.kafka.connector.dlq.InMemoryKafkaRecordErrorReporter;
 import com.snowflake.kafka.connector.dlq.KafkaRecordErrorReporter;
 import com.snowflake.kafka.connector.internal.BufferThreshold;
+import com.snowflake.kafka.connector.internal.FlushDeadlineScheduler;
+import com.snowflake.kafka.connector.internal.PartitionFlushExecutor;
 import com.snowflake.kafka.connector.internal.SnowflakeConnectionService;
 import com.snowflake.kafka.connector.internal.TestUtils;
 import com.snowflake.kafka.connector.internal.telemetry.SnowflakeTelemetryService;
 import com.snowflake.kafka.connector.records.RecordService;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import net.snowflake.ingest.streaming.InsertValidationResponse;
 import net.snowflake.ingest.streaming.OpenChannelRequest;
 import net.snowflake.ingest.streaming.SnowflakeStreamingIngestChannel;
@@ -27,6 +33,7 @@ import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.connect.errors.DataException;
 import org.apache.kafka.connect.sink.SinkRecord;
 import org.apache.kafka.connect.sink.SinkTaskContext;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -326,4 +333,208 @@ public class BufferedTopicPartitionChannelTest {
 
     assert kafkaRecordErrorReporter.getReportedRecords().size() == 1;
   }
+
+  /* Records are converted once when they enter the buffer and reused for insertRows. */
+  @Test
+  public void testInsertRows_RecordConvertedOnce() throws Exception {
+    Mockito.when(
+            mockStreamingChannel.insertRows(
+                ArgumentMatchers.any(Iterable.class),
+                ArgumentMatchers.any(String.class),
+                ArgumentMatchers.any(String.class)))
+        .thenReturn(new InsertValidationResponse());
+
+    RecordService recordService = Mockito.spy(new RecordService());
+    BufferedTopicPartitionChannel topicPartitionChannel =
+        new BufferedTopicPartitionChannel(
+            mockStreamingClient,
+            topicPartition,
+            TEST_CHANNEL_NAME,
+            TEST_TABLE_NAME,
+            false,
+            new StreamingBufferThreshold(1000, 10_000_000, 10000),
+            sfConnectorConfig,
+            mockKafkaRecordErrorReporter,
+            mockSinkTaskContext,
+            mockSnowflakeConnectionService,
+            recordService,
+            mockTelemetryService,
+            false,
+            null);
+
+    List<SinkRecord> records = TestUtils.createJsonStringSinkRecords(0, 3, TOPIC, PARTITION);
+
+    BufferedTopicPartitionChannel.StreamingBuffer streamingBuffer =
+        topicPartitionChannel.new StreamingBuffer();
+    records.forEach(streamingBuffer::insert);
+    assert streamingBuffer.getBufferSizeBytes() > 0;
+
+    BufferedTopicPartitionChannel.InsertRowsResponse response =
+        topicPartitionChannel.insertRecords(streamingBuffer);
+    assert !response.hasErrors();
+
+    Mockito.verify(recordService, Mockito.times(3))
+        .getProcessedRecordForStreamingIngest(
+            ArgumentMatchers.any(SinkRecord.class), ArgumentMatchers.anySet());
+    Mockito.verify(mockStreamingChannel, Mockito.times(1))
+        .insertRows(
+            ArgumentMatchers.argThat(
+                (Iterable<Map<String, Object>> rows) ->
+                    rows.spliterator().getExactSizeIfKnown() == 3),
+            ArgumentMatchers.eq("0"),
+            ArgumentMatchers.eq("2"));
+  }
+
+  /* Flushed buffers are inserted in order off the thread inserting the records. */
+  @Test
+  public void testAsyncInsert_BuffersInsertedInOrderOffTaskThread() throws Exception {
+    List<String> insertedOffsets = Collections.synchronizedList(new ArrayList<>());
+    Thread taskThread = Thread.currentThread();
+    Mockito.when(
+            mockStreamingChannel.insertRows(
+                ArgumentMatchers.any(Iterable.class),
+                ArgumentMatchers.any(String.class),
+                ArgumentMatchers.any(String.class)))
+        .thenAnswer(
+            invocation -> {
+              Assert.assertNotSame(taskThread, Thread.currentThread());
+              insertedOffsets.add(invocation.getArgument(2));
+              return new InsertValidationResponse();
+            });
+
+    BufferedTopicPartitionChannel topicPartitionChannel =
+        new BufferedTopicPartitionChannel(
+            mockStreamingClient,
+            topicPartition,
+            TEST_CHANNEL_NAME,
+            TEST_TABLE_NAME,
+            streamingBufferThreshold,
+            sfConnectorConfig,
+            mockKafkaRecordErrorReporter,
+            mockSinkTaskContext,
+            mockSnowflakeConnectionService,
+            mockTelemetryService);
+    PartitionFlushExecutor insertExecutor = new PartitionFlushExecutor(2, 4);
+    try {
+      topicPartitionChannel.enableAsyncInsert(insertExecutor, () -> {});
+
+      // each record is flushed on its own
+      List<SinkRecord> records = TestUtils.createJsonStringSinkRecords(0, 10, TOPIC, PARTITION);
+      for (int idx = 0; idx < records.size(); idx++) {
+        topicPartitionChannel.insertRecord(records.get(idx), idx == 0);
+      }
+
+      Mockito.verify(mockStreamingChannel, Mockito.timeout(10_000).times(10))
+          .insertRows(
+              ArgumentMatchers.any(Iterable.class),
+              ArgumentMatchers.any(String.class),
+              ArgumentMatchers.any(String.class));
+      Assert.assertEquals(
+          Arrays.asList("0", "1", "2", "3", "4", "5", "6", "7", "8", "9"), insertedOffsets);
+    } finally {
+      insertExecutor.shutdown();
+    }
+  }
+
+  /* The offset is reset by the thread inserting the records, not by the one reopening the channel. */
+  @Test
+  public void testAsyncInsert_OffsetResetAppliedByTaskThread() throws Exception {
+    Mockito.when(mockStreamingChannel.getLatestCommittedOffsetToken()).thenReturn("0");
+    Mockito.when(
+            mockStreamingChannel.insertRows(
+                ArgumentMatchers.any(Iterable.class),
+                ArgumentMatchers.any(String.class),
+                ArgumentMatchers.any(String.class)))
+        .thenThrow(SF_EXCEPTION);
+
+    BufferedTopicPartitionChannel topicPartitionChannel =
+        new BufferedTopicPartitionChannel(
+            mockStreamingClient,
+            topicPartition,
+            TEST_CHANNEL_NAME,
+            TEST_TABLE_NAME,
+            streamingBufferThreshold,
+            sfConnectorConfig,
+            mockKafkaRecordErrorReporter,
+            mockSinkTaskContext,
+            mockSnowflakeConnectionService,
+            mockTelemetryService);
+    PartitionFlushExecutor insertExecutor = new PartitionFlushExecutor(1, 2);
+    try {
+      // the offset was set once when the channel was opened
+      Mockito.clearInvocations(mockSinkTaskContext);
+      CountDownLatch resetFound = new CountDownLatch(1);
+      topicPartitionChannel.enableAsyncInsert(insertExecutor, resetFound::countDown);
+
+      List<SinkRecord> records = TestUtils.createJsonStringSinkRecords(1, 2, TOPIC, PARTITION);
+      topicPartitionChannel.insertRecord(records.get(0), true);
+
+      // the channel was reopened by the insert thread
+      Assert.assertTrue(resetFound.await(10, TimeUnit.SECONDS));
+      Mockito.verify(mockStreamingClient, Mockito.times(2)).openChannel(ArgumentMatchers.any());
+      Mockito.verify(mockSinkTaskContext, Mockito.never())
+          .offset(ArgumentMatchers.any(TopicPartition.class), ArgumentMatchers.anyLong());
+      Assert.assertEquals(0, topicPartitionChannel.getFlushDeadlineMs());
+
+      // the next batch is skipped, it is sent again from the reset offset
+      topicPartitionChannel.insertRecord(records.get(1), true);
+      Mockito.verify(mockSinkTaskContext).offset(topicPartition, 1L);
+      Assert.assertTrue(topicPartitionChannel.isPartitionBufferEmpty());
+      Assert.assertEquals(
+          FlushDeadlineScheduler.NO_DEADLINE, topicPartitionChannel.getFlushDeadlineMs());
+      Mockito.verify(mockStreamingChannel, Mockito.times(1))
+          .insertRows(
+              ArgumentMatchers.any(Iterable.class),
+              ArgumentMatchers.any(String.class),
+              ArgumentMatchers.any(String.class));
+    } finally {
+      insertExecutor.shutdown();
+    }
+  }
+
+  /* The offset is reset by the thread inserting the records, not by a flush in the background. */
+  @Test
+  public void testBackgroundFlush_OffsetResetAppliedByTaskThread() throws Exception {
+    Mockito.when(mockStreamingChannel.getLatestCommittedOffsetToken()).thenReturn("0");
+    Mockito.when(
+            mockStreamingChannel.insertRows(
+                ArgumentMatchers.any(Iterable.class),
+                ArgumentMatchers.any(String.class),
+                ArgumentMatchers.any(String.class)))
+        .thenThrow(SF_EXCEPTION);
+
+    BufferedTopicPartitionChannel topicPartitionChannel =
+        new BufferedTopicPartitionChannel(
+            mockStreamingClient,
+            topicPartition,
+            TEST_CHANNEL_NAME,
+            TEST_TABLE_NAME,
+            new StreamingBufferThreshold(1, 10_000, 10),
+            sfConnectorConfig,
+            mockKafkaRecordErrorReporter,
+            mockSinkTaskContext,
+            mockSnowflakeConnectionService,
+            mockTelemetryService);
+    // the offset was set once when the channel was opened
+    Mockito.clearInvocations(mockSinkTaskContext);
+
+    List<SinkRecord> records = TestUtils.createJsonStringSinkRecords(1, 2, TOPIC, PARTITION);
+    topicPartitionChannel.insertRecord(records.get(0), true);
+
+    // the flush scheduler flushes the buffer from its own thread, which reopens the channel
+    Thread backgroundFlush = new Thread(topicPartitionChannel::flushBuffer);
+    backgroundFlush.start();
+    backgroundFlush.join();
+    Mockito.verify(mockStreamingClient, Mockito.times(2)).openChannel(ArgumentMatchers.any());
+    Mockito.verify(mockSinkTaskContext, Mockito.never())
+        .offset(ArgumentMatchers.any(TopicPartition.class), ArgumentMatchers.anyLong());
+    Assert.assertEquals(0, topicPartitionChannel.getFlushDeadlineMs());
+
+    // the next batch is skipped, it is sent again from the reset offset
+    topicPartitionChannel.insertRecord(records.get(1), true);
+    Mockito.verify(mockSinkTaskContext).offset(topicPartition, 1L);
+    Assert.assertTrue(topicPartitionChannel.isPartitionBufferEmpty());
+    Assert.assertEquals(
+        FlushDeadlineScheduler.NO_DEADLINE, topicPartitionChannel.getFlushDeadlineMs());
+  }
 }
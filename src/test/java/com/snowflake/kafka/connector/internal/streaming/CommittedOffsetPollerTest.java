@@ -0,0 +1,134 @@
+package com.snowflake.kafka.connector.internal.streaming;
+
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.snowflake.kafka.connector.internal.streaming.channel.TopicPartitionChannel;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import net.snowflake.ingest.streaming.SnowflakeStreamingIngestChannel;
+import net.snowflake.ingest.streaming.SnowflakeStreamingIngestClient;
+import net.snowflake.ingest.utils.ErrorCode;
+import net.snowflake.ingest.utils.SFException;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CommittedOffsetPollerTest {
+  private static final String KEY = "topic_0";
+
+  private final AtomicLong currentTime = new AtomicLong(1000);
+  private SnowflakeStreamingIngestClient client;
+  private SnowflakeStreamingIngestChannel sdkChannel;
+  private TopicPartitionChannel channel;
+  private CommittedOffsetPoller poller;
+
+  @Before
+  public void setUp() {
+    client = mock(SnowflakeStreamingIngestClient.class);
+    sdkChannel = mockSdkChannel("db.schema.table.topic_0");
+    channel = mock(TopicPartitionChannel.class);
+    when(channel.getChannel()).thenReturn(sdkChannel);
+    when(channel.getOffsetSafeToCommitToKafka()).thenReturn(7L);
+
+    poller = new CommittedOffsetPoller(client, 100, 500, currentTime::get);
+    poller.addChannel(KEY, channel);
+  }
+
+  @Test
+  public void testAnswerFromPolledToken() {
+    when(client.getLatestCommittedOffsetTokens(anyList()))
+        .thenReturn(Collections.singletonMap("db.schema.table.topic_0", "41"));
+
+    poller.poll();
+
+    Assert.assertEquals(42, poller.getOffsetSafeToCommitToKafka(KEY, channel));
+    verify(channel, never()).getOffsetSafeToCommitToKafka();
+    Assert.assertEquals(0, poller.getStalenessMillis());
+  }
+
+  @Test
+  public void testNullToken() {
+    Map<String, String> tokens = new HashMap<>();
+    tokens.put("db.schema.table.topic_0", null);
+    when(client.getLatestCommittedOffsetTokens(anyList())).thenReturn(tokens);
+
+    poller.poll();
+
+    Assert.assertEquals(-1, poller.getOffsetSafeToCommitToKafka(KEY, channel));
+  }
+
+  @Test
+  public void testFetchFromChannelWhenTokenIsMissingOrStale() {
+    // nothing polled yet
+    Assert.assertEquals(7, poller.getOffsetSafeToCommitToKafka(KEY, channel));
+
+    when(client.getLatestCommittedOffsetTokens(anyList()))
+        .thenReturn(Collections.singletonMap("db.schema.table.topic_0", "41"))
+        .thenThrow(new SFException(ErrorCode.INTERNAL_ERROR, "failure"));
+    poller.poll();
+    currentTime.addAndGet(400);
+    poller.poll();
+
+    Assert.assertEquals(42, poller.getOffsetSafeToCommitToKafka(KEY, channel));
+    Assert.assertEquals(400, poller.getStalenessMillis());
+
+    currentTime.addAndGet(101);
+    Assert.assertEquals(7, poller.getOffsetSafeToCommitToKafka(KEY, channel));
+    verify(channel, times(2)).getOffsetSafeToCommitToKafka();
+  }
+
+  @Test
+  public void testFetchFromChannelAfterReopen() {
+    when(client.getLatestCommittedOffsetTokens(anyList()))
+        .thenReturn(Collections.singletonMap("db.schema.table.topic_0", "41"));
+    poller.poll();
+
+    SnowflakeStreamingIngestChannel reopened = mockSdkChannel("db.schema.table.topic_0");
+    when(channel.getChannel()).thenReturn(reopened);
+
+    Assert.assertEquals(7, poller.getOffsetSafeToCommitToKafka(KEY, channel));
+  }
+
+  @Test
+  public void testClosedChannelsAreNotPolled() {
+    poller.removeChannel(KEY);
+
+    poller.poll();
+
+    verify(client, never()).getLatestCommittedOffsetTokens(anyList());
+    Assert.assertEquals(7, poller.getOffsetSafeToCommitToKafka(KEY, channel));
+  }
+
+  @Test
+  public void testChannelsOfEachClientArePolledTogether() {
+    SnowflakeStreamingIngestClient otherClient = mock(SnowflakeStreamingIngestClient.class);
+    SnowflakeStreamingIngestChannel otherSdkChannel = mockSdkChannel("db.schema.table.topic_1");
+    TopicPartitionChannel otherChannel = mock(TopicPartitionChannel.class);
+    when(otherChannel.getChannel()).thenReturn(otherSdkChannel);
+    poller.addChannel("topic_1", otherChannel, otherClient);
+    when(client.getLatestCommittedOffsetTokens(Collections.singletonList(sdkChannel)))
+        .thenReturn(Collections.singletonMap("db.schema.table.topic_0", "41"));
+    when(otherClient.getLatestCommittedOffsetTokens(Collections.singletonList(otherSdkChannel)))
+        .thenReturn(Collections.singletonMap("db.schema.table.topic_1", "9"));
+
+    poller.poll();
+
+    Assert.assertEquals(42, poller.getOffsetSafeToCommitToKafka(KEY, channel));
+    Assert.assertEquals(10, poller.getOffsetSafeToCommitToKafka("topic_1", otherChannel));
+    Assert.assertEquals(0, poller.getStalenessMillis());
+  }
+
+  private static SnowflakeStreamingIngestChannel mockSdkChannel(String fullyQualifiedName) {
+    SnowflakeStreamingIngestChannel sdkChannel = mock(SnowflakeStreamingIngestChannel.class);
+    when(sdkChannel.getFullyQualifiedName()).thenReturn(fullyQualifiedName);
+    when(sdkChannel.isClosed()).thenReturn(false);
+    return sdkChannel;
+  }
+}
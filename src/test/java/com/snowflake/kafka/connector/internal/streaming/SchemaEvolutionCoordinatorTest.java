@@ -0,0 +1,105 @@
+package com.snowflake.kafka.connector.internal.streaming;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.snowflake.kafka.connector.internal.ColumnInfos;
+import com.snowflake.kafka.connector.internal.SnowflakeConnectionService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SchemaEvolutionCoordinatorTest {
+  private static final String TABLE = "test_table";
+
+  private SnowflakeConnectionService conn;
+  private SchemaEvolutionCoordinator.TableSchema table;
+
+  @Before
+  public void setUp() {
+    conn = mock(SnowflakeConnectionService.class);
+    Map<String, Boolean> columns = new LinkedHashMap<>();
+    columns.put("RECORD_METADATA", true);
+    columns.put("ID", false);
+    Map<String, Boolean> evolvedColumns = new LinkedHashMap<>(columns);
+    evolvedColumns.put("GENDER", true);
+    when(conn.describeTableColumns(TABLE)).thenReturn(columns).thenReturn(evolvedColumns);
+    table = new SchemaEvolutionCoordinator().getTable("db", "schema", TABLE);
+  }
+
+  @Test
+  public void testSameTableIsShared() {
+    SchemaEvolutionCoordinator coordinator = new SchemaEvolutionCoordinator();
+
+    Assert.assertSame(
+        coordinator.getTable("db", "schema", TABLE), coordinator.getTable("db", "schema", TABLE));
+    Assert.assertNotSame(
+        coordinator.getTable("db", "schema", TABLE), coordinator.getTable("db", "other", TABLE));
+  }
+
+  @Test
+  public void testConcurrentEvolutionsRunOneAlter() throws Exception {
+    int channelCount = 16;
+    ExecutorService executor = Executors.newFixedThreadPool(channelCount);
+    CountDownLatch start = new CountDownLatch(1);
+    List<CompletableFuture<SchemaEvolutionCoordinator.Snapshot>> evolutions = new ArrayList<>();
+    try {
+      for (int i = 0; i < channelCount; i++) {
+        evolutions.add(
+            CompletableFuture.supplyAsync(
+                () -> {
+                  try {
+                    start.await(10, TimeUnit.SECONDS);
+                  } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                  }
+                  return table.evolve(
+                      conn,
+                      Collections.emptyList(),
+                      Collections.singletonMap("\"GENDER\"", new ColumnInfos("VARCHAR", null)));
+                },
+                executor));
+      }
+      start.countDown();
+
+      for (CompletableFuture<SchemaEvolutionCoordinator.Snapshot> evolution : evolutions) {
+        Assert.assertTrue(evolution.get(10, TimeUnit.SECONDS).columns.containsKey("GENDER"));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    verify(conn, times(1)).appendColumnsToTable(any(), anyMap());
+    verify(conn, never()).alterNonNullableColumns(any(), anyList());
+    verify(conn, times(2)).describeTableColumns(TABLE);
+    Assert.assertEquals(2, table.peek().version);
+  }
+
+  @Test
+  public void testRefreshOnlyReloadsSeenSnapshot() {
+    SchemaEvolutionCoordinator.Snapshot seen = table.get(conn);
+
+    SchemaEvolutionCoordinator.Snapshot refreshed = table.refresh(conn, seen);
+    // another channel saw the old snapshot too, the reload is not repeated
+    Assert.assertSame(refreshed, table.refresh(conn, seen));
+
+    verify(conn, times(2)).describeTableColumns(TABLE);
+    Assert.assertTrue(refreshed.columns.containsKey("GENDER"));
+  }
+}
@@ -0,0 +1,48 @@
+package com.snowflake.kafka.connector.internal.streaming;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import net.snowflake.ingest.streaming.SnowflakeStreamingIngestChannel;
+import net.snowflake.ingest.streaming.internal.ColumnProperties;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class SemiStructuredColumnsTest {
+
+  @Test
+  public void testColumnsReadOncePerChannel() {
+    Map<String, ColumnProperties> tableSchema = new HashMap<>();
+    tableSchema.put("PAYLOAD", column("VARIANT"));
+    tableSchema.put("TAGS", column("ARRAY"));
+    tableSchema.put("address", column("OBJECT"));
+    tableSchema.put("NAME", column("TEXT"));
+    SnowflakeStreamingIngestChannel channel = Mockito.mock(SnowflakeStreamingIngestChannel.class);
+    Mockito.when(channel.getTableSchema()).thenReturn(tableSchema);
+
+    SemiStructuredColumns semiStructuredColumns = new SemiStructuredColumns();
+    Assert.assertEquals(
+        new HashSet<>(Arrays.asList("\"PAYLOAD\"", "\"TAGS\"", "\"address\"")),
+        semiStructuredColumns.forChannel(channel));
+    semiStructuredColumns.forChannel(channel);
+    Mockito.verify(channel, Mockito.times(1)).getTableSchema();
+
+    // a reopened channel sees the columns added by schema evolution
+    SnowflakeStreamingIngestChannel reopenedChannel =
+        Mockito.mock(SnowflakeStreamingIngestChannel.class);
+    Map<String, ColumnProperties> evolvedTableSchema =
+        Collections.singletonMap("NAME", column("VARIANT"));
+    Mockito.when(reopenedChannel.getTableSchema()).thenReturn(evolvedTableSchema);
+    Assert.assertEquals(
+        Collections.singleton("\"NAME\""), semiStructuredColumns.forChannel(reopenedChannel));
+  }
+
+  private static ColumnProperties column(String logicalType) {
+    ColumnProperties properties = Mockito.mock(ColumnProperties.class);
+    Mockito.when(properties.getLogicalType()).thenReturn(logicalType);
+    return properties;
+  }
+}
@@ -0,0 +1,278 @@
+package com.snowflake.kafka.connector.internal.streaming;
+
+import com.snowflake.kafka.connector.SnowflakeSinkConnectorConfig;
+import com.snowflake.kafka.connector.Utils;
+import com.snowflake.kafka.connector.dlq.InMemoryKafkaRecordErrorReporter;
+import com.snowflake.kafka.connector.internal.SnowflakeConnectionService;
+import com.snowflake.kafka.connector.internal.TestUtils;
+import com.snowflake.kafka.connector.internal.telemetry.SnowflakeTelemetryService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.snowflake.ingest.streaming.OpenChannelRequest;
+import net.snowflake.ingest.streaming.SnowflakeStreamingIngestChannel;
+import net.snowflake.ingest.streaming.SnowflakeStreamingIngestClient;
+import net.snowflake.ingest.utils.ErrorCode;
+import net.snowflake.ingest.utils.SFException;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.connect.sink.SinkTaskContext;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+public class SnowflakeSinkServiceV2Test {
+  private static final String TOPIC_1 = "topic1";
+  private static final String TOPIC_2 = "topic2";
+  private static final String TABLE_1 = "TABLE_1";
+  private static final String TABLE_2 = "TABLE_2";
+
+  private SnowflakeConnectionService mockConn;
+  private SnowflakeStreamingIngestClient mockStreamingClient;
+  private StreamingClientHandler mockClientHandler;
+  private SinkTaskContext mockSinkTaskContext;
+  private Map<String, String> connectorConfig;
+  private Map<String, String> topic2Table;
+
+  private SnowflakeSinkServiceV2 service;
+
+  @Before
+  public void setup() {
+    mockConn = Mockito.mock(SnowflakeConnectionService.class);
+    Mockito.when(mockConn.isClosed()).thenReturn(false);
+    Mockito.when(mockConn.getConnectorName()).thenReturn("test");
+    Mockito.when(mockConn.getTelemetryClient())
+        .thenReturn(Mockito.mock(SnowflakeTelemetryService.class));
+    Mockito.when(mockConn.tableExist(ArgumentMatchers.anyString())).thenReturn(true);
+    Mockito.when(mockConn.isTableCompatible(ArgumentMatchers.anyString())).thenReturn(true);
+
+    mockStreamingClient = Mockito.mock(SnowflakeStreamingIngestClient.class);
+    Mockito.when(mockStreamingClient.getName()).thenReturn("test_client");
+    Mockito.when(mockStreamingClient.isClosed()).thenReturn(false);
+    mockClientHandler = Mockito.mock(StreamingClientHandler.class);
+    Mockito.when(mockClientHandler.createClient(ArgumentMatchers.any()))
+        .thenReturn(mockStreamingClient);
+    StreamingClientProvider.reset();
+    StreamingClientProvider.overrideStreamingClientHandler(mockClientHandler);
+
+    mockSinkTaskContext = Mockito.mock(SinkTaskContext.class);
+
+    connectorConfig = TestUtils.getConfig();
+    connectorConfig.put(Utils.SF_ROLE, "testrole");
+    connectorConfig.put(
+        SnowflakeSinkConnectorConfig.INGESTION_METHOD_OPT,
+        IngestionMethodConfig.SNOWPIPE_STREAMING.toString());
+    connectorConfig.put(
+        SnowflakeSinkConnectorConfig.ENABLE_CHANNEL_OFFSET_TOKEN_MIGRATION_CONFIG, "false");
+    connectorConfig.put(
+        SnowflakeSinkConnectorConfig.SNOWPIPE_STREAMING_OPEN_CHANNELS_IN_PARALLEL, "true");
+
+    topic2Table = new HashMap<>();
+    topic2Table.put(TOPIC_1, TABLE_1);
+    topic2Table.put(TOPIC_2, TABLE_2);
+  }
+
+  @After
+  public void tearDown() {
+    if (service != null) {
+      service.stop();
+    }
+    StreamingClientProvider.reset();
+  }
+
+  @Test
+  public void testStartPartitionsOpensChannelsInParallel() throws Exception {
+    List<TopicPartition> partitions =
+        Arrays.asList(
+            new TopicPartition(TOPIC_1, 0),
+            new TopicPartition(TOPIC_1, 1),
+            new TopicPartition(TOPIC_2, 0),
+            new TopicPartition(TOPIC_2, 1));
+    // no channel is open until all of them are being opened
+    CyclicBarrier allOpening = new CyclicBarrier(partitions.size());
+    Mockito.when(mockStreamingClient.openChannel(ArgumentMatchers.any(OpenChannelRequest.class)))
+        .thenAnswer(
+            invocation -> {
+              allOpening.await(30, TimeUnit.SECONDS);
+              return newChannel(invocation.getArgument(0), "41");
+            });
+
+    service = newService();
+    service.startPartitions(partitions, topic2Table);
+
+    for (TopicPartition tp : partitions) {
+      Assert.assertTrue(
+          service
+              .getTopicPartitionChannelFromCacheKey(
+                  SnowflakeSinkServiceV2.partitionChannelKey(tp.topic(), tp.partition()))
+              .isPresent());
+      // the offsets are reset through the synchronized context of the task
+      Mockito.verify(mockSinkTaskContext).offset(tp, 42L);
+    }
+    Mockito.verify(mockStreamingClient, Mockito.times(partitions.size()))
+        .openChannel(ArgumentMatchers.any(OpenChannelRequest.class));
+  }
+
+  @Test
+  public void testStartPartitionsChecksEachTableOnce() {
+    Mockito.when(mockStreamingClient.openChannel(ArgumentMatchers.any(OpenChannelRequest.class)))
+        .thenAnswer(invocation -> newChannel(invocation.getArgument(0), null));
+
+    service = newService();
+    service.startPartitions(
+        Arrays.asList(
+            new TopicPartition(TOPIC_1, 0),
+            new TopicPartition(TOPIC_1, 1),
+            new TopicPartition(TOPIC_1, 2),
+            new TopicPartition(TOPIC_2, 0)),
+        topic2Table);
+
+    Mockito.verify(mockConn, Mockito.times(1)).tableExist(TABLE_1);
+    Mockito.verify(mockConn, Mockito.times(1)).tableExist(TABLE_2);
+    Mockito.verify(mockConn, Mockito.times(1)).isTableCompatible(TABLE_1);
+    Mockito.verify(mockConn, Mockito.times(1)).isTableCompatible(TABLE_2);
+    Mockito.verify(mockStreamingClient, Mockito.times(4))
+        .openChannel(ArgumentMatchers.any(OpenChannelRequest.class));
+  }
+
+  @Test
+  public void testStartPartitionsRethrowsFirstFailureAndRegistersOpenedChannels() {
+    TopicPartition opened = new TopicPartition(TOPIC_1, 0);
+    TopicPartition firstFailed = new TopicPartition(TOPIC_1, 1);
+    TopicPartition secondFailed = new TopicPartition(TOPIC_2, 0);
+    SFException firstFailure = new SFException(ErrorCode.INTERNAL_ERROR, "first");
+    SFException secondFailure = new SFException(ErrorCode.INTERNAL_ERROR, "second");
+    Mockito.when(mockStreamingClient.openChannel(ArgumentMatchers.any(OpenChannelRequest.class)))
+        .thenAnswer(
+            invocation -> {
+              OpenChannelRequest request = invocation.getArgument(0);
+              if (request.getChannelName().equals(channelName(firstFailed))) {
+                throw firstFailure;
+              }
+              if (request.getChannelName().equals(channelName(secondFailed))) {
+                throw secondFailure;
+              }
+              return newChannel(request, null);
+            });
+
+    service = newService();
+    try {
+      service.startPartitions(Arrays.asList(opened, firstFailed, secondFailed), topic2Table);
+      Assert.fail("Opening the channels should fail");
+    } catch (SFException e) {
+      // the failure of the first partition, whatever the order the channels failed in
+      Assert.assertSame(firstFailure, e);
+    }
+
+    // the opened channel is closed with the task
+    Assert.assertTrue(
+        service.getTopicPartitionChannelFromCacheKey(channelName(opened)).isPresent());
+    Assert.assertFalse(
+        service.getTopicPartitionChannelFromCacheKey(channelName(firstFailed)).isPresent());
+    Assert.assertFalse(
+        service.getTopicPartitionChannelFromCacheKey(channelName(secondFailed)).isPresent());
+  }
+
+  @Test
+  public void testInsertReopensOnlyTheChannelsOfInvalidClients() {
+    connectorConfig.put(SnowflakeSinkConnectorConfig.SNOWPIPE_STREAMING_CLIENT_POOL_SIZE, "2");
+    // client -> number of channels opened with it
+    Map<SnowflakeStreamingIngestClient, AtomicInteger> openedChannels = new LinkedHashMap<>();
+    Mockito.when(mockClientHandler.createClient(ArgumentMatchers.any()))
+        .thenAnswer(
+            invocation -> {
+              SnowflakeStreamingIngestClient client =
+                  Mockito.mock(SnowflakeStreamingIngestClient.class);
+              Mockito.when(client.getName()).thenReturn("client_" + openedChannels.size());
+              Mockito.when(client.isClosed()).thenReturn(false);
+              AtomicInteger channelCount = new AtomicInteger();
+              Mockito.when(client.openChannel(ArgumentMatchers.any(OpenChannelRequest.class)))
+                  .thenAnswer(
+                      openInvocation -> {
+                        channelCount.incrementAndGet();
+                        return newChannel(openInvocation.getArgument(0), null);
+                      });
+              openedChannels.put(client, channelCount);
+              return client;
+            });
+    List<TopicPartition> partitions = new ArrayList<>();
+    for (int partition = 0; partition < 8; partition++) {
+      partitions.add(new TopicPartition(TOPIC_1, partition));
+    }
+
+    service = newService();
+    service.startPartitions(partitions, topic2Table);
+    Map<SnowflakeStreamingIngestClient, Integer> channelsBeforeInvalidation = new HashMap<>();
+    openedChannels.forEach((client, count) -> channelsBeforeInvalidation.put(client, count.get()));
+    SnowflakeStreamingIngestClient invalidClient = openedChannels.keySet().iterator().next();
+    Mockito.when(invalidClient.isClosed()).thenReturn(true);
+
+    service.insert(Collections.emptyList());
+
+    // the valid clients open no channel, the recreated client opens those of the invalid one
+    Assert.assertEquals(channelsBeforeInvalidation.size() + 1, openedChannels.size());
+    int reopenedChannels = 0;
+    for (Map.Entry<SnowflakeStreamingIngestClient, AtomicInteger> entry :
+        openedChannels.entrySet()) {
+      Integer before = channelsBeforeInvalidation.get(entry.getKey());
+      if (before == null) {
+        reopenedChannels = entry.getValue().get();
+      } else {
+        Assert.assertEquals(before.intValue(), entry.getValue().get());
+      }
+    }
+    Assert.assertEquals(channelsBeforeInvalidation.get(invalidClient).intValue(), reopenedChannels);
+    for (TopicPartition tp : partitions) {
+      Assert.assertTrue(service.getTopicPartitionChannelFromCacheKey(channelName(tp)).isPresent());
+    }
+  }
+
+  @Test
+  public void testSynchronizedSinkTaskContextDelegates() {
+    SynchronizedSinkTaskContext context = new SynchronizedSinkTaskContext(mockSinkTaskContext);
+    TopicPartition tp = new TopicPartition(TOPIC_1, 0);
+
+    context.offset(tp, 10L);
+    context.pause(tp);
+    context.resume(tp);
+    context.requestCommit();
+
+    Mockito.verify(mockSinkTaskContext).offset(tp, 10L);
+    Mockito.verify(mockSinkTaskContext).pause(tp);
+    Mockito.verify(mockSinkTaskContext).resume(tp);
+    Mockito.verify(mockSinkTaskContext).requestCommit();
+  }
+
+  private SnowflakeSinkServiceV2 newService() {
+    SnowflakeSinkServiceV2 sinkService = new SnowflakeSinkServiceV2(mockConn, connectorConfig);
+    sinkService.setSinkTaskContext(mockSinkTaskContext);
+    sinkService.setTopic2TableMap(topic2Table);
+    sinkService.setErrorReporter(new InMemoryKafkaRecordErrorReporter());
+    return sinkService;
+  }
+
+  private static String channelName(TopicPartition tp) {
+    return SnowflakeSinkServiceV2.partitionChannelKey(tp.topic(), tp.partition());
+  }
+
+  private static SnowflakeStreamingIngestChannel newChannel(
+      OpenChannelRequest request, String offsetToken) {
+    SnowflakeStreamingIngestChannel channel = Mockito.mock(SnowflakeStreamingIngestChannel.class);
+    Mockito.when(channel.getName()).thenReturn(request.getChannelName());
+    Mockito.when(channel.getFullyQualifiedName()).thenReturn(request.getChannelName());
+    Mockito.when(channel.getTableName()).thenReturn(request.getTableName());
+    Mockito.when(channel.getLatestCommittedOffsetToken()).thenReturn(offsetToken);
+    Mockito.when(channel.close()).thenReturn(CompletableFuture.completedFuture(null));
+    return channel;
+  }
+}
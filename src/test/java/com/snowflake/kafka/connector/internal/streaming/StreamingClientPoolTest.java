@@ -0,0 +1,117 @@
+package com.snowflake.kafka.connector.internal.streaming;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.snowflake.kafka.connector.Utils;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import net.snowflake.ingest.streaming.SnowflakeStreamingIngestClient;
+import org.apache.kafka.connect.errors.ConnectException;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StreamingClientPoolTest {
+  private static final int POOL_SIZE = 4;
+
+  private FakeStreamingClientHandler clientHandler;
+  private StreamingClientPool pool;
+
+  @Before
+  public void setUp() {
+    clientHandler = new FakeStreamingClientHandler();
+    pool = new StreamingClientPool(clientProperties(), POOL_SIZE, clientHandler);
+  }
+
+  @Test
+  public void testChannelsAreSpreadOverTheClients() {
+    Set<SnowflakeStreamingIngestClient> clients = new HashSet<>();
+    for (int partition = 0; partition < 64; partition++) {
+      SnowflakeStreamingIngestClient client = pool.getClient("table", partition);
+      clients.add(client);
+      // the same channel is always assigned to the same client
+      Assert.assertSame(client, pool.getClient("table", partition));
+    }
+
+    Assert.assertEquals(POOL_SIZE, clients.size());
+    Assert.assertEquals(POOL_SIZE, (int) clientHandler.getCreateClientCalls());
+    int channelCount = 0;
+    for (int slot = 0; slot < POOL_SIZE; slot++) {
+      Assert.assertTrue(pool.getChannelCount(slot) > 0);
+      channelCount += pool.getChannelCount(slot);
+    }
+    Assert.assertEquals(128, channelCount);
+  }
+
+  @Test
+  public void testReleaseClient() {
+    SnowflakeStreamingIngestClient client = pool.getClient("table", 0);
+    int slot = slotOf(client);
+    Assert.assertEquals(1, pool.getChannelCount(slot));
+
+    pool.releaseClient(client);
+
+    Assert.assertEquals(0, pool.getChannelCount(slot));
+  }
+
+  @Test
+  public void testInvalidClientIsRecreated() throws Exception {
+    SnowflakeStreamingIngestClient client = pool.getClient("table", 0);
+    int slot = slotOf(client);
+    client.close();
+
+    SnowflakeStreamingIngestClient recreated = pool.getClient("table", 0);
+
+    Assert.assertNotSame(client, recreated);
+    Assert.assertTrue(StreamingClientHandler.isClientValid(recreated));
+    Assert.assertEquals(1, pool.getRecreatedCount(slot));
+    Assert.assertEquals(1, pool.getChannelCount(slot));
+  }
+
+  @Test
+  public void testChannelsMoveWhenClientCannotBeCreated() {
+    StreamingClientHandler failingHandler = mock(StreamingClientHandler.class);
+    SnowflakeStreamingIngestClient healthyClient = mock(SnowflakeStreamingIngestClient.class);
+    when(healthyClient.getName()).thenReturn("healthy");
+    when(failingHandler.createClient(any()))
+        .thenThrow(new ConnectException("failure"))
+        .thenReturn(healthyClient);
+    StreamingClientPool failingPool =
+        new StreamingClientPool(clientProperties(), 2, failingHandler);
+
+    Assert.assertSame(healthyClient, failingPool.getClient("table", 0));
+    Assert.assertNotEquals(failingPool.isInRing(0), failingPool.isInRing(1));
+    // all channels are assigned to the remaining client
+    Assert.assertSame(healthyClient, failingPool.getClient("table", 1));
+    Assert.assertSame(healthyClient, failingPool.getClient("other_table", 7));
+  }
+
+  @Test
+  public void testClose() {
+    SnowflakeStreamingIngestClient client = pool.getClient("table", 0);
+
+    pool.close();
+
+    Assert.assertTrue(client.isClosed());
+    Assert.assertThrows(IllegalStateException.class, () -> pool.getClient("table", 0));
+  }
+
+  private static StreamingClientProperties clientProperties() {
+    Map<String, String> connectorConfig = new HashMap<>();
+    connectorConfig.put(Utils.NAME, "connector");
+    return new StreamingClientProperties(connectorConfig);
+  }
+
+  private int slotOf(SnowflakeStreamingIngestClient client) {
+    for (int slot = 0; slot < POOL_SIZE; slot++) {
+      if (pool.getCreatedClient(slot) == client) {
+        return slot;
+      }
+    }
+    throw new AssertionError("client is not part of the pool");
+  }
+}
@@ -720,9 +720,6 @@ public class TopicPartitionChannelTest {
                 ArgumentMatchers.any(String.class)))
         .thenThrow(SF_EXCEPTION)
         .thenReturn(new InsertValidationResponse());
-    Mockito.when(mockStreamingChannel.insertRow(anyMap(), anyString()))
-        .thenThrow(SF_EXCEPTION)
-        .thenReturn(new InsertValidationResponse());
     Mockito.when(mockStreamingChannel.getLatestCommittedOffsetToken())
         .thenReturn(null)
         .thenReturn(null)
@@ -766,16 +763,11 @@ public class TopicPartitionChannelTest {
     expectedGetOffsetCount++;
 
     // verify mocks only tried ingesting once
-    if (useDoubleBuffer) {
-      Mockito.verify(topicPartitionChannel.getChannel(), Mockito.times(expectedInsertRowsCount))
-          .insertRows(
-              ArgumentMatchers.any(Iterable.class),
-              ArgumentMatchers.any(String.class),
-              ArgumentMatchers.any(String.class));
-    } else {
-      Mockito.verify(topicPartitionChannel.getChannel(), Mockito.times(expectedInsertRowsCount))
-          .insertRow(anyMap(), anyString());
-    }
+    Mockito.verify(topicPartitionChannel.getChannel(), Mockito.times(expectedInsertRowsCount))
+        .insertRows(
+            ArgumentMatchers.any(Iterable.class),
+            ArgumentMatchers.any(String.class),
+            ArgumentMatchers.any(String.class));
     Mockito.verify(mockStreamingClient, Mockito.times(expectedOpenChannelCount))
         .openChannel(ArgumentMatchers.any());
     Mockito.verify(topicPartitionChannel.getChannel(), Mockito.times(expectedGetOffsetCount))
@@ -791,16 +783,11 @@ public class TopicPartitionChannelTest {
     expectedGetOffsetCount++;
 
     // verify mocks ingested each record
-    if (useDoubleBuffer) {
-      Mockito.verify(topicPartitionChannel.getChannel(), Mockito.times(expectedInsertRowsCount))
-          .insertRows(
-              ArgumentMatchers.any(Iterable.class),
-              ArgumentMatchers.any(String.class),
-              ArgumentMatchers.any(String.class));
-    } else {
-      Mockito.verify(topicPartitionChannel.getChannel(), Mockito.times(6))
-          .insertRow(anyMap(), anyString());
-    }
+    Mockito.verify(topicPartitionChannel.getChannel(), Mockito.times(expectedInsertRowsCount))
+        .insertRows(
+            ArgumentMatchers.any(Iterable.class),
+            ArgumentMatchers.any(String.class),
+            ArgumentMatchers.any(String.class));
     Mockito.verify(mockStreamingClient, Mockito.times(expectedOpenChannelCount))
         .openChannel(ArgumentMatchers.any());
     Mockito.verify(topicPartitionChannel.getChannel(), Mockito.times(expectedGetOffsetCount))
@@ -812,27 +799,34 @@ public class TopicPartitionChannelTest {
     if (this.sfConnectorConfig
         .get(SnowflakeSinkConnectorConfig.ENABLE_SCHEMATIZATION_CONFIG)
         .equals("true")) {
-      InsertValidationResponse validationResponse1 = new InsertValidationResponse();
-      InsertValidationResponse.InsertError insertError1 =
+      // the whole buffer is inserted at once, the schema is evolved and the offset reset for the
+      // first error with extra columns
+      InsertValidationResponse batchValidationResponse = new InsertValidationResponse();
+      InsertValidationResponse.InsertError batchInsertError1 =
           new InsertValidationResponse.InsertError("CONTENT", 0);
-      insertError1.setException(SF_EXCEPTION);
-      validationResponse1.addError(insertError1);
-
-      InsertValidationResponse validationResponse2 = new InsertValidationResponse();
-      InsertValidationResponse.InsertError insertError2 =
+      batchInsertError1.setException(SF_EXCEPTION);
+      batchValidationResponse.addError(batchInsertError1);
+      InsertValidationResponse.InsertError batchInsertError2 =
+          new InsertValidationResponse.InsertError("CONTENT", 1);
+      batchInsertError2.setException(SF_EXCEPTION);
+      batchInsertError2.setExtraColNames(Collections.singletonList("gender"));
+      batchValidationResponse.addError(batchInsertError2);
+      // once the schema is evolved, the retried buffer only fails with the other error
+      InsertValidationResponse retriedValidationResponse = new InsertValidationResponse();
+      InsertValidationResponse.InsertError retriedInsertError =
           new InsertValidationResponse.InsertError("CONTENT", 0);
-      insertError2.setException(SF_EXCEPTION);
-      insertError2.setExtraColNames(Collections.singletonList("gender"));
-      validationResponse2.addError(insertError2);
-
+      retriedInsertError.setException(SF_EXCEPTION);
+      retriedValidationResponse.addError(retriedInsertError);
       Mockito.when(
-              mockStreamingChannel.insertRow(
-                  ArgumentMatchers.any(), ArgumentMatchers.any(String.class)))
-          .thenReturn(new InsertValidationResponse())
-          .thenReturn(validationResponse1)
-          .thenReturn(validationResponse2);
+              mockStreamingChannel.insertRows(
+                  ArgumentMatchers.any(Iterable.class),
+                  ArgumentMatchers.any(String.class),
+                  ArgumentMatchers.any(String.class)))
+          .thenReturn(batchValidationResponse)
+          .thenReturn(retriedValidationResponse);
 
-      Mockito.when(mockStreamingChannel.getLatestCommittedOffsetToken()).thenReturn("0");
+      // nothing was committed, the buffer is retried from its first record
+      Mockito.when(mockStreamingChannel.getLatestCommittedOffsetToken()).thenReturn(null);
 
       SnowflakeConnectionService conn = Mockito.mock(SnowflakeConnectionService.class);
       Mockito.when(
@@ -886,9 +880,25 @@ public class TopicPartitionChannelTest {
 
       topicPartitionChannel.insertBufferedRecordsIfFlushTimeThresholdReached();
 
-      // Verify that the buffer is cleaned up and one record is in the DLQ
+      // Verify that the buffer is cleaned up and the other error is left to the retried buffer
       Assert.assertTrue(topicPartitionChannel.isPartitionBufferEmpty());
+      Mockito.verify(mockStreamingChannel, Mockito.never()).insertRow(anyMap(), anyString());
+      Mockito.verify(mockStreamingClient, Mockito.times(2)).openChannel(ArgumentMatchers.any());
+      Assert.assertEquals(0, kafkaRecordErrorReporter.getReportedRecords().size());
+
+      // Kafka sends the records again after the offset reset
+      for (int idx = 0; idx < records.size(); idx++) {
+        topicPartitionChannel.insertRecord(records.get(idx), idx == 0);
+      }
+      Thread.sleep(bufferFlushTimeSeconds * 1000 + 10);
+      topicPartitionChannel.insertBufferedRecordsIfFlushTimeThresholdReached();
+
+      // the row with the other error reaches the DLQ once the buffer is retried
+      Assert.assertTrue(topicPartitionChannel.isPartitionBufferEmpty());
+      Mockito.verify(mockStreamingClient, Mockito.times(2)).openChannel(ArgumentMatchers.any());
       Assert.assertEquals(1, kafkaRecordErrorReporter.getReportedRecords().size());
+      Assert.assertEquals(
+          0, kafkaRecordErrorReporter.getReportedRecords().get(0).getRecord().kafkaOffset());
     }
   }
 
@@ -906,10 +916,6 @@ public class TopicPartitionChannelTest {
                 ArgumentMatchers.any(String.class),
                 ArgumentMatchers.any(String.class)))
         .thenReturn(new InsertValidationResponse());
-    Mockito.when(
-            mockStreamingChannel.insertRow(
-                ArgumentMatchers.any(Map.class), ArgumentMatchers.any(String.class)))
-        .thenReturn(new InsertValidationResponse());
 
     final long bufferFlushTimeSeconds = 5L;
     StreamingBufferThreshold bufferThreshold =
@@ -947,13 +953,9 @@ public class TopicPartitionChannelTest {
     topicPartitionChannel.insertBufferedRecordsIfFlushTimeThresholdReached();
 
     Assert.assertTrue(topicPartitionChannel.isPartitionBufferEmpty());
-    if (useDoubleBuffer) {
-      Mockito.verify(mockStreamingChannel, Mockito.times(2))
-          .insertRows(
-              ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(String.class));
-    } else {
-      Mockito.verify(mockStreamingChannel, Mockito.times(5)).insertRow(anyMap(), anyString());
-    }
+    Mockito.verify(mockStreamingChannel, Mockito.times(2))
+        .insertRows(
+            ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(String.class));
   }
 
   @Test
@@ -969,10 +971,6 @@ public class TopicPartitionChannelTest {
                 ArgumentMatchers.any(String.class),
                 ArgumentMatchers.any(String.class)))
         .thenReturn(new InsertValidationResponse());
-    Mockito.when(
-            mockStreamingChannel.insertRow(
-                ArgumentMatchers.any(Map.class), ArgumentMatchers.any(String.class)))
-        .thenReturn(new InsertValidationResponse());
 
     final long bufferFlushTimeSeconds = 5L;
     StreamingBufferThreshold bufferThreshold =
@@ -1009,13 +1007,9 @@ public class TopicPartitionChannelTest {
 
     Assert.assertTrue(topicPartitionChannel.isPartitionBufferEmpty());
 
-    if (useDoubleBuffer) {
-      Mockito.verify(mockStreamingChannel, Mockito.times(2))
-          .insertRows(
-              ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(String.class));
-    } else {
-      Mockito.verify(mockStreamingChannel, Mockito.times(3)).insertRow(anyMap(), anyString());
-    }
+    Mockito.verify(mockStreamingChannel, Mockito.times(2))
+        .insertRows(
+            ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(String.class));
 
     Assert.assertEquals(2L, topicPartitionChannel.fetchOffsetTokenWithRetry());
   }
@@ -0,0 +1,163 @@
+package com.snowflake.kafka.connector.records;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import net.snowflake.client.jdbc.internal.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.avro.Conversions;
+import org.apache.avro.LogicalTypes;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.junit.jupiter.api.Test;
+
+class AvroJsonNodeConverterTest {
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private static final Schema DECIMAL_SCHEMA =
+      LogicalTypes.decimal(20, 4).addToSchema(Schema.create(Schema.Type.BYTES));
+  private static final Schema INTEGRAL_DECIMAL_SCHEMA =
+      LogicalTypes.decimal(38, 0).addToSchema(Schema.create(Schema.Type.BYTES));
+
+  private static final Schema NESTED_SCHEMA =
+      SchemaBuilder.record("nested").fields().requiredString("name").endRecord();
+
+  private static final Schema SCHEMA =
+      SchemaBuilder.record("test")
+          .fields()
+          .requiredInt("int")
+          .requiredLong("smallLong")
+          .requiredLong("bigLong")
+          .requiredFloat("float")
+          .requiredFloat("floatNaN")
+          .requiredDouble("double")
+          .requiredDouble("doubleInfinity")
+          .requiredBoolean("boolean")
+          .requiredString("string")
+          .requiredBytes("bytes")
+          .name("fixed")
+          .type()
+          .fixed("fixed")
+          .size(3)
+          .noDefault()
+          .name("enum")
+          .type()
+          .enumeration("color")
+          .symbols("RED", "GREEN")
+          .noDefault()
+          .name("array")
+          .type()
+          .array()
+          .items()
+          .nullable()
+          .longType()
+          .noDefault()
+          .name("map")
+          .type()
+          .map()
+          .values(NESTED_SCHEMA)
+          .noDefault()
+          .optionalString("optionalString")
+          .name("union")
+          .type()
+          .unionOf()
+          .nullType()
+          .and()
+          .intType()
+          .and()
+          .type(NESTED_SCHEMA)
+          .endUnion()
+          .noDefault()
+          .name("decimal")
+          .type(DECIMAL_SCHEMA)
+          .noDefault()
+          .name("integralDecimal")
+          .type(INTEGRAL_DECIMAL_SCHEMA)
+          .noDefault()
+          .endRecord();
+
+  @Test
+  void shouldMatchParsedToStringOutput() throws IOException {
+    GenericData genericData = new GenericData();
+    genericData.addLogicalTypeConversion(new Conversions.DecimalConversion());
+
+    GenericRecord nested = new GenericData.Record(NESTED_SCHEMA);
+    nested.put("name", "n\u00e9sted \"quoted\" / \u0001");
+
+    Map<String, GenericRecord> map = new LinkedHashMap<>();
+    map.put("first", nested);
+    map.put("second\t", nested);
+
+    GenericRecord record = new GenericData.Record(SCHEMA);
+    record.put("int", -42);
+    record.put("smallLong", 7L);
+    record.put("bigLong", Long.MAX_VALUE);
+    record.put("float", 0.1f);
+    record.put("floatNaN", Float.NaN);
+    record.put("double", 1.0e20);
+    record.put("doubleInfinity", Double.NEGATIVE_INFINITY);
+    record.put("boolean", true);
+    record.put("string", "\u2028line\nbreak\u00ff");
+    record.put("bytes", ByteBuffer.wrap(new byte[] {0, 34, 92, (byte) 0xE9, (byte) 0xFF}));
+    record.put(
+        "fixed",
+        new GenericData.Fixed(SCHEMA.getField("fixed").schema(), new byte[] {1, -2, (byte) 0x80}));
+    record.put("enum", new GenericData.EnumSymbol(SCHEMA.getField("enum").schema(), "GREEN"));
+    record.put("array", Arrays.asList(1L, null, 5000000000L));
+    record.put("map", map);
+    record.put("optionalString", null);
+    record.put("union", nested);
+    record.put("decimal", new BigDecimal("-123456.7890"));
+    record.put("integralDecimal", new BigDecimal("123456789012345678901234567890"));
+
+    Object decoded = roundTrip(record, genericData);
+    assertEquals(MAPPER.readTree(decoded.toString()), AvroJsonNodeConverter.toJsonNode(decoded));
+
+    record.put("union", 3);
+    record.put("decimal", new BigDecimal("0.0000"));
+    record.put("integralDecimal", new BigDecimal("-12"));
+    decoded = roundTrip(record, genericData);
+    assertEquals(MAPPER.readTree(decoded.toString()), AvroJsonNodeConverter.toJsonNode(decoded));
+
+    // without decimal conversion the decimal is read as bytes
+    decoded = roundTrip(record, GenericData.get());
+    assertEquals(MAPPER.readTree(decoded.toString()), AvroJsonNodeConverter.toJsonNode(decoded));
+  }
+
+  @Test
+  void shouldConvertNonRecordDatum() throws IOException {
+    Schema schema = SchemaBuilder.array().items().stringType();
+    Object decoded = roundTrip(Arrays.asList("a", "b"), schema, GenericData.get());
+    assertEquals(MAPPER.readTree("[\"a\",\"b\"]"), AvroJsonNodeConverter.toJsonNode(decoded));
+  }
+
+  private static Object roundTrip(GenericRecord record, GenericData genericData)
+      throws IOException {
+    return roundTrip(record, SCHEMA, genericData);
+  }
+
+  private static Object roundTrip(Object datum, Schema schema, GenericData genericData)
+      throws IOException {
+    GenericData writerData = new GenericData();
+    writerData.addLogicalTypeConversion(new Conversions.DecimalConversion());
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+    new GenericDatumWriter<>(schema, writerData).write(datum, encoder);
+    encoder.flush();
+
+    return new GenericDatumReader<>(schema, schema, genericData)
+        .read(null, DecoderFactory.get().binaryDecoder(out.toByteArray(), null));
+  }
+}
@@ -0,0 +1,163 @@
+package com.snowflake.kafka.connector.records;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.snowflake.kafka.connector.internal.SnowflakeKafkaConnectorException;
+import java.lang.ref.WeakReference;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import net.snowflake.client.jdbc.internal.fasterxml.jackson.databind.JsonNode;
+import org.apache.kafka.connect.data.Date;
+import org.apache.kafka.connect.data.Decimal;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.SchemaBuilder;
+import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.data.Time;
+import org.apache.kafka.connect.data.Timestamp;
+import org.junit.jupiter.api.Test;
+
+class CompiledJsonConverterTest {
+  private static final Schema NESTED_SCHEMA =
+      SchemaBuilder.struct().field("id", Schema.INT64_SCHEMA).build();
+
+  private static final Schema SCHEMA =
+      SchemaBuilder.struct()
+          .field("int8", Schema.INT8_SCHEMA)
+          .field("int16", Schema.INT16_SCHEMA)
+          .field("int32", Schema.INT32_SCHEMA)
+          .field("float32", Schema.FLOAT32_SCHEMA)
+          .field("float64", Schema.FLOAT64_SCHEMA)
+          .field("boolean", Schema.BOOLEAN_SCHEMA)
+          .field("string", Schema.OPTIONAL_STRING_SCHEMA)
+          .field("withDefault", SchemaBuilder.int32().defaultValue(7).build())
+          .field("bytes", Schema.BYTES_SCHEMA)
+          .field("decimal", Decimal.schema(2))
+          .field("date", Date.SCHEMA)
+          .field("time", Time.SCHEMA)
+          .field("timestamp", Timestamp.SCHEMA)
+          .field("array", SchemaBuilder.array(Schema.OPTIONAL_INT32_SCHEMA).build())
+          .field("map", SchemaBuilder.map(Schema.STRING_SCHEMA, NESTED_SCHEMA).build())
+          .field("intKeyMap", SchemaBuilder.map(Schema.INT32_SCHEMA, Schema.STRING_SCHEMA).build())
+          .field("nested", NESTED_SCHEMA)
+          .build();
+
+  @Test
+  void shouldConvertStruct() {
+    Struct nested = new Struct(NESTED_SCHEMA).put("id", 12L);
+    Map<String, Struct> map = new LinkedHashMap<>();
+    map.put("first", nested);
+    Struct struct =
+        new Struct(SCHEMA)
+            .put("int8", (byte) 1)
+            .put("int16", (short) 2)
+            .put("int32", 3)
+            .put("float32", 1.5f)
+            .put("float64", 2.5d)
+            .put("boolean", true)
+            .put("bytes", ByteBuffer.wrap(new byte[] {1, 2, 3}))
+            .put("decimal", new BigDecimal("12.34"))
+            .put("date", new java.util.Date(0))
+            .put("time", new java.util.Date(3600000))
+            .put("timestamp", new java.util.Date(1700000000000L))
+            .put("array", Arrays.asList(1, null, 3))
+            .put("map", map)
+            .put("intKeyMap", Collections.singletonMap(5, "five"))
+            .put("nested", nested);
+
+    assertEquals(
+        "{\"int8\":1,\"int16\":2,\"int32\":3,\"float32\":1.5,\"float64\":2.5,\"boolean\":true,"
+            + "\"string\":null,\"withDefault\":7,\"bytes\":\"AQID\",\"decimal\":12.34,"
+            + "\"date\":\"1970-01-01T00:00:00.000Z\",\"time\":\""
+            + RecordService.TIME_FORMAT.get().format(new java.util.Date(3600000))
+            + "\","
+            + "\"timestamp\":1700000000000,\"array\":[1,null,3],\"map\":{\"first\":{\"id\":12}},"
+            + "\"intKeyMap\":[[5,\"five\"]],\"nested\":{\"id\":12}}",
+        RecordService.convertToJson(SCHEMA, struct, false).toString());
+
+    JsonNode streaming = RecordService.convertToJson(SCHEMA, struct, true);
+    assertEquals(
+        RecordService.TIME_FORMAT_STREAMING.get().format(new java.util.Date(3600000)),
+        streaming.get("time").asText());
+  }
+
+  @Test
+  void shouldCacheConverterPerSchemaInstance() {
+    assertSame(
+        CompiledJsonConverter.forSchema(SCHEMA, false),
+        CompiledJsonConverter.forSchema(SCHEMA, false));
+    assertNotSame(
+        CompiledJsonConverter.forSchema(SCHEMA, false),
+        CompiledJsonConverter.forSchema(SCHEMA, true));
+
+    // builders are mutable, they are never cached
+    SchemaBuilder builder = SchemaBuilder.struct().field("id", Schema.INT64_SCHEMA);
+    assertNotSame(
+        CompiledJsonConverter.forSchema(builder, false),
+        CompiledJsonConverter.forSchema(builder, false));
+  }
+
+  @Test
+  void shouldConvertStructOfEqualSchema() {
+    Schema equalSchema = SchemaBuilder.struct().field("id", Schema.INT64_SCHEMA).build();
+    Struct nestedWithEqualSchema = new Struct(equalSchema).put("id", 1L);
+    assertEquals(
+        "{\"id\":1}",
+        RecordService.convertToJson(NESTED_SCHEMA, nestedWithEqualSchema, false).toString());
+  }
+
+  @Test
+  void shouldNotKeepCachedSchemaAlive() throws InterruptedException {
+    Schema schema = SchemaBuilder.struct().field("id", Schema.INT64_SCHEMA).build();
+    CompiledJsonConverter.forSchema(schema, false);
+    WeakReference<Schema> schemaReference = new WeakReference<>(schema);
+    schema = null;
+    for (int i = 0; i < 50 && schemaReference.get() != null; i++) {
+      System.gc();
+      Thread.sleep(10);
+    }
+    assertNull(schemaReference.get());
+  }
+
+  @Test
+  void shouldRejectInvalidValues() {
+    Schema otherSchema = SchemaBuilder.struct().field("other", Schema.INT64_SCHEMA).build();
+    Struct nestedWithOtherSchema = new Struct(otherSchema).put("other", 1L);
+    Schema parent = SchemaBuilder.struct().field("nested", NESTED_SCHEMA).build();
+    Struct struct = new Struct(parent);
+    struct.put("nested", new Struct(NESTED_SCHEMA).put("id", 1L));
+
+    assertThrows(
+        SnowflakeKafkaConnectorException.class,
+        () -> RecordService.convertToJson(NESTED_SCHEMA, nestedWithOtherSchema, false));
+    assertThrows(
+        SnowflakeKafkaConnectorException.class,
+        () -> RecordService.convertToJson(Schema.INT32_SCHEMA, "not an int", false));
+    assertThrows(
+        SnowflakeKafkaConnectorException.class,
+        () -> RecordService.convertToJson(Schema.INT32_SCHEMA, null, false));
+    assertEquals(
+        "{\"nested\":{\"id\":1}}", RecordService.convertToJson(parent, struct, false).toString());
+  }
+
+  @Test
+  void shouldConvertSchemalessValues() {
+    Map<Object, Object> map = new LinkedHashMap<>();
+    map.put("a", Arrays.asList(1L, "b", new byte[] {1}));
+    assertEquals(
+        "{\"a\":[1,\"b\",\"AQ==\"]}", RecordService.convertToJson(null, map, false).toString());
+
+    map.put(1, true);
+    assertEquals(
+        "[[\"a\",[1,\"b\",\"AQ==\"]],[1,true]]",
+        RecordService.convertToJson(null, map, false).toString());
+    assertEquals("0", RecordService.convertToJson(null, new java.util.Date(0), false).toString());
+  }
+}
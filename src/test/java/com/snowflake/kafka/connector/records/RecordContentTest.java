@@ -2,6 +2,7 @@ package com.snowflake.kafka.connector.records;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -15,6 +16,7 @@ import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.stream.Stream;
 import net.snowflake.client.jdbc.internal.fasterxml.jackson.core.JsonProcessingException;
@@ -249,10 +251,65 @@ public class RecordContentTest {
     SinkRecord record =
         SinkRecordBuilder.forTopicPartition(TOPIC, PARTITION).withSchemaAndValue(sv).build();
 
-    Map<String, Object> got = service.getProcessedRecordForStreamingIngest(record);
-    assertEquals(
-        "[{\"name\":\"John Doe\",\"age\":30},{\"name\":\"Jane Doe\",\"age\":30}]",
-        got.get("\"PLAYERS\""));
+    Map<String, Object> got =
+        service.getProcessedRecordForStreamingIngest(record, Collections.singleton("\"PLAYERS\""));
+    // semi-structured values are handed to the ingest sdk as java objects
+    Map<String, Object> johnDoe = new LinkedHashMap<>();
+    johnDoe.put("name", "John Doe");
+    johnDoe.put("age", 30);
+    Map<String, Object> janeDoe = new LinkedHashMap<>();
+    janeDoe.put("name", "Jane Doe");
+    janeDoe.put("age", 30);
+    assertEquals(Arrays.asList(johnDoe, janeDoe), got.get("\"PLAYERS\""));
+  }
+
+  @Test
+  public void testSchematizationScalarAndObjectFields() throws JsonProcessingException {
+    RecordService service = new RecordService();
+    SnowflakeJsonConverter jsonConverter = new SnowflakeJsonConverter();
+
+    service.setEnableSchematization(true);
+    String value =
+        "{\"flag\":true,\"ratio\":1.5,\"missing\":null,"
+            + "\"address\":{\"zip\":12345,\"tags\":[\"a\",false,null,2.25]}}";
+    SchemaAndValue sv = jsonConverter.toConnectData(TOPIC, value.getBytes(StandardCharsets.UTF_8));
+    SinkRecord record =
+        SinkRecordBuilder.forTopicPartition(TOPIC, PARTITION).withSchemaAndValue(sv).build();
+
+    Map<String, Object> got =
+        service.getProcessedRecordForStreamingIngest(record, Collections.singleton("\"ADDRESS\""));
+
+    assertEquals(true, got.get("\"FLAG\""));
+    // numbers keep their text form, they can be loaded into any column type
+    assertEquals("1.5", got.get("\"RATIO\""));
+    assertTrue(got.containsKey("\"MISSING\""));
+    assertNull(got.get("\"MISSING\""));
+    Map<String, Object> address = new LinkedHashMap<>();
+    address.put("zip", 12345);
+    address.put("tags", Arrays.asList("a", false, null, 2.25));
+    assertEquals(address, got.get("\"ADDRESS\""));
+  }
+
+  @Test
+  public void testSchematizationObjectIntoVarcharColumn() throws JsonProcessingException {
+    RecordService service = new RecordService();
+    SnowflakeJsonConverter jsonConverter = new SnowflakeJsonConverter();
+
+    service.setEnableSchematization(true);
+    String value = "{\"address\":{\"zip\":12345},\"tags\":[\"a\",1]}";
+    SchemaAndValue sv = jsonConverter.toConnectData(TOPIC, value.getBytes(StandardCharsets.UTF_8));
+    SinkRecord record =
+        SinkRecordBuilder.forTopicPartition(TOPIC, PARTITION).withSchemaAndValue(sv).build();
+
+    // only TAGS is a semi-structured column, ADDRESS is a VARCHAR column
+    Map<String, Object> got =
+        service.getProcessedRecordForStreamingIngest(record, Collections.singleton("\"TAGS\""));
+
+    // the ingest sdk rejects Map and List values for a VARCHAR column, it gets the JSON text
+    assertEquals("{\"zip\":12345}", got.get("\"ADDRESS\""));
+    assertEquals(Arrays.asList("a", 1), got.get("\"TAGS\""));
+    // without the column types, objects and arrays are always passed as JSON text
+    assertEquals("[\"a\",1]", service.getProcessedRecordForStreamingIngest(record).get("\"TAGS\""));
   }
 
   @Test
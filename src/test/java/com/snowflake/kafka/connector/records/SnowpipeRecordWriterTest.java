@@ -0,0 +1,122 @@
+package com.snowflake.kafka.connector.records;
+
+import static com.snowflake.kafka.connector.SnowflakeSinkConnectorConfig.SNOWFLAKE_METADATA_ALL;
+import static com.snowflake.kafka.connector.SnowflakeSinkConnectorConfig.SNOWFLAKE_METADATA_CREATETIME;
+import static com.snowflake.kafka.connector.SnowflakeSinkConnectorConfig.SNOWFLAKE_METADATA_TOPIC;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.common.collect.ImmutableMap;
+import com.snowflake.kafka.connector.internal.SnowflakeKafkaConnectorException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import net.snowflake.client.jdbc.internal.fasterxml.jackson.core.JsonGenerator;
+import org.apache.kafka.common.record.TimestampType;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.SchemaAndValue;
+import org.apache.kafka.connect.header.ConnectHeaders;
+import org.apache.kafka.connect.sink.SinkRecord;
+import org.junit.jupiter.api.Test;
+
+class SnowpipeRecordWriterTest {
+  private static final String TOPIC = "test_topic";
+  private static final int PARTITION = 3;
+
+  private final SnowflakeJsonConverter converter = new SnowflakeJsonConverter();
+
+  @Test
+  void shouldMatchProcessedRecordForSnowpipe() throws IOException {
+    SchemaAndValue value = json("{\"name\":\"\\u00e9t\\u00e9\",\"numbers\":[1,2.5,null]}");
+    SchemaAndValue key = json("{\"id\":1}");
+    ConnectHeaders headers = new ConnectHeaders();
+    headers.addString("header", "value");
+    headers.addInt("number", 12);
+
+    SinkRecord[] records = {
+      record(Schema.STRING_SCHEMA, "key", value, 0, TimestampType.NO_TIMESTAMP_TYPE, null),
+      record(key.schema(), key.value(), value, 1, TimestampType.CREATE_TIME, null),
+      record(null, null, value, 2, TimestampType.LOG_APPEND_TIME, headers),
+      record(null, null, json("[{\"a\":1},{\"b\":2}]"), 3, TimestampType.CREATE_TIME, null),
+      record(null, null, new SchemaAndValue(null, null), 4, TimestampType.CREATE_TIME, null),
+    };
+
+    assertSameOutput(new RecordService(), records);
+    assertSameOutput(withMetadata(ImmutableMap.of(SNOWFLAKE_METADATA_ALL, "false")), records);
+    assertSameOutput(
+        withMetadata(
+            ImmutableMap.of(
+                SNOWFLAKE_METADATA_TOPIC, "false", SNOWFLAKE_METADATA_CREATETIME, "false")),
+        records);
+  }
+
+  @Test
+  void shouldNotWritePartialRowForInvalidRecord() throws IOException {
+    RecordService service = new RecordService();
+    SnowpipeRecordWriter writer = service.createSnowpipeRecordWriter(TOPIC);
+    StringWriter out = new StringWriter();
+    JsonGenerator generator = writer.createGenerator(out);
+
+    SinkRecord invalidKey =
+        record(Schema.INT32_SCHEMA, 1, json("{\"a\":1}"), 0, TimestampType.NO_TIMESTAMP_TYPE, null);
+
+    assertThrows(SnowflakeKafkaConnectorException.class, () -> writer.write(invalidKey, generator));
+    generator.flush();
+    assertEquals("", out.toString());
+  }
+
+  private void assertSameOutput(RecordService service, SinkRecord[] records) throws IOException {
+    StringBuilder expected = new StringBuilder();
+    for (SinkRecord record : records) {
+      expected.append(service.getProcessedRecordForSnowpipe(record));
+    }
+
+    SnowpipeRecordWriter writer = service.createSnowpipeRecordWriter(TOPIC);
+    StringWriter chars = new StringWriter();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    JsonGenerator charGenerator = writer.createGenerator(chars);
+    JsonGenerator byteGenerator = writer.createGenerator(bytes);
+    for (SinkRecord record : records) {
+      writer.write(record, charGenerator);
+      writer.write(record, byteGenerator);
+    }
+    charGenerator.flush();
+    byteGenerator.flush();
+
+    assertEquals(expected.toString(), chars.toString());
+    assertEquals(expected.toString(), new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  private static RecordService withMetadata(Map<String, String> config) {
+    RecordService service = new RecordService();
+    service.setMetadataConfig(new SnowflakeMetadataConfig(config));
+    return service;
+  }
+
+  private SchemaAndValue json(String content) {
+    return converter.toConnectData(TOPIC, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static SinkRecord record(
+      Schema keySchema,
+      Object key,
+      SchemaAndValue value,
+      long offset,
+      TimestampType timestampType,
+      ConnectHeaders headers) {
+    Long timestamp = timestampType == TimestampType.NO_TIMESTAMP_TYPE ? null : 1700000000000L;
+    return new SinkRecord(
+        TOPIC,
+        PARTITION,
+        keySchema,
+        key,
+        value.schema(),
+        value.value(),
+        offset,
+        timestamp,
+        timestampType,
+        headers);
+  }
+}